@@ -32,6 +32,8 @@ public class DefaultPageManagerProvider implements IPageManagerProvider
 {
 	private static final int DEFAULT_CACHE_SIZE = 40;
 
+	private static final long DEFAULT_MAX_CACHE_BYTES = Long.MAX_VALUE;
+
 	private static final int DEFAULT_FILE_CHANNEL_POOL_CAPACITY = 50;
 
 	private static final int DEFAULT_MAX_SIZE_PER_SESSION = 1000000;
@@ -50,14 +52,26 @@ public class DefaultPageManagerProvider implements IPageManagerProvider
 
 	public IPageManager get(IPageManagerContext pageManagerContext)
 	{
-		IDataStore dataStore = new DiskDataStore(application.getName(), getMaxSizePerSession(),
-			getFileChannelPoolCapacity());
-		IPageStore pageStore = new DefaultPageStore(application.getName(), dataStore,
-			getCacheSize());
+		IDataStore dataStore = newDataStore();
+		IPageStore pageStore = new DefaultPageStore(application.getName(),
+			application.getFrameworkSettings().getSerializer(), dataStore, getCacheSize(),
+			getMaxCacheBytes());
 		return new PersistentPageManager(application.getName(), pageStore, pageManagerContext);
 
 	}
 
+	/**
+	 * Creates the data store that keeps the serialized pages. Override to decorate or replace the
+	 * default {@link DiskDataStore}.
+	 * 
+	 * @return the data store
+	 */
+	protected IDataStore newDataStore()
+	{
+		return new DiskDataStore(application.getName(), getMaxSizePerSession(),
+			getFileChannelPoolCapacity());
+	}
+
 	protected int getMaxSizePerSession()
 	{
 		return DEFAULT_MAX_SIZE_PER_SESSION;
@@ -68,6 +82,11 @@ public class DefaultPageManagerProvider implements IPageManagerProvider
 		return DEFAULT_CACHE_SIZE;
 	}
 
+	protected long getMaxCacheBytes()
+	{
+		return DEFAULT_MAX_CACHE_BYTES;
+	}
+
 	protected int getFileChannelPoolCapacity()
 	{
 		return DEFAULT_FILE_CHANNEL_POOL_CAPACITY;
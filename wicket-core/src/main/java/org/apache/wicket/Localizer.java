@@ -23,13 +23,14 @@ import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.wicket.markup.repeater.AbstractRepeater;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.resource.loader.IStringResourceLoader;
 import org.apache.wicket.settings.IResourceSettings;
 import org.apache.wicket.util.lang.Generics;
+import org.apache.wicket.util.lang.Objects;
 import org.apache.wicket.util.string.AppendingStringBuffer;
 import org.apache.wicket.util.string.interpolator.PropertyVariableInterpolator;
 import org.slf4j.Logger;
@@ -59,11 +60,28 @@ public class Localizer
 	/** ConcurrentHashMap does not allow null values */
 	private static final String NULL_VALUE = "<null-value>";
 
+	/** Default maximum number of cached properties */
+	public static final int DEFAULT_MAX_CACHE_SIZE = 50000;
+
+	/**
+	 * Whether a subclass overrides one of the string based cache hooks, see
+	 * {@link #getCacheKey(String, Component, Locale, String, String)}
+	 */
+	private final boolean stringKeys = overridesStringHooks(getClass());
+
 	/** Cache properties */
-	private Map<String, String> cache = newCache();
+	private Map<CacheKey, String> cache = stringKeys ? null : newKeyCache();
+
+	/** Cache properties by the string keys of a subclass, see {@link #newCache()} */
+	private Map<String, String> stringCache = stringKeys ? newCache() : null;
+
+	/** Number of entries put into the cache */
+	private final AtomicInteger cacheSize = new AtomicInteger();
+
+	private int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
 
-	/** Database that maps class names to an integer id. */
-	private final ClassMetaDatabase metaDatabase = new ClassMetaDatabase();
+	/** Interned component paths, the root represents no component at all */
+	private volatile PathNode paths = new PathNode();
 
 	/**
 	 * @return Same as Application.get().getResourceSettings().getLocalizer()
@@ -90,8 +108,73 @@ public class Localizer
 	{
 		if (cache != null)
 		{
-			cache = newCache();
+			cache = newKeyCache();
+			cacheSize.set(0);
+			paths = new PathNode();
+		}
+		if (stringCache != null)
+		{
+			stringCache = newCache();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of cached properties. The cache is cleared when it grows beyond.
+	 * 
+	 * @param maxCacheSize
+	 *            maximum number of properties, including not found ones
+	 */
+	public final void setMaxCacheSize(final int maxCacheSize)
+	{
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * Resolves the given keys for the component and puts them into the cache, so that all of them
+	 * are looked up at once, e.g. for all <code>wicket:message</code> keys of a page.
+	 * <p>
+	 * Keys are cached by the path of component classes and ids up to the page, so for a page the
+	 * keys are resolved once per page class, locale, style and variation: prefetching them again,
+	 * e.g. for another instance of the same page, costs a single cache lookup. Hence all keys have
+	 * to be given at once.
+	 * 
+	 * @param keys
+	 *            The keys to obtain the resources for
+	 * @param component
+	 *            The component to get the resources for (optional), must be added to its page
+	 * @param locale
+	 *            If != null, it'll supersede the component's locale
+	 * @param style
+	 *            If != null, it'll supersede the component's style
+	 */
+	public final void prefetch(final Iterable<String> keys, final Component component,
+		Locale locale, String style)
+	{
+		final Map<CacheKey, String> cache = this.cache;
+		if ((cache == null) || ((component != null) && !isAddedToPage(component)))
+		{
+			return;
+		}
+
+		String variation = (component != null ? component.getVariation() : null);
+		locale = resolveLocale(component, locale);
+		style = resolveStyle(component, style);
+
+		PathNode path = getPath(component);
+		CacheKey prefetched = new CacheKey(null, path, locale, style, variation);
+		if (cache.containsKey(prefetched))
+		{
+			return;
 		}
+		for (String key : keys)
+		{
+			CacheKey cacheKey = new CacheKey(key, path, locale, style, variation);
+			if (cache.containsKey(cacheKey) == false)
+			{
+				put(cacheKey, loadString(key, component, locale, style, variation));
+			}
+		}
+		put(prefetched, null);
 	}
 
 	/**
@@ -294,10 +377,7 @@ public class Localizer
 		boolean addedToPage = false;
 		if (component != null)
 		{
-			if ((component instanceof Page) || (null != component.findParent(Page.class)))
-			{
-				addedToPage = true;
-			}
+			addedToPage = isAddedToPage(component);
 
 			if (!addedToPage && log.isWarnEnabled())
 			{
@@ -309,77 +389,57 @@ public class Localizer
 			}
 		}
 
-		String cacheKey = null;
 		String value = null;
 
 		// Make sure locale, style and variation have the right values
 		String variation = (component != null ? component.getVariation() : null);
-
-		if ((locale == null) && (component != null))
-		{
-			locale = component.getLocale();
-		}
-		if (locale == null)
-		{
-			locale = Session.exists() ? Session.get().getLocale() : Locale.getDefault();
-		}
-
-		if ((style == null) && (component != null))
-		{
-			style = component.getStyle();
-		}
-		if (style == null)
-		{
-			style = Session.exists() ? Session.get().getStyle() : null;
-		}
+		locale = resolveLocale(component, locale);
+		style = resolveStyle(component, style);
 
 		// If this component is not yet added to page we do not want to check
 		// cache as we can generate an invalid cache key
-		if ((cache != null) && ((component == null) || addedToPage))
+		final boolean cacheable = (component == null) || addedToPage;
+		final Map<CacheKey, String> cache = this.cache;
+		if (cacheable && (cache != null))
 		{
-			cacheKey = getCacheKey(key, component, locale, style, variation);
-		}
+			CacheKey cacheKey = new CacheKey(key, getPath(component), locale, style, variation);
 
-		// Value not found are cached as well (value = null)
-		if ((cacheKey != null) && cache.containsKey(cacheKey))
-		{
-			value = getFromCache(cacheKey);
-			if (log.isDebugEnabled())
+			// Value not found are cached as well (value = NULL_VALUE)
+			String cached = cache.get(cacheKey);
+			if (cached != null)
 			{
-				log.debug("Property found in cache: '" + key + "'; Component: '" +
-					(component != null ? component.toString(false) : null) + "'; value: '" + value +
-					"'");
+				value = (cached == NULL_VALUE ? null : cached);
+				logCached(key, component, value);
 			}
-		}
-		else
-		{
-			if (log.isDebugEnabled())
+			else
 			{
-				log.debug("Locate property: key: '" + key + "'; Component: '" +
-					(component != null ? component.toString(false) : null) + "'");
-			}
-
-			// Iterate over all registered string resource loaders until the property has been found
-			Iterator<IStringResourceLoader> iter = getStringResourceLoaders().iterator();
-			value = null;
-			while (iter.hasNext() && (value == null))
-			{
-				IStringResourceLoader loader = iter.next();
-				value = loader.loadStringResource(component, key, locale, style, variation);
+				value = loadString(key, component, locale, style, variation);
+				put(cacheKey, value);
 			}
+		}
+		else if (cacheable && (stringCache != null))
+		{
+			String cacheKey = getCacheKey(key, component, locale, style, variation);
 
-			// Cache the result incl null if not found
-			if (cacheKey != null)
+			// Value not found are cached as well (value = null)
+			if ((cacheKey != null) && stringCache.containsKey(cacheKey))
 			{
-				putIntoCache(cacheKey, value);
+				value = getFromCache(cacheKey);
+				logCached(key, component, value);
 			}
-
-			if ((value == null) && log.isDebugEnabled())
+			else
 			{
-				log.debug("Property not found; key: '" + key + "'; Component: '" +
-					(component != null ? component.toString(false) : null) + "'");
+				value = loadString(key, component, locale, style, variation);
+				if (cacheKey != null)
+				{
+					putIntoCache(cacheKey, value);
+				}
 			}
 		}
+		else
+		{
+			value = loadString(key, component, locale, style, variation);
+		}
 
 		if (value == null)
 		{
@@ -396,6 +456,72 @@ public class Localizer
 		return null;
 	}
 
+	/**
+	 * Iterates over all registered string resource loaders until the property has been found
+	 * 
+	 * @param key
+	 * @param component
+	 * @param locale
+	 * @param style
+	 * @param variation
+	 * @return the property or null if not found
+	 */
+	private String loadString(final String key, final Component component, final Locale locale,
+		final String style, final String variation)
+	{
+		if (log.isDebugEnabled())
+		{
+			log.debug("Locate property: key: '" + key + "'; Component: '" +
+				(component != null ? component.toString(false) : null) + "'");
+		}
+
+		Iterator<IStringResourceLoader> iter = getStringResourceLoaders().iterator();
+		String value = null;
+		while (iter.hasNext() && (value == null))
+		{
+			IStringResourceLoader loader = iter.next();
+			value = loader.loadStringResource(component, key, locale, style, variation);
+		}
+
+		if ((value == null) && log.isDebugEnabled())
+		{
+			log.debug("Property not found; key: '" + key + "'; Component: '" +
+				(component != null ? component.toString(false) : null) + "'");
+		}
+		return value;
+	}
+
+	private static boolean isAddedToPage(final Component component)
+	{
+		return (component instanceof Page) || (null != component.findParent(Page.class));
+	}
+
+	private static Locale resolveLocale(final Component component, Locale locale)
+	{
+		if ((locale == null) && (component != null))
+		{
+			locale = component.getLocale();
+		}
+		if (locale == null)
+		{
+			locale = Session.exists() ? Session.get().getLocale() : Locale.getDefault();
+		}
+		return locale;
+	}
+
+	private static String resolveStyle(final Component component, String style)
+	{
+		if ((style == null) && (component != null))
+		{
+			style = component.getStyle();
+		}
+		if (style == null)
+		{
+			style = Session.exists() ? Session.get().getStyle() : null;
+		}
+		return style;
+	}
+
 	/**
 	 * In case you want to provide your own list of string resource loaders
 	 * 
@@ -406,14 +532,52 @@ public class Localizer
 		return Application.get().getResourceSettings().getStringResourceLoaders();
 	}
 
+	private void logCached(final String key, final Component component, final String value)
+	{
+		if (log.isDebugEnabled())
+		{
+			log.debug("Property found in cache: '" + key + "'; Component: '" +
+				(component != null ? component.toString(false) : null) + "'; value: '" + value +
+				"'");
+		}
+	}
+
+	/**
+	 * Puts the value into the cache, clearing the cache if it grows too large.
+	 * 
+	 * @param cacheKey
+	 * @param string
+	 */
+	private void put(final CacheKey cacheKey, final String string)
+	{
+		final Map<CacheKey, String> cache = this.cache;
+		if (cache == null)
+		{
+			return;
+		}
+
+		// ConcurrentHashMap does not allow null values
+		if (cache.put(cacheKey, (string == null ? NULL_VALUE : string)) == null &&
+			cacheSize.incrementAndGet() > maxCacheSize)
+		{
+			log.debug("Localizer cache exceeded {} entries, clearing it", maxCacheSize);
+			clearCache();
+		}
+	}
+
 	/**
 	 * Put the value into the cache and associate it with the cache key
 	 * 
 	 * @param cacheKey
 	 * @param string
+	 * @deprecated The cache is keyed by component paths instead of strings. Used only if a
+	 *             subclass overrides one of the string based cache hooks, see
+	 *             {@link #getCacheKey(String, Component, Locale, String, String)}.
 	 */
+	@Deprecated
 	protected void putIntoCache(final String cacheKey, final String string)
 	{
+		final Map<String, String> cache = stringCache;
 		if (cache == null)
 		{
 			return;
@@ -435,9 +599,14 @@ public class Localizer
 	 * 
 	 * @param cacheKey
 	 * @return The value of the key
+	 * @deprecated The cache is keyed by component paths instead of strings. Used only if a
+	 *             subclass overrides one of the string based cache hooks, see
+	 *             {@link #getCacheKey(String, Component, Locale, String, String)}.
 	 */
+	@Deprecated
 	protected String getFromCache(final String cacheKey)
 	{
+		final Map<String, String> cache = stringCache;
 		if (cache == null)
 		{
 			return null;
@@ -455,6 +624,12 @@ public class Localizer
 
 	/**
 	 * Gets the cache key
+	 * <p>
+	 * By default the properties are cached by the interned path of component classes and ids,
+	 * without building any string. If a subclass overrides this method, {@link #newCache()},
+	 * {@link #putIntoCache(String, String)} or {@link #getFromCache(String)}, these are used
+	 * instead, just like before. {@link #prefetch(Iterable, Component, Locale, String)} and
+	 * {@link #setMaxCacheSize(int)} have no effect then.
 	 * 
 	 * @param key
 	 * @param component
@@ -463,52 +638,83 @@ public class Localizer
 	 * @param style
 	 * @param variation
 	 * @return The value of the key
+	 * @deprecated Override the string based cache hooks only if the properties must be cached
+	 *             differently.
 	 */
+	@Deprecated
 	protected String getCacheKey(final String key, final Component component, final Locale locale,
 		final String style, final String variation)
 	{
-		String cacheKey = key;
-		if (component != null)
-		{
-			AppendingStringBuffer buffer = new AppendingStringBuffer(200);
-			buffer.append(key);
+		return key + "-" + getPath(component).id + "-" + locale + "-" + style + "-" + variation;
+	}
 
-			Component cursor = component;
-			while (cursor != null)
+	/**
+	 * @param clazz
+	 * @return whether the class overrides one of the string based cache hooks
+	 */
+	private static boolean overridesStringHooks(Class<?> clazz)
+	{
+		for (; clazz != Localizer.class; clazz = clazz.getSuperclass())
+		{
+			if (declares(clazz, "getCacheKey", String.class, Component.class, Locale.class,
+				String.class, String.class) ||
+				declares(clazz, "putIntoCache", String.class, String.class) ||
+				declares(clazz, "getFromCache", String.class) || declares(clazz, "newCache"))
 			{
-				buffer.append("-").append(metaDatabase.id(cursor.getClass()));
-
-				if (cursor instanceof Page)
-				{
-					break;
-				}
-
-				/*
-				 * only append component id if parent is not a repeater because (a) these ids are
-				 * irrelevant when generating resource cache keys (b) they cause a lot of redundant
-				 * keys to be generated
-				 */
-				if (cursor.getParent() != null && !(cursor.getParent() instanceof AbstractRepeater))
-				{
-					buffer.append(":").append(cursor.getId());
-				}
-
-				cursor = cursor.getParent();
+				return true;
 			}
+		}
+		return false;
+	}
 
-			buffer.append("-").append(locale);
-			buffer.append("-").append(style);
-			buffer.append("-").append(variation);
-			cacheKey = buffer.toString();
+	private static boolean declares(Class<?> clazz, String name, Class<?>... parameterTypes)
+	{
+		try
+		{
+			clazz.getDeclaredMethod(name, parameterTypes);
+			return true;
 		}
-		else
+		catch (NoSuchMethodException e)
 		{
-			// locale is guaranteed to be != null
-			cacheKey += "-" + locale.toString();
-			cacheKey += "-" + style;
+			return false;
 		}
+	}
+
+	/**
+	 * Interns the path of the component: the classes of the component and its parents up to the
+	 * page, and their ids.
+	 * 
+	 * @param component
+	 *            the component or null
+	 * @return the interned path
+	 */
+	private PathNode getPath(final Component component)
+	{
+		PathNode node = paths;
+		Component cursor = component;
+		while (cursor != null)
+		{
+			if (cursor instanceof Page)
+			{
+				node = node.child(cursor.getClass(), null);
+				break;
+			}
 
-		return cacheKey;
+			/*
+			 * only append component id if parent is not a repeater because (a) these ids are
+			 * irrelevant when generating resource cache keys (b) they cause a lot of redundant keys
+			 * to be generated
+			 */
+			String id = null;
+			if (cursor.getParent() != null && !(cursor.getParent() instanceof AbstractRepeater))
+			{
+				id = cursor.getId();
+			}
+			node = node.child(cursor.getClass(), id);
+
+			cursor = cursor.getParent();
+		}
+		return node;
 	}
 
 	/**
@@ -543,10 +749,19 @@ public class Localizer
 		if (value == false)
 		{
 			cache = null;
+			stringCache = null;
+		}
+		else if (stringKeys)
+		{
+			if (stringCache == null)
+			{
+				stringCache = newCache();
+			}
 		}
 		else if (cache == null)
 		{
-			cache = newCache();
+			cache = newKeyCache();
+			cacheSize.set(0);
 		}
 	}
 
@@ -557,44 +772,125 @@ public class Localizer
 	 * By default it uses the {@link ConcurrentHashMap}
 	 * 
 	 * @return cache
+	 * @deprecated The cache is keyed by component paths instead of strings. Used only if a
+	 *             subclass overrides one of the string based cache hooks, see
+	 *             {@link #getCacheKey(String, Component, Locale, String, String)}.
 	 */
+	@Deprecated
 	protected Map<String, String> newCache()
 	{
 		return new ConcurrentHashMap<String, String>();
 	}
 
+	private Map<CacheKey, String> newKeyCache()
+	{
+		return new ConcurrentHashMap<CacheKey, String>();
+	}
+
 	/**
-	 * Database that maps class names to an integer id. This is used to make localizer keys shorter
-	 * because sometimes they can contain a large number of class names.
-	 * 
-	 * @author igor.vaynberg
+	 * Key of a cached property. Instead of the component the key refers to the interned path of its
+	 * classes and ids, so it is cheap to create and compare. A key of <code>null</code> marks the
+	 * path as prefetched.
+	 */
+	private static final class CacheKey
+	{
+		private final String key;
+		private final PathNode path;
+		private final Locale locale;
+		private final String style;
+		private final String variation;
+		private final int hash;
+
+		private CacheKey(final String key, final PathNode path, final Locale locale,
+			final String style, final String variation)
+		{
+			this.key = key;
+			this.path = path;
+			this.locale = locale;
+			this.style = style;
+			this.variation = variation;
+
+			int h = (key != null ? key.hashCode() : 0);
+			h = 31 * h + path.id;
+			h = 31 * h + locale.hashCode();
+			h = 31 * h + (style != null ? style.hashCode() : 0);
+			h = 31 * h + (variation != null ? variation.hashCode() : 0);
+			hash = h;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof CacheKey))
+			{
+				return false;
+			}
+			CacheKey that = (CacheKey)obj;
+			return hash == that.hash && path == that.path && Objects.equal(key, that.key) &&
+				locale.equals(that.locale) && Objects.equal(style, that.style) &&
+				Objects.equal(variation, that.variation);
+		}
+
+		@Override
+		public String toString()
+		{
+			return key + "-" + path.id + "-" + locale + "-" + style + "-" + variation;
+		}
+	}
+
+	/**
+	 * A node of the tree of interned component paths. Its children are looked up by the class and
+	 * id of the next component, without building any string.
 	 */
-	private static class ClassMetaDatabase
+	private static final class PathNode
 	{
-		private final ConcurrentMap<String, Long> nameToId = Generics.newConcurrentHashMap();
-		private final AtomicLong nameCounter = new AtomicLong();
-
-		/**
-		 * Returns a unique id that represents this class' name. This can be used for compressing
-		 * class names. Notice this id should not be used across cluster nodes.
-		 * 
-		 * @param clazz
-		 * @return long id of class name
-		 */
-		public long id(Class<?> clazz)
-		{
-			final String name = clazz.getName();
-			Long id = nameToId.get(name);
-			if (id == null)
+		/** used for components whose id is not part of the path */
+		private static final String NO_ID = "";
+
+		private static final AtomicInteger ids = new AtomicInteger();
+
+		private final int id = ids.incrementAndGet();
+		private final ConcurrentMap<Class<?>, ConcurrentMap<String, PathNode>> children = Generics.newConcurrentHashMap(4);
+
+		private PathNode child(final Class<?> clazz, String componentId)
+		{
+			if (componentId == null)
+			{
+				componentId = NO_ID;
+			}
+
+			ConcurrentMap<String, PathNode> byId = children.get(clazz);
+			if (byId == null)
+			{
+				byId = Generics.newConcurrentHashMap(4);
+				ConcurrentMap<String, PathNode> existing = children.putIfAbsent(clazz, byId);
+				if (existing != null)
+				{
+					byId = existing;
+				}
+			}
+
+			PathNode child = byId.get(componentId);
+			if (child == null)
 			{
-				id = nameCounter.incrementAndGet();
-				Long previousId = nameToId.putIfAbsent(name, id);
-				if (previousId != null)
+				child = new PathNode();
+				PathNode existing = byId.putIfAbsent(componentId, child);
+				if (existing != null)
 				{
-					id = previousId;
+					child = existing;
 				}
 			}
-			return id;
+			return child;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -20,8 +20,10 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.wicket.markup.ComponentTag;
 import org.apache.wicket.markup.IMarkupFragment;
@@ -1072,7 +1074,7 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 	 * @param object
 	 * @return The id of the object (object can be component or componentsourcentry)
 	 */
-	private final String getId(Object object)
+	private static String getId(Object object)
 	{
 		if (object instanceof Component)
 		{
@@ -1095,50 +1097,12 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 	 */
 	private final Component children_get(final String id)
 	{
-		if (children == null)
+		int index = children_indexOf(id);
+		if (index == -1)
 		{
 			return null;
 		}
-		Component component = null;
-		if ((children instanceof Object[] == false) && (children instanceof List == false))
-		{
-			if (getId(children).equals(id))
-			{
-				component = (Component)postprocess(children, true, this, 0);
-				if (children != component)
-				{
-					children = component;
-				}
-			}
-		}
-		else
-		{
-			Object[] children;
-			int size = 0;
-			if (this.children instanceof ChildList)
-			{
-				children = ((ChildList)this.children).childs;
-				size = ((ChildList)this.children).size;
-			}
-			else
-			{
-				children = (Object[])this.children;
-				size = children.length;
-			}
-			for (int i = 0; i < size; i++)
-			{
-				if (getId(children[i]).equals(id))
-				{
-					component = (Component)postprocess(children[i], true, this, i);
-					if (children[i] != component)
-					{
-						children[i] = component;
-					}
-					break;
-				}
-			}
-		}
-		return component;
+		return children_get(index);
 	}
 
 	/**
@@ -1147,6 +1111,16 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 	 * @return The index of the given child component
 	 */
 	private final int children_indexOf(Component child)
+	{
+		return children_indexOf(child.getId());
+	}
+
+	/**
+	 * 
+	 * @param id
+	 * @return The index of the child with the given id or -1
+	 */
+	private final int children_indexOf(final String id)
 	{
 		if (children == null)
 		{
@@ -1154,32 +1128,30 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 		}
 		if (children instanceof Object[] == false && children instanceof ChildList == false)
 		{
-			if (getId(children).equals(child.getId()))
+			if (getId(children).equals(id))
 			{
 				return 0;
 			}
+			return -1;
 		}
-		else
+
+		if (children instanceof Object[] && ((Object[])children).length >= ChildList.INDEX_THRESHOLD)
 		{
-			int size = 0;
-			Object[] children;
-			if (this.children instanceof Object[])
-			{
-				children = (Object[])this.children;
-				size = children.length;
-			}
-			else
-			{
-				children = ((ChildList)this.children).childs;
-				size = ((ChildList)this.children).size;
-			}
+			// large containers are kept as list between detaches so that they can be indexed
+			children = new ChildList(children);
+		}
 
-			for (int i = 0; i < size; i++)
+		if (children instanceof ChildList)
+		{
+			return ((ChildList)children).indexOf(id);
+		}
+
+		Object[] children = (Object[])this.children;
+		for (int i = 0; i < children.length; i++)
+		{
+			if (getId(children[i]).equals(id))
 			{
-				if (getId(children[i]).equals(child.getId()))
-				{
-					return i;
-				}
+				return i;
 			}
 		}
 		return -1;
@@ -1775,14 +1747,23 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 	}
 
 	/**
-	 * 
+	 * List of children that maintains a map from child id to position once it grows beyond
+	 * {@link #INDEX_THRESHOLD} children, so that looking up children of large containers does not
+	 * need to scan all of them.
 	 */
 	private static class ChildList extends AbstractList<Object> implements IClusterable
 	{
 		private static final long serialVersionUID = -7861580911447631127L;
+
+		/** the number of children from which on lookups by id use an index */
+		private static final int INDEX_THRESHOLD = 16;
+
 		private int size;
 		private Object[] childs;
 
+		/** child id to position, built lazily and dropped when positions shift */
+		private transient Map<String, Integer> index;
+
 		/**
 		 * Construct.
 		 * 
@@ -1818,6 +1799,14 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 		public boolean add(Object o)
 		{
 			ensureCapacity(size + 1);
+			if (index != null)
+			{
+				String id = getId(o);
+				if (index.containsKey(id) == false)
+				{
+					index.put(id, size);
+				}
+			}
 			childs[size++] = o;
 			return true;
 		}
@@ -1834,6 +1823,7 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 			System.arraycopy(childs, index, childs, index + 1, size - index);
 			childs[index] = element;
 			size++;
+			this.index = null;
 		}
 
 		@Override
@@ -1846,6 +1836,10 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 
 			Object oldValue = childs[index];
 			childs[index] = element;
+			if (this.index != null && getId(oldValue).equals(getId(element)) == false)
+			{
+				this.index = null;
+			}
 			return oldValue;
 		}
 
@@ -1865,10 +1859,41 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 				System.arraycopy(childs, index + 1, childs, index, numMoved);
 			}
 			childs[--size] = null; // Let gc do its work
+			this.index = null;
 
 			return oldValue;
 		}
 
+		/**
+		 * @param id
+		 * @return the position of the first child with the given id or -1
+		 */
+		public int indexOf(String id)
+		{
+			if (size < INDEX_THRESHOLD)
+			{
+				for (int i = 0; i < size; i++)
+				{
+					if (getId(childs[i]).equals(id))
+					{
+						return i;
+					}
+				}
+				return -1;
+			}
+
+			if (index == null)
+			{
+				index = new HashMap<String, Integer>(size * 2);
+				for (int i = size; i-- > 0;)
+				{
+					index.put(getId(childs[i]), i);
+				}
+			}
+			Integer position = index.get(id);
+			return position != null ? position : -1;
+		}
+
 		/**
 		 * @param minCapacity
 		 */
@@ -1931,6 +1956,7 @@ public abstract class MarkupContainer extends Component implements Iterable<Comp
 			Object tmp = list.childs[idx1];
 			list.childs[idx1] = list.childs[idx2];
 			list.childs[idx2] = tmp;
+			list.index = null;
 		}
 	}
 
@@ -30,6 +30,7 @@ import org.apache.wicket.markup.parser.XmlTag;
 import org.apache.wicket.markup.parser.XmlTag.TagType;
 import org.apache.wicket.markup.parser.filter.HtmlHandler;
 import org.apache.wicket.request.Response;
+import org.apache.wicket.util.lang.Objects;
 import org.apache.wicket.util.string.AppendingStringBuffer;
 import org.apache.wicket.util.string.StringValue;
 import org.apache.wicket.util.string.Strings;
@@ -73,6 +74,12 @@ public class ComponentTag extends MarkupElement
 	/** True, if attributes have been modified or added */
 	private boolean modified = false;
 
+	/** If this is a mutable copy, the immutable tag it has been copied from */
+	private ComponentTag source;
+
+	/** The output of an immutable tag as written by the last call to writeOutput() */
+	private TagOutput output;
+
 	/**
 	 * If true, than the MarkupParser will ignore (remove) it. Temporary working variable
 	 */
@@ -412,10 +419,23 @@ public class ComponentTag extends MarkupElement
 		{
 			final ComponentTag tag = new ComponentTag(xmlTag.mutable());
 			copyPropertiesTo(tag);
+			tag.source = this;
 			return tag;
 		}
 	}
 
+	/**
+	 * Remembers the immutable tag this mutable tag has been copied from, so that the output of the
+	 * immutable tag can be reused as long as the copy is not changed.
+	 * 
+	 * @param source
+	 *            the immutable tag
+	 */
+	final void setSource(final ComponentTag source)
+	{
+		this.source = source;
+	}
+
 	/**
 	 * Copies all internal properties from this tag to <code>dest</code>. This is basically cloning
 	 * without instance creation.
@@ -665,20 +685,51 @@ public class ComponentTag extends MarkupElement
 	public final void writeOutput(final Response response, final boolean stripWicketAttributes,
 		final String namespace)
 	{
-		response.write("<");
+		// unchanged markup tags are escaped only once and written in one go
+		final ComponentTag unchanged = getUnchangedTag();
+		if (unchanged != null)
+		{
+			TagOutput cached = unchanged.output;
+			if ((cached == null) || !cached.isFor(stripWicketAttributes, namespace))
+			{
+				cached = new TagOutput(stripWicketAttributes, namespace, unchanged.toOutput(
+					stripWicketAttributes, namespace));
+				unchanged.output = cached;
+			}
+			response.write(cached.text);
+		}
+		else
+		{
+			response.write(toOutput(stripWicketAttributes, namespace));
+		}
+	}
+
+	/**
+	 * Renders the tag as written by {@link #writeOutput(Response, boolean, String)}.
+	 * 
+	 * @param stripWicketAttributes
+	 *            if true, wicket:id are removed from output
+	 * @param namespace
+	 *            Wicket's namespace to use
+	 * @return the tag's markup
+	 */
+	private String toOutput(final boolean stripWicketAttributes, final String namespace)
+	{
+		final AppendingStringBuffer buffer = new AppendingStringBuffer(64);
+		buffer.append('<');
 
 		if (getType() == TagType.CLOSE)
 		{
-			response.write("/");
+			buffer.append('/');
 		}
 
 		if (getNamespace() != null)
 		{
-			response.write(getNamespace());
-			response.write(":");
+			buffer.append(getNamespace());
+			buffer.append(':');
 		}
 
-		response.write(getName());
+		buffer.append(getName());
 
 		String namespacePrefix = null;
 		if (stripWicketAttributes == true)
@@ -697,17 +748,16 @@ public class ComponentTag extends MarkupElement
 
 				if ((namespacePrefix == null) || (key.startsWith(namespacePrefix) == false))
 				{
-					response.write(" ");
-					response.write(key);
+					buffer.append(' ');
+					buffer.append(key);
 					CharSequence value = getString(key);
 
 					// attributes without values are possible, e.g.' disabled'
 					if (value != null)
 					{
-						response.write("=\"");
-						value = Strings.escapeMarkup(value);
-						response.write(value);
-						response.write("\"");
+						buffer.append("=\"");
+						buffer.append(Strings.escapeMarkup(value));
+						buffer.append('"');
 					}
 				}
 			}
@@ -715,10 +765,49 @@ public class ComponentTag extends MarkupElement
 
 		if (getType() == TagType.OPEN_CLOSE)
 		{
-			response.write("/");
+			buffer.append('/');
+		}
+
+		buffer.append('>');
+		return buffer.toString();
+	}
+
+	/**
+	 * Gets the immutable tag whose output is the same as the output of this tag.
+	 * 
+	 * @return this tag if it is immutable, the tag this one has been copied from if nothing has
+	 *         been changed or null
+	 */
+	private ComponentTag getUnchangedTag()
+	{
+		if (!xmlTag.isMutable())
+		{
+			return this;
+		}
+		if ((source == null) || modified || xmlTag.getNameChanged() ||
+			(getType() != source.getType()) || source.xmlTag.isMutable())
+		{
+			return null;
 		}
 
-		response.write(">");
+		// the attributes are written in their order, so they must match in order
+		final IValueMap attributes = getAttributes();
+		final IValueMap sourceAttributes = source.getAttributes();
+		if (attributes.size() != sourceAttributes.size())
+		{
+			return null;
+		}
+		final Iterator<Map.Entry<String, Object>> iterator = attributes.entrySet().iterator();
+		for (Map.Entry<String, Object> sourceEntry : sourceAttributes.entrySet())
+		{
+			final Map.Entry<String, Object> entry = iterator.next();
+			if (!Objects.equal(sourceEntry.getKey(), entry.getKey()) ||
+				!isSameValue(sourceEntry.getValue(), entry.getValue()))
+			{
+				return null;
+			}
+		}
+		return source;
 	}
 
 	/**
@@ -910,4 +999,39 @@ public class ComponentTag extends MarkupElement
 	public void onBeforeRender(final Component component, final MarkupStream markupStream)
 	{
 	}
+
+	/**
+	 * @param sourceValue
+	 * @param value
+	 * @return true if both values are written the same way
+	 */
+	private static boolean isSameValue(final Object sourceValue, final Object value)
+	{
+		// other char sequences, e.g. string buffers, are usually not comparable by equals()
+		return (sourceValue == value) || ((value instanceof String) && value.equals(sourceValue));
+	}
+
+	/**
+	 * The markup written for an immutable tag with the settings it was written with
+	 */
+	private static final class TagOutput
+	{
+		private final boolean stripWicketAttributes;
+		private final String namespace;
+		private final String text;
+
+		private TagOutput(final boolean stripWicketAttributes, final String namespace,
+			final String text)
+		{
+			this.stripWicketAttributes = stripWicketAttributes;
+			this.namespace = namespace;
+			this.text = text;
+		}
+
+		private boolean isFor(final boolean stripWicketAttributes, final String namespace)
+		{
+			return (this.stripWicketAttributes == stripWicketAttributes) &&
+				Objects.equal(this.namespace, namespace);
+		}
+	}
 }
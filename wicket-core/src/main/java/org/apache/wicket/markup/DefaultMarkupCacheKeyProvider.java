@@ -17,8 +17,10 @@
 package org.apache.wicket.markup;
 
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.util.lang.Objects;
 
 
 /**
@@ -30,6 +32,12 @@ import org.apache.wicket.MarkupContainer;
  */
 public class DefaultMarkupCacheKeyProvider implements IMarkupCacheKeyProvider
 {
+	/** The max number of keys remembered per class */
+	private static final int MAX_KEYS_PER_CLASS = 32;
+
+	/** The keys created so far per class */
+	private final ConcurrentHashMap<Class<?>, CacheKey[]> cacheKeys = new ConcurrentHashMap<Class<?>, CacheKey[]>();
+
 	/**
 	 * Constructor.
 	 */
@@ -48,13 +56,59 @@ public class DefaultMarkupCacheKeyProvider implements IMarkupCacheKeyProvider
 	 *         container.
 	 */
 	public String getCacheKey(final MarkupContainer container, final Class<?> clazz)
+	{
+		final Locale locale = container.getLocale();
+		final String style = container.getStyle();
+		final String variation = container.getVariation();
+		final String extension = container.getMarkupType().getExtension();
+
+		// Keys already created for the class are reused without creating any objects
+		final CacheKey[] keys = cacheKeys.get(clazz);
+		if (keys != null)
+		{
+			for (int i = 0; i < keys.length; i++)
+			{
+				if (keys[i].matches(locale, style, variation, extension))
+				{
+					return keys[i].value;
+				}
+			}
+		}
+
+		final CacheKey key = new CacheKey(locale, style, variation, extension, createCacheKey(
+			clazz, locale, style, variation, extension));
+		if (keys == null)
+		{
+			cacheKeys.putIfAbsent(clazz, new CacheKey[] { key });
+		}
+		else if (keys.length < MAX_KEYS_PER_CLASS)
+		{
+			// Losing a key to a concurrent update is harmless; it will be created again
+			final CacheKey[] newKeys = new CacheKey[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, keys.length);
+			newKeys[keys.length] = key;
+			cacheKeys.replace(clazz, keys, newKeys);
+		}
+		return key.value;
+	}
+
+	/**
+	 * Creates the key value from its parts
+	 * 
+	 * @param clazz
+	 * @param locale
+	 * @param style
+	 * @param variation
+	 * @param extension
+	 * @return key
+	 */
+	private static String createCacheKey(final Class<?> clazz, final Locale locale,
+		final String style, final String variation, final String extension)
 	{
 		final String classname = clazz.getName();
 		final StringBuilder buffer = new StringBuilder(classname.length() + 64);
 		buffer.append(classname);
 
-		final Locale locale = container.getLocale();
-
 		if (locale != null)
 		{
 			buffer.append('-').append(locale.getLanguage());
@@ -72,17 +126,46 @@ public class DefaultMarkupCacheKeyProvider implements IMarkupCacheKeyProvider
 				buffer.append('_').append(locale.getVariant());
 			}
 		}
-		if (container.getStyle() != null)
+		if (style != null)
 		{
-			buffer.append('_').append(container.getStyle());
+			buffer.append('_').append(style);
 		}
 
-		if (container.getVariation() != null)
+		if (variation != null)
 		{
-			buffer.append('_').append(container.getVariation());
+			buffer.append('_').append(variation);
 		}
 
-		buffer.append('.').append(container.getMarkupType().getExtension());
+		buffer.append('.').append(extension);
 		return buffer.toString();
 	}
+
+	/**
+	 * A key value together with the locale, style, variation and extension it has been created for
+	 */
+	private static final class CacheKey
+	{
+		private final Locale locale;
+		private final String style;
+		private final String variation;
+		private final String extension;
+		private final String value;
+
+		private CacheKey(final Locale locale, final String style, final String variation,
+			final String extension, final String value)
+		{
+			this.locale = locale;
+			this.style = style;
+			this.variation = variation;
+			this.extension = extension;
+			this.value = value;
+		}
+
+		private boolean matches(final Locale locale, final String style, final String variation,
+			final String extension)
+		{
+			return Objects.equal(this.locale, locale) && Objects.equal(this.style, style) &&
+				Objects.equal(this.variation, variation) && Objects.equal(this.extension, extension);
+		}
+	}
 }
@@ -17,6 +17,7 @@
 package org.apache.wicket.markup;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -50,6 +51,12 @@ public class Markup implements IMarkupFragment
 	/** The associated markup file */
 	private final MarkupResourceStream markupResourceStream;
 
+	/**
+	 * The index of the matching close tag for each open tag, remembered while the markup gets
+	 * rendered. -1 if not known (yet). Only available once the markup has been made immutable.
+	 */
+	private int[] closeTagIndexes;
+
 	/**
 	 * Private Constructor for NO_MARKUP only
 	 */
@@ -147,6 +154,40 @@ public class Markup implements IMarkupFragment
 		}
 
 		markupElements = Collections.unmodifiableList(markupElements);
+		final int[] indexes = new int[markupElements.size()];
+		Arrays.fill(indexes, -1);
+		closeTagIndexes = indexes;
+	}
+
+	/**
+	 * Gets the remembered index of the close tag matching the open tag at the index provided.
+	 * 
+	 * @param openTagIndex
+	 *            The index of the open tag
+	 * @return The index of the matching close tag or -1 if not known
+	 */
+	final int getCloseTagIndex(final int openTagIndex)
+	{
+		final int[] indexes = closeTagIndexes;
+		return (indexes != null) ? indexes[openTagIndex] : -1;
+	}
+
+	/**
+	 * Remembers the index of the close tag matching the open tag at the index provided. Ignored
+	 * unless the markup is immutable.
+	 * 
+	 * @param openTagIndex
+	 *            The index of the open tag
+	 * @param closeTagIndex
+	 *            The index of the matching close tag
+	 */
+	final void setCloseTagIndex(final int openTagIndex, final int closeTagIndex)
+	{
+		final int[] indexes = closeTagIndexes;
+		if (indexes != null)
+		{
+			indexes[openTagIndex] = closeTagIndex;
+		}
 	}
 
 	public final IMarkupFragment find(final String id)
@@ -102,15 +102,28 @@ public class MarkupFragment implements IMarkupFragment
 		}
 		else
 		{
-			for (endIndex = startIndex + 1; endIndex < markup.size(); endIndex++)
+			// The close tag might already be known from a previous render
+			final Markup rootMarkup = getRootMarkup();
+			final int offset = getRootIndex() - startIndex;
+			final int closeTagIndex = (rootMarkup != null)
+				? rootMarkup.getCloseTagIndex(offset + startIndex) : -1;
+			endIndex = closeTagIndex - offset;
+			if ((closeTagIndex <= offset + startIndex) || (endIndex >= markup.size()))
 			{
-				MarkupElement elem = markup.get(endIndex);
-				if (elem instanceof ComponentTag)
+				for (endIndex = startIndex + 1; endIndex < markup.size(); endIndex++)
 				{
-					ComponentTag tag = (ComponentTag)elem;
-					if (tag.closes(startTag))
+					MarkupElement elem = markup.get(endIndex);
+					if (elem instanceof ComponentTag)
 					{
-						break;
+						ComponentTag tag = (ComponentTag)elem;
+						if (tag.closes(startTag))
+						{
+							if (rootMarkup != null)
+							{
+								rootMarkup.setCloseTagIndex(offset + startIndex, offset + endIndex);
+							}
+							break;
+						}
 					}
 				}
 			}
@@ -190,6 +203,21 @@ public class MarkupFragment implements IMarkupFragment
 		return markup;
 	}
 
+	/**
+	 * @return The index at which the fragment starts, relative to the root markup
+	 */
+	final int getRootIndex()
+	{
+		int index = startIndex;
+		IMarkupFragment markup = getParentMarkup();
+		while (markup instanceof MarkupFragment)
+		{
+			index += ((MarkupFragment)markup).startIndex;
+			markup = ((MarkupFragment)markup).getParentMarkup();
+		}
+		return index;
+	}
+
 	/**
 	 * @return The Markup representing the underlying markup file with all its content
 	 */
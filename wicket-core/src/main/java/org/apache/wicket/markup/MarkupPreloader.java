@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.markup;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.Page;
+import org.apache.wicket.Session;
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.protocol.http.WebSession;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
+import org.apache.wicket.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the markup of panels, borders and other markup containers with associated markup into the
+ * markup cache in parallel, so that the first requests after a deployment don't have to wait for
+ * it to be parsed. It is meant to be used in {@link Application#init()}:
+ * 
+ * <pre>
+ * protected void init()
+ * {
+ * 	super.init();
+ * 
+ * 	new MarkupPreloader(this).setLocales(Locale.ENGLISH, Locale.GERMAN).preload(
+ * 		Arrays.asList(HeaderPanel.class, MyPanel.class));
+ * }
+ * </pre>
+ * 
+ * For each locale and style the container gets created with a temporary session, added to a
+ * temporary page and its markup gets loaded. The containers need a public constructor taking the
+ * component id. Override {@link #newContainer(Class)} to create them differently. Pages are not
+ * supported because creating them involves the page manager.
+ */
+public class MarkupPreloader
+{
+	private static final Logger log = LoggerFactory.getLogger(MarkupPreloader.class);
+
+	private final Application application;
+
+	private Locale[] locales = { Locale.getDefault() };
+
+	private String[] styles = { null };
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Construct.
+	 * 
+	 * @param application
+	 *            The application whose markup cache is filled
+	 */
+	public MarkupPreloader(final Application application)
+	{
+		this.application = Args.notNull(application, "application");
+	}
+
+	/**
+	 * @param locales
+	 *            The locales to load the markup for. Defaults to the JVM's default locale.
+	 * @return this
+	 */
+	public MarkupPreloader setLocales(final Locale... locales)
+	{
+		Args.notNull(locales, "locales");
+		this.locales = locales;
+		return this;
+	}
+
+	/**
+	 * @param styles
+	 *            The styles to load the markup for, <code>null</code> for no style. Defaults to no
+	 *            style.
+	 * @return this
+	 */
+	public MarkupPreloader setStyles(final String... styles)
+	{
+		Args.notNull(styles, "styles");
+		this.styles = styles;
+		return this;
+	}
+
+	/**
+	 * @param threads
+	 *            The number of threads loading markup. Defaults to the number of processors.
+	 * @return this
+	 */
+	public MarkupPreloader setThreads(final int threads)
+	{
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("Parameter 'threads' must be > 0");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Loads the markup of all the classes for all locales and styles. Classes failing to load are
+	 * logged and skipped.
+	 * 
+	 * @param classes
+	 *            The markup containers to load the markup for
+	 * @return The time it took to load the markup for each of the classes successfully loaded
+	 */
+	public Map<Class<? extends MarkupContainer>, Duration> preload(
+		final Iterable<? extends Class<? extends MarkupContainer>> classes)
+	{
+		Args.notNull(classes, "classes");
+		for (Class<? extends MarkupContainer> clazz : classes)
+		{
+			if (Page.class.isAssignableFrom(clazz))
+			{
+				throw new IllegalArgumentException("Pages can not be preloaded: " + clazz.getName());
+			}
+		}
+
+		final Map<Class<? extends MarkupContainer>, Future<Duration>> futures = new LinkedHashMap<Class<? extends MarkupContainer>, Future<Duration>>();
+		final Map<Class<? extends MarkupContainer>, Duration> durations = new LinkedHashMap<Class<? extends MarkupContainer>, Duration>();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			for (final Class<? extends MarkupContainer> clazz : classes)
+			{
+				futures.put(clazz, executor.submit(new Callable<Duration>()
+				{
+					public Duration call() throws Exception
+					{
+						return preload(clazz);
+					}
+				}));
+			}
+
+			for (Entry<Class<? extends MarkupContainer>, Future<Duration>> entry : futures.entrySet())
+			{
+				try
+				{
+					Duration duration = entry.getValue().get();
+					durations.put(entry.getKey(), duration);
+					log.info("Preloaded markup of " + entry.getKey().getName() + " in " + duration);
+				}
+				catch (ExecutionException e)
+				{
+					log.warn("Failed to preload markup of " + entry.getKey().getName(),
+						e.getCause());
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		return durations;
+	}
+
+	/**
+	 * Loads the markup of a class for all locales and styles.
+	 * 
+	 * @param clazz
+	 * @return The time it took
+	 * @throws Exception
+	 */
+	private Duration preload(final Class<? extends MarkupContainer> clazz) throws Exception
+	{
+		final Time start = Time.now();
+
+		ThreadContext.setApplication(application);
+		try
+		{
+			for (Locale locale : locales)
+			{
+				for (String style : styles)
+				{
+					Session session = new WebSession(new PreloadRequest(locale));
+					session.setStyle(style);
+					ThreadContext.setSession(session);
+
+					// Components need a page to determine their markup type
+					MarkupContainer container = newContainer(clazz);
+					new PreloadPage().add(container);
+
+					// Ask the container's markup sourcing strategy, just like rendering does
+					container.getMarkup(null);
+				}
+			}
+		}
+		finally
+		{
+			ThreadContext.detach();
+		}
+
+		return Duration.elapsed(start);
+	}
+
+	/**
+	 * Creates the container to load the markup for. The current session has the locale and style
+	 * to load the markup for. The container must not be added to a parent yet.
+	 * 
+	 * @param clazz
+	 *            The container class
+	 * @return The container
+	 * @throws Exception
+	 */
+	protected MarkupContainer newContainer(final Class<? extends MarkupContainer> clazz)
+		throws Exception
+	{
+		return clazz.getConstructor(String.class).newInstance("preload");
+	}
+
+	/**
+	 * The page components are added to. Not being versioned it is never touched in the page
+	 * manager.
+	 */
+	private static class PreloadPage extends WebPage
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public boolean isVersioned()
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Provides the locale of the temporary sessions.
+	 */
+	private static class PreloadRequest extends Request
+	{
+		private final Locale locale;
+
+		private PreloadRequest(final Locale locale)
+		{
+			this.locale = locale;
+		}
+
+		@Override
+		public Url getUrl()
+		{
+			return new Url();
+		}
+
+		@Override
+		public Url getClientUrl()
+		{
+			return new Url();
+		}
+
+		@Override
+		public Locale getLocale()
+		{
+			return locale;
+		}
+
+		@Override
+		public Charset getCharset()
+		{
+			return null;
+		}
+
+		@Override
+		public Object getContainerRequest()
+		{
+			return null;
+		}
+	}
+}
@@ -53,6 +53,12 @@ public class MarkupStream
 	/** The markup element list */
 	private final IMarkupFragment markup;
 
+	/** The markup file underlying the markup element list, if any */
+	private final Markup rootMarkup;
+
+	/** The index of the first markup element relative to the markup file */
+	private final int rootIndex;
+
 	/**
 	 * Constructor
 	 * 
@@ -68,6 +74,22 @@ public class MarkupStream
 
 		this.markup = markup;
 
+		if (markup instanceof Markup)
+		{
+			rootMarkup = (Markup)markup;
+			rootIndex = 0;
+		}
+		else if (markup instanceof MarkupFragment)
+		{
+			rootMarkup = ((MarkupFragment)markup).getRootMarkup();
+			rootIndex = ((MarkupFragment)markup).getRootIndex();
+		}
+		else
+		{
+			rootMarkup = null;
+			rootIndex = 0;
+		}
+
 		if (markup.size() > 0)
 		{
 			current = get(currentIndex);
@@ -471,12 +493,34 @@ public class MarkupStream
 	 */
 	public void skipToMatchingCloseTag(final ComponentTag openTag)
 	{
+		// The open tag is either the current or the previous element. If so, the close tag
+		// might already be known from a previous render of the same markup.
+		final int openTagIndex = getOpenTagIndex(openTag);
+		if (openTagIndex >= 0)
+		{
+			final int closeTagIndex = rootMarkup.getCloseTagIndex(rootIndex + openTagIndex);
+			if (closeTagIndex > rootIndex + openTagIndex)
+			{
+				final int index = closeTagIndex - rootIndex;
+				if ((index >= currentIndex) && (index < markup.size()))
+				{
+					setCurrentIndex(index);
+					return;
+				}
+			}
+		}
+
 		// Loop through the markup in this container
 		while (hasMore())
 		{
 			// If the current markup tag closes the openTag
 			if (get().closes(openTag))
 			{
+				if (openTagIndex >= 0)
+				{
+					rootMarkup.setCloseTagIndex(rootIndex + openTagIndex, rootIndex + currentIndex);
+				}
+
 				// Done!
 				return;
 			}
@@ -487,6 +531,28 @@ public class MarkupStream
 		throwMarkupException("Expected close tag for " + openTag);
 	}
 
+	/**
+	 * @param openTag
+	 * @return The index of the open tag if it is the current or the previous markup element of a
+	 *         markup file, -1 otherwise
+	 */
+	private int getOpenTagIndex(final ComponentTag openTag)
+	{
+		if (rootMarkup != null)
+		{
+			if ((currentIndex < markup.size()) && (current == openTag))
+			{
+				return currentIndex;
+			}
+			if ((currentIndex > 0) && (currentIndex <= markup.size()) &&
+				(markup.get(currentIndex - 1) == openTag))
+			{
+				return currentIndex - 1;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * @return A markup fragment starting at the current position
 	 */
@@ -206,6 +206,7 @@ public class WicketTag extends ComponentTag
 			final WicketTag tag = new WicketTag(xmlTag.mutable());
 			tag.setId(getId());
 			tag.setAutoComponentTag(isAutoComponentTag());
+			tag.setSource(this);
 			return tag;
 		}
 	}
@@ -16,65 +16,176 @@
  */
 package org.apache.wicket.pageStore;
 
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.Queue;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.util.lang.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Facade for {@link IDataStore} that does the actual saving in worker thread.
- * 
+ * Facade for {@link IDataStore} that does the actual saving in worker threads.
+ * <p>
+ * The entries are sharded by session id over a configurable number of writer threads, so the
+ * pages of one session are always written in order by the same thread. Each writer has a bounded
+ * queue; what happens when it is full is decided by the {@link OverflowPolicy}. Writers take up to
+ * {@link #getBatchSize()} entries at once from their queue and store them in one go.
+ * <p>
+ * The queue depth and write timings are available through {@link #getQueuedEntries()},
+ * {@link #getWrittenEntries()} and {@link #getAverageWriteTime()}.
+ *
  * @author Matej Knopp
  */
 public class AsynchronousDataStore implements IDataStore
 {
-	private static final Object WRITE_LOCK = new Object();
+	private static final Logger log = LoggerFactory.getLogger(AsynchronousDataStore.class);
+
+	/**
+	 * Decides what happens with a page when the queue of its writer is full.
+	 */
+	public static enum OverflowPolicy {
+		/** the calling thread waits until there is room in the queue */
+		BLOCK,
+
+		/** the page is stored by the calling thread */
+		CALLER_RUNS,
+
+		/** the oldest queued page of the writer is dropped to make room */
+		DROP_OLDEST
+	}
+
+	private static final int DEFAULT_MAX_QUEUED_ENTRIES = 100;
+
+	private static final int DEFAULT_BATCH_SIZE = 16;
 
 	private final AtomicBoolean destroy = new AtomicBoolean(false);
 
 	private final IDataStore dataStore;
 
-	private final Queue<Entry> entries = new ConcurrentLinkedQueue<Entry>();
+	private int maxQueuedEntries;
+
+	private final OverflowPolicy overflowPolicy;
 
-	private final Map<String, Entry> entryMap = new ConcurrentHashMap<String, Entry>();
+	private final Writer[] writers;
+
+	private final ConcurrentMap<String, Entry> entryMap = new ConcurrentHashMap<String, Entry>();
+
+	private final AtomicLong writtenEntries = new AtomicLong();
+
+	private final AtomicLong totalWriteTime = new AtomicLong();
+
+	private final AtomicLong droppedEntries = new AtomicLong();
+
+	private final AtomicLong callerRunsEntries = new AtomicLong();
 
 	/**
-	 * Construct.
-	 * 
+	 * Construct with a single writer thread that stores the pages itself when its queue is full.
+	 * The queue holds {@link #getMaxQueuedEntries()} entries.
+	 *
 	 * @param dataStore
 	 */
 	public AsynchronousDataStore(final IDataStore dataStore)
 	{
-		this.dataStore = dataStore;
+		this(dataStore, 1, DEFAULT_MAX_QUEUED_ENTRIES, OverflowPolicy.CALLER_RUNS, true);
+	}
 
-		new Thread(new PageSavingRunnable(), "Wicket-PageSavingThread").start();
+	/**
+	 * Construct.
+	 *
+	 * @param dataStore
+	 *            the data store doing the actual work
+	 * @param writerCount
+	 *            number of writer threads
+	 * @param maxQueuedEntries
+	 *            maximum number of entries waiting to be stored, shared equally by the writers
+	 * @param overflowPolicy
+	 *            what to do with pages that do not fit into the queue
+	 */
+	public AsynchronousDataStore(final IDataStore dataStore, final int writerCount,
+		final int maxQueuedEntries, final OverflowPolicy overflowPolicy)
+	{
+		this(dataStore, writerCount, maxQueuedEntries, overflowPolicy, false);
 	}
 
 	/**
-	 * @see org.apache.wicket.pageStore.IDataStore#destroy()
+	 * Construct.
+	 *
+	 * @param dataStore
+	 * @param writerCount
+	 * @param maxQueuedEntries
+	 * @param overflowPolicy
+	 * @param overridable
+	 *            whether {@link #getMaxQueuedEntries()} may override the queue size
 	 */
-	public void destroy()
+	private AsynchronousDataStore(final IDataStore dataStore, final int writerCount,
+		int maxQueuedEntries, final OverflowPolicy overflowPolicy, final boolean overridable)
 	{
-		destroy.set(true);
+		if (overridable)
+		{
+			this.maxQueuedEntries = maxQueuedEntries;
+			maxQueuedEntries = getMaxQueuedEntries();
+		}
 
-		synchronized (entries)
+		Args.notNull(dataStore, "dataStore");
+		Args.notNull(overflowPolicy, "overflowPolicy");
+		if (writerCount < 1)
 		{
-			// let the saving thread continue
-			entries.notify();
+			throw new IllegalArgumentException("There must be at least one writer.");
+		}
+		if (maxQueuedEntries < writerCount)
+		{
+			throw new IllegalArgumentException(
+				"The maximum number of queued entries must not be less than the number of writers.");
 		}
 
-		try
+		this.dataStore = dataStore;
+		this.maxQueuedEntries = maxQueuedEntries;
+		this.overflowPolicy = overflowPolicy;
+
+		writers = new Writer[writerCount];
+		for (int i = 0; i < writerCount; i++)
 		{
-			synchronized (destroy)
+			writers[i] = new Writer(maxQueuedEntries / writerCount);
+		}
+		for (int i = 0; i < writerCount; i++)
+		{
+			String name = "Wicket-PageSavingThread";
+			if (writerCount > 1)
 			{
-				destroy.wait();
+				name += "-" + i;
 			}
+			writers[i].thread = new Thread(writers[i], name);
+			writers[i].thread.start();
 		}
-		catch (InterruptedException e)
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#destroy()
+	 */
+	public void destroy()
+	{
+		destroy.set(true);
+
+		// the writers finish their queues before they stop
+		for (Writer writer : writers)
 		{
-			e.printStackTrace();
+			try
+			{
+				writer.thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
 		}
 
 		dataStore.destroy();
@@ -82,7 +193,7 @@ public class AsynchronousDataStore implements IDataStore
 
 	/**
 	 * Little helper
-	 * 
+	 *
 	 * @param sessionId
 	 * @param id
 	 * @return Entry
@@ -92,6 +203,15 @@ public class AsynchronousDataStore implements IDataStore
 		return entryMap.get(getKey(sessionId, id));
 	}
 
+	/**
+	 * @param sessionId
+	 * @return the writer responsible for pages of the session
+	 */
+	private Writer getWriter(final String sessionId)
+	{
+		return writers[(sessionId.hashCode() & 0x7fffffff) % writers.length];
+	}
+
 	/**
 	 * @see org.apache.wicket.pageStore.IDataStore#getData(java.lang.String, int)
 	 */
@@ -114,11 +234,26 @@ public class AsynchronousDataStore implements IDataStore
 	}
 
 	/**
+	 * Gets the maximum number of queued entries. It is called once by
+	 * {@link #AsynchronousDataStore(IDataStore)}, so overrides must not depend on the state of the
+	 * subclass.
+	 *
 	 * @return max queue size
+	 * @deprecated pass the queue size to
+	 *             {@link #AsynchronousDataStore(IDataStore, int, int, OverflowPolicy)} instead
 	 */
+	@Deprecated
 	protected int getMaxQueuedEntries()
 	{
-		return 100;
+		return maxQueuedEntries;
+	}
+
+	/**
+	 * @return maximum number of entries a writer stores at once
+	 */
+	protected int getBatchSize()
+	{
+		return DEFAULT_BATCH_SIZE;
 	}
 
 	/**
@@ -126,18 +261,14 @@ public class AsynchronousDataStore implements IDataStore
 	 */
 	public void removeData(final String sessionId, final int id)
 	{
-		synchronized (WRITE_LOCK)
+		Writer writer = getWriter(sessionId);
+		synchronized (writer.lock)
 		{
-			String key = getKey(sessionId, id);
-			if (key != null)
+			Entry entry = entryMap.remove(getKey(sessionId, id));
+			if (entry != null)
 			{
-				Entry entry = entryMap.remove(key);
-				if (entry != null)
-				{
-					entries.remove(entry);
-				}
+				writer.queue.remove(entry);
 			}
-
 		}
 		dataStore.removeData(sessionId, id);
 	}
@@ -147,15 +278,16 @@ public class AsynchronousDataStore implements IDataStore
 	 */
 	public void removeData(final String sessionId)
 	{
-		synchronized (WRITE_LOCK)
+		Writer writer = getWriter(sessionId);
+		synchronized (writer.lock)
 		{
-			for (Iterator<Entry> iter = entries.iterator(); iter.hasNext();)
+			for (Iterator<Entry> iter = entryMap.values().iterator(); iter.hasNext();)
 			{
 				Entry e = iter.next();
 				if (e.getSessionId().equals(sessionId))
 				{
 					iter.remove();
-					entryMap.remove(getKey(e));
+					writer.queue.remove(e);
 				}
 			}
 		}
@@ -168,24 +300,149 @@ public class AsynchronousDataStore implements IDataStore
 	 */
 	public void storeData(final String sessionId, final int id, final byte[] data)
 	{
-		if (entryMap.size() > getMaxQueuedEntries())
+		Writer writer = getWriter(sessionId);
+		Entry entry = new Entry(sessionId, id, data);
+		String key = getKey(entry);
+
+		Entry previous = entryMap.put(key, entry);
+		if (previous != null)
 		{
-			dataStore.storeData(sessionId, id, data);
+			// the newer version makes the queued one obsolete
+			writer.queue.remove(previous);
 		}
-		else
+
+		if (destroy.get())
 		{
-			Entry entry = new Entry(sessionId, id, data);
-			entryMap.put(getKey(sessionId, id), entry);
-			entries.add(entry);
-			synchronized (entries)
-			{
-				entries.notify();
-			}
+			storeByCaller(writer, entry);
+			return;
 		}
+
+		switch (overflowPolicy)
+		{
+			case BLOCK :
+				try
+				{
+					writer.queue.put(entry);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					storeByCaller(writer, entry);
+				}
+				break;
+
+			case DROP_OLDEST :
+				while (writer.queue.offer(entry) == false)
+				{
+					Entry oldest = writer.queue.poll();
+					if (oldest != null && entryMap.remove(getKey(oldest), oldest))
+					{
+						droppedEntries.incrementAndGet();
+						log.warn("Dropped page with id '" + oldest.getPageId() +
+							"' of session '" + oldest.getSessionId() + "', the queue is full.");
+					}
+				}
+				break;
+
+			default :
+				if (writer.queue.offer(entry) == false)
+				{
+					storeByCaller(writer, entry);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Stores the entry in the calling thread.
+	 *
+	 * @param writer
+	 * @param entry
+	 */
+	private void storeByCaller(final Writer writer, final Entry entry)
+	{
+		callerRunsEntries.incrementAndGet();
+		synchronized (writer.lock)
+		{
+			store(entry);
+		}
+	}
+
+	/**
+	 * Stores the entry unless it has been replaced or removed meanwhile. Must be called with the
+	 * lock of the writer responsible for the entry held.
+	 *
+	 * @param entry
+	 */
+	private void store(final Entry entry)
+	{
+		String key = getKey(entry);
+		if (entryMap.get(key) != entry)
+		{
+			return;
+		}
+
+		long start = System.nanoTime();
+		try
+		{
+			dataStore.storeData(entry.getSessionId(), entry.getPageId(), entry.getData());
+		}
+		finally
+		{
+			totalWriteTime.addAndGet(System.nanoTime() - start);
+			writtenEntries.incrementAndGet();
+			entryMap.remove(key, entry);
+		}
+	}
+
+	/**
+	 * @return the number of entries currently waiting to be stored
+	 */
+	public int getQueuedEntries()
+	{
+		int size = 0;
+		for (Writer writer : writers)
+		{
+			size += writer.queue.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of entries stored in the underlying data store so far
+	 */
+	public long getWrittenEntries()
+	{
+		return writtenEntries.get();
+	}
+
+	/**
+	 * @return the average time in nanoseconds the underlying data store needed to store an entry
+	 */
+	public long getAverageWriteTime()
+	{
+		long written = writtenEntries.get();
+		return written > 0 ? totalWriteTime.get() / written : 0;
+	}
+
+	/**
+	 * @return the number of entries dropped because of {@link OverflowPolicy#DROP_OLDEST}
+	 */
+	public long getDroppedEntries()
+	{
+		return droppedEntries.get();
+	}
+
+	/**
+	 * @return the number of entries stored by the calling thread because the queue was full
+	 */
+	public long getCallerRunsEntries()
+	{
+		return callerRunsEntries.get();
 	}
 
 	/**
-	 * 
+	 *
 	 * @param pageId
 	 * @param sessionId
 	 * @return generated key
@@ -196,7 +453,7 @@ public class AsynchronousDataStore implements IDataStore
 	}
 
 	/**
-	 * 
+	 *
 	 * @param entry
 	 * @return generated key
 	 */
@@ -206,7 +463,7 @@ public class AsynchronousDataStore implements IDataStore
 	}
 
 	/**
-	 * 
+	 *
 	 */
 	private static class Entry
 	{
@@ -238,53 +495,59 @@ public class AsynchronousDataStore implements IDataStore
 	}
 
 	/**
-	 * 
+	 * Stores the entries of one shard of sessions.
 	 */
-	private class PageSavingRunnable implements Runnable
+	private class Writer implements Runnable
 	{
+		private final BlockingQueue<Entry> queue;
+
+		/** held while entries of this shard are stored or removed */
+		private final Object lock = new Object();
+
+		private Thread thread;
+
+		private Writer(final int capacity)
+		{
+			queue = new LinkedBlockingQueue<Entry>(capacity);
+		}
+
 		public void run()
 		{
-			while (destroy.get() == false || !entries.isEmpty())
+			List<Entry> batch = new ArrayList<Entry>(getBatchSize());
+			while (destroy.get() == false || !queue.isEmpty())
 			{
-				if (entries.isEmpty())
+				try
 				{
-					try
+					Entry entry = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (entry == null)
 					{
-						synchronized (entries)
-						{
-							entries.wait();
-						}
-					}
-					catch (InterruptedException e)
-					{
-						e.printStackTrace();
+						continue;
 					}
+					batch.add(entry);
+				}
+				catch (InterruptedException e)
+				{
+					log.debug("Page saving thread interrupted", e);
+					continue;
 				}
+				queue.drainTo(batch, getBatchSize() - 1);
 
-				synchronized (WRITE_LOCK)
+				synchronized (lock)
 				{
-					Entry entry = entries.poll();
-					if (entry != null)
+					for (Entry entry : batch)
 					{
-						dataStore.storeData(entry.getSessionId(), entry.getPageId(),
-							entry.getData());
-						entryMap.remove(getKey(entry));
+						try
+						{
+							store(entry);
+						}
+						catch (RuntimeException e)
+						{
+							log.error("Error storing page with id '" + entry.getPageId() +
+								"' of session '" + entry.getSessionId() + "'", e);
+						}
 					}
 				}
-			}
-
-			try
-			{
-				Thread.sleep(10);
-			}
-			catch (InterruptedException e)
-			{
-				e.printStackTrace();
-			}
-
-			synchronized (destroy)
-			{
-				destroy.notify();
+				batch.clear();
 			}
 		}
 	}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Computes and applies compact binary deltas between two versions of the same data.
+ * <p>
+ * A delta is a sequence of instructions that rebuild the target from the source: copy a range of
+ * the source or insert literal bytes. Matching ranges are found through a hash index over fixed
+ * size blocks of the source, so the delta of two serialized versions of a page that differ in a
+ * few places is a small fraction of the page size.
+ * 
+ * @see DeltaDataStore
+ */
+final class BinaryDelta
+{
+	/** size of the blocks of the source that are indexed */
+	private static final int BLOCK_SIZE = 16;
+
+	private static final int MULTIPLIER = 31;
+
+	private static final int COPY = 0;
+
+	private static final int INSERT = 1;
+
+	private BinaryDelta()
+	{
+	}
+
+	/**
+	 * Creates the delta that transforms the source into the target.
+	 * 
+	 * @param source
+	 * @param target
+	 * @return the delta
+	 */
+	static byte[] create(final byte[] source, final byte[] target)
+	{
+		ByteArrayOutputStream delta = new ByteArrayOutputStream(64);
+		writeVarInt(delta, target.length);
+
+		// the common prefix is very frequent, handle it without hashing
+		int prefix = 0;
+		int max = Math.min(source.length, target.length);
+		while (prefix < max && source[prefix] == target[prefix])
+		{
+			prefix++;
+		}
+		if (prefix > 0)
+		{
+			writeCopy(delta, 0, prefix);
+		}
+
+		int[] index = index(source);
+		int mask = index.length - 1;
+
+		int power = 1;
+		for (int i = 1; i < BLOCK_SIZE; i++)
+		{
+			power *= MULTIPLIER;
+		}
+
+		int literalStart = prefix;
+		int position = prefix;
+		int hash = position + BLOCK_SIZE <= target.length ? hash(target, position) : 0;
+		while (position + BLOCK_SIZE <= target.length)
+		{
+			int candidate = index[hash & mask] - 1;
+			if (candidate >= 0 && equal(source, candidate, target, position))
+			{
+				// extend the match backwards into the pending literal and forwards
+				int start = position;
+				int sourceStart = candidate;
+				while (start > literalStart && sourceStart > 0 &&
+					source[sourceStart - 1] == target[start - 1])
+				{
+					start--;
+					sourceStart--;
+				}
+				int end = position + BLOCK_SIZE;
+				int sourceEnd = candidate + BLOCK_SIZE;
+				while (end < target.length && sourceEnd < source.length &&
+					source[sourceEnd] == target[end])
+				{
+					end++;
+					sourceEnd++;
+				}
+
+				if (start > literalStart)
+				{
+					writeInsert(delta, target, literalStart, start - literalStart);
+				}
+				writeCopy(delta, sourceStart, end - start);
+
+				position = end;
+				literalStart = end;
+				if (position + BLOCK_SIZE <= target.length)
+				{
+					hash = hash(target, position);
+				}
+			}
+			else
+			{
+				if (position + BLOCK_SIZE < target.length)
+				{
+					// roll the hash one byte forward
+					hash = (hash - target[position] * power) * MULTIPLIER +
+						target[position + BLOCK_SIZE];
+				}
+				position++;
+			}
+		}
+
+		if (literalStart < target.length)
+		{
+			writeInsert(delta, target, literalStart, target.length - literalStart);
+		}
+		return delta.toByteArray();
+	}
+
+	/**
+	 * Rebuilds the target from the source and the delta.
+	 * 
+	 * @param source
+	 * @param delta
+	 * @return the target
+	 */
+	static byte[] apply(final byte[] source, final byte[] delta)
+	{
+		int[] position = { 0 };
+		byte[] target = new byte[readVarInt(delta, position)];
+		int targetPosition = 0;
+		while (position[0] < delta.length)
+		{
+			int type = delta[position[0]++];
+			if (type == COPY)
+			{
+				int offset = readVarInt(delta, position);
+				int length = readVarInt(delta, position);
+				System.arraycopy(source, offset, target, targetPosition, length);
+				targetPosition += length;
+			}
+			else if (type == INSERT)
+			{
+				int length = readVarInt(delta, position);
+				System.arraycopy(delta, position[0], target, targetPosition, length);
+				position[0] += length;
+				targetPosition += length;
+			}
+			else
+			{
+				throw new IllegalArgumentException("Corrupted delta, unknown instruction " + type);
+			}
+		}
+		if (targetPosition != target.length)
+		{
+			throw new IllegalArgumentException("Corrupted delta, expected " + target.length +
+				" bytes but got " + targetPosition);
+		}
+		return target;
+	}
+
+	/**
+	 * @param source
+	 * @return hash table of block hash -> block offset + 1
+	 */
+	private static int[] index(final byte[] source)
+	{
+		int blocks = source.length / BLOCK_SIZE;
+		int size = 16;
+		while (size < blocks * 2)
+		{
+			size <<= 1;
+		}
+		int[] index = new int[size];
+		for (int i = 0; i < blocks; i++)
+		{
+			int offset = i * BLOCK_SIZE;
+			int slot = hash(source, offset) & (size - 1);
+			if (index[slot] == 0)
+			{
+				index[slot] = offset + 1;
+			}
+		}
+		return index;
+	}
+
+	private static int hash(final byte[] data, final int offset)
+	{
+		int hash = 0;
+		for (int i = 0; i < BLOCK_SIZE; i++)
+		{
+			hash = hash * MULTIPLIER + data[offset + i];
+		}
+		return hash;
+	}
+
+	private static boolean equal(final byte[] source, final int sourceOffset, final byte[] target,
+		final int targetOffset)
+	{
+		for (int i = 0; i < BLOCK_SIZE; i++)
+		{
+			if (source[sourceOffset + i] != target[targetOffset + i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeCopy(final ByteArrayOutputStream out, final int offset,
+		final int length)
+	{
+		out.write(COPY);
+		writeVarInt(out, offset);
+		writeVarInt(out, length);
+	}
+
+	private static void writeInsert(final ByteArrayOutputStream out, final byte[] data,
+		final int offset, final int length)
+	{
+		out.write(INSERT);
+		writeVarInt(out, length);
+		out.write(data, offset, length);
+	}
+
+	private static void writeVarInt(final ByteArrayOutputStream out, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarInt(final byte[] data, final int[] position)
+	{
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			b = data[position[0]++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return value;
+	}
+}
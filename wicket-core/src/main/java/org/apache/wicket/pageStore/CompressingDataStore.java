@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * An {@link IDataStore} decorator that compresses the serialized pages before passing them to the
+ * wrapped data store, e.g. {@link DiskDataStore}, {@link AsynchronousDataStore} or
+ * {@link org.apache.wicket.pageStore.memory.HttpSessionDataStore}.
+ * <p>
+ * Pages are deflated with a preset dictionary of strings that are common in serialized Wicket
+ * pages, so even small pages compress well. Pages smaller than the threshold are stored as they
+ * are, as are pages which do not get smaller. Data that was not written by this store is returned
+ * unchanged, so the store can be put in front of an existing one.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * <!--@formatter:off-->
+ * MyApp#init()
+ * {
+ * 
+ * 	setPageManagerProvider(new DefaultPageManagerProvider(this) 
+ * 	{
+ * 		protected IDataStore newDataStore() 
+ * 		{ 
+ * 			return new CompressingDataStore(super.newDataStore());
+ * 		}
+ * 	}
+ * }
+ * <!--@formatter:on-->
+ * </pre>
+ */
+public class CompressingDataStore implements IDataStore
+{
+	private static final int DEFAULT_THRESHOLD = 512;
+
+	private static final byte[] MAGIC = { 'W', 'Z' };
+
+	private static final byte STORED = 0;
+
+	/** deflated with the version 1 dictionary; never change the dictionary of a version */
+	private static final byte DEFLATED_V1 = 1;
+
+	/** magic + format */
+	private static final int HEADER_SIZE = MAGIC.length + 1;
+
+	/**
+	 * Strings that occur in most serialized pages. Deflate refers back to the end of the
+	 * dictionary more cheaply, so the most frequent strings come last.
+	 */
+	private static final byte[] DICTIONARY = toBytes("org.apache.wicket.markup.html.form.Form"
+		+ "org.apache.wicket.markup.html.form.TextField"
+		+ "org.apache.wicket.markup.html.link.Link"
+		+ "org.apache.wicket.markup.html.list.ListView"
+		+ "org.apache.wicket.markup.repeater.RepeatingView"
+		+ "org.apache.wicket.ajax.AjaxEventBehavior"
+		+ "org.apache.wicket.model.PropertyModel"
+		+ "org.apache.wicket.model.CompoundPropertyModel"
+		+ "org.apache.wicket.model.LoadableDetachableModel"
+		+ "org.apache.wicket.model.Model"
+		+ "org.apache.wicket.markup.html.basic.Label"
+		+ "org.apache.wicket.markup.html.WebMarkupContainer"
+		+ "org.apache.wicket.markup.html.WebPage"
+		+ "org.apache.wicket.request.mapper.parameter.PageParameters"
+		+ "org.apache.wicket.util.value.ValueMap"
+		+ "java.util.ArrayListxpwsizeL"
+		+ "java.util.HashMapxploadFactorthreshold"
+		+ "java.lang.Integer" + "java.lang.Number" + "java.lang.Boolean" + "java.lang.String"
+		+ "org.apache.wicket.Component" + "org.apache.wicket.MarkupContainer"
+		+ "markupIdLjava/lang/String;" + "Ljava/lang/Object;" + "Ljava/lang/String;"
+		+ "idflagsmodelchildrenparentdataLorg/apache/wicket/MarkupContainer;");
+
+	private final IDataStore dataStore;
+
+	private final int threshold;
+
+	private final int level;
+
+	/**
+	 * Maximum number of pooled deflaters and inflaters each. More threads than processors don't
+	 * compress concurrently, so surplus instances are ended instead of holding native memory.
+	 */
+	private static final int MAX_POOLED = Runtime.getRuntime().availableProcessors() * 2;
+
+	private final Queue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(MAX_POOLED);
+
+	private final Queue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(MAX_POOLED);
+
+	private final AtomicLong uncompressedBytes = new AtomicLong();
+
+	private final AtomicLong compressedBytes = new AtomicLong();
+
+	private final AtomicLong compressionTime = new AtomicLong();
+
+	private final AtomicLong decompressionTime = new AtomicLong();
+
+	/**
+	 * Construct.
+	 * 
+	 * @param dataStore
+	 *            the wrapped data store
+	 */
+	public CompressingDataStore(final IDataStore dataStore)
+	{
+		this(dataStore, DEFAULT_THRESHOLD, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param dataStore
+	 *            the wrapped data store
+	 * @param threshold
+	 *            the size in bytes below which pages are stored uncompressed
+	 * @param level
+	 *            the compression level, see {@link Deflater#setLevel(int)}
+	 */
+	public CompressingDataStore(final IDataStore dataStore, final int threshold, final int level)
+	{
+		this.dataStore = Args.notNull(dataStore, "dataStore");
+		this.threshold = threshold;
+		this.level = level;
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#getData(java.lang.String, int)
+	 */
+	public byte[] getData(final String sessionId, final int id)
+	{
+		byte[] data = dataStore.getData(sessionId, id);
+		if (data == null || !hasHeader(data))
+		{
+			return data;
+		}
+
+		if (data[MAGIC.length] == STORED)
+		{
+			byte[] page = new byte[data.length - HEADER_SIZE];
+			System.arraycopy(data, HEADER_SIZE, page, 0, page.length);
+			return page;
+		}
+		else if (data[MAGIC.length] == DEFLATED_V1)
+		{
+			return decompress(data);
+		}
+		else
+		{
+			throw new WicketRuntimeException("Unknown page compression format " +
+				data[MAGIC.length]);
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#storeData(java.lang.String, int, byte[])
+	 */
+	public void storeData(final String sessionId, final int id, final byte[] data)
+	{
+		if (data == null)
+		{
+			dataStore.storeData(sessionId, id, null);
+			return;
+		}
+
+		byte[] compressed = null;
+		if (data.length >= threshold)
+		{
+			compressed = compress(data);
+		}
+		if (compressed == null)
+		{
+			compressed = new byte[HEADER_SIZE + data.length];
+			System.arraycopy(MAGIC, 0, compressed, 0, MAGIC.length);
+			compressed[MAGIC.length] = STORED;
+			System.arraycopy(data, 0, compressed, HEADER_SIZE, data.length);
+		}
+
+		uncompressedBytes.addAndGet(data.length);
+		compressedBytes.addAndGet(compressed.length);
+		dataStore.storeData(sessionId, id, compressed);
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#removeData(java.lang.String, int)
+	 */
+	public void removeData(final String sessionId, final int id)
+	{
+		dataStore.removeData(sessionId, id);
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#removeData(java.lang.String)
+	 */
+	public void removeData(final String sessionId)
+	{
+		dataStore.removeData(sessionId);
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#destroy()
+	 */
+	public void destroy()
+	{
+		dataStore.destroy();
+
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null)
+		{
+			deflater.end();
+		}
+		Inflater inflater;
+		while ((inflater = inflaters.poll()) != null)
+		{
+			inflater.end();
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#isReplicated()
+	 */
+	public boolean isReplicated()
+	{
+		return dataStore.isReplicated();
+	}
+
+	/**
+	 * @return the size of the stored pages divided by their uncompressed size
+	 */
+	public double getCompressionRatio()
+	{
+		long uncompressed = uncompressedBytes.get();
+		return uncompressed == 0 ? 1 : (double)compressedBytes.get() / uncompressed;
+	}
+
+	/**
+	 * @return the number of bytes of the pages passed to this store
+	 */
+	public long getUncompressedBytes()
+	{
+		return uncompressedBytes.get();
+	}
+
+	/**
+	 * @return the number of bytes passed to the wrapped data store
+	 */
+	public long getCompressedBytes()
+	{
+		return compressedBytes.get();
+	}
+
+	/**
+	 * @return the total time spent compressing pages in nanoseconds
+	 */
+	public long getCompressionTime()
+	{
+		return compressionTime.get();
+	}
+
+	/**
+	 * @return the total time spent decompressing pages in nanoseconds
+	 */
+	public long getDecompressionTime()
+	{
+		return decompressionTime.get();
+	}
+
+	/**
+	 * @param data
+	 * @return the compressed data or <code>null</code> if it does not get smaller
+	 */
+	private byte[] compress(final byte[] data)
+	{
+		long start = System.nanoTime();
+		Deflater deflater = deflaters.poll();
+		if (deflater == null)
+		{
+			deflater = new Deflater(level);
+		}
+		try
+		{
+			deflater.setDictionary(DICTIONARY);
+			deflater.setInput(data);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+			out.write(MAGIC, 0, MAGIC.length);
+			out.write(DEFLATED_V1);
+			writeInt(out, data.length);
+
+			byte[] buffer = new byte[Math.min(data.length, 8192)];
+			while (!deflater.finished())
+			{
+				int count = deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+				if (out.size() >= data.length + HEADER_SIZE)
+				{
+					return null;
+				}
+			}
+			return out.toByteArray();
+		}
+		finally
+		{
+			deflater.reset();
+			if (deflaters.offer(deflater) == false)
+			{
+				deflater.end();
+			}
+			compressionTime.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	private byte[] decompress(final byte[] data)
+	{
+		long start = System.nanoTime();
+		Inflater inflater = inflaters.poll();
+		if (inflater == null)
+		{
+			inflater = new Inflater();
+		}
+		try
+		{
+			int offset = HEADER_SIZE + 4;
+			byte[] page = new byte[readInt(data, HEADER_SIZE)];
+			inflater.setInput(data, offset, data.length - offset);
+			int position = 0;
+			while (position < page.length)
+			{
+				int count = inflater.inflate(page, position, page.length - position);
+				if (count == 0)
+				{
+					if (inflater.needsDictionary())
+					{
+						inflater.setDictionary(DICTIONARY);
+					}
+					else if (inflater.finished() || inflater.needsInput())
+					{
+						throw new WicketRuntimeException("Truncated compressed page");
+					}
+				}
+				position += count;
+			}
+			return page;
+		}
+		catch (DataFormatException e)
+		{
+			throw new WicketRuntimeException("Corrupted compressed page", e);
+		}
+		finally
+		{
+			inflater.reset();
+			if (inflaters.offer(inflater) == false)
+			{
+				inflater.end();
+			}
+			decompressionTime.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	private static boolean hasHeader(final byte[] data)
+	{
+		return data.length >= HEADER_SIZE && data[0] == MAGIC[0] && data[1] == MAGIC[1];
+	}
+
+	private static void writeInt(final ByteArrayOutputStream out, final int value)
+	{
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static int readInt(final byte[] data, final int offset)
+	{
+		return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) |
+			((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+	}
+
+	private static byte[] toBytes(final String string)
+	{
+		byte[] bytes = new byte[string.length()];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = (byte)string.charAt(i);
+		}
+		return bytes;
+	}
+}
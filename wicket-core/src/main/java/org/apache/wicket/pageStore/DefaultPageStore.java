@@ -17,16 +17,16 @@
 package org.apache.wicket.pageStore;
 
 import java.io.Serializable;
-import java.lang.ref.SoftReference;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.wicket.Page;
 import org.apache.wicket.page.IManageablePage;
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.serialize.java.JavaSerializer;
 import org.apache.wicket.util.lang.Args;
 import org.apache.wicket.util.lang.Objects;
-import org.apache.wicket.util.lang.WicketObjects;
 
 /**
  * Wicket's default page store
@@ -40,6 +40,8 @@ public class DefaultPageStore implements IPageStore
 
 	private final IDataStore pageDataStore;
 
+	private final ISerializer pageSerializer;
+
 	/**
 	 * Construct.
 	 * 
@@ -49,13 +51,50 @@ public class DefaultPageStore implements IPageStore
 	 */
 	public DefaultPageStore(final String applicationName, final IDataStore dataStore,
 		final int cacheSize)
+	{
+		this(applicationName, dataStore, cacheSize, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param applicationName
+	 * @param dataStore
+	 * @param cacheSize
+	 *            maximum number of serialized pages kept in memory
+	 * @param maxCacheBytes
+	 *            maximum total size of the serialized pages kept in memory
+	 */
+	public DefaultPageStore(final String applicationName, final IDataStore dataStore,
+		final int cacheSize, final long maxCacheBytes)
+	{
+		this(applicationName, new JavaSerializer(applicationName), dataStore, cacheSize,
+			maxCacheBytes);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param applicationName
+	 * @param pageSerializer
+	 *            the {@link ISerializer} that will be used to convert pages from/to byte arrays
+	 * @param dataStore
+	 * @param cacheSize
+	 *            maximum number of serialized pages kept in memory
+	 * @param maxCacheBytes
+	 *            maximum total size of the serialized pages kept in memory
+	 */
+	public DefaultPageStore(final String applicationName, final ISerializer pageSerializer,
+		final IDataStore dataStore, final int cacheSize, final long maxCacheBytes)
 	{
 		Args.notNull(applicationName, "applicationName");
+		Args.notNull(pageSerializer, "pageSerializer");
 		Args.notNull(dataStore, "DataStore");
 
 		this.applicationName = applicationName;
+		this.pageSerializer = pageSerializer;
 		pageDataStore = dataStore;
-		serializedPagesCache = new SerializedPagesCache(cacheSize);
+		serializedPagesCache = new SerializedPagesCache(cacheSize, maxCacheBytes);
 	}
 
 	/**
@@ -116,6 +155,30 @@ public class DefaultPageStore implements IPageStore
 		return applicationName;
 	}
 
+	/**
+	 * @return number of pages found in the serialized pages cache
+	 */
+	public long getCacheHits()
+	{
+		return serializedPagesCache.getHits();
+	}
+
+	/**
+	 * @return number of pages not found in the serialized pages cache
+	 */
+	public long getCacheMisses()
+	{
+		return serializedPagesCache.getMisses();
+	}
+
+	/**
+	 * @return number of pages evicted from the serialized pages cache
+	 */
+	public long getCacheEvictions()
+	{
+		return serializedPagesCache.getEvictions();
+	}
+
 	/**
 	 * @see org.apache.wicket.pageStore.IPageStore#getPage(java.lang.String, int)
 	 */
@@ -361,7 +424,7 @@ public class DefaultPageStore implements IPageStore
 		Args.notNull(sessionId, "sessionId");
 		Args.notNull(page, "page");
 
-		byte data[] = WicketObjects.objectToByteArray(page, applicationName);
+		byte data[] = pageSerializer.serialize(page);
 		return new SerializedPage(sessionId, page.getPageId(), data);
 	}
 
@@ -372,7 +435,7 @@ public class DefaultPageStore implements IPageStore
 	 */
 	protected IManageablePage deserializePage(final byte data[])
 	{
-		return (IManageablePage)WicketObjects.byteArrayToObject(data);
+		return (IManageablePage)pageSerializer.deserialize(data);
 	}
 
 	/**
@@ -382,6 +445,10 @@ public class DefaultPageStore implements IPageStore
 	 * For example a page is serialized during request, but it might be also later serialized on
 	 * session replication. The purpose of this cache is to make sure that the data obtained from
 	 * first serialization is reused on second serialization.
+	 * <p>
+	 * The pages are kept in least recently used order and looked up by session id and page id in
+	 * constant time. The cache is bounded by the number of pages and by the total size of their
+	 * data.
 	 * 
 	 * @author Matej Knopp
 	 */
@@ -389,24 +456,56 @@ public class DefaultPageStore implements IPageStore
 	{
 		private final int size;
 
-		private final List<SoftReference<SerializedPage>> cache;
+		private final long maxBytes;
+
+		private final ConcurrentHashMap<PageKey, CachedPage> cache;
+
+		/** total size of the cached page data */
+		private final AtomicLong bytes = new AtomicLong();
+
+		/** logical clock ordering the accesses to the cached pages */
+		private final AtomicLong clock = new AtomicLong();
+
+		/** serializes evictions, reads are never blocked */
+		private final Object evictionLock = new Object();
+
+		private final AtomicLong hits = new AtomicLong();
+
+		private final AtomicLong misses = new AtomicLong();
+
+		private final AtomicLong evictions = new AtomicLong();
 
 		/**
 		 * Construct.
 		 * 
 		 * @param size
+		 *            maximum number of cached pages
 		 */
 		public SerializedPagesCache(final int size)
+		{
+			this(size, Long.MAX_VALUE);
+		}
+
+		/**
+		 * Construct.
+		 * 
+		 * @param size
+		 *            maximum number of cached pages
+		 * @param maxBytes
+		 *            maximum total size of the cached page data
+		 */
+		public SerializedPagesCache(final int size, final long maxBytes)
 		{
 			this.size = size;
-			cache = new ArrayList<SoftReference<SerializedPage>>(size);
+			this.maxBytes = maxBytes;
+			cache = new ConcurrentHashMap<PageKey, CachedPage>(Math.max(size, 16));
 		}
 
 		/**
 		 * 
 		 * @param sessionId
 		 * @param id
-		 * @return
+		 * @return the removed page or <code>null</code>
 		 */
 		public SerializedPage removePage(final String sessionId, final int id)
 		{
@@ -414,19 +513,11 @@ public class DefaultPageStore implements IPageStore
 
 			if (size > 0)
 			{
-				synchronized (cache)
+				CachedPage entry = cache.remove(new PageKey(sessionId, id));
+				if (entry != null)
 				{
-					for (Iterator<SoftReference<SerializedPage>> i = cache.iterator(); i.hasNext();)
-					{
-						SoftReference<SerializedPage> ref = i.next();
-						SerializedPage entry = ref.get();
-						if (entry != null && entry.getPageId() == id &&
-							entry.getSessionId().equals(sessionId))
-						{
-							i.remove();
-							return entry;
-						}
-					}
+					bytes.addAndGet(-length(entry.page));
+					return entry.page;
 				}
 			}
 			return null;
@@ -438,16 +529,11 @@ public class DefaultPageStore implements IPageStore
 
 			if (size > 0)
 			{
-				synchronized (cache)
+				for (Map.Entry<PageKey, CachedPage> entry : cache.entrySet())
 				{
-					for (Iterator<SoftReference<SerializedPage>> i = cache.iterator(); i.hasNext();)
+					if (entry.getKey().sessionId.equals(sessionId))
 					{
-						SoftReference<SerializedPage> ref = i.next();
-						SerializedPage entry = ref.get();
-						if (entry != null && entry.getSessionId().equals(sessionId))
-						{
-							i.remove();
-						}
+						remove(entry.getKey(), entry.getValue());
 					}
 				}
 			}
@@ -460,26 +546,17 @@ public class DefaultPageStore implements IPageStore
 			SerializedPage result = null;
 			if (size > 0)
 			{
-				synchronized (cache)
+				CachedPage entry = cache.get(new PageKey(sessionId, id));
+				if (entry != null)
 				{
-					for (Iterator<SoftReference<SerializedPage>> i = cache.iterator(); i.hasNext();)
-					{
-						SoftReference<SerializedPage> ref = i.next();
-						SerializedPage entry = ref.get();
-						if (entry != null && entry.getPageId() == id &&
-							entry.getSessionId().equals(sessionId))
-						{
-							i.remove();
-							result = entry;
-							break;
-						}
-					}
-
-					if (result != null)
-					{
-						// move to top
-						cache.add(new SoftReference<SerializedPage>(result));
-					}
+					// moves the page to the top
+					entry.lastAccess = clock.incrementAndGet();
+					result = entry.page;
+					hits.incrementAndGet();
+				}
+				else
+				{
+					misses.incrementAndGet();
 				}
 			}
 			return result;
@@ -488,36 +565,157 @@ public class DefaultPageStore implements IPageStore
 		/**
 		 * Store the serialized page in cache
 		 * 
-		 * @return serialized page
-		 * @param sessionId
 		 * @param page
-		 * @param pagesList
 		 */
 		void storePage(SerializedPage page)
 		{
-			SoftReference<SerializedPage> ref = new SoftReference<SerializedPage>(page);
-
 			if (size > 0)
 			{
-				synchronized (cache)
+				int length = length(page);
+				PageKey key = new PageKey(page.getSessionId(), page.getPageId());
+
+				if (length > maxBytes)
+				{
+					CachedPage previous = cache.remove(key);
+					if (previous != null)
+					{
+						bytes.addAndGet(-length(previous.page));
+					}
+					return;
+				}
+
+				CachedPage previous = cache.put(key, new CachedPage(page, clock.incrementAndGet()));
+				bytes.addAndGet(length - (previous != null ? length(previous.page) : 0));
+
+				if (cache.size() > size || bytes.get() > maxBytes)
+				{
+					evict();
+				}
+			}
+		}
+
+		/**
+		 * Removes the least recently used pages until the cache is within its limits. Finding them
+		 * takes a scan over the cached pages, which is fine for the small number of pages the
+		 * cache is meant to hold and keeps reads free of any locking.
+		 */
+		private void evict()
+		{
+			synchronized (evictionLock)
+			{
+				while (cache.size() > size || bytes.get() > maxBytes)
 				{
-					for (Iterator<SoftReference<SerializedPage>> i = cache.iterator(); i.hasNext();)
+					Map.Entry<PageKey, CachedPage> eldest = null;
+					for (Map.Entry<PageKey, CachedPage> entry : cache.entrySet())
 					{
-						SoftReference<SerializedPage> r = i.next();
-						SerializedPage entry = r.get();
-						if (entry != null && entry.equals(page))
+						if (eldest == null ||
+							entry.getValue().lastAccess < eldest.getValue().lastAccess)
 						{
-							i.remove();
+							eldest = entry;
 						}
 					}
-
-					cache.add(ref);
-					if (cache.size() > size)
+					if (eldest == null)
+					{
+						break;
+					}
+					if (remove(eldest.getKey(), eldest.getValue()))
 					{
-						cache.remove(0);
+						evictions.incrementAndGet();
 					}
 				}
 			}
 		}
+
+		private boolean remove(PageKey key, CachedPage entry)
+		{
+			if (cache.remove(key, entry))
+			{
+				bytes.addAndGet(-length(entry.page));
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * @return number of pages found in the cache
+		 */
+		public long getHits()
+		{
+			return hits.get();
+		}
+
+		/**
+		 * @return number of pages not found in the cache
+		 */
+		public long getMisses()
+		{
+			return misses.get();
+		}
+
+		/**
+		 * @return number of pages removed from the cache to make room for other pages
+		 */
+		public long getEvictions()
+		{
+			return evictions.get();
+		}
+
+		private static int length(SerializedPage page)
+		{
+			return page.getData() != null ? page.getData().length : 0;
+		}
+	}
+
+	/**
+	 * A page in the {@link SerializedPagesCache} together with the time of its last access
+	 */
+	private static final class CachedPage
+	{
+		private final SerializedPage page;
+
+		private volatile long lastAccess;
+
+		private CachedPage(SerializedPage page, long lastAccess)
+		{
+			this.page = page;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/**
+	 * Key of a page in the {@link SerializedPagesCache}
+	 */
+	private static final class PageKey
+	{
+		private final String sessionId;
+
+		private final int pageId;
+
+		private PageKey(String sessionId, int pageId)
+		{
+			this.sessionId = sessionId;
+			this.pageId = pageId;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if ((obj instanceof PageKey) == false)
+			{
+				return false;
+			}
+			PageKey rhs = (PageKey)obj;
+			return pageId == rhs.pageId && sessionId.equals(rhs.sessionId);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * sessionId.hashCode() + pageId;
+		}
 	}
 }
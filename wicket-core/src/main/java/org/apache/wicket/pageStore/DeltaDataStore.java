@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * An {@link IDataStore} decorator that keeps a full snapshot of a page only every few versions
+ * and stores the versions in between as binary deltas against their predecessor.
+ * <p>
+ * A page that is touched by many Ajax requests usually changes only in a few bytes per request.
+ * Instead of passing the complete serialized page to the delegate each time, this store passes
+ * the base snapshot once and then a growing chain of small deltas, which are merged on read. The
+ * chain is compacted into a new base snapshot after {@link #getMaxDeltas()} versions or when it
+ * stops paying off. This trades an additional read of the previous version for much less bytes
+ * written to disk or replicated with the session.
+ * <p>
+ * The deltas of a page are kept by the delegate under the page id <code>-2 - pageId</code>, so
+ * the delegate has to accept negative page ids. Negative page ids passed to this store are handed
+ * to the delegate unchanged.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * <!--@formatter:off-->
+ * MyApp#init()
+ * {
+ * 
+ * 	setPageManagerProvider(new DefaultPageManagerProvider(this) 
+ * 	{
+ * 		protected IDataStore newDataStore() 
+ * 		{ 
+ * 			return new DeltaDataStore(super.newDataStore());
+ * 		}
+ * 	}
+ * }
+ * <!--@formatter:on-->
+ * </pre>
+ */
+public class DeltaDataStore implements IDataStore
+{
+	private static final int DEFAULT_MAX_DELTAS = 10;
+
+	private static final int LOCK_COUNT = 32;
+
+	/** marks a base snapshot written by this store */
+	private static final byte[] MAGIC = { 'W', 'D', 1 };
+
+	/** magic + generation */
+	private static final int BASE_HEADER_SIZE = MAGIC.length + 4;
+
+	/** generation + count */
+	private static final int CHAIN_HEADER_SIZE = 8;
+
+	private final IDataStore dataStore;
+
+	private final int maxDeltas;
+
+	private final Object[] locks;
+
+	private final Random random = new Random();
+
+	private final AtomicLong receivedBytes = new AtomicLong();
+
+	private final AtomicLong writtenBytes = new AtomicLong();
+
+	private final AtomicLong compactions = new AtomicLong();
+
+	/**
+	 * Construct.
+	 * 
+	 * @param dataStore
+	 *            the wrapped data store
+	 */
+	public DeltaDataStore(final IDataStore dataStore)
+	{
+		this(dataStore, DEFAULT_MAX_DELTAS);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param dataStore
+	 *            the wrapped data store
+	 * @param maxDeltas
+	 *            the number of deltas after which a new base snapshot is written
+	 */
+	public DeltaDataStore(final IDataStore dataStore, final int maxDeltas)
+	{
+		this.dataStore = Args.notNull(dataStore, "dataStore");
+		this.maxDeltas = maxDeltas;
+		locks = new Object[LOCK_COUNT];
+		for (int i = 0; i < locks.length; i++)
+		{
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#getData(java.lang.String, int)
+	 */
+	public byte[] getData(final String sessionId, final int id)
+	{
+		if (id < 0)
+		{
+			return dataStore.getData(sessionId, id);
+		}
+
+		synchronized (getLock(sessionId, id))
+		{
+			return read(sessionId, id);
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#storeData(java.lang.String, int, byte[])
+	 */
+	public void storeData(final String sessionId, final int id, final byte[] data)
+	{
+		if ((id < 0) || (data == null))
+		{
+			dataStore.storeData(sessionId, id, data);
+			return;
+		}
+
+		receivedBytes.addAndGet(data.length);
+		synchronized (getLock(sessionId, id))
+		{
+			byte[] base = dataStore.getData(sessionId, id);
+			byte[] chain = dataStore.getData(sessionId, deltaId(id));
+			if (base == null || !isBase(base) || chain == null ||
+				getInt(chain, 0) != getInt(base, MAGIC.length))
+			{
+				storeBase(sessionId, id, data);
+				return;
+			}
+
+			byte[] previous = merge(base, chain);
+			byte[] delta = BinaryDelta.create(previous, data);
+			int count = getInt(chain, 4);
+			int chainSize = chain.length + 4 + delta.length;
+			if (count >= getMaxDeltas() || chainSize - CHAIN_HEADER_SIZE > data.length / 2)
+			{
+				compactions.incrementAndGet();
+				storeBase(sessionId, id, data);
+				return;
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(chainSize);
+			DataOutputStream output = new DataOutputStream(out);
+			try
+			{
+				output.writeInt(getInt(chain, 0));
+				output.writeInt(count + 1);
+				output.write(chain, CHAIN_HEADER_SIZE, chain.length - CHAIN_HEADER_SIZE);
+				output.writeInt(delta.length);
+				output.write(delta);
+			}
+			catch (IOException e)
+			{
+				throw new WicketRuntimeException(e);
+			}
+			write(sessionId, deltaId(id), out.toByteArray());
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#removeData(java.lang.String, int)
+	 */
+	public void removeData(final String sessionId, final int id)
+	{
+		if (id < 0)
+		{
+			dataStore.removeData(sessionId, id);
+			return;
+		}
+
+		synchronized (getLock(sessionId, id))
+		{
+			dataStore.removeData(sessionId, id);
+			dataStore.removeData(sessionId, deltaId(id));
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#removeData(java.lang.String)
+	 */
+	public void removeData(final String sessionId)
+	{
+		dataStore.removeData(sessionId);
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#destroy()
+	 */
+	public void destroy()
+	{
+		dataStore.destroy();
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#isReplicated()
+	 */
+	public boolean isReplicated()
+	{
+		return dataStore.isReplicated();
+	}
+
+	/**
+	 * @return the number of deltas after which a new base snapshot is written
+	 */
+	public int getMaxDeltas()
+	{
+		return maxDeltas;
+	}
+
+	/**
+	 * @return the number of bytes of the pages passed to this store
+	 */
+	public long getReceivedBytes()
+	{
+		return receivedBytes.get();
+	}
+
+	/**
+	 * @return the number of bytes passed to the wrapped data store
+	 */
+	public long getWrittenBytes()
+	{
+		return writtenBytes.get();
+	}
+
+	/**
+	 * @return how many times a delta chain has been replaced by a new base snapshot
+	 */
+	public long getCompactions()
+	{
+		return compactions.get();
+	}
+
+	private byte[] read(final String sessionId, final int id)
+	{
+		byte[] base = dataStore.getData(sessionId, id);
+		if (base == null || !isBase(base))
+		{
+			// not written by this store
+			return base;
+		}
+
+		byte[] chain = dataStore.getData(sessionId, deltaId(id));
+		if (chain == null || getInt(chain, 0) != getInt(base, MAGIC.length))
+		{
+			// the deltas have been lost or belong to another snapshot, better no page than a
+			// stale one
+			return null;
+		}
+		return merge(base, chain);
+	}
+
+	/**
+	 * Writes a new base snapshot together with an empty delta chain.
+	 */
+	private void storeBase(final String sessionId, final int id, final byte[] data)
+	{
+		int generation;
+		synchronized (random)
+		{
+			generation = random.nextInt();
+		}
+
+		byte[] base = new byte[BASE_HEADER_SIZE + data.length];
+		System.arraycopy(MAGIC, 0, base, 0, MAGIC.length);
+		putInt(base, MAGIC.length, generation);
+		System.arraycopy(data, 0, base, BASE_HEADER_SIZE, data.length);
+
+		byte[] chain = new byte[CHAIN_HEADER_SIZE];
+		putInt(chain, 0, generation);
+
+		write(sessionId, id, base);
+		write(sessionId, deltaId(id), chain);
+	}
+
+	private void write(final String sessionId, final int id, final byte[] data)
+	{
+		writtenBytes.addAndGet(data.length);
+		dataStore.storeData(sessionId, id, data);
+	}
+
+	private static byte[] merge(final byte[] base, final byte[] chain)
+	{
+		byte[] page = new byte[base.length - BASE_HEADER_SIZE];
+		System.arraycopy(base, BASE_HEADER_SIZE, page, 0, page.length);
+
+		int count = getInt(chain, 4);
+		int position = CHAIN_HEADER_SIZE;
+		for (int i = 0; i < count; i++)
+		{
+			int length = getInt(chain, position);
+			position += 4;
+			byte[] delta = new byte[length];
+			System.arraycopy(chain, position, delta, 0, length);
+			position += length;
+			page = BinaryDelta.apply(page, delta);
+		}
+		return page;
+	}
+
+	private static boolean isBase(final byte[] data)
+	{
+		if (data.length < BASE_HEADER_SIZE)
+		{
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++)
+		{
+			if (data[i] != MAGIC[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int deltaId(final int id)
+	{
+		// -1 is used by PageWindowManager to mark free windows
+		return -2 - id;
+	}
+
+	private Object getLock(final String sessionId, final int id)
+	{
+		int hash = sessionId.hashCode() * 31 + id;
+		return locks[(hash & Integer.MAX_VALUE) % locks.length];
+	}
+
+	private static int getInt(final byte[] data, final int offset)
+	{
+		return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) |
+			((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+	}
+
+	private static void putInt(final byte[] data, final int offset, final int value)
+	{
+		data[offset] = (byte)(value >>> 24);
+		data[offset + 1] = (byte)(value >>> 16);
+		data[offset + 2] = (byte)(value >>> 8);
+		data[offset + 3] = (byte)value;
+	}
+}
@@ -447,7 +447,7 @@ public class DiskDataStore implements IDataStore
 	 * 
 	 * @return folder
 	 */
-	private static File getDefaultFileStoreFolder()
+	static File getDefaultFileStoreFolder()
 	{
 		File dir = null;
 
@@ -21,11 +21,20 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.wicket.util.file.Files;
 import org.slf4j.Logger;
@@ -45,49 +54,89 @@ import org.slf4j.LoggerFactory;
  * Note that under certain circumstances (when there are no empty slots in pool) the initial
  * capacity can be exceeded (more files are opened then the specified capacity is). If this happens,
  * a warning is written to log, as this probably means that there is a problem with page store.
- * 
+ * <p>
+ * The pool is split into stripes by file name, each guarded by its own lock and owning an (almost)
+ * equal share of the capacity, so that threads working with different files rarely contend. Channels are
+ * reference counted; closing channels and deleting files happens asynchronously on a background
+ * thread. Requesting a channel for a file that is still waiting to be deleted blocks until the
+ * deletion is done.
+ *
  * @author Matej Knopp
  */
 public class FileChannelPool
 {
 	private static final Logger log = LoggerFactory.getLogger(FileChannelPool.class);
 
-	private final Map<String, FileChannel> nameToChannel = new HashMap<String, FileChannel>();
-
-	private final Map<FileChannel, String> channelToName = new HashMap<FileChannel, String>();
+	private final Stripe[] stripes;
 
-	private final Map<FileChannel, Integer> channelToUseCount = new HashMap<FileChannel, Integer>();
+	private final ConcurrentMap<FileChannel, ChannelEntry> channelToEntry = new ConcurrentHashMap<FileChannel, ChannelEntry>();
 
-	private final LinkedList<FileChannel> idleChannels = new LinkedList<FileChannel>();
+	/** files scheduled for deletion, the latch is released once the file is gone */
+	private final ConcurrentMap<String, CountDownLatch> pendingDeletes = new ConcurrentHashMap<String, CountDownLatch>();
 
-	private final Set<FileChannel> channelsToDeleteOnReturn = new HashSet<FileChannel>();
-
-	private final int capacity;
+	private final ExecutorService closer;
 
 	/**
 	 * Construct.
-	 * 
+	 *
 	 * @param capacity
 	 *            Maximum number of opened file channels.
 	 */
 	public FileChannelPool(int capacity)
 	{
-		this.capacity = capacity;
+		this(capacity, Runtime.getRuntime().availableProcessors());
+	}
 
+	/**
+	 * Construct.
+	 *
+	 * @param capacity
+	 *            Maximum number of opened file channels.
+	 * @param stripeCount
+	 *            Number of independently locked stripes. Limited by the capacity, as each stripe
+	 *            needs at least one channel.
+	 */
+	public FileChannelPool(int capacity, int stripeCount)
+	{
 		if (capacity < 1)
 		{
 			throw new IllegalArgumentException("Capacity must be at least one.");
 		}
+		if (stripeCount < 1)
+		{
+			throw new IllegalArgumentException("Stripe count must be at least one.");
+		}
+
+		// split the capacity so that the stripes' capacities add up to the total capacity
+		stripeCount = Math.min(stripeCount, capacity);
+		int stripeCapacity = capacity / stripeCount;
+		int remainder = capacity % stripeCount;
+		stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++)
+		{
+			stripes[i] = new Stripe(i < remainder ? stripeCapacity + 1 : stripeCapacity);
+		}
+
+		closer = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "Wicket-FileChannelPool-Closer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 
 		if (log.isDebugEnabled())
 		{
-			log.debug("Starting file channel pool with capacity of " + capacity + " channels");
+			log.debug("Starting file channel pool with capacity of " + capacity +
+				" channels in " + stripeCount + " stripes");
 		}
 	}
 
 	/**
 	 * Creates a new file channel with specified file name.
-	 * 
+	 *
 	 * @param fileName
 	 * @param createIfDoesNotExist
 	 *            in case the file does not exist this parameter determines if the file should be
@@ -113,210 +162,400 @@ public class FileChannelPool
 	}
 
 	/**
-	 * Tries to reduce (close) enough channels to have at least one channel free (so that there are
-	 * maximum capacity - 1 opened channel).
+	 * @param fileName
+	 * @return the stripe responsible for the given file
 	 */
-	private void reduceChannels()
+	private Stripe getStripe(String fileName)
 	{
-		// how much channels we need to close?
-		int channelsToReduce = nameToChannel.size() - capacity + 1;
-
-		// while there are still channels to close and we have still idle
-		// channels left
-		while (channelsToReduce > 0 && idleChannels.isEmpty() == false)
-		{
-			FileChannel channel = idleChannels.getFirst();
-			String channelName = channelToName.get(channel);
-
-			// remove oldest idle channel
-			idleChannels.removeFirst();
-			nameToChannel.remove(channelName);
-			channelToName.remove(channel);
-
-			// this shouldn't really happen
-			if (channelToUseCount.get(channel) != null)
-			{
-				log.warn("Channel " + channelName + " is both idle and in use at the same time!");
-				channelToUseCount.remove(channel);
-			}
-
-			try
-			{
-				channel.close();
-			}
-			catch (IOException e)
-			{
-				log.error("Error closing file channel", e);
-			}
-			--channelsToReduce;
-		}
-
-		if (channelsToReduce > 0)
-		{
-			log.warn("Unable to reduce enough channels, no idle channels left to remove.");
-		}
+		int hash = fileName.hashCode();
+		// spread the bits the same way HashMap does
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return stripes[(hash & 0x7fffffff) % stripes.length];
 	}
 
 	/**
 	 * Returns a channel for given file. If the file doesn't exist, the createIfDoesNotExit
 	 * attribute specifies if the file should be created.
-	 * 
+	 *
 	 * Do NOT call close on the returned chanel. Instead call
 	 * {@link #returnFileChannel(FileChannel)}
-	 * 
+	 *
+	 * If the file is scheduled for deletion, this blocks until it has been deleted.
+	 *
 	 * @param fileName
 	 * @param createIfDoesNotExist
 	 * @return file channel
+	 * @throws RuntimeException
+	 *             if the thread is interrupted while waiting for the deletion
 	 */
-	public synchronized FileChannel getFileChannel(String fileName, boolean createIfDoesNotExist)
+	public FileChannel getFileChannel(String fileName, boolean createIfDoesNotExist)
 	{
-		FileChannel channel = nameToChannel.get(fileName);
-		if (channel == null)
+		Stripe stripe = getStripe(fileName);
+		List<ChannelEntry> reduced = null;
+		ChannelEntry entry;
+
+		while (true)
 		{
-			channel = newFileChannel(fileName, createIfDoesNotExist);
-			if (channel != null)
+			awaitPendingDelete(fileName);
+
+			synchronized (stripe)
 			{
-				// we need to create new channel
-				// first, check how many channels we have already opened
-				if (nameToChannel.size() >= capacity)
+				if (pendingDeletes.containsKey(fileName))
 				{
-					reduceChannels();
+					// deletion was scheduled concurrently, wait for it again
+					continue;
 				}
 
-				nameToChannel.put(fileName, channel);
-				channelToName.put(channel, fileName);
+				entry = stripe.nameToEntry.get(fileName);
+				if (entry == null)
+				{
+					FileChannel channel = newFileChannel(fileName, createIfDoesNotExist);
+					if (channel == null)
+					{
+						return null;
+					}
+
+					// we need to create new channel
+					// first, check how many channels we have already opened
+					if (stripe.nameToEntry.size() >= stripe.capacity)
+					{
+						reduced = stripe.reduceChannels();
+					}
+
+					entry = new ChannelEntry(fileName, channel, stripe);
+					stripe.nameToEntry.put(fileName, entry);
+					channelToEntry.put(channel, entry);
+				}
+
+				// increase the usage count for this channel
+				if (entry.useCount++ == 0)
+				{
+					stripe.idleEntries.remove(entry);
+				}
 			}
+			break;
 		}
 
-		if (channel != null)
+		if (reduced != null)
 		{
-			// increase the usage count for this channel
-
-			Integer count = channelToUseCount.get(channel);
-			if (count == null || count == 0)
-			{
-				channelToUseCount.put(channel, 1);
-				idleChannels.remove(channel);
-			}
-			else
+			for (ChannelEntry idle : reduced)
 			{
-				count = count + 1;
-				channelToUseCount.put(channel, count);
+				channelToEntry.remove(idle.channel);
+				scheduleClose(idle, false);
 			}
 		}
 
-		return channel;
+		return entry.channel;
 	}
 
 	/**
 	 * Returns the channel to the pool. It is necessary to call this for every channel obtained by
 	 * calling {@link #getFileChannel(String, boolean)}.
-	 * 
+	 *
 	 * @param channel
 	 */
-	public synchronized void returnFileChannel(FileChannel channel)
+	public void returnFileChannel(FileChannel channel)
 	{
-		Integer count = channelToUseCount.get(channel);
-		if (count == null || count == 0)
+		ChannelEntry entry = channelToEntry.get(channel);
+		if (entry == null)
 		{
 			throw new IllegalArgumentException("Trying to return unused channel");
 		}
 
-		count = count - 1;
-
-		// decrease the usage count
-		if (count == 0)
+		boolean delete = false;
+		synchronized (entry.stripe)
 		{
-			channelToUseCount.remove(channel);
-			if (channelsToDeleteOnReturn.contains(channel))
+			if (entry.useCount == 0)
 			{
-				closeAndDelete(channel);
+				throw new IllegalArgumentException("Trying to return unused channel");
 			}
-			else
+
+			// decrease the usage count
+			if (--entry.useCount == 0)
 			{
-				// this was the last usage, add chanel to idle channels
-				idleChannels.addLast(channel);
+				if (entry.deleteOnReturn)
+				{
+					channelToEntry.remove(channel);
+					delete = true;
+				}
+				else
+				{
+					// this was the last usage, add chanel to idle channels
+					entry.stripe.idleEntries.add(entry);
+				}
 			}
 		}
-		else
+
+		if (delete)
 		{
-			channelToUseCount.put(channel, count);
+			scheduleClose(entry, true);
 		}
 	}
 
 	/**
-	 * 
-	 * @param channel
+	 * Closes the file channel with given name and removes it from pool. Also removes the file from
+	 * file system. If the channel is in use, the pool first waits until the chanel is returned to
+	 * the pool and then closes it.
+	 *
+	 * @param name
 	 */
-	private void closeAndDelete(FileChannel channel)
+	public void closeAndDeleteFileChannel(String name)
 	{
-		channelsToDeleteOnReturn.remove(channel);
-		String name = channelToName.get(channel);
-		channelToName.remove(channel);
+		Stripe stripe = getStripe(name);
+		ChannelEntry entry;
+		boolean inUse = false;
+
+		synchronized (stripe)
+		{
+			if (pendingDeletes.containsKey(name))
+			{
+				return;
+			}
+			pendingDeletes.put(name, new CountDownLatch(1));
 
-		channelToUseCount.remove(channel);
-		idleChannels.remove(channel);
+			entry = stripe.nameToEntry.remove(name);
+			if (entry != null)
+			{
+				if (entry.useCount > 0)
+				{
+					entry.deleteOnReturn = true;
+					inUse = true;
+				}
+				else
+				{
+					stripe.idleEntries.remove(entry);
+					channelToEntry.remove(entry.channel);
+				}
+			}
+		}
 
-		try
+		if (entry == null)
 		{
-			channel.close();
+			scheduleDelete(name);
 		}
-		catch (IOException e)
+		else if (inUse == false)
 		{
-			log.error("Error closing file channel", e);
+			scheduleClose(entry, true);
 		}
-
-		File file = new File(name);
-		Files.remove(file);
 	}
 
 	/**
-	 * Closes the file channel with given name and removes it from pool. Also removes the file from
-	 * file system. If the channel is in use, the pool first waits until the chanel is returned to
-	 * the pool and then closes it.
-	 * 
+	 * Blocks while the file with given name is scheduled for deletion.
+	 *
 	 * @param name
+	 * @throws RuntimeException
+	 *             if the thread is interrupted while waiting
 	 */
-	public synchronized void closeAndDeleteFileChannel(String name)
+	private void awaitPendingDelete(String name)
 	{
-		FileChannel channel = nameToChannel.get(name);
-		if (channel != null)
+		CountDownLatch latch = pendingDeletes.get(name);
+		if (latch != null)
 		{
-			nameToChannel.remove(name);
-
-			Integer count = channelToUseCount.get(channel);
-			if (count != null && count > 0)
+			try
 			{
-				channelsToDeleteOnReturn.add(channel);
+				latch.await();
 			}
-			else
+			catch (InterruptedException e)
 			{
-				closeAndDelete(channel);
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for file " + name +
+					" to be deleted", e);
 			}
 		}
-		else
+	}
+
+	/**
+	 * Closes the channel on the background thread and optionally deletes its file afterwards.
+	 *
+	 * @param entry
+	 * @param delete
+	 */
+	private void scheduleClose(final ChannelEntry entry, final boolean delete)
+	{
+		execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					entry.channel.close();
+				}
+				catch (IOException e)
+				{
+					log.error("Error closing file channel", e);
+				}
+
+				if (delete)
+				{
+					delete(entry.name);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deletes the file on the background thread.
+	 *
+	 * @param name
+	 */
+	private void scheduleDelete(final String name)
+	{
+		execute(new Runnable()
+		{
+			public void run()
+			{
+				delete(name);
+			}
+		});
+	}
+
+	/**
+	 * Removes the file and releases the threads waiting for it.
+	 *
+	 * @param name
+	 */
+	private void delete(String name)
+	{
+		try
 		{
 			File file = new File(name);
 			Files.remove(file);
 		}
+		finally
+		{
+			CountDownLatch latch = pendingDeletes.remove(name);
+			if (latch != null)
+			{
+				latch.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Runs the task on the background thread or on the current one if the pool has been destroyed.
+	 *
+	 * @param task
+	 */
+	private void execute(Runnable task)
+	{
+		try
+		{
+			closer.execute(task);
+		}
+		catch (RejectedExecutionException e)
+		{
+			task.run();
+		}
 	}
 
 	/**
 	 * Destroys the {@link FileChannel} pool and closes all opened channels.
 	 */
-	public synchronized void destroy()
+	public void destroy()
 	{
 		log.debug("Destroying FileChannel pool");
-		for (FileChannel channel : channelToName.keySet())
+
+		closer.shutdown();
+		try
 		{
-			try
+			closer.awaitTermination(60, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		for (Stripe stripe : stripes)
+		{
+			synchronized (stripe)
+			{
+				for (ChannelEntry entry : stripe.nameToEntry.values())
+				{
+					try
+					{
+						entry.channel.close();
+					}
+					catch (IOException e)
+					{
+						log.error("Error closing file channel", e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A pooled channel with its reference count. Mutable state is guarded by the stripe.
+	 */
+	private static final class ChannelEntry
+	{
+		private final String name;
+
+		private final FileChannel channel;
+
+		private final Stripe stripe;
+
+		private int useCount = 0;
+
+		private boolean deleteOnReturn = false;
+
+		private ChannelEntry(String name, FileChannel channel, Stripe stripe)
+		{
+			this.name = name;
+			this.channel = channel;
+			this.stripe = stripe;
+		}
+	}
+
+	/**
+	 * Independently locked part of the pool.
+	 */
+	private static final class Stripe
+	{
+		private final int capacity;
+
+		private final Map<String, ChannelEntry> nameToEntry = new HashMap<String, ChannelEntry>();
+
+		/** idle channels in the order they became idle */
+		private final LinkedHashSet<ChannelEntry> idleEntries = new LinkedHashSet<ChannelEntry>();
+
+		private Stripe(int capacity)
+		{
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Tries to reduce enough channels to have at least one channel free (so that there are
+		 * maximum capacity - 1 opened channel). Must be called with the stripe locked.
+		 *
+		 * @return the removed channels, to be closed by the caller
+		 */
+		private List<ChannelEntry> reduceChannels()
+		{
+			List<ChannelEntry> reduced = new ArrayList<ChannelEntry>();
+
+			// how much channels we need to close?
+			int channelsToReduce = nameToEntry.size() - capacity + 1;
+
+			// while there are still channels to close and we have still idle
+			// channels left
+			Iterator<ChannelEntry> i = idleEntries.iterator();
+			while (channelsToReduce > 0 && i.hasNext())
 			{
-				channel.close();
+				// remove oldest idle channel
+				ChannelEntry entry = i.next();
+				i.remove();
+				nameToEntry.remove(entry.name);
+				reduced.add(entry);
+				--channelsToReduce;
 			}
-			catch (IOException e)
+
+			if (channelsToReduce > 0)
 			{
-				log.error("Error closing file channel", e);
+				log.warn("Unable to reduce enough channels, no idle channels left to remove.");
 			}
+			return reduced;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,685 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.file.Files;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A data store implementation which keeps the pages of all sessions in a small, fixed number of
+ * shared, memory-mapped segment files.
+ * <p>
+ * Unlike {@link DiskDataStore}, which needs one file (and one pooled {@link FileChannel}) per
+ * session, this store opens at most {@code maxSegments} files for the whole application. Pages are
+ * appended to the active segment and located through an in-memory index of (session id, page id)
+ * to (segment, offset, length). Reading a page is a single bulk copy out of the mapped region.
+ * <p>
+ * When the active segment is full the next free segment becomes active. If there is no free
+ * segment left, the oldest one is recycled and the pages still stored in it are lost - the same way
+ * {@link PageWindowManager} overwrites the oldest pages of a session. A background thread compacts
+ * sealed segments whose live data dropped below {@link #getCompactionThreshold()} by moving the
+ * remaining pages into the active segment and releasing the segment for reuse.
+ * <p>
+ * The index is kept in memory only, so (unlike {@link DiskDataStore}) the stored pages do not
+ * survive an application restart.
+ *
+ * <pre>
+ * <!--@formatter:off-->
+ * MyApp#init()
+ * {
+ * 	setPageManagerProvider(new DefaultPageManagerProvider(this)
+ * 	{
+ * 		public IPageManager get(IPageManagerContext pageManagerContext)
+ * 		{
+ * 			IDataStore dataStore = new SegmentedFileDataStore(getName(), 16 * 1024 * 1024, 8);
+ * 			IPageStore pageStore = new DefaultPageStore(getName(), dataStore, getCacheSize());
+ * 			return new PersistentPageManager(getName(), pageStore, pageManagerContext);
+ * 		}
+ * 	});
+ * }
+ * <!--@formatter:on-->
+ * </pre>
+ */
+public class SegmentedFileDataStore implements IDataStore
+{
+	private static final Logger log = LoggerFactory.getLogger(SegmentedFileDataStore.class);
+
+	private final int segmentSize;
+
+	private final int maxSegments;
+
+	private final File storeFolder;
+
+	/** session id -> page id -> location of the page data */
+	private final ConcurrentMap<String, ConcurrentMap<Integer, PageLocation>> index = new ConcurrentHashMap<String, ConcurrentMap<Integer, PageLocation>>();
+
+	/** guards the segment lists, write positions and live byte counts */
+	private final Object writeLock = new Object();
+
+	/** all segments created so far */
+	private final List<Segment> segments = new ArrayList<Segment>();
+
+	/** full segments, the oldest first */
+	private final LinkedList<Segment> sealedSegments = new LinkedList<Segment>();
+
+	/** compacted segments ready for reuse */
+	private final LinkedList<Segment> freeSegments = new LinkedList<Segment>();
+
+	private Segment activeSegment;
+
+	/** started with the first page being stored, guarded by the write lock */
+	private Thread compactionThread;
+
+	private volatile boolean destroyed = false;
+
+	/**
+	 * Construct.
+	 *
+	 * @param applicationName
+	 * @param fileStoreFolder
+	 * @param segmentSize
+	 *            size of a single segment file in bytes. It is also the maximum size of a page.
+	 * @param maxSegments
+	 *            maximum number of segment files
+	 */
+	public SegmentedFileDataStore(final String applicationName, final File fileStoreFolder,
+		final int segmentSize, final int maxSegments)
+	{
+		Args.notNull(applicationName, "applicationName");
+		Args.notNull(fileStoreFolder, "fileStoreFolder");
+		if (segmentSize < 1)
+		{
+			throw new IllegalArgumentException("Segment size must be at least one byte.");
+		}
+		if (maxSegments < 2)
+		{
+			throw new IllegalArgumentException("There must be at least two segments.");
+		}
+
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		storeFolder = new File(fileStoreFolder, applicationName + "-segments");
+
+		try
+		{
+			storeFolder.mkdirs();
+		}
+		catch (SecurityException e)
+		{
+			throw new WicketRuntimeException(
+				"SecurityException occurred while creating SegmentedFileDataStore. Consider using a non-disk based IDataStore implementation.",
+				e);
+		}
+
+		synchronized (writeLock)
+		{
+			activeSegment = newSegment();
+		}
+	}
+
+	/**
+	 * Construct.
+	 *
+	 * @param applicationName
+	 * @param segmentSize
+	 *            size of a single segment file in bytes. It is also the maximum size of a page.
+	 * @param maxSegments
+	 *            maximum number of segment files
+	 */
+	public SegmentedFileDataStore(final String applicationName, final int segmentSize,
+		final int maxSegments)
+	{
+		this(applicationName, DiskDataStore.getDefaultFileStoreFolder(), segmentSize, maxSegments);
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#getData(java.lang.String, int)
+	 */
+	public byte[] getData(final String sessionId, final int id)
+	{
+		ConcurrentMap<Integer, PageLocation> pages = index.get(sessionId);
+		if (pages == null)
+		{
+			return null;
+		}
+		PageLocation location = pages.get(id);
+		if (location == null)
+		{
+			return null;
+		}
+
+		byte[] data = location.segment.read(location);
+		if (data == null)
+		{
+			// the segment has been recycled in the meantime
+			pages.remove(id, location);
+		}
+		return data;
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#storeData(java.lang.String, int, byte[])
+	 */
+	public void storeData(final String sessionId, final int id, final byte[] data)
+	{
+		if (data == null)
+		{
+			return;
+		}
+
+		if (data.length > segmentSize)
+		{
+			log.error("Page with id '" + id + "' has " + data.length +
+				" bytes which does not fit into a segment of " + segmentSize + " bytes.");
+			removeData(sessionId, id);
+			return;
+		}
+
+		synchronized (writeLock)
+		{
+			if (destroyed)
+			{
+				return;
+			}
+			startCompaction();
+
+			// look the pages up with the write lock held, so they can't be removed before the
+			// location is put into them
+			PageLocation location = append(data);
+			release(getPages(sessionId).put(id, location));
+		}
+	}
+
+	/**
+	 * Starts the compaction thread unless it is running already. It is not started in the
+	 * constructor as it calls {@link #getCompactionInterval()} which subclasses may override.
+	 * Guarded by the write lock.
+	 */
+	private void startCompaction()
+	{
+		if (compactionThread == null)
+		{
+			compactionThread = new Thread(new CompactionRunnable(),
+				"Wicket-SegmentCompactionThread");
+			compactionThread.setDaemon(true);
+			compactionThread.start();
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#removeData(java.lang.String, int)
+	 */
+	public void removeData(final String sessionId, final int id)
+	{
+		ConcurrentMap<Integer, PageLocation> pages = index.get(sessionId);
+		if (pages != null)
+		{
+			release(pages.remove(id));
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#removeData(java.lang.String)
+	 */
+	public void removeData(final String sessionId)
+	{
+		synchronized (writeLock)
+		{
+			ConcurrentMap<Integer, PageLocation> pages = index.remove(sessionId);
+			if (pages != null)
+			{
+				for (Map.Entry<Integer, PageLocation> entry : pages.entrySet())
+				{
+					// a page removed concurrently is released by whoever removed it
+					if (pages.remove(entry.getKey(), entry.getValue()))
+					{
+						release(entry.getValue());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#isReplicated()
+	 */
+	public boolean isReplicated()
+	{
+		return false;
+	}
+
+	/**
+	 * @see org.apache.wicket.pageStore.IDataStore#destroy()
+	 */
+	public void destroy()
+	{
+		final Thread thread;
+		synchronized (writeLock)
+		{
+			destroyed = true;
+			thread = compactionThread;
+		}
+
+		if (thread != null)
+		{
+			thread.interrupt();
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		synchronized (writeLock)
+		{
+			index.clear();
+			for (Segment segment : segments)
+			{
+				segment.close();
+				Files.remove(segment.file);
+			}
+			segments.clear();
+			sealedSegments.clear();
+			freeSegments.clear();
+		}
+		Files.remove(storeFolder);
+	}
+
+	/**
+	 * @return the interval in which the background thread looks for segments to compact
+	 */
+	protected Duration getCompactionInterval()
+	{
+		return Duration.seconds(10);
+	}
+
+	/**
+	 * @return ratio of live bytes to written bytes below which a sealed segment gets compacted
+	 */
+	protected double getCompactionThreshold()
+	{
+		return 0.5;
+	}
+
+	/**
+	 * Moves the pages still stored in sparsely used sealed segments to the active segment and
+	 * releases those segments for reuse. Called periodically by the compaction thread.
+	 */
+	public void compact()
+	{
+		List<Segment> candidates = new ArrayList<Segment>();
+		synchronized (writeLock)
+		{
+			for (Segment segment : sealedSegments)
+			{
+				if (segment.liveBytes < segment.position * getCompactionThreshold())
+				{
+					candidates.add(segment);
+				}
+			}
+		}
+
+		for (Segment segment : candidates)
+		{
+			compact(segment);
+		}
+	}
+
+	/**
+	 * @param segment
+	 */
+	private void compact(final Segment segment)
+	{
+		final int generation = segment.generation;
+		for (Map.Entry<String, ConcurrentMap<Integer, PageLocation>> session : index.entrySet())
+		{
+			final ConcurrentMap<Integer, PageLocation> pages = session.getValue();
+			for (Map.Entry<Integer, PageLocation> entry : pages.entrySet())
+			{
+				PageLocation location = entry.getValue();
+				if (location.segment != segment || location.generation != generation)
+				{
+					continue;
+				}
+
+				byte[] data = segment.read(location);
+				if (data == null)
+				{
+					return;
+				}
+
+				synchronized (writeLock)
+				{
+					if (segment == activeSegment || sealedSegments.contains(segment) == false)
+					{
+						// the segment got recycled or reused while we were copying
+						return;
+					}
+					if (index.get(session.getKey()) != pages)
+					{
+						// the pages of the session have been removed concurrently
+						break;
+					}
+					PageLocation moved = append(data);
+					if (pages.replace(entry.getKey(), location, moved))
+					{
+						release(location);
+					}
+					else
+					{
+						// the page has been replaced or removed concurrently
+						release(moved);
+					}
+				}
+			}
+		}
+
+		synchronized (writeLock)
+		{
+			if (sealedSegments.remove(segment))
+			{
+				segment.recycle();
+				freeSegments.addLast(segment);
+			}
+		}
+	}
+
+	/**
+	 * Writes the data at the end of the active segment. Must be called with the write lock held.
+	 *
+	 * @param data
+	 * @return the location of the written data
+	 */
+	private PageLocation append(final byte[] data)
+	{
+		if (activeSegment.position + data.length > segmentSize)
+		{
+			nextSegment();
+		}
+		PageLocation location = activeSegment.write(data);
+		activeSegment.liveBytes += data.length;
+		return location;
+	}
+
+	/**
+	 * Seals the active segment and activates a free, a new or the oldest recycled one. Must be
+	 * called with the write lock held.
+	 */
+	private void nextSegment()
+	{
+		sealedSegments.addLast(activeSegment);
+
+		Segment next = freeSegments.poll();
+		if (next == null && segments.size() < maxSegments)
+		{
+			next = newSegment();
+		}
+		if (next == null)
+		{
+			next = sealedSegments.removeFirst();
+			if (next.liveBytes > 0)
+			{
+				log.warn("Recycling segment " + next.file + " with " + next.liveBytes +
+					" bytes of live page data. Consider increasing the number or size of segments.");
+			}
+			next.recycle();
+		}
+		activeSegment = next;
+	}
+
+	/**
+	 * Creates a new segment file. Must be called with the write lock held.
+	 *
+	 * @return segment
+	 */
+	private Segment newSegment()
+	{
+		Segment segment = new Segment(new File(storeFolder, "segment-" + segments.size()),
+			segmentSize);
+		segments.add(segment);
+		return segment;
+	}
+
+	/**
+	 * Decrements the live byte count of the segment the location points to.
+	 *
+	 * @param location
+	 */
+	private void release(final PageLocation location)
+	{
+		if (location != null)
+		{
+			synchronized (writeLock)
+			{
+				if (location.generation == location.segment.generation)
+				{
+					location.segment.liveBytes -= location.length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Must be called with the write lock held, see {@link #removeData(String)}.
+	 *
+	 * @param sessionId
+	 * @return the page index of the session
+	 */
+	private ConcurrentMap<Integer, PageLocation> getPages(final String sessionId)
+	{
+		ConcurrentMap<Integer, PageLocation> pages = index.get(sessionId);
+		if (pages == null)
+		{
+			pages = new ConcurrentHashMap<Integer, PageLocation>();
+			ConcurrentMap<Integer, PageLocation> existing = index.putIfAbsent(sessionId, pages);
+			if (existing != null)
+			{
+				pages = existing;
+			}
+		}
+		return pages;
+	}
+
+	/**
+	 * Position of page data inside of a segment.
+	 */
+	private static final class PageLocation
+	{
+		private final Segment segment;
+
+		/** generation of the segment at the time of writing */
+		private final int generation;
+
+		private final int offset;
+
+		private final int length;
+
+		private PageLocation(Segment segment, int generation, int offset, int length)
+		{
+			this.segment = segment;
+			this.generation = generation;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * A memory mapped segment file.
+	 */
+	private static final class Segment
+	{
+		private final File file;
+
+		private final FileChannel channel;
+
+		/** null once the segment has been closed */
+		private volatile MappedByteBuffer buffer;
+
+		/** prevents reading while the segment is being recycled */
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		/** incremented every time the segment is recycled, guarded by the store's write lock */
+		private volatile int generation = 0;
+
+		/** guarded by the store's write lock */
+		private int position = 0;
+
+		/** guarded by the store's write lock */
+		private long liveBytes = 0;
+
+		private Segment(final File file, final int size)
+		{
+			this.file = file;
+			try
+			{
+				channel = new RandomAccessFile(file, "rw").getChannel();
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			catch (IOException e)
+			{
+				throw new WicketRuntimeException("Unable to create segment file " + file, e);
+			}
+		}
+
+		private PageLocation write(final byte[] data)
+		{
+			ByteBuffer target = buffer.duplicate();
+			target.position(position);
+			target.put(data);
+			PageLocation location = new PageLocation(this, generation, position, data.length);
+			position += data.length;
+			return location;
+		}
+
+		/**
+		 * @param location
+		 * @return the data or <code>null</code> if the segment has been recycled since the data
+		 *         was written
+		 */
+		private byte[] read(final PageLocation location)
+		{
+			lock.readLock().lock();
+			try
+			{
+				if ((location.generation != generation) || (buffer == null))
+				{
+					return null;
+				}
+				byte[] data = new byte[location.length];
+				ByteBuffer source = buffer.duplicate();
+				source.position(location.offset);
+				source.get(data);
+				return data;
+			}
+			finally
+			{
+				lock.readLock().unlock();
+			}
+		}
+
+		private void recycle()
+		{
+			lock.writeLock().lock();
+			try
+			{
+				generation++;
+				position = 0;
+				liveBytes = 0;
+			}
+			finally
+			{
+				lock.writeLock().unlock();
+			}
+		}
+
+		private void close()
+		{
+			// drop the mapping so it can be released once it is garbage collected
+			lock.writeLock().lock();
+			try
+			{
+				generation++;
+				buffer = null;
+			}
+			finally
+			{
+				lock.writeLock().unlock();
+			}
+
+			try
+			{
+				channel.close();
+			}
+			catch (IOException e)
+			{
+				log.error("Error closing segment file " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * Periodically compacts the sealed segments.
+	 */
+	private class CompactionRunnable implements Runnable
+	{
+		public void run()
+		{
+			while (destroyed == false)
+			{
+				try
+				{
+					Thread.sleep(getCompactionInterval().getMilliseconds());
+				}
+				catch (InterruptedException e)
+				{
+					continue;
+				}
+
+				try
+				{
+					compact();
+				}
+				catch (RuntimeException e)
+				{
+					log.error("Error compacting page segments", e);
+				}
+			}
+		}
+	}
+}
@@ -120,20 +120,24 @@ public class BufferedWebResponse extends WebResponse implements IMetaDataBufferi
 		protected void invoke(WebResponse response)
 		{
 
-			AppendingStringBuffer responseBuffer = new AppendingStringBuffer(builder);
-
 			List<IResponseFilter> responseFilters = Application.get()
 				.getRequestCycleSettings()
 				.getResponseFilters();
 
-			if (responseFilters != null)
+			if ((responseFilters != null) && (responseFilters.isEmpty() == false))
 			{
+				// only copy the text if there is any filter
+				AppendingStringBuffer responseBuffer = new AppendingStringBuffer(builder);
 				for (IResponseFilter filter : responseFilters)
 				{
-					filter.filter(responseBuffer);
+					responseBuffer = filter.filter(responseBuffer);
 				}
+				response.write(responseBuffer);
+			}
+			else
+			{
+				response.write(builder);
 			}
-			response.write(builder);
 		}
 	}
 
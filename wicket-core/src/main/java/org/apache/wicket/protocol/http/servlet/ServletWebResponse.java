@@ -17,17 +17,25 @@
 package org.apache.wicket.protocol.http.servlet;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.wicket.Application;
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.protocol.http.RequestUtils;
 import org.apache.wicket.request.Url;
 import org.apache.wicket.request.http.WebResponse;
 import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.string.AppendingStringBuffer;
 import org.apache.wicket.util.string.Strings;
 
 /**
@@ -37,9 +45,24 @@ import org.apache.wicket.util.string.Strings;
  */
 public class ServletWebResponse extends WebResponse
 {
+	/** Texts longer than this are written in chunks of this size */
+	private static final int CHUNK_SIZE = 8192;
+
 	private final HttpServletResponse httpServletResponse;
 	private final ServletWebRequest webRequest;
 
+	/** Reused to write long texts without copying them into a string first */
+	private char[] chunk;
+
+	/** Whether text has been written to the servlet writer, so it can't be encoded anymore */
+	private boolean writerUsed;
+
+	/** Encodes text if it is written to the servlet output stream */
+	private CharsetEncoder encoder;
+
+	/** Reused for the encoded text */
+	private ByteBuffer encoded;
+
 	/**
 	 * Construct.
 	 * 
@@ -98,7 +121,22 @@ public class ServletWebResponse extends WebResponse
 	{
 		try
 		{
-			httpServletResponse.getWriter().append(sequence);
+			if (isEncodeText() && writeEncoded(sequence))
+			{
+				return;
+			}
+
+			PrintWriter writer = getWriter();
+			if ((sequence instanceof String) || (sequence.length() <= CHUNK_SIZE))
+			{
+				writer.append(sequence);
+			}
+			else
+			{
+				// PrintWriter.append() would copy the whole text, e.g. a buffered page, into a
+				// string before encoding it
+				writeChunked(writer, sequence);
+			}
 		}
 		catch (IOException e)
 		{
@@ -106,6 +144,128 @@ public class ServletWebResponse extends WebResponse
 		}
 	}
 
+	/**
+	 * @return the servlet writer
+	 * @throws IOException
+	 */
+	private PrintWriter getWriter() throws IOException
+	{
+		writerUsed = true;
+		return httpServletResponse.getWriter();
+	}
+
+	/**
+	 * @return whether text should be written to the servlet output stream
+	 * @see org.apache.wicket.settings.IRequestCycleSettings#getEncodeResponseText()
+	 */
+	private boolean isEncodeText()
+	{
+		return (writerUsed == false) && Application.exists() &&
+			Application.get().getRequestCycleSettings().getEncodeResponseText();
+	}
+
+	/**
+	 * Encodes the text with the character encoding of the response through a reused buffer and
+	 * writes it to the servlet output stream.
+	 * 
+	 * @param sequence
+	 * @return <code>false</code> if the servlet writer has already been used by someone else
+	 * @throws IOException
+	 */
+	private boolean writeEncoded(final CharSequence sequence) throws IOException
+	{
+		final OutputStream out;
+		try
+		{
+			out = httpServletResponse.getOutputStream();
+		}
+		catch (IllegalStateException e)
+		{
+			writerUsed = true;
+			return false;
+		}
+
+		String charset = httpServletResponse.getCharacterEncoding();
+		if (charset == null)
+		{
+			charset = "ISO-8859-1";
+		}
+		if ((encoder == null) || (encoder.charset().equals(Charset.forName(charset)) == false))
+		{
+			// replace characters which can't be encoded like the servlet writer does
+			encoder = Charset.forName(charset)
+				.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			if (encoded == null)
+			{
+				encoded = ByteBuffer.allocate(CHUNK_SIZE);
+			}
+		}
+		else
+		{
+			encoder.reset();
+		}
+
+		final CharBuffer chars = CharBuffer.wrap(sequence);
+		while (encoder.encode(chars, encoded, true).isOverflow())
+		{
+			writeEncoded(out);
+		}
+		while (encoder.flush(encoded).isOverflow())
+		{
+			writeEncoded(out);
+		}
+		writeEncoded(out);
+		return true;
+	}
+
+	private void writeEncoded(final OutputStream out) throws IOException
+	{
+		out.write(encoded.array(), 0, encoded.position());
+		encoded.clear();
+	}
+
+	/**
+	 * Writes the text in chunks through a reused buffer.
+	 * 
+	 * @param writer
+	 * @param sequence
+	 */
+	private void writeChunked(final PrintWriter writer, final CharSequence sequence)
+	{
+		if (chunk == null)
+		{
+			chunk = new char[CHUNK_SIZE];
+		}
+
+		final int length = sequence.length();
+		for (int start = 0; start < length; start += CHUNK_SIZE)
+		{
+			final int end = Math.min(start + CHUNK_SIZE, length);
+			if (sequence instanceof StringBuilder)
+			{
+				((StringBuilder)sequence).getChars(start, end, chunk, 0);
+			}
+			else if (sequence instanceof AppendingStringBuffer)
+			{
+				((AppendingStringBuffer)sequence).getChars(start, end, chunk, 0);
+			}
+			else if (sequence instanceof StringBuffer)
+			{
+				((StringBuffer)sequence).getChars(start, end, chunk, 0);
+			}
+			else
+			{
+				for (int i = start; i < end; i++)
+				{
+					chunk[i - start] = sequence.charAt(i);
+				}
+			}
+			writer.write(chunk, 0, end - start);
+		}
+	}
+
 	@Override
 	public void write(byte[] array)
 	{
@@ -119,6 +279,19 @@ public class ServletWebResponse extends WebResponse
 		}
 	}
 
+	@Override
+	public void write(byte[] array, int offset, int length)
+	{
+		try
+		{
+			httpServletResponse.getOutputStream().write(array, offset, length);
+		}
+		catch (IOException e)
+		{
+			throw new WicketRuntimeException(e);
+		}
+	}
+
 	@Override
 	public void setStatus(int sc)
 	{
@@ -236,7 +409,7 @@ public class ServletWebResponse extends WebResponse
 				 * using multipart ajax handling) and the headers are not available because XHR is
 				 * not used and that is the only way javascript has access to response headers.
 				 */
-				httpServletResponse.getWriter().write(
+				getWriter().write(
 					"<ajax-response><redirect><![CDATA[" + url + "]]></redirect></ajax-response>");
 
 				setContentType("text/xml;charset=" +
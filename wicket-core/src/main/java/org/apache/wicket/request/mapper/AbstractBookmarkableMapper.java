@@ -29,6 +29,7 @@ import org.apache.wicket.request.handler.ListenerInterfaceRequestHandler;
 import org.apache.wicket.request.handler.PageAndComponentProvider;
 import org.apache.wicket.request.handler.PageProvider;
 import org.apache.wicket.request.handler.RenderPageRequestHandler;
+import org.apache.wicket.request.mapper.IKeyedRequestMapper.IKeyResolver;
 import org.apache.wicket.request.mapper.info.ComponentInfo;
 import org.apache.wicket.request.mapper.info.PageComponentInfo;
 import org.apache.wicket.request.mapper.info.PageInfo;
@@ -46,6 +47,38 @@ public abstract class AbstractBookmarkableMapper extends AbstractComponentMapper
 {
 	private static Logger logger = LoggerFactory.getLogger(AbstractBookmarkableMapper.class);
 
+	/**
+	 * Resolves the name of the page class of the request handlers {@link #mapHandler(IRequestHandler)}
+	 * can map, i.e. the class passed to {@link #checkPageClass(Class)}. The name rather than the
+	 * class is used so the key does not hold on to the class.
+	 */
+	protected static final IKeyResolver PAGE_CLASS_KEY_RESOLVER = new IKeyResolver()
+	{
+		public Object getKey(IRequestHandler requestHandler)
+		{
+			if (requestHandler instanceof IRequestHandlerDelegate)
+			{
+				requestHandler = ((IRequestHandlerDelegate)requestHandler).getDelegateHandler();
+			}
+
+			Class<?> pageClass = null;
+			if (requestHandler instanceof BookmarkablePageRequestHandler)
+			{
+				pageClass = ((BookmarkablePageRequestHandler)requestHandler).getPageClass();
+			}
+			else if (requestHandler instanceof RenderPageRequestHandler)
+			{
+				pageClass = ((RenderPageRequestHandler)requestHandler).getPageClass();
+			}
+			else if (requestHandler instanceof BookmarkableListenerInterfaceRequestHandler)
+			{
+				pageClass = ((BookmarkableListenerInterfaceRequestHandler)requestHandler).getPage()
+					.getClass();
+			}
+			return pageClass != null ? pageClass.getName() : null;
+		}
+	};
+
 	/**
 	 * Represents information stored in URL.
 	 * 
@@ -96,6 +96,17 @@ public class HomePageMapper extends MountedMapper
 		return super.parseRequest(request);
 	}
 
+	/**
+	 * The home page class is looked up dynamically, so the mapper can not be indexed by it.
+	 * 
+	 * @see org.apache.wicket.request.mapper.MountedMapper#getKey()
+	 */
+	@Override
+	public Object getKey()
+	{
+		return null;
+	}
+
 	/**
 	 * Use this mapper as a last option. Let all other mappers to try to handle the request
 	 * 
@@ -16,6 +16,7 @@
  */
 package org.apache.wicket.request.mapper;
 
+import org.apache.wicket.request.IRequestHandler;
 import org.apache.wicket.request.Request;
 import org.apache.wicket.request.Url;
 import org.apache.wicket.request.component.IRequestablePage;
@@ -50,7 +51,8 @@ import org.apache.wicket.util.lang.Args;
  * 
  * @author Matej Knopp
  */
-public class MountedMapper extends AbstractBookmarkableMapper
+public class MountedMapper extends AbstractBookmarkableMapper implements IPrefixedRequestMapper,
+	IKeyedRequestMapper
 {
 	private final IPageParametersEncoder pageParametersEncoder;
 
@@ -59,6 +61,9 @@ public class MountedMapper extends AbstractBookmarkableMapper
 	/** bookmarkable page class. */
 	private final ClassProvider<? extends IRequestablePage> pageClassProvider;
 
+	/** name of the page class if it was given directly rather than by a provider */
+	private final String pageClassName;
+
 	/**
 	 * Construct.
 	 * 
@@ -93,7 +98,8 @@ public class MountedMapper extends AbstractBookmarkableMapper
 	public MountedMapper(String mountPath, Class<? extends IRequestablePage> pageClass,
 		IPageParametersEncoder pageParametersEncoder)
 	{
-		this(mountPath, ClassProvider.of(pageClass), pageParametersEncoder);
+		this(mountPath, ClassProvider.of(pageClass), pageParametersEncoder,
+			pageClass != null ? pageClass.getName() : null);
 	}
 
 	/**
@@ -106,6 +112,13 @@ public class MountedMapper extends AbstractBookmarkableMapper
 	public MountedMapper(String mountPath,
 		ClassProvider<? extends IRequestablePage> pageClassProvider,
 		IPageParametersEncoder pageParametersEncoder)
+	{
+		this(mountPath, pageClassProvider, pageParametersEncoder, null);
+	}
+
+	private MountedMapper(String mountPath,
+		ClassProvider<? extends IRequestablePage> pageClassProvider,
+		IPageParametersEncoder pageParametersEncoder, String pageClassName)
 	{
 		Args.notEmpty(mountPath, "mountPath");
 		Args.notNull(pageClassProvider, "pageClassProvider");
@@ -113,9 +126,44 @@ public class MountedMapper extends AbstractBookmarkableMapper
 
 		this.pageParametersEncoder = pageParametersEncoder;
 		this.pageClassProvider = pageClassProvider;
+		this.pageClassName = isKeyable() ? pageClassName : null;
 		mountSegments = getMountSegments(mountPath);
 	}
 
+	/**
+	 * A subclass may map handlers for other page classes than the mounted one, e.g. for its
+	 * subclasses too. It can't be looked up by the page class then.
+	 * 
+	 * @return whether neither {@link #mapHandler(IRequestHandler)} nor
+	 *         {@link #checkPageClass(Class)} is overridden
+	 */
+	private boolean isKeyable()
+	{
+		for (Class<?> clazz = getClass(); clazz != MountedMapper.class; clazz = clazz
+			.getSuperclass())
+		{
+			if (declares(clazz, "mapHandler", IRequestHandler.class) ||
+				declares(clazz, "checkPageClass", Class.class))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean declares(Class<?> clazz, String name, Class<?>... parameterTypes)
+	{
+		try
+		{
+			clazz.getDeclaredMethod(name, parameterTypes);
+			return true;
+		}
+		catch (NoSuchMethodException e)
+		{
+			return false;
+		}
+	}
+
 	/**
 	 * @see org.apache.wicket.request.mapper.AbstractBookmarkableMapper#parseRequest(org.apache.wicket.request.Request)
 	 */
@@ -257,6 +305,40 @@ public class MountedMapper extends AbstractBookmarkableMapper
 		}
 	}
 
+	/**
+	 * Subclasses that override {@link #getCompatibilityScore(Request)} have to keep returning 0 for
+	 * URLs that do not start with these segments.
+	 * 
+	 * @see org.apache.wicket.request.mapper.IPrefixedRequestMapper#getPrefixSegments()
+	 */
+	public String[] getPrefixSegments()
+	{
+		return getLeadingStaticSegments(mountSegments);
+	}
+
+	/**
+	 * @see org.apache.wicket.request.mapper.IKeyedRequestMapper#getKeyResolver()
+	 */
+	public IKeyResolver getKeyResolver()
+	{
+		return PAGE_CLASS_KEY_RESOLVER;
+	}
+
+	/**
+	 * A class provider may return another class at any time, e.g. after the class was reloaded, so
+	 * mappers constructed with a provider have no key. Neither have subclasses overriding
+	 * {@link #mapHandler(IRequestHandler)} or {@link #checkPageClass(Class)}, as they might map
+	 * handlers for other page classes.
+	 * 
+	 * @return the name of the mounted page class or <code>null</code> if it was given by a
+	 *         provider or the mapping is customized
+	 * @see org.apache.wicket.request.mapper.IKeyedRequestMapper#getKey()
+	 */
+	public Object getKey()
+	{
+		return pageClassName;
+	}
+
 	/**
 	 * @see org.apache.wicket.request.mapper.AbstractBookmarkableMapper#checkPageClass(java.lang.Class)
 	 */
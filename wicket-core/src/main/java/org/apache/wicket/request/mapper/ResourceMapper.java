@@ -17,7 +17,6 @@
 package org.apache.wicket.request.mapper;
 
 import org.apache.wicket.request.IRequestHandler;
-import org.apache.wicket.request.IRequestMapper;
 import org.apache.wicket.request.Request;
 import org.apache.wicket.request.Url;
 import org.apache.wicket.request.handler.resource.ResourceReferenceRequestHandler;
@@ -53,7 +52,7 @@ import org.apache.wicket.util.lang.Args;
  *
  * @author Peter Ertl
  */
-public class ResourceMapper extends AbstractMapper implements IRequestMapper
+public class ResourceMapper extends AbstractMapper implements IPrefixedRequestMapper
 {
 	// encode page parameters into url + decode page parameters from url
 	private final IPageParametersEncoder parametersEncoder;
@@ -136,6 +135,11 @@ public class ResourceMapper extends AbstractMapper implements IRequestMapper
 		return 0; // pages always have priority over resources
 	}
 
+	public String[] getPrefixSegments()
+	{
+		return getLeadingStaticSegments(mountSegments);
+	}
+
 	public Url mapHandler(IRequestHandler requestHandler)
 	{
 		if ((requestHandler instanceof ResourceReferenceRequestHandler) == false)
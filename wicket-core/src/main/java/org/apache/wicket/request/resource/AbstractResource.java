@@ -16,6 +16,7 @@
  */
 package org.apache.wicket.request.resource;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -31,6 +32,7 @@ import org.apache.wicket.request.http.WebResponse;
 import org.apache.wicket.settings.IResourceSettings;
 import org.apache.wicket.util.io.Streams;
 import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.string.Strings;
 import org.apache.wicket.util.time.Duration;
 
 /**
@@ -72,11 +74,18 @@ public abstract class AbstractResource implements IResource
 		private ContentDisposition contentDisposition = ContentDisposition.INLINE;
 		private String contentType = null;
 		private String textEncoding;
+		private String contentEncoding;
+		private String vary;
 		private long contentLength = -1;
+		private boolean acceptRanges;
+		private long contentRangeFirst = -1;
+		private long contentRangeLast = -1;
 		private Date lastModified = null;
+		private String etag = null;
 		private WriteCallback writeCallback;
 		private Duration cacheDuration;
 		private WebResponse.CacheScope cacheScope;
+		private boolean cacheImmutable;
 
 		/**
 		 * Construct.
@@ -219,6 +228,47 @@ public abstract class AbstractResource implements IResource
 			return textEncoding;
 		}
 
+		/**
+		 * Sets the content encoding of the resource data, e.g. <code>gzip</code> if the data
+		 * written by the {@link WriteCallback} is compressed.
+		 * 
+		 * @param contentEncoding
+		 *            content coding or <code>null</code> for the identity encoding
+		 */
+		public void setContentEncoding(String contentEncoding)
+		{
+			this.contentEncoding = contentEncoding;
+		}
+
+		/**
+		 * @return content encoding of the resource data or <code>null</code>
+		 */
+		public String getContentEncoding()
+		{
+			return contentEncoding;
+		}
+
+		/**
+		 * Sets the request headers the response depends on, e.g. <code>Accept-Encoding</code> if
+		 * the resource may be sent compressed. Shared caches must not serve the response to
+		 * requests with other values of these headers.
+		 * 
+		 * @param vary
+		 *            comma separated list of request header names
+		 */
+		public void setVary(String vary)
+		{
+			this.vary = vary;
+		}
+
+		/**
+		 * @return request headers the response depends on or <code>null</code>
+		 */
+		public String getVary()
+		{
+			return vary;
+		}
+
 		/**
 		 * Sets the content length (in bytes) of the data. Content length is optional but it's
 		 * recommended to set it so that the browser can show download progress.
@@ -261,10 +311,34 @@ public abstract class AbstractResource implements IResource
 			return lastModified;
 		}
 
+		/**
+		 * Sets the entity tag of the resource data. If the tag is set Wicket checks the
+		 * <code>If-None-Match</code> header to determine if the actual data really needs to be sent
+		 * to client.
+		 * 
+		 * @param etag
+		 *            quoted entity tag, e.g. <code>"d41d8cd9"</code> or <code>W/"d41d8cd9"</code>
+		 */
+		public void setETag(String etag)
+		{
+			this.etag = etag;
+		}
+
+		/**
+		 * @return entity tag or <code>null</code>
+		 */
+		public String getETag()
+		{
+			return etag;
+		}
+
 		/**
 		 * Check to determine if the resource data needs to be written. This method checks the
-		 * <code>If-Modified-Since</code> request header and compares it to lastModified property.
-		 * In order for this method to work {@link #setLastModified(Date)} has to be called first.
+		 * <code>If-None-Match</code> request header against the ETag and the
+		 * <code>If-Modified-Since</code> request header against the lastModified property. The
+		 * <code>If-Modified-Since</code> header is ignored if the client sent an
+		 * <code>If-None-Match</code> header. In order for this method to work
+		 * {@link #setETag(String)} or {@link #setLastModified(Date)} has to be called first.
 		 * 
 		 * @param attributes
 		 *            request attributes
@@ -274,6 +348,16 @@ public abstract class AbstractResource implements IResource
 		public boolean dataNeedsToBeWritten(Attributes attributes)
 		{
 			WebRequest request = (WebRequest)attributes.getRequest();
+
+			if (etag != null)
+			{
+				String ifNoneMatch = request.getHeader("If-None-Match");
+				if (ifNoneMatch != null)
+				{
+					return matchesETag(ifNoneMatch, etag) == false;
+				}
+			}
+
 			Date ifModifiedSince = request.getIfModifiedSinceHeader();
 			Date lastModified = getLastModified();
 
@@ -294,6 +378,194 @@ public abstract class AbstractResource implements IResource
 			}
 		}
 
+		/**
+		 * Weak comparison of an <code>If-None-Match</code> header value with an entity tag.
+		 * 
+		 * @param header
+		 *            comma separated list of entity tags or <code>*</code>
+		 * @param etag
+		 * @return <code>true</code> if the header matches the tag
+		 */
+		private static boolean matchesETag(String header, String etag)
+		{
+			String opaque = stripWeakPrefix(etag);
+			for (String candidate : Strings.split(header, ','))
+			{
+				candidate = candidate.trim();
+				if ("*".equals(candidate) || opaque.equals(stripWeakPrefix(candidate)))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static String stripWeakPrefix(String etag)
+		{
+			return etag.startsWith("W/") ? etag.substring(2) : etag;
+		}
+
+		/**
+		 * Sets whether the resource supports byte range requests. The content length has to be set
+		 * and the {@link WriteCallback} has to write only the
+		 * {@link #applyRequestedRange(org.apache.wicket.request.resource.IResource.Attributes)
+		 * requested range}.
+		 * 
+		 * @param acceptRanges
+		 */
+		public void setAcceptRanges(boolean acceptRanges)
+		{
+			this.acceptRanges = acceptRanges;
+		}
+
+		/**
+		 * @return whether the resource supports byte range requests
+		 */
+		public boolean isAcceptRanges()
+		{
+			return acceptRanges;
+		}
+
+		/**
+		 * Restricts the response to the byte range of the <code>Range</code> request header. The
+		 * range is ignored if the <code>If-Range</code> header doesn't match the ETag or the last
+		 * modification date. Only single ranges are supported, requests for multiple ranges are
+		 * answered with the whole content. An unsatisfiable range sets the error code
+		 * <code>416</code>.
+		 * <p>
+		 * In order for this method to work {@link #setAcceptRanges(boolean)} and
+		 * {@link #setContentLength(long)} have to be called first.
+		 * 
+		 * @param attributes
+		 *            request attributes
+		 * @return <code>true</code> if only a part of the content has to be written, see
+		 *         {@link #getContentRangeFirst()} and {@link #getContentRangeLast()}
+		 */
+		public boolean applyRequestedRange(Attributes attributes)
+		{
+			contentRangeFirst = -1;
+			contentRangeLast = -1;
+
+			if (acceptRanges == false || contentLength < 0)
+			{
+				return false;
+			}
+
+			WebRequest request = (WebRequest)attributes.getRequest();
+			String range = request.getHeader("Range");
+			if (range == null || ifRangeMatches(request) == false)
+			{
+				return false;
+			}
+
+			range = range.trim();
+			if (range.startsWith("bytes=") == false || range.indexOf(',') != -1)
+			{
+				return false;
+			}
+			range = range.substring(6);
+
+			int dash = range.indexOf('-');
+			if (dash == -1)
+			{
+				return false;
+			}
+			String firstPos = range.substring(0, dash).trim();
+			String lastPos = range.substring(dash + 1).trim();
+
+			long first;
+			long last;
+			try
+			{
+				if (firstPos.length() == 0)
+				{
+					// suffix range: the final bytes of the content
+					if (lastPos.length() == 0)
+					{
+						return false;
+					}
+					long suffix = Long.parseLong(lastPos);
+					first = suffix == 0 ? contentLength : Math.max(0, contentLength - suffix);
+					last = contentLength - 1;
+				}
+				else
+				{
+					first = Long.parseLong(firstPos);
+					last = lastPos.length() == 0 ? Long.MAX_VALUE : Long.parseLong(lastPos);
+					if (last < first)
+					{
+						return false;
+					}
+					last = Math.min(last, contentLength - 1);
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				return false;
+			}
+
+			if (first >= contentLength)
+			{
+				setError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return false;
+			}
+
+			contentRangeFirst = first;
+			contentRangeLast = last;
+			return true;
+		}
+
+		/**
+		 * @param request
+		 * @return <code>true</code> if there is no <code>If-Range</code> header or it matches the
+		 *         ETag (strong comparison) or the last modification date
+		 */
+		private boolean ifRangeMatches(WebRequest request)
+		{
+			String ifRange = request.getHeader("If-Range");
+			if (ifRange == null)
+			{
+				return true;
+			}
+
+			ifRange = ifRange.trim();
+			if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+			{
+				return etag != null && etag.startsWith("W/") == false && etag.equals(ifRange);
+			}
+
+			if (lastModified == null)
+			{
+				return false;
+			}
+			try
+			{
+				return request.getDateHeader("If-Range") == lastModified.getTime() / 1000 * 1000;
+			}
+			catch (IllegalArgumentException e)
+			{
+				return false;
+			}
+		}
+
+		/**
+		 * @return index of the first byte to write or <code>-1</code> if the whole content has to
+		 *         be written
+		 */
+		public long getContentRangeFirst()
+		{
+			return contentRangeFirst;
+		}
+
+		/**
+		 * @return index of the last byte to write or <code>-1</code> if the whole content has to be
+		 *         written
+		 */
+		public long getContentRangeLast()
+		{
+			return contentRangeLast;
+		}
+
 		/**
 		 * disable caching
 		 */
@@ -371,6 +643,27 @@ public abstract class AbstractResource implements IResource
 			this.cacheScope = scope;
 		}
 
+		/**
+		 * Marks the response as immutable, i.e. the data for the URL of the resource will never
+		 * change, e.g. because the URL contains a fingerprint of the content. Clients will not
+		 * revalidate immutable responses while they are cached.
+		 * 
+		 * @param immutable
+		 */
+		public void setCacheImmutable(boolean immutable)
+		{
+			cacheImmutable = immutable;
+		}
+
+		/**
+		 * @return whether the response is immutable
+		 * @see #setCacheImmutable(boolean)
+		 */
+		public boolean isCacheImmutable()
+		{
+			return cacheImmutable;
+		}
+
 		/**
 		 * Sets the {@link WriteCallback}. The callback is responsible for generating the response
 		 * data.
@@ -416,7 +709,7 @@ public abstract class AbstractResource implements IResource
 
 		if(duration.compareTo(Duration.NONE) > 0)
 		{
-			response.enableCaching(duration, data.getCacheScope());
+			response.enableCaching(duration, data.getCacheScope(), data.isCacheImmutable());
 		}
 		else
 		{
@@ -443,7 +736,23 @@ public abstract class AbstractResource implements IResource
 			response.setLastModifiedTime(lastModified.getTime());
 		}
 
-		// 2. Caching
+		// 2. Entity Tag, Vary and Accept-Ranges
+		String etag = data.getETag();
+		if (etag != null)
+		{
+			response.setHeader("ETag", etag);
+		}
+		String vary = data.getVary();
+		if (vary != null)
+		{
+			response.setHeader("Vary", vary);
+		}
+		if (data.isAcceptRanges())
+		{
+			response.setHeader("Accept-Ranges", "bytes");
+		}
+
+		// 3. Caching
 		configureCache(request, response, data, attributes);
 
 		if (!data.dataNeedsToBeWritten(attributes))
@@ -454,6 +763,11 @@ public abstract class AbstractResource implements IResource
 
 		if (data.getErrorCode() != null)
 		{
+			if (data.getErrorCode() == HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE &&
+				data.getContentLength() != -1)
+			{
+				response.setHeader("Content-Range", "bytes */" + data.getContentLength());
+			}
 			response.sendError(data.getErrorCode(), data.getErrorMessage());
 			return;
 		}
@@ -476,7 +790,7 @@ public abstract class AbstractResource implements IResource
 
 		long contentLength = data.getContentLength();
 
-		// 3. Content Disposition
+		// 4. Content Disposition
 		if (ContentDisposition.ATTACHMENT == disposition)
 		{
 			response.setAttachmentHeader(fileName);
@@ -486,7 +800,7 @@ public abstract class AbstractResource implements IResource
 			response.setInlineHeader(fileName);
 		}
 
-		// 4. Mime Type (+ encoding)
+		// 5. Mime Type (+ encoding)
 		if (mimeType != null)
 		{
 			if (encoding == null)
@@ -499,18 +813,31 @@ public abstract class AbstractResource implements IResource
 			}
 		}
 
-		// 5. Content Length
-		if (contentLength != -1)
+		// 6. Content Length (+ range, encoding)
+		if (data.getContentRangeFirst() != -1)
+		{
+			long first = data.getContentRangeFirst();
+			long last = data.getContentRangeLast();
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", "bytes " + first + "-" + last + "/" +
+				contentLength);
+			response.setContentLength(last - first + 1);
+		}
+		else if (contentLength != -1)
 		{
 			response.setContentLength(contentLength);
 		}
+		if (data.getContentEncoding() != null)
+		{
+			response.setHeader("Content-Encoding", data.getContentEncoding());
+		}
 
-		// 6. Flush the response
+		// 7. Flush the response
 		// This is necessary for firefox if this resource is an image, otherwise it messes up
 		// other images on page
 		response.flush();
 
-		// 7. Write Data
+		// 8. Write Data
 		data.getWriteCallback().writeData(attributes);
 	}
 
@@ -559,16 +886,7 @@ public abstract class AbstractResource implements IResource
 				@Override
 				public void write(byte[] b, int off, int len) throws IOException
 				{
-					if (off == 0 && len == b.length)
-					{
-						write(b);
-					}
-					else
-					{
-						byte copy[] = new byte[len];
-						System.arraycopy(b, off, copy, 0, len);
-						write(copy);
-					}
+					response.write(b, off, len);
 				}
 			};
 			try
@@ -580,5 +898,55 @@ public abstract class AbstractResource implements IResource
 				throw new WicketRuntimeException(e);
 			}
 		}
+
+		/**
+		 * Convenience method to write a part of an {@link InputStream} to response.
+		 * 
+		 * @param attributes
+		 *            request attributes
+		 * @param stream
+		 *            input stream
+		 * @param offset
+		 *            number of bytes to skip
+		 * @param length
+		 *            number of bytes to write
+		 */
+		protected final void writeStream(Attributes attributes, InputStream stream, long offset,
+			long length)
+		{
+			final Response response = attributes.getResponse();
+			try
+			{
+				while (offset > 0)
+				{
+					long skipped = stream.skip(offset);
+					if (skipped <= 0)
+					{
+						if (stream.read() == -1)
+						{
+							throw new EOFException();
+						}
+						skipped = 1;
+					}
+					offset -= skipped;
+				}
+
+				byte[] buffer = new byte[(int)Math.min(length, 4096)];
+				while (length > 0)
+				{
+					int count = stream.read(buffer, 0, (int)Math.min(length, buffer.length));
+					if (count == -1)
+					{
+						throw new EOFException();
+					}
+					response.write(buffer, 0, count);
+					length -= count;
+				}
+			}
+			catch (IOException e)
+			{
+				throw new WicketRuntimeException(e);
+			}
+		}
 	}
 }
\ No newline at end of file
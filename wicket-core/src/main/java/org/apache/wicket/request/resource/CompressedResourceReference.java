@@ -18,7 +18,14 @@ package org.apache.wicket.request.resource;
 
 import java.util.Locale;
 
-// TODO NG
+/**
+ * A package resource reference for compressible resources.
+ * <p>
+ * Every {@link PackageResource} is sent gzip compressed to clients accepting it, either from a
+ * prebuilt <code>.gz</code> sibling or compressed once and kept in the
+ * {@link PackageResourceCache}. This reference is kept to ease migration, it behaves like a
+ * {@link PackageResourceReference}.
+ */
 public class CompressedResourceReference extends PackageResourceReference
 {
 	private static final long serialVersionUID = 1L;
@@ -16,8 +16,12 @@
  */
 package org.apache.wicket.request.resource;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -25,12 +29,16 @@ import org.apache.wicket.Application;
 import org.apache.wicket.ThreadContext;
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.markup.html.IPackageResourceGuard;
+import org.apache.wicket.request.http.WebRequest;
 import org.apache.wicket.settings.IResourceSettings;
 import org.apache.wicket.util.io.IOUtils;
+import org.apache.wicket.util.lang.Bytes;
 import org.apache.wicket.util.lang.Packages;
 import org.apache.wicket.util.lang.WicketObjects;
+import org.apache.wicket.util.resource.FileResourceStream;
 import org.apache.wicket.util.resource.IResourceStream;
 import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
+import org.apache.wicket.util.resource.UrlResourceStream;
 import org.apache.wicket.util.string.Strings;
 import org.apache.wicket.util.time.Time;
 import org.slf4j.Logger;
@@ -192,7 +200,14 @@ public class PackageResource extends AbstractResource
 	{
 		final ResourceResponse resourceResponse = new ResourceResponse();
 
-		if (resourceResponse.dataNeedsToBeWritten(attributes))
+		final PackageResourceCache cache = Application.get()
+			.getResourceSettings()
+			.getPackageResourceCache();
+		final PackageResourceCache.Key key = new PackageResourceCache.Key(getClass(), scopeName,
+			absolutePath, locale, style, variation);
+
+		PackageResourceCache.Entry entry = cache.get(key);
+		if (entry == null)
 		{
 			// get resource stream
 			final IResourceStream resourceStream = getResourceStream();
@@ -202,15 +217,127 @@ public class PackageResource extends AbstractResource
 				return sendResourceError(resourceResponse, HttpServletResponse.SC_NOT_FOUND,
 					"Unable to find resource");
 
-			// set Content-Type (may be null)
-			resourceResponse.setContentType(resourceStream.getContentType());
+			// don't read what won't be cached before knowing that it has to be sent
+			final Bytes length = resourceStream.length();
+			if (length != null && cache.isCacheable(length.bytes()) == false)
+				return newUncachedResourceResponse(resourceResponse, resourceStream, attributes);
 
-			// add Last-Modified header (to support HEAD requests and If-Modified-Since)
+			final String contentType = resourceStream.getContentType();
 			final Time lastModified = resourceStream.lastModifiedTime();
 
-			if (lastModified != null)
-				resourceResponse.setLastModified(lastModified.toDate());
+			try
+			{
+				// read resource data
+				final byte[] bytes;
+
+				try
+				{
+					bytes = IOUtils.toByteArray(resourceStream.getInputStream());
+				}
+				finally
+				{
+					resourceStream.close();
+				}
+
+				// compress once, next to the uncompressed bytes, unless the entry isn't cached
+				// anyway
+				final boolean cacheable = cache.isCacheable(bytes.length);
+				byte[] gzipBytes = null;
+				if (cacheable && isCompressionEnabled())
+				{
+					gzipBytes = readPrecompressed(resourceStream);
+					if (gzipBytes == null && isCompressible(contentType))
+					{
+						gzipBytes = compress(bytes);
+					}
+				}
+
+				entry = new PackageResourceCache.Entry(bytes, gzipBytes, contentType,
+					lastModified);
+				if (cacheable)
+					cache.put(key, entry, resourceStream);
+			}
+			catch (IOException e)
+			{
+				log.debug(e.getMessage(), e);
+				return sendResourceError(resourceResponse, 500, "Unable to read resource stream");
+			}
+			catch (ResourceStreamNotFoundException e)
+			{
+				log.debug(e.getMessage(), e);
+				return sendResourceError(resourceResponse, 500, "Unable to open resource stream");
+			}
+		}
+
+		// set Content-Type (may be null)
+		resourceResponse.setContentType(entry.getContentType());
+
+		// add Last-Modified header (to support HEAD requests and If-Modified-Since)
+		final Time lastModified = entry.getLastModified();
+
+		if (lastModified != null)
+			resourceResponse.setLastModified(lastModified.toDate());
+
+		// negotiate the compressed variant
+		final boolean negotiate = entry.getGzipBytes() != null && isCompressionEnabled();
+		final boolean gzip = negotiate && acceptsGzip((WebRequest)attributes.getRequest());
+
+		if (negotiate)
+			resourceResponse.setVary("Accept-Encoding");
+
+		// add ETag header (to support If-None-Match)
+		resourceResponse.setETag(gzip ? entry.getGzipETag() : entry.getETag());
+
+		if (resourceResponse.dataNeedsToBeWritten(attributes))
+		{
+			final byte[] bytes = gzip ? entry.getGzipBytes() : entry.getBytes();
+
+			if (gzip)
+				resourceResponse.setContentEncoding("gzip");
+
+			// send Content-Length header
+			resourceResponse.setContentLength(bytes.length);
+
+			// send response body with resource data
+			resourceResponse.setWriteCallback(new WriteCallback()
+			{
+				@Override
+				public void writeData(Attributes attributes)
+				{
+					attributes.getResponse().write(bytes);
+				}
+			});
+		}
+
+		// modify the resource response depending on the current caching strategy needs
+		Application.get().getResourceSettings().getCachingStrategy().decorateResponse(resourceResponse);
+
+		return resourceResponse;
+	}
 
+	/**
+	 * Answers the request for a resource that is not cached. The resource is only read if the
+	 * client's copy is not up to date, and it is sent uncompressed.
+	 * 
+	 * @param resourceResponse
+	 * @param resourceStream
+	 * @param attributes
+	 * @return resource response for answering request
+	 */
+	private ResourceResponse newUncachedResourceResponse(final ResourceResponse resourceResponse,
+		final IResourceStream resourceStream, final Attributes attributes)
+	{
+		// set Content-Type (may be null)
+		resourceResponse.setContentType(resourceStream.getContentType());
+
+		// add Last-Modified header (to support HEAD requests and If-Modified-Since)
+		final Time lastModified = resourceStream.lastModifiedTime();
+
+		if (lastModified != null)
+			resourceResponse.setLastModified(lastModified.toDate());
+
+		if (resourceResponse.dataNeedsToBeWritten(attributes))
+		{
 			try
 			{
 				// read resource data
@@ -256,6 +383,145 @@ public class PackageResource extends AbstractResource
 		return resourceResponse;
 	}
 
+	/**
+	 * @return <code>true</code> unless gzip compression is disabled in the resource settings
+	 */
+	private boolean isCompressionEnabled()
+	{
+		return Application.get().getResourceSettings().getDisableGZipCompression() == false;
+	}
+
+	/**
+	 * Decides whether the content of this resource is worth compressing. Images and archives are
+	 * compressed already.
+	 * 
+	 * @param contentType
+	 *            content type of the resource, may be <code>null</code>
+	 * @return <code>true</code> if the content should be compressed
+	 */
+	protected boolean isCompressible(final String contentType)
+	{
+		if (contentType == null)
+		{
+			return false;
+		}
+		return contentType.startsWith("text/") || contentType.contains("javascript") ||
+			contentType.contains("json") || contentType.contains("xml");
+	}
+
+	/**
+	 * Reads a prebuilt gzip compressed variant of the resource, located next to the resource
+	 * with the additional extension <code>.gz</code>, e.g. <code>jquery.js.gz</code>.
+	 * 
+	 * @param resourceStream
+	 *            the located resource stream
+	 * @return the compressed content or <code>null</code> if there is no prebuilt variant
+	 */
+	protected byte[] readPrecompressed(final IResourceStream resourceStream)
+	{
+		try
+		{
+			final URL url;
+			if (resourceStream instanceof UrlResourceStream)
+			{
+				url = ((UrlResourceStream)resourceStream).getURL();
+			}
+			else if (resourceStream instanceof FileResourceStream)
+			{
+				url = ((FileResourceStream)resourceStream).getFile().toURI().toURL();
+			}
+			else
+			{
+				return null;
+			}
+
+			final InputStream in = new URL(url.toExternalForm() + ".gz").openStream();
+			try
+			{
+				return IOUtils.toByteArray(in);
+			}
+			finally
+			{
+				IOUtils.closeQuietly(in);
+			}
+		}
+		catch (IOException e)
+		{
+			// no prebuilt variant
+			return null;
+		}
+	}
+
+	/**
+	 * @param bytes
+	 * @return gzip compressed bytes or <code>null</code> if compression doesn't pay off
+	 */
+	private static byte[] compress(final byte[] bytes)
+	{
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3 + 64);
+			GZIPOutputStream gzip = new GZIPOutputStream(out);
+			gzip.write(bytes);
+			gzip.close();
+			return out.size() < bytes.length ? out.toByteArray() : null;
+		}
+		catch (IOException e)
+		{
+			log.debug(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param request
+	 * @return <code>true</code> if the <code>Accept-Encoding</code> header of the request allows
+	 *         gzip
+	 */
+	private static boolean acceptsGzip(final WebRequest request)
+	{
+		final String header = request.getHeader("Accept-Encoding");
+		if (header == null)
+		{
+			return false;
+		}
+
+		boolean accepted = false;
+		for (String coding : Strings.split(header, ','))
+		{
+			float quality = 1;
+			int semicolon = coding.indexOf(';');
+			if (semicolon != -1)
+			{
+				String parameter = coding.substring(semicolon + 1).trim();
+				if (parameter.startsWith("q="))
+				{
+					try
+					{
+						quality = Float.parseFloat(parameter.substring(2));
+					}
+					catch (NumberFormatException e)
+					{
+						quality = 0;
+					}
+				}
+				coding = coding.substring(0, semicolon);
+			}
+			coding = coding.trim();
+
+			if ("gzip".equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding))
+			{
+				// an explicit coding overrides the wildcard
+				return quality > 0;
+			}
+			else if ("*".equals(coding))
+			{
+				accepted = quality > 0;
+			}
+		}
+		return accepted;
+	}
+
 	/**
 	 * send resource specific error message and write log entry
 	 * 
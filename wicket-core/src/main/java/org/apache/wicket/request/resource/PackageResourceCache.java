@@ -0,0 +1,538 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.resource;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.lang.Objects;
+import org.apache.wicket.util.listener.IChangeListener;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.time.Time;
+import org.apache.wicket.util.watch.IModificationWatcher;
+
+/**
+ * Application wide cache of the content of {@link PackageResource}s.
+ * <p>
+ * Static resources like scripts, style sheets and images are requested over and over again but
+ * hardly ever change. This cache keeps their bytes, optionally a gzip compressed variant, the
+ * content type, the last modification time and a precomputed ETag, so a {@link PackageResource}
+ * neither has to locate nor to read or compress its resource stream again. Conditional requests (
+ * <code>If-None-Match</code>, <code>If-Modified-Since</code>) for a cached resource are answered
+ * without opening the stream at all.
+ * <p>
+ * The cache is bounded by the total number of cached bytes, the least recently used entries are
+ * evicted first. Lookups never block: they only stamp the entry with a logical access time, and
+ * the total may exceed the bound briefly while concurrent puts evict. Resources larger than the maximum entry size are never cached, so a few large
+ * downloads can't push out the many small resources. In development mode an entry is dropped
+ * when the {@link IModificationWatcher resource watcher} detects a change of its resource.
+ * 
+ * @see org.apache.wicket.settings.IResourceSettings#setPackageResourceCache(PackageResourceCache)
+ */
+public class PackageResourceCache
+{
+	/** default maximum size of a single cached resource: 256 KB */
+	public static final int DEFAULT_MAX_ENTRY_SIZE = 256 * 1024;
+
+	/** default maximum number of cached bytes: 16 MB */
+	public static final long DEFAULT_MAX_TOTAL_BYTES = 16 * 1024 * 1024;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final int maxEntrySize;
+
+	private final long maxTotalBytes;
+
+	private final ConcurrentHashMap<Key, Slot> entries = new ConcurrentHashMap<Key, Slot>();
+
+	/** logical clock ordering the accesses to the entries */
+	private final AtomicLong clock = new AtomicLong();
+
+	/** serializes evictions, lookups are never blocked */
+	private final Object evictionLock = new Object();
+
+	private final AtomicLong totalBytes = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Construct with the default limits.
+	 */
+	public PackageResourceCache()
+	{
+		this(DEFAULT_MAX_ENTRY_SIZE, DEFAULT_MAX_TOTAL_BYTES);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param maxEntrySize
+	 *            maximum size in bytes of a single cached resource, larger resources are read on
+	 *            every request
+	 * @param maxTotalBytes
+	 *            maximum number of bytes kept by this cache, <code>0</code> disables caching
+	 */
+	public PackageResourceCache(final int maxEntrySize, final long maxTotalBytes)
+	{
+		if (maxEntrySize < 0)
+		{
+			throw new IllegalArgumentException("maxEntrySize must not be negative");
+		}
+		if (maxTotalBytes < 0)
+		{
+			throw new IllegalArgumentException("maxTotalBytes must not be negative");
+		}
+		this.maxEntrySize = maxEntrySize;
+		this.maxTotalBytes = maxTotalBytes;
+	}
+
+	/**
+	 * @return maximum size in bytes of a single cached resource
+	 */
+	public int getMaxEntrySize()
+	{
+		return maxEntrySize;
+	}
+
+	/**
+	 * @return maximum number of bytes kept by this cache
+	 */
+	public long getMaxTotalBytes()
+	{
+		return maxTotalBytes;
+	}
+
+	/**
+	 * @param size
+	 *            size of the uncompressed content of a resource
+	 * @return <code>true</code> if an entry of this size would be cached at all
+	 */
+	public boolean isCacheable(final long size)
+	{
+		return size <= maxEntrySize && size <= maxTotalBytes;
+	}
+
+	/**
+	 * @param key
+	 * @return the cached entry or <code>null</code>
+	 */
+	public Entry get(final Key key)
+	{
+		Slot slot = entries.get(key);
+		if (slot == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		slot.lastAccess = clock.incrementAndGet();
+		hits.incrementAndGet();
+		return slot.entry;
+	}
+
+	/**
+	 * Caches an entry if its uncompressed content is not larger than the
+	 * {@link #getMaxEntrySize() maximum entry size}.
+	 * The least recently used entries are evicted until the entry fits into the
+	 * {@link #getMaxTotalBytes() byte budget}.
+	 * 
+	 * @param key
+	 * @param entry
+	 * @param stream
+	 *            the stream the entry was read from, watched for modifications in development
+	 *            mode, may be <code>null</code>
+	 * @return <code>true</code> if the entry was cached
+	 */
+	public boolean put(final Key key, final Entry entry, final IResourceStream stream)
+	{
+		Args.notNull(key, "key");
+		Args.notNull(entry, "entry");
+
+		final int size = entry.getSize();
+		if (entry.getBytes().length > maxEntrySize || size > maxTotalBytes)
+		{
+			return false;
+		}
+
+		final Slot slot = new Slot(entry, clock.incrementAndGet());
+		Slot previous = entries.put(key, slot);
+		totalBytes.addAndGet(size - (previous != null ? previous.entry.getSize() : 0));
+
+		if (totalBytes.get() > maxTotalBytes)
+		{
+			evict(slot);
+		}
+
+		// drop the entry on changes in development mode
+		final IModificationWatcher watcher = Application.exists() ? Application.get()
+			.getResourceSettings()
+			.getResourceWatcher(true) : null;
+		if (watcher != null && stream != null)
+		{
+			watcher.add(stream, new IChangeListener()
+			{
+				public void onChange()
+				{
+					watcher.remove(stream);
+					remove(key);
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache is within its byte budget. Finding
+	 * them takes a scan over all entries, which only happens when an entry is put into a full
+	 * cache, i.e. after a resource was read anyway.
+	 * 
+	 * @param keep
+	 *            the slot that was just put, never evicted
+	 */
+	private void evict(final Slot keep)
+	{
+		synchronized (evictionLock)
+		{
+			if (totalBytes.get() <= maxTotalBytes)
+			{
+				return;
+			}
+
+			List<Map.Entry<Key, Slot>> eldest = new ArrayList<Map.Entry<Key, Slot>>(
+				entries.entrySet());
+			Collections.sort(eldest, new Comparator<Map.Entry<Key, Slot>>()
+			{
+				public int compare(Map.Entry<Key, Slot> o1, Map.Entry<Key, Slot> o2)
+				{
+					long access1 = o1.getValue().lastAccess;
+					long access2 = o2.getValue().lastAccess;
+					return access1 < access2 ? -1 : (access1 == access2 ? 0 : 1);
+				}
+			});
+
+			for (int i = 0; i < eldest.size() && totalBytes.get() > maxTotalBytes; i++)
+			{
+				Map.Entry<Key, Slot> candidate = eldest.get(i);
+				if (candidate.getValue() != keep)
+				{
+					remove(candidate.getKey(), candidate.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param slot
+	 */
+	private void remove(final Key key, final Slot slot)
+	{
+		if (entries.remove(key, slot))
+		{
+			totalBytes.addAndGet(-slot.entry.getSize());
+		}
+	}
+
+	/**
+	 * @param key
+	 */
+	public void remove(final Key key)
+	{
+		Slot slot = entries.remove(key);
+		if (slot != null)
+		{
+			totalBytes.addAndGet(-slot.entry.getSize());
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear()
+	{
+		for (Map.Entry<Key, Slot> entry : entries.entrySet())
+		{
+			remove(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * @return number of cached entries
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return number of cached bytes
+	 */
+	public long getTotalBytes()
+	{
+		return totalBytes.get();
+	}
+
+	/**
+	 * @return number of lookups which found an entry
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups which didn't find an entry
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Computes a strong entity tag for the given content.
+	 * 
+	 * @param bytes
+	 * @return quoted hex encoded MD5 digest of the bytes
+	 */
+	public static String newETag(final byte[] bytes)
+	{
+		byte[] digest;
+		try
+		{
+			digest = MessageDigest.getInstance("MD5").digest(bytes);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new WicketRuntimeException("Digest algorithm MD5 not available", e);
+		}
+
+		char[] tag = new char[digest.length * 2 + 2];
+		tag[0] = '"';
+		for (int i = 0; i < digest.length; i++)
+		{
+			tag[i * 2 + 1] = HEX[(digest[i] >> 4) & 0xF];
+			tag[i * 2 + 2] = HEX[digest[i] & 0xF];
+		}
+		tag[tag.length - 1] = '"';
+		return new String(tag);
+	}
+
+	/**
+	 * A cached entry and the time of its last access
+	 */
+	private static final class Slot
+	{
+		private final Entry entry;
+
+		private volatile long lastAccess;
+
+		private Slot(final Entry entry, final long lastAccess)
+		{
+			this.entry = entry;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/**
+	 * Identifies a located package resource.
+	 */
+	public static final class Key
+	{
+		private final String resourceClass;
+		private final String scopeName;
+		private final String path;
+		private final Locale locale;
+		private final String style;
+		private final String variation;
+
+		/**
+		 * Construct.
+		 * 
+		 * @param resourceClass
+		 *            the class of the resource, subclasses may deliver different content
+		 * @param scopeName
+		 * @param path
+		 * @param locale
+		 * @param style
+		 * @param variation
+		 */
+		public Key(final Class<?> resourceClass, final String scopeName, final String path,
+			final Locale locale, final String style, final String variation)
+		{
+			this.resourceClass = resourceClass.getName();
+			this.scopeName = scopeName;
+			this.path = path;
+			this.locale = locale;
+			this.style = style;
+			this.variation = variation;
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (obj instanceof Key == false)
+			{
+				return false;
+			}
+			Key that = (Key)obj;
+			return resourceClass.equals(that.resourceClass) &&
+				Objects.equal(scopeName, that.scopeName) && Objects.equal(path, that.path) &&
+				Objects.equal(locale, that.locale) && Objects.equal(style, that.style) &&
+				Objects.equal(variation, that.variation);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hashCode(resourceClass, scopeName, path, locale, style, variation);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "[Key resourceClass=" + resourceClass + ", scope=" + scopeName + ", path=" +
+				path + ", locale=" + locale + ", style=" + style + ", variation=" + variation +
+				"]";
+		}
+	}
+
+	/**
+	 * The cached content of a package resource.
+	 */
+	public static final class Entry
+	{
+		private final byte[] bytes;
+		private final byte[] gzipBytes;
+		private final String contentType;
+		private final Time lastModified;
+		private final String etag;
+		private final String gzipEtag;
+
+		/**
+		 * Construct.
+		 * 
+		 * @param bytes
+		 *            content of the resource
+		 * @param contentType
+		 *            content type, may be <code>null</code>
+		 * @param lastModified
+		 *            last modification time, may be <code>null</code>
+		 */
+		public Entry(final byte[] bytes, final String contentType, final Time lastModified)
+		{
+			this(bytes, null, contentType, lastModified);
+		}
+
+		/**
+		 * Construct.
+		 * 
+		 * @param bytes
+		 *            content of the resource
+		 * @param gzipBytes
+		 *            gzip compressed content of the resource, may be <code>null</code>
+		 * @param contentType
+		 *            content type, may be <code>null</code>
+		 * @param lastModified
+		 *            last modification time, may be <code>null</code>
+		 */
+		public Entry(final byte[] bytes, final byte[] gzipBytes, final String contentType,
+			final Time lastModified)
+		{
+			this.bytes = Args.notNull(bytes, "bytes");
+			this.gzipBytes = gzipBytes;
+			this.contentType = contentType;
+			this.lastModified = lastModified;
+			etag = newETag(bytes);
+			gzipEtag = gzipBytes != null ? etag.substring(0, etag.length() - 1) + "-gzip\""
+				: null;
+		}
+
+		/**
+		 * @return content of the resource, must not be modified
+		 */
+		public byte[] getBytes()
+		{
+			return bytes;
+		}
+
+		/**
+		 * @return gzip compressed content of the resource or <code>null</code>, must not be
+		 *         modified
+		 */
+		public byte[] getGzipBytes()
+		{
+			return gzipBytes;
+		}
+
+		/**
+		 * @return number of bytes held by this entry
+		 */
+		public int getSize()
+		{
+			return bytes.length + (gzipBytes != null ? gzipBytes.length : 0);
+		}
+
+		/**
+		 * @return content type or <code>null</code>
+		 */
+		public String getContentType()
+		{
+			return contentType;
+		}
+
+		/**
+		 * @return last modification time or <code>null</code>
+		 */
+		public Time getLastModified()
+		{
+			return lastModified;
+		}
+
+		/**
+		 * @return quoted entity tag of the content
+		 */
+		public String getETag()
+		{
+			return etag;
+		}
+
+		/**
+		 * @return quoted entity tag of the gzip compressed content or <code>null</code>, differs
+		 *         from {@link #getETag()} as caches have to tell both representations apart
+		 */
+		public String getGzipETag()
+		{
+			return gzipEtag;
+		}
+	}
+}
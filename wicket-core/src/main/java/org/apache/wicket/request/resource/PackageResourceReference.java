@@ -157,6 +157,21 @@ public class PackageResourceReference extends ResourceReference
 		return getStyle() != null ? getStyle() : Session.get().getStyle();
 	}
 
+	/**
+	 * Locates the stream of the resource for the current locale, style and variation.
+	 * 
+	 * @return resource stream or <code>null</code> if not found
+	 */
+	public IResourceStream getResourceStream()
+	{
+		StreamInfo info = lookupStream(getCurrentLocale(), getCurrentStyle(), getVariation());
+
+		if (info == null)
+			return null;
+
+		return info.stream;
+	}
+
 	@Override
 	public Time getLastModified()
 	{
@@ -22,6 +22,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.wicket.request.resource.ResourceReference.Key;
+import org.apache.wicket.resource.aggregation.ConcatBundleResourceReference;
 import org.apache.wicket.util.lang.Args;
 import org.apache.wicket.util.lang.Generics;
 import org.slf4j.Logger;
@@ -350,7 +351,8 @@ public class ResourceReferenceRegistry
 	 * Creates a default resource reference in case no registry entry and it was requested to create
 	 * one.
 	 * <p>
-	 * A {@link PackageResourceReference} will be created by default
+	 * A {@link PackageResourceReference} will be created by default, or a reference resolving a
+	 * {@link ConcatBundleResourceReference bundle} rendered by another node or before a restart.
 	 * 
 	 * @param key
 	 * @return The RR created or null if not successful
@@ -364,7 +366,8 @@ public class ResourceReferenceRegistry
 		}
 		else
 		{
-			return null;
+			return ConcatBundleResourceReference.newUnresolvedReference(key.getScopeClass(),
+				key.getName());
 		}
 	}
 
@@ -26,6 +26,7 @@ import org.apache.wicket.util.lang.Bytes;
 import org.apache.wicket.util.resource.IResourceStream;
 import org.apache.wicket.util.resource.IResourceStreamWriter;
 import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
+import org.apache.wicket.util.time.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,25 +71,15 @@ public class ResourceStreamResource extends AbstractResource
 	protected ResourceResponse newResourceResponse(Attributes attributes)
 	{
 		ResourceResponse data = new ResourceResponse();
-		data.setLastModified(stream.lastModifiedTime().toDate());
+		Time lastModified = stream.lastModifiedTime();
+		if (lastModified != null)
+		{
+			data.setLastModified(lastModified.toDate());
+		}
 
 		// performance check; don't bother to do anything if the resource is still cached by client
 		if (data.dataNeedsToBeWritten(attributes))
 		{
-			InputStream inputStream = null;
-			if (stream instanceof IResourceStreamWriter == false)
-			{
-				try
-				{
-					inputStream = stream.getInputStream();
-				}
-				catch (ResourceStreamNotFoundException e)
-				{
-					data.setError(HttpServletResponse.SC_NOT_FOUND);
-					close();
-				}
-			}
-
 			data.setContentDisposition(contentDisposition);
 			Bytes length = stream.length();
 			if (length != null)
@@ -110,26 +101,55 @@ public class ResourceStreamResource extends AbstractResource
 						close();
 					}
 				});
+				return data;
 			}
-			else
+
+			// support resuming downloads if the length is known
+			data.setAcceptRanges(length != null);
+			final boolean partial = data.applyRequestedRange(attributes);
+			if (data.getErrorCode() != null)
 			{
-				final InputStream s = inputStream;
-				data.setWriteCallback(new WriteCallback()
+				close();
+				return data;
+			}
+			final long offset = partial ? data.getContentRangeFirst() : 0;
+			final long count = partial ? data.getContentRangeLast() - offset + 1
+				: data.getContentLength();
+
+			InputStream inputStream = null;
+			try
+			{
+				inputStream = stream.getInputStream();
+			}
+			catch (ResourceStreamNotFoundException e)
+			{
+				data.setError(HttpServletResponse.SC_NOT_FOUND);
+				close();
+			}
+
+			final InputStream s = inputStream;
+			data.setWriteCallback(new WriteCallback()
+			{
+				@Override
+				public void writeData(Attributes attributes)
 				{
-					@Override
-					public void writeData(Attributes attributes)
+					try
 					{
-						try
+						if (partial)
 						{
-							writeStream(attributes, s);
+							writeStream(attributes, s, offset, count);
 						}
-						finally
+						else
 						{
-							close();
+							writeStream(attributes, s);
 						}
 					}
-				});
-			}
+					finally
+					{
+						close();
+					}
+				}
+			});
 		}
 
 		return data;
@@ -0,0 +1,411 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.resource.caching;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.handler.resource.ResourceReferenceRequestHandler;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.request.resource.PackageResourceReference;
+import org.apache.wicket.request.resource.ResourceReference;
+import org.apache.wicket.util.io.IOUtils;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.listener.IChangeListener;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
+import org.apache.wicket.util.time.Time;
+import org.apache.wicket.util.watch.IModificationWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * resource caching strategy that adds a digest of the resource content to the filename
+ * <p/>
+ * fingerprinted_filename := [basename][fingerprint-prefix][hex-digest](.extension)
+ * <p/>
+ * Unlike {@link FilenameWithTimestampResourceCachingStrategy} the fingerprint only changes when
+ * the content of the resource changes, so redeploying an application or serving it from a cluster
+ * of nodes with different file timestamps keeps the URLs stable.
+ * <p/>
+ * The fingerprints are computed once and cached for the whole application, so rendering a URL
+ * does not touch the file system or class path. In development mode the cached fingerprint of a
+ * resource is dropped when the {@link IModificationWatcher resource watcher} detects a change, in
+ * deployment mode (no resource poll frequency) the cache never changes.
+ * <p/>
+ * As the URL changes with the content the responses are marked as immutable and may be cached
+ * forever, but only if the fingerprint in the requested URL matches the current content. A URL
+ * with an outdated fingerprint, e.g. from a page rendered before the resource changed, is served
+ * with the current content and caching disabled. Fingerprints can only be computed for {@link PackageResourceReference}s, other
+ * references get the last modification timestamp in the filename.
+ */
+public class FilenameWithContentHashResourceCachingStrategy extends
+	AbstractResourceCachingStrategy
+{
+	private static final Logger log = LoggerFactory.getLogger(FilenameWithContentHashResourceCachingStrategy.class);
+
+	protected static final String DEFAULT_FINGERPRINT_PREFIX = "-ver-";
+
+	protected static final String DEFAULT_ALGORITHM = "MD5";
+
+	/** fingerprint stripped from the URL of the current request */
+	private static final MetaDataKey<String> REQUESTED_FINGERPRINT_KEY = new MetaDataKey<String>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
+	/** marks references without a fingerprint in the cache */
+	private static final String NO_FINGERPRINT = "";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final String fingerprintPrefix;
+
+	private final String algorithm;
+
+	/** length of the hex encoded digest */
+	private final int fingerprintLength;
+
+	private final ConcurrentMap<FingerprintKey, String> fingerprints = new ConcurrentHashMap<FingerprintKey, String>();
+
+	/**
+	 * Constructor
+	 */
+	public FilenameWithContentHashResourceCachingStrategy()
+	{
+		this(DEFAULT_FINGERPRINT_PREFIX, DEFAULT_ALGORITHM);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param fingerprintPrefix
+	 *            string appended to the filename before the fingerprint
+	 * @param algorithm
+	 *            name of the {@link MessageDigest} algorithm
+	 */
+	public FilenameWithContentHashResourceCachingStrategy(String fingerprintPrefix,
+		String algorithm)
+	{
+		Args.notEmpty(fingerprintPrefix, "fingerprintPrefix");
+		Args.notEmpty(algorithm, "algorithm");
+		this.fingerprintPrefix = fingerprintPrefix;
+		this.algorithm = algorithm;
+		fingerprintLength = newDigest().getDigestLength() * 2;
+	}
+
+	/**
+	 * @return string appended to the filename before the fingerprint
+	 */
+	public final String getFingerprintPrefix()
+	{
+		return fingerprintPrefix;
+	}
+
+	public void decorateUrl(ResourceUrl url, ResourceReference reference)
+	{
+		String fingerprint = getFingerprint(reference);
+
+		if (fingerprint == null)
+			return;
+
+		final String filename = url.getFileName();
+		int extensionAt = filename.lastIndexOf('.');
+
+		StringBuilder fingerprintedFilename = new StringBuilder(filename.length() +
+			fingerprintPrefix.length() + fingerprint.length());
+		fingerprintedFilename.append(extensionAt == -1 ? filename : filename.substring(0,
+			extensionAt));
+		fingerprintedFilename.append(fingerprintPrefix);
+		fingerprintedFilename.append(fingerprint);
+
+		if (extensionAt != -1)
+			fingerprintedFilename.append(filename.substring(extensionAt));
+
+		url.setFileName(fingerprintedFilename.toString());
+	}
+
+	public void undecorateUrl(ResourceUrl url)
+	{
+		final String filename = url.getFileName();
+		int pos = filename.lastIndexOf('.');
+
+		final String fullname = pos == -1 ? filename : filename.substring(0, pos);
+		final String extension = pos == -1 ? null : filename.substring(pos);
+
+		pos = fullname.lastIndexOf(fingerprintPrefix);
+
+		String requested = null;
+		if (pos != -1)
+		{
+			final String fingerprint = fullname.substring(pos + fingerprintPrefix.length());
+
+			if (isFingerprint(fingerprint))
+			{
+				final String basename = fullname.substring(0, pos);
+				url.setFileName(extension == null ? basename : basename + extension);
+				requested = fingerprint;
+			}
+		}
+
+		RequestCycle requestCycle = RequestCycle.get();
+		if (requestCycle != null)
+		{
+			requestCycle.setMetaData(REQUESTED_FINGERPRINT_KEY, requested);
+		}
+	}
+
+	/**
+	 * If the requested fingerprint matches the current content set resource caching to maximum,
+	 * set cache-visibility to 'public' and mark the response as immutable. Disable caching if the
+	 * fingerprint is outdated.
+	 * 
+	 * @param response
+	 */
+	public void decorateResponse(AbstractResource.ResourceResponse response)
+	{
+		RequestCycle requestCycle = RequestCycle.get();
+		if (requestCycle == null)
+		{
+			return;
+		}
+
+		String requested = requestCycle.getMetaData(REQUESTED_FINGERPRINT_KEY);
+		if (requested == null)
+		{
+			// not requested by a fingerprinted URL
+			return;
+		}
+
+		IRequestHandler handler = requestCycle.getActiveRequestHandler();
+		String current = null;
+		if (handler instanceof ResourceReferenceRequestHandler)
+		{
+			ResourceReferenceRequestHandler referenceHandler = (ResourceReferenceRequestHandler)handler;
+			current = getFingerprint(referenceHandler.getResourceReference());
+		}
+
+		if (requested.equals(current))
+		{
+			response.setCacheDurationToMaximum();
+			response.setCacheScope(WebResponse.CacheScope.PUBLIC);
+			response.setCacheImmutable(true);
+		}
+		else
+		{
+			response.disableCaching();
+		}
+	}
+
+	/**
+	 * Drops all cached fingerprints
+	 */
+	public void clearCache()
+	{
+		fingerprints.clear();
+	}
+
+	/**
+	 * @param reference
+	 * @return content digest of package resources, last modification timestamp of other resources
+	 *         or <code>null</code> if neither is available
+	 */
+	private String getFingerprint(final ResourceReference reference)
+	{
+		if (reference instanceof PackageResourceReference)
+		{
+			return getFingerprint((PackageResourceReference)reference);
+		}
+
+		Time lastModified = getLastModified(reference);
+		return lastModified != null ? Long.toString(lastModified.getMilliseconds()) : null;
+	}
+
+	/**
+	 * Returns the cached fingerprint of the resource or computes it.
+	 * 
+	 * @param reference
+	 * @return fingerprint or <code>null</code> if the resource could not be read
+	 */
+	private String getFingerprint(final PackageResourceReference reference)
+	{
+		final FingerprintKey key = new FingerprintKey(reference, reference.getUrlAttributes());
+
+		String fingerprint = fingerprints.get(key);
+		if (fingerprint == null)
+		{
+			final IResourceStream stream = reference.getResourceStream();
+			fingerprint = computeFingerprint(stream);
+			fingerprints.put(key, fingerprint);
+
+			// watch the resource in development mode
+			final IModificationWatcher watcher = Application.get()
+				.getResourceSettings()
+				.getResourceWatcher(true);
+			if (watcher != null && stream != null)
+			{
+				watcher.add(stream, new IChangeListener()
+				{
+					public void onChange()
+					{
+						watcher.remove(stream);
+						fingerprints.remove(key);
+					}
+				});
+			}
+		}
+		return fingerprint == NO_FINGERPRINT ? null : fingerprint;
+	}
+
+	/**
+	 * @param stream
+	 * @return hex encoded digest of the content or {@link #NO_FINGERPRINT}
+	 */
+	private String computeFingerprint(final IResourceStream stream)
+	{
+		if (stream == null)
+		{
+			return NO_FINGERPRINT;
+		}
+
+		MessageDigest digest = newDigest();
+		try
+		{
+			InputStream in = stream.getInputStream();
+			try
+			{
+				byte[] buffer = new byte[4096];
+				int count;
+				while ((count = in.read(buffer)) != -1)
+				{
+					digest.update(buffer, 0, count);
+				}
+			}
+			finally
+			{
+				IOUtils.closeQuietly(in);
+				stream.close();
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to compute fingerprint of " + stream, e);
+			return NO_FINGERPRINT;
+		}
+		catch (ResourceStreamNotFoundException e)
+		{
+			log.warn("Unable to compute fingerprint of " + stream, e);
+			return NO_FINGERPRINT;
+		}
+
+		byte[] bytes = digest.digest();
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * @param s
+	 * @return whether the string is a fingerprint or a timestamp added by
+	 *         {@link #decorateUrl(ResourceUrl, ResourceReference)}
+	 */
+	private boolean isFingerprint(final String s)
+	{
+		if (s.length() == 0)
+		{
+			return false;
+		}
+
+		boolean digits = true;
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c >= 'a' && c <= 'f')
+			{
+				digits = false;
+			}
+			else if (c < '0' || c > '9')
+			{
+				return false;
+			}
+		}
+		return digits || s.length() == fingerprintLength;
+	}
+
+	private MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new WicketRuntimeException("Digest algorithm " + algorithm + " not available", e);
+		}
+	}
+
+	/**
+	 * Identifies the located resource of a reference
+	 */
+	private static final class FingerprintKey
+	{
+		private final ResourceReference reference;
+		private final ResourceReference.UrlAttributes attributes;
+
+		private FingerprintKey(ResourceReference reference,
+			ResourceReference.UrlAttributes attributes)
+		{
+			this.reference = reference;
+			this.attributes = attributes;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (obj instanceof FingerprintKey == false)
+			{
+				return false;
+			}
+			FingerprintKey that = (FingerprintKey)obj;
+			return reference.equals(that.reference) && attributes.equals(that.attributes);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return reference.hashCode() * 31 + attributes.hashCode();
+		}
+	}
+}
@@ -25,9 +25,11 @@ package org.apache.wicket.resource;
 public abstract interface IPropertiesChangeListener
 {
 	/**
-	 * Fired after a properties file change has been detected
+	 * Fired after a properties file change has been detected or all properties have been cleared
 	 * 
 	 * @param key
+	 *            the path of the changed properties file or <code>null</code> if all properties
+	 *            have been cleared, see {@link IPropertiesFactory#clearCache()}
 	 */
 	void propertiesChanged(final String key);
 }
\ No newline at end of file
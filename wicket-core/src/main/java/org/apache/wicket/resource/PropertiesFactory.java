@@ -101,6 +101,15 @@ public class PropertiesFactory implements IPropertiesFactory
 		return new ConcurrentHashMap<String, Properties>();
 	}
 
+	/**
+	 * @return whether loaded properties are cached, i.e. {@link #newPropertiesCache()} did not
+	 *         return <code>null</code>
+	 */
+	public final boolean isCaching()
+	{
+		return propertiesCache != null;
+	}
+
 	/**
 	 * @see org.apache.wicket.resource.IPropertiesFactory#addListener(org.apache.wicket.resource.IPropertiesChangeListener)
 	 */
@@ -117,6 +126,17 @@ public class PropertiesFactory implements IPropertiesFactory
 	 * @see org.apache.wicket.resource.IPropertiesFactory#clearCache()
 	 */
 	public final void clearCache()
+	{
+		clear();
+
+		// Inform all listeners, e.g. to clear properties they derived from the cached ones
+		notifyListeners(null);
+	}
+
+	/**
+	 * Clears the cached properties and the localizer cache.
+	 */
+	private void clear()
 	{
 		if (propertiesCache != null)
 		{
@@ -127,6 +147,27 @@ public class PropertiesFactory implements IPropertiesFactory
 		application.getResourceSettings().getLocalizer().clearCache();
 	}
 
+	/**
+	 * @param path
+	 *            the path of the changed properties file or <code>null</code> if all properties
+	 *            have been cleared
+	 */
+	private void notifyListeners(final String path)
+	{
+		for (IPropertiesChangeListener listener : afterReloadListeners)
+		{
+			try
+			{
+				listener.propertiesChanged(path);
+			}
+			catch (Throwable ex)
+			{
+				PropertiesFactory.log.error("PropertiesReloadListener has thrown an exception: " +
+					ex.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * 
 	 * @see org.apache.wicket.resource.IPropertiesFactory#load(java.lang.Class, java.lang.String)
@@ -270,21 +311,10 @@ public class PropertiesFactory implements IPropertiesFactory
 
 				// Clear the whole cache as associated localized files may
 				// be affected and may need reloading as well.
-				clearCache();
+				clear();
 
 				// Inform all listeners
-				for (IPropertiesChangeListener listener : afterReloadListeners)
-				{
-					try
-					{
-						listener.propertiesChanged(path);
-					}
-					catch (Throwable ex)
-					{
-						PropertiesFactory.log.error("PropertiesReloadListener has thrown an exception: " +
-							ex.getMessage());
-					}
-				}
+				notifyListeners(path);
 			}
 		});
 	}
@@ -0,0 +1,713 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.resource.aggregation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.RuntimeConfigurationType;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.javascript.IJavaScriptCompressor;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.request.resource.PackageResource.PackageResourceBlockedException;
+import org.apache.wicket.request.resource.PackageResourceCache;
+import org.apache.wicket.request.resource.PackageResourceReference;
+import org.apache.wicket.request.resource.ResourceReference;
+import org.apache.wicket.util.crypt.ICrypt;
+import org.apache.wicket.util.io.IOUtils;
+import org.apache.wicket.util.lang.WicketObjects;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
+import org.apache.wicket.util.string.StringValue;
+import org.apache.wicket.util.string.Strings;
+import org.apache.wicket.util.time.Time;
+
+/**
+ * A resource reference serving several package resources as one concatenated resource, so the
+ * client needs a single request instead of one per resource.
+ * <p>
+ * The name of a bundle contains a digest of its content, so the response is marked as immutable
+ * and may be cached forever. Bundles are created once per list of members with
+ * {@link #bundle(List, boolean)} and registered with the application's
+ * {@link org.apache.wicket.request.resource.ResourceReferenceRegistry}. At most
+ * {@link #MAX_BUNDLES} bundles are kept, the oldest ones are unregistered first. In development
+ * mode the bundle is rebuilt when one of its members changes.
+ * <p>
+ * The members are listed in the {@link #getParameters() parameters} of the bundle URL, so the
+ * URL can be served by a node which has not rendered the bundle itself, e.g. after a restart or
+ * in a cluster. Such a node rebuilds the bundle from the listed members, see
+ * {@link #newUnresolvedReference(Class, String)}. The list is signed with the application's
+ * {@link org.apache.wicket.settings.ISecuritySettings#getCryptFactory() crypt}, so only lists
+ * rendered by the application itself are rebuilt. If the rebuilt content doesn't match the digest
+ * in the name the response is not cached.
+ * <p>
+ * Members must be accepted by the
+ * {@link org.apache.wicket.settings.IResourceSettings#getPackageResourceGuard() package resource
+ * guard} and a bundle must not exceed {@link #MAX_BUNDLE_SIZE} bytes, otherwise no bundle is
+ * created.
+ * <p>
+ * A bundle lives in the package and folder of its first member, so relative URLs in style sheets
+ * keep working if all members share that folder. JavaScript bundles are minified with the
+ * {@link org.apache.wicket.settings.IResourceSettings#getJavaScriptCompressor() JavaScript
+ * compressor} if one is configured.
+ * 
+ * @see ConcatResourceBundlingHeaderResponse
+ */
+public class ConcatBundleResourceReference extends ResourceReference
+{
+	private static final long serialVersionUID = 1L;
+
+	/** maximum number of bundles registered per application */
+	public static final int MAX_BUNDLES = 256;
+
+	/** maximum size of the concatenated members in bytes */
+	public static final int MAX_BUNDLE_SIZE = 1024 * 1024;
+
+	/** name of the URL parameter listing the members */
+	private static final String MEMBER_PARAMETER = "m";
+
+	/** name of the URL parameter with the signature of the members */
+	private static final String SIGNATURE_PARAMETER = "s";
+
+	private static final Pattern BUNDLE_NAME = Pattern.compile(
+		"(.*/)?bundle-[0-9a-f]{32}\\.(css|js)");
+
+	/** bundles of the application */
+	private static final MetaDataKey<Bundles> BUNDLES = new MetaDataKey<Bundles>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final List<PackageResourceReference> members;
+
+	private final boolean css;
+
+	private final Time lastModified;
+
+	private final BundleResource resource;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param scope
+	 * @param name
+	 * @param members
+	 *            the bundled references
+	 * @param css
+	 *            whether the members are style sheets or scripts
+	 * @param content
+	 *            concatenated content of the members
+	 * @param lastModified
+	 *            latest modification time of the members, may be <code>null</code>
+	 */
+	protected ConcatBundleResourceReference(Class<?> scope, String name,
+		List<PackageResourceReference> members, boolean css, byte[] content, Time lastModified)
+	{
+		super(scope, name);
+		this.members = Collections.unmodifiableList(new ArrayList<PackageResourceReference>(
+			members));
+		this.css = css;
+		this.lastModified = lastModified;
+		resource = new BundleResource(content, css ? "text/css" : "text/javascript",
+			lastModified);
+	}
+
+	/**
+	 * @return the bundled references in the order of the concatenation
+	 */
+	public List<PackageResourceReference> getMembers()
+	{
+		return members;
+	}
+
+	/**
+	 * @return whether the members are style sheets
+	 */
+	public boolean isCss()
+	{
+		return css;
+	}
+
+	/**
+	 * @return the URL parameters listing the members, see
+	 *         {@link #newUnresolvedReference(Class, String)}
+	 */
+	public PageParameters getParameters()
+	{
+		PageParameters parameters = new PageParameters();
+		List<String> values = new ArrayList<String>();
+		for (PackageResourceReference member : members)
+		{
+			String value = encodeMember(member);
+			parameters.add(MEMBER_PARAMETER, value);
+			values.add(value);
+		}
+		parameters.add(SIGNATURE_PARAMETER, getCrypt().encryptUrlSafe(sign(values)));
+		return parameters;
+	}
+
+	@Override
+	public IResource getResource()
+	{
+		return resource;
+	}
+
+	@Override
+	public Time getLastModified()
+	{
+		return lastModified;
+	}
+
+	/**
+	 * Gets the bundle of the given references, creating and registering it if needed.
+	 * 
+	 * @param members
+	 *            the references to bundle in the order of the concatenation
+	 * @param css
+	 *            whether the members are style sheets or scripts
+	 * @return the bundle or <code>null</code> if one of the members could not be read
+	 */
+	public static ConcatBundleResourceReference bundle(List<PackageResourceReference> members,
+		boolean css)
+	{
+		Application application = Application.get();
+		Bundles bundles = getBundles(application);
+
+		String key = newKey(members, css);
+		ConcatBundleResourceReference bundle = bundles.map.get(key);
+		if (bundle != null &&
+			application.getConfigurationType() == RuntimeConfigurationType.DEVELOPMENT)
+		{
+			Time latest = getLastModified(members);
+			if (latest != null && latest.equals(bundle.getLastModified()) == false)
+			{
+				application.getResourceReferenceRegistry().unregisterResourceReference(bundle);
+				bundles.map.remove(key, bundle);
+				bundle = null;
+			}
+		}
+
+		if (bundle == null)
+		{
+			bundle = newBundle(members, css);
+			if (bundle == null)
+			{
+				return null;
+			}
+
+			ConcatBundleResourceReference existing = bundles.map.putIfAbsent(key, bundle);
+			if (existing != null)
+			{
+				return existing;
+			}
+			application.getResourceReferenceRegistry().registerResourceReference(bundle);
+			bundles.keys.add(key);
+
+			// unregister the oldest bundles, their URLs still resolve by their parameters
+			while (bundles.keys.size() > MAX_BUNDLES)
+			{
+				ConcatBundleResourceReference eldest = bundles.map.remove(bundles.keys.poll());
+				if (eldest != null)
+				{
+					application.getResourceReferenceRegistry().unregisterResourceReference(eldest);
+				}
+			}
+		}
+		return bundle;
+	}
+
+	/**
+	 * Creates a reference for the URL of a bundle which is not registered, e.g. because it was
+	 * rendered by another node of a cluster or before a restart. Its resource rebuilds the bundle
+	 * from the members listed in the request parameters.
+	 * 
+	 * @param scope
+	 * @param name
+	 * @return the reference or <code>null</code> if the name is not the one of a bundle
+	 * @see org.apache.wicket.request.resource.ResourceReferenceRegistry
+	 */
+	public static ResourceReference newUnresolvedReference(Class<?> scope, String name)
+	{
+		if (BUNDLE_NAME.matcher(name).matches() == false)
+		{
+			return null;
+		}
+		return new UnresolvedReference(scope, name);
+	}
+
+	private static ICrypt getCrypt()
+	{
+		return Application.get().getSecuritySettings().getCryptFactory().newCrypt();
+	}
+
+	/**
+	 * @param values
+	 *            the encoded members
+	 * @return the digest of the members, to be encrypted as signature
+	 */
+	private static String sign(List<String> values)
+	{
+		try
+		{
+			return digest(Strings.join("\n", values).getBytes("UTF-8"));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new WicketRuntimeException(e);
+		}
+	}
+
+	private static Bundles getBundles(Application application)
+	{
+		Bundles bundles = application.getMetaData(BUNDLES);
+		if (bundles == null)
+		{
+			synchronized (application)
+			{
+				bundles = application.getMetaData(BUNDLES);
+				if (bundles == null)
+				{
+					bundles = new Bundles();
+					application.setMetaData(BUNDLES, bundles);
+				}
+			}
+		}
+		return bundles;
+	}
+
+	/**
+	 * @param member
+	 * @return the scope, name and attributes of the member as URL parameter value
+	 */
+	private static String encodeMember(PackageResourceReference member)
+	{
+		StringBuilder value = new StringBuilder();
+		value.append(member.getScope().getName()).append('/').append(member.getName());
+
+		ResourceReference.UrlAttributes attributes = member.getUrlAttributes();
+		if (attributes.getLocale() != null || attributes.getStyle() != null ||
+			attributes.getVariation() != null)
+		{
+			value.append('?')
+				.append(attributes.getLocale() != null ? attributes.getLocale().toString() : "")
+				.append('-')
+				.append(attributes.getStyle() != null ? attributes.getStyle() : "")
+				.append('-')
+				.append(attributes.getVariation() != null ? attributes.getVariation() : "");
+		}
+		return value.toString();
+	}
+
+	/**
+	 * @param value
+	 * @return the member or <code>null</code> if the value is not valid
+	 * @see #encodeMember(PackageResourceReference)
+	 */
+	private static PackageResourceReference decodeMember(String value)
+	{
+		Locale locale = null;
+		String style = null;
+		String variation = null;
+
+		int question = value.lastIndexOf('?');
+		if (question != -1)
+		{
+			String[] attributes = value.substring(question + 1).split("-", 3);
+			if (attributes.length != 3)
+			{
+				return null;
+			}
+			if (attributes[0].length() > 0)
+			{
+				String[] parts = attributes[0].split("_", 3);
+				locale = new Locale(parts[0], parts.length > 1 ? parts[1] : "",
+					parts.length > 2 ? parts[2] : "");
+			}
+			style = Strings.isEmpty(attributes[1]) ? null : attributes[1];
+			variation = Strings.isEmpty(attributes[2]) ? null : attributes[2];
+			value = value.substring(0, question);
+		}
+
+		int slash = value.indexOf('/');
+		if (slash <= 0 || slash == value.length() - 1)
+		{
+			return null;
+		}
+		Class<?> scope = WicketObjects.resolveClass(value.substring(0, slash));
+		if (scope == null)
+		{
+			return null;
+		}
+		return new PackageResourceReference(scope, value.substring(slash + 1), locale, style,
+			variation);
+	}
+
+	/**
+	 * @param members
+	 * @param css
+	 * @return key identifying the located members
+	 */
+	private static String newKey(List<PackageResourceReference> members, boolean css)
+	{
+		StringBuilder key = new StringBuilder(css ? "css" : "js");
+		for (PackageResourceReference member : members)
+		{
+			ResourceReference.UrlAttributes attributes = member.getUrlAttributes();
+			key.append('|')
+				.append(member.getScope().getName())
+				.append('/')
+				.append(member.getName())
+				.append('?')
+				.append(attributes.getLocale())
+				.append('-')
+				.append(attributes.getStyle())
+				.append('-')
+				.append(attributes.getVariation());
+		}
+		return key.toString();
+	}
+
+	private static Time getLastModified(List<PackageResourceReference> members)
+	{
+		Time latest = null;
+		for (PackageResourceReference member : members)
+		{
+			Time time = member.getLastModified();
+			if (time != null && (latest == null || time.after(latest)))
+			{
+				latest = time;
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * Reads and concatenates the members.
+	 * 
+	 * @param members
+	 * @param css
+	 * @return new bundle or <code>null</code> if a member could not be read or is not accepted,
+	 *         or if the bundle would be too large
+	 */
+	private static ConcatBundleResourceReference newBundle(List<PackageResourceReference> members,
+		boolean css)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Time latest = null;
+		byte[] buffer = new byte[4096];
+		for (PackageResourceReference member : members)
+		{
+			try
+			{
+				// let the package resource guard check the member
+				member.getResource();
+			}
+			catch (PackageResourceBlockedException e)
+			{
+				return null;
+			}
+
+			IResourceStream stream = member.getResourceStream();
+			if (stream == null)
+			{
+				return null;
+			}
+			try
+			{
+				Time time = stream.lastModifiedTime();
+				if (time != null && (latest == null || time.after(latest)))
+				{
+					latest = time;
+				}
+				InputStream in = stream.getInputStream();
+				try
+				{
+					int read;
+					while ((read = in.read(buffer)) != -1)
+					{
+						if (out.size() + read > MAX_BUNDLE_SIZE)
+						{
+							return null;
+						}
+						out.write(buffer, 0, read);
+					}
+				}
+				finally
+				{
+					IOUtils.closeQuietly(in);
+					stream.close();
+				}
+			}
+			catch (IOException e)
+			{
+				return null;
+			}
+			catch (ResourceStreamNotFoundException e)
+			{
+				return null;
+			}
+
+			// terminate the last statement or rule of the member
+			out.write(css ? '\n' : ';');
+			out.write('\n');
+		}
+
+		byte[] content = out.toByteArray();
+		if (css == false)
+		{
+			content = compress(content);
+		}
+
+		PackageResourceReference first = members.get(0);
+		String name = first.getName();
+		String folder = name.substring(0, name.lastIndexOf('/') + 1);
+		name = folder + "bundle-" + digest(content) + (css ? ".css" : ".js");
+
+		return new ConcatBundleResourceReference(first.getScope(), name, members, css, content,
+			latest);
+	}
+
+	/**
+	 * @param content
+	 * @return the content minified by the application's JavaScript compressor
+	 */
+	private static byte[] compress(byte[] content)
+	{
+		IJavaScriptCompressor compressor = Application.get()
+			.getResourceSettings()
+			.getJavaScriptCompressor();
+		if (compressor == null)
+		{
+			return content;
+		}
+		try
+		{
+			return compressor.compress(new String(content, "UTF-8")).getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new WicketRuntimeException(e);
+		}
+	}
+
+	private static String digest(byte[] content)
+	{
+		byte[] digest;
+		try
+		{
+			digest = MessageDigest.getInstance("MD5").digest(content);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new WicketRuntimeException("Digest algorithm MD5 not available", e);
+		}
+		char[] hex = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++)
+		{
+			hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * The registered bundles by the keys of their members, and the keys in the order the bundles
+	 * were registered
+	 */
+	private static final class Bundles
+	{
+		private final ConcurrentMap<String, ConcatBundleResourceReference> map = new ConcurrentHashMap<String, ConcatBundleResourceReference>();
+
+		private final Queue<String> keys = new ConcurrentLinkedQueue<String>();
+	}
+
+	/**
+	 * Reference for the URL of a bundle which is not registered
+	 */
+	private static final class UnresolvedReference extends ResourceReference
+	{
+		private static final long serialVersionUID = 1L;
+
+		private UnresolvedReference(Class<?> scope, String name)
+		{
+			super(scope, name);
+		}
+
+		@Override
+		public IResource getResource()
+		{
+			return new UnresolvedBundleResource(getName());
+		}
+	}
+
+	/**
+	 * Rebuilds a bundle from the members listed in the request parameters.
+	 */
+	private static final class UnresolvedBundleResource extends AbstractResource
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+
+		private UnresolvedBundleResource(String name)
+		{
+			this.name = name;
+		}
+
+		@Override
+		protected ResourceResponse newResourceResponse(Attributes attributes)
+		{
+			PageParameters parameters = attributes.getParameters();
+			List<StringValue> values = parameters != null
+				? parameters.getValues(MEMBER_PARAMETER) : Collections.<StringValue> emptyList();
+			List<PackageResourceReference> members = new ArrayList<PackageResourceReference>();
+			if (isSigned(parameters, values))
+			{
+				for (StringValue value : values)
+				{
+					PackageResourceReference member = decodeMember(value.toString());
+					if (member == null)
+					{
+						members.clear();
+						break;
+					}
+					members.add(member);
+				}
+			}
+
+			ConcatBundleResourceReference bundle = members.isEmpty() ? null : bundle(members,
+				name.endsWith(".css"));
+			if (bundle == null)
+			{
+				ResourceResponse response = new ResourceResponse();
+				response.setError(HttpServletResponse.SC_NOT_FOUND);
+				return response;
+			}
+
+			ResourceResponse response = bundle.resource.newResourceResponse(attributes);
+			if (bundle.getName().equals(name) == false)
+			{
+				// the members have changed since the URL was rendered
+				response.setCacheImmutable(false);
+				response.disableCaching();
+			}
+			return response;
+		}
+
+		/**
+		 * @param parameters
+		 * @param values
+		 * @return whether the members have been listed by the application
+		 */
+		private boolean isSigned(PageParameters parameters, List<StringValue> values)
+		{
+			if (values.isEmpty())
+			{
+				return false;
+			}
+			String signature = parameters.get(SIGNATURE_PARAMETER).toString();
+			if (Strings.isEmpty(signature))
+			{
+				return false;
+			}
+			List<String> members = new ArrayList<String>();
+			for (StringValue value : values)
+			{
+				members.add(value.toString());
+			}
+			return sign(members).equals(getCrypt().decryptUrlSafe(signature));
+		}
+	}
+
+	/**
+	 * Serves the concatenated content.
+	 */
+	private static final class BundleResource extends AbstractResource
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] content;
+
+		private final String contentType;
+
+		private final String etag;
+
+		private final Time lastModified;
+
+		private BundleResource(byte[] content, String contentType, Time lastModified)
+		{
+			this.content = content;
+			this.contentType = contentType;
+			this.lastModified = lastModified;
+			etag = PackageResourceCache.newETag(content);
+		}
+
+		@Override
+		protected ResourceResponse newResourceResponse(Attributes attributes)
+		{
+			ResourceResponse response = new ResourceResponse();
+			response.setContentType(contentType);
+			response.setTextEncoding("UTF-8");
+			response.setETag(etag);
+			if (lastModified != null)
+			{
+				response.setLastModified(lastModified.toDate());
+			}
+
+			// the name changes with the content
+			response.setCacheDurationToMaximum();
+			response.setCacheScope(WebResponse.CacheScope.PUBLIC);
+			response.setCacheImmutable(true);
+
+			if (response.dataNeedsToBeWritten(attributes))
+			{
+				response.setContentLength(content.length);
+				response.setWriteCallback(new WriteCallback()
+				{
+					@Override
+					public void writeData(Attributes attributes)
+					{
+						attributes.getResponse().write(content);
+					}
+				});
+			}
+			return response;
+		}
+	}
+}
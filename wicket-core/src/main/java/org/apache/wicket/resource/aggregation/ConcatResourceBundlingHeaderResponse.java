@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.resource.aggregation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.wicket.markup.html.IHeaderResponse;
+import org.apache.wicket.request.resource.PackageResourceReference;
+import org.apache.wicket.util.lang.Objects;
+
+/**
+ * A header response that renders consecutive package resource references as a single
+ * {@link ConcatBundleResourceReference bundle}, cutting down the number of requests a page needs
+ * for its scripts and style sheets.
+ * <p>
+ * All style sheets are rendered before all scripts. Within each group the order of the references
+ * is kept, including the dependencies of
+ * {@link org.apache.wicket.resource.dependencies.AbstractResourceDependentResourceReference}s
+ * which are rendered before their parents. A bundle is started whenever the next reference can't
+ * be added to the current one: references other than {@link PackageResourceReference}s are
+ * rendered on their own, style sheets are only bundled with style sheets of the same media, scope
+ * and folder so relative URLs keep working.
+ * <p>
+ * Use it by setting a header response decorator in your application:
+ * 
+ * <pre>
+ * setHeaderResponseDecorator(new IHeaderResponseDecorator()
+ * {
+ * 	public IHeaderResponse decorate(IHeaderResponse response)
+ * 	{
+ * 		return new ConcatResourceBundlingHeaderResponse(response);
+ * 	}
+ * });
+ * </pre>
+ */
+public class ConcatResourceBundlingHeaderResponse
+	extends
+	AbstractDependencyRespectingResourceAggregatingHeaderResponse<ResourceReferenceCollection, Boolean>
+{
+	/** references collected while a group is rendered, <code>null</code> otherwise */
+	private List<ResourceReferenceAndStringData> pending;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param real
+	 *            the header response we decorate
+	 */
+	public ConcatResourceBundlingHeaderResponse(IHeaderResponse real)
+	{
+		super(real);
+	}
+
+	@Override
+	protected Boolean newGroupingKey(ResourceReferenceAndStringData ref)
+	{
+		return ref.isCss();
+	}
+
+	@Override
+	protected Comparator<Boolean> getGroupingKeyComparator()
+	{
+		// style sheets first
+		return new Comparator<Boolean>()
+		{
+			public int compare(Boolean o1, Boolean o2)
+			{
+				return o2.compareTo(o1);
+			}
+		};
+	}
+
+	@Override
+	protected void renderCollection(Set<ResourceReferenceAndStringData> alreadyRendered,
+		Boolean key, ResourceReferenceCollection coll)
+	{
+		if (pending != null)
+		{
+			// dependencies of a reference in the group
+			super.renderCollection(alreadyRendered, key, coll);
+			return;
+		}
+
+		pending = new ArrayList<ResourceReferenceAndStringData>();
+		List<ResourceReferenceAndStringData> references;
+		try
+		{
+			super.renderCollection(alreadyRendered, key, coll);
+		}
+		finally
+		{
+			references = pending;
+			pending = null;
+		}
+		renderBundled(references);
+	}
+
+	@Override
+	protected void render(ResourceReferenceAndStringData data)
+	{
+		if (pending != null)
+		{
+			pending.add(data);
+		}
+		else
+		{
+			super.render(data);
+		}
+	}
+
+	/**
+	 * Renders the references in order, bundling consecutive references where possible.
+	 * 
+	 * @param references
+	 */
+	private void renderBundled(List<ResourceReferenceAndStringData> references)
+	{
+		List<ResourceReferenceAndStringData> bundle = new ArrayList<ResourceReferenceAndStringData>();
+		for (ResourceReferenceAndStringData data : references)
+		{
+			if (isBundleable(data) == false)
+			{
+				renderBundle(bundle);
+				render(data);
+			}
+			else
+			{
+				if (bundle.isEmpty() == false && isCompatible(bundle.get(0), data) == false)
+				{
+					renderBundle(bundle);
+				}
+				bundle.add(data);
+			}
+		}
+		renderBundle(bundle);
+	}
+
+	/**
+	 * @param data
+	 * @return whether the reference may be part of a bundle
+	 */
+	protected boolean isBundleable(ResourceReferenceAndStringData data)
+	{
+		return data.getReference() instanceof PackageResourceReference;
+	}
+
+	/**
+	 * @param first
+	 *            first reference of the bundle
+	 * @param data
+	 * @return whether the reference may be added to the bundle
+	 */
+	private static boolean isCompatible(ResourceReferenceAndStringData first,
+		ResourceReferenceAndStringData data)
+	{
+		if (first.isCss() != data.isCss())
+		{
+			return false;
+		}
+		if (data.isCss() == false)
+		{
+			return true;
+		}
+		return Objects.equal(first.getString(), data.getString()) &&
+			first.getReference().getScope().equals(data.getReference().getScope()) &&
+			getFolder(first).equals(getFolder(data));
+	}
+
+	private static String getFolder(ResourceReferenceAndStringData data)
+	{
+		String name = data.getReference().getName();
+		return name.substring(0, name.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * Renders the collected references as one bundle and clears the list.
+	 * 
+	 * @param bundle
+	 */
+	private void renderBundle(List<ResourceReferenceAndStringData> bundle)
+	{
+		if (bundle.isEmpty())
+		{
+			return;
+		}
+
+		ResourceReferenceAndStringData first = bundle.get(0);
+		if (bundle.size() > 1)
+		{
+			List<PackageResourceReference> members = new ArrayList<PackageResourceReference>();
+			for (ResourceReferenceAndStringData data : bundle)
+			{
+				members.add((PackageResourceReference)data.getReference());
+			}
+
+			ConcatBundleResourceReference reference = ConcatBundleResourceReference.bundle(
+				members, first.isCss());
+			if (reference != null)
+			{
+				if (first.isCss())
+				{
+					getRealResponse().renderCSSReference(reference, reference.getParameters(),
+						first.getString());
+				}
+				else
+				{
+					getRealResponse().renderJavaScriptReference(reference,
+						reference.getParameters(), null);
+				}
+				bundle.clear();
+				return;
+			}
+		}
+
+		// a single reference or a bundle which couldn't be read
+		for (ResourceReferenceAndStringData data : bundle)
+		{
+			render(data);
+		}
+		bundle.clear();
+	}
+}
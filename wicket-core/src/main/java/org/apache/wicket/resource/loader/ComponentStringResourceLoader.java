@@ -17,8 +17,11 @@
 package org.apache.wicket.resource.loader;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.wicket.Application;
 import org.apache.wicket.Component;
@@ -27,8 +30,12 @@ import org.apache.wicket.Page;
 import org.apache.wicket.markup.html.WebComponent;
 import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.resource.IPropertiesChangeListener;
 import org.apache.wicket.resource.IPropertiesFactory;
 import org.apache.wicket.resource.Properties;
+import org.apache.wicket.resource.PropertiesFactory;
+import org.apache.wicket.util.lang.Generics;
+import org.apache.wicket.util.lang.Objects;
 import org.apache.wicket.util.resource.locator.IResourceStreamLocator;
 import org.apache.wicket.util.resource.locator.ResourceNameIterator;
 import org.apache.wicket.util.string.Strings;
@@ -86,6 +93,13 @@ import org.slf4j.LoggerFactory;
  * to define default sets of string resources and then developers implementing subclasses to either
  * override or extend these in their own resource bundle.
  * <p>
+ * The properties of a class and its super classes are flattened into one index per locale, style
+ * and variation the first time they are needed (or by {@link #precompile(Iterable, Iterable)} at
+ * startup). Further lookups are a single map access instead of probing every candidate properties
+ * file. The index is rebuilt when the {@link IPropertiesFactory} reports changed properties, its
+ * cache is cleared or it is replaced. Factories which don't cache their properties are searched on
+ * every lookup.
+ * <p>
  * This implementation can be subclassed to implement modified behavior. The new implementation must
  * be registered with the Application (ResourceSettings) though.
  * <p>
@@ -99,6 +113,21 @@ public class ComponentStringResourceLoader implements IStringResourceLoader
 	/** Log. */
 	private static final Logger log = LoggerFactory.getLogger(ComponentStringResourceLoader.class);
 
+	/** The flattened properties per class, locale, style and variation */
+	private final ConcurrentMap<BundleKey, Bundle> bundles = Generics.newConcurrentHashMap();
+
+	/** Clears the bundles whenever a properties file has been changed */
+	private final IPropertiesChangeListener changeListener = new IPropertiesChangeListener()
+	{
+		public void propertiesChanged(final String key)
+		{
+			bundles.clear();
+		}
+	};
+
+	/** The factory the change listener has been added to */
+	private volatile IPropertiesFactory listenedFactory;
+
 	/**
 	 * Create and initialize the resource loader.
 	 */
@@ -124,8 +153,114 @@ public class ComponentStringResourceLoader implements IStringResourceLoader
 				"'; Style: '" + style + "'; Variation: '" + variation + "'");
 		}
 
-		// Load the properties associated with the path
 		IPropertiesFactory propertiesFactory = getPropertiesFactory();
+		if (isCaching(propertiesFactory))
+		{
+			return getBundle(propertiesFactory, clazz, locale, style, variation).get(key);
+		}
+		return search(propertiesFactory, clazz, locale, style, variation, key, null);
+	}
+
+	/**
+	 * Builds the indexes of the given classes for all locales ahead of the first request, e.g. in
+	 * the application's init.
+	 * 
+	 * @param classes
+	 *            the classes, typically the pages and panels of the application
+	 * @param locales
+	 *            the locales the application supports
+	 */
+	public final void precompile(final Iterable<Class<?>> classes, final Iterable<Locale> locales)
+	{
+		IPropertiesFactory propertiesFactory = getPropertiesFactory();
+		if (isCaching(propertiesFactory) == false)
+		{
+			return;
+		}
+
+		for (Class<?> clazz : classes)
+		{
+			for (Locale locale : locales)
+			{
+				getBundle(propertiesFactory, clazz, locale, null, null);
+			}
+		}
+	}
+
+	/**
+	 * Removes all flattened properties, e.g. after the properties factory's cache has been cleared.
+	 * 
+	 * @see IPropertiesFactory#clearCache()
+	 */
+	public final void clearCache()
+	{
+		bundles.clear();
+	}
+
+	/**
+	 * The properties can be flattened only if the factory caches them too. Otherwise changed
+	 * properties files would go unnoticed.
+	 * 
+	 * @param propertiesFactory
+	 * @return whether the properties may be flattened
+	 */
+	private static boolean isCaching(final IPropertiesFactory propertiesFactory)
+	{
+		return (propertiesFactory instanceof PropertiesFactory) &&
+			((PropertiesFactory)propertiesFactory).isCaching();
+	}
+
+	/**
+	 * Gets the flattened properties for the class, building them if necessary.
+	 * 
+	 * @param propertiesFactory
+	 * @param clazz
+	 * @param locale
+	 * @param style
+	 * @param variation
+	 * @return the properties
+	 */
+	private Map<String, String> getBundle(final IPropertiesFactory propertiesFactory,
+		final Class<?> clazz, final Locale locale, final String style, final String variation)
+	{
+		BundleKey bundleKey = new BundleKey(clazz, locale, style, variation);
+		Bundle bundle = bundles.get(bundleKey);
+		if ((bundle == null) || (bundle.propertiesFactory != propertiesFactory))
+		{
+			if (listenedFactory != propertiesFactory)
+			{
+				listenedFactory = propertiesFactory;
+				propertiesFactory.addListener(changeListener);
+			}
+			Map<String, String> strings = new HashMap<String, String>();
+			search(propertiesFactory, clazz, locale, style, variation, null, strings);
+			bundle = new Bundle(propertiesFactory, strings);
+			bundles.put(bundleKey, bundle);
+		}
+		return bundle.strings;
+	}
+
+	/**
+	 * Searches the candidate properties files in search order. Either the value of the key is
+	 * returned as soon as it is found, or all properties are collected into the given map. In the
+	 * latter case the first value found for a key wins, just like it does when searching the files
+	 * one by one.
+	 * 
+	 * @param propertiesFactory
+	 * @param clazz
+	 * @param locale
+	 * @param style
+	 * @param variation
+	 * @param key
+	 *            the key to look up or <code>null</code> to collect all properties
+	 * @param strings
+	 *            the map to collect the properties into, if no key is given
+	 * @return the value of the key or <code>null</code> if it was not found
+	 */
+	private String search(final IPropertiesFactory propertiesFactory, Class<?> clazz,
+		final Locale locale, final String style, final String variation, final String key,
+		final Map<String, String> strings)
+	{
 		while (true)
 		{
 			// Create the base path
@@ -138,7 +273,12 @@ public class ComponentStringResourceLoader implements IStringResourceLoader
 				String newPath = iter.next();
 
 				Properties props = propertiesFactory.load(clazz, newPath);
-				if (props != null)
+				if (props == null)
+				{
+					continue;
+				}
+
+				if (key != null)
 				{
 					// Lookup the value
 					String value = props.getString(key);
@@ -147,9 +287,19 @@ public class ComponentStringResourceLoader implements IStringResourceLoader
 						return value;
 					}
 				}
+				else
+				{
+					for (String name : props.getAll().keySet())
+					{
+						if (!strings.containsKey(name))
+						{
+							strings.put(name, props.getString(name));
+						}
+					}
+				}
 			}
 
-			// Didn't find the key yet, continue searching if possible
+			// Continue searching if possible
 			if (isStopResourceSearch(clazz))
 			{
 				break;
@@ -325,4 +475,57 @@ public class ComponentStringResourceLoader implements IStringResourceLoader
 		return clazz.equals(Page.class) || clazz.equals(MarkupContainer.class) ||
 			clazz.equals(Component.class);
 	}
+
+	/**
+	 * Identifies the flattened properties of a class
+	 */
+	private static final class BundleKey
+	{
+		private final Class<?> clazz;
+		private final Locale locale;
+		private final String style;
+		private final String variation;
+
+		private BundleKey(final Class<?> clazz, final Locale locale, final String style,
+			final String variation)
+		{
+			this.clazz = clazz;
+			this.locale = locale;
+			this.style = style;
+			this.variation = variation;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hashCode(clazz, locale, style, variation);
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (obj instanceof BundleKey)
+			{
+				BundleKey that = (BundleKey)obj;
+				return clazz == that.clazz && Objects.equal(locale, that.locale) &&
+					Objects.equal(style, that.style) && Objects.equal(variation, that.variation);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The flattened properties and the factory they have been loaded from
+	 */
+	private static final class Bundle
+	{
+		private final IPropertiesFactory propertiesFactory;
+		private final Map<String, String> strings;
+
+		private Bundle(final IPropertiesFactory propertiesFactory, final Map<String, String> strings)
+		{
+			this.propertiesFactory = propertiesFactory;
+			this.strings = strings;
+		}
+	}
 }
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.serialize.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.util.io.SerializableChecker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A faster {@link JavaSerializer}. It still uses Java Serialization, but
+ * <ul>
+ * <li>reuses a per thread output buffer instead of allocating a new one for every object,</li>
+ * <li>writes the descriptor of a serializable class as its name, serialVersionUID and a fingerprint
+ * of its fields instead of the full field list, and</li>
+ * <li>resolves those descriptors through a dictionary shared by all objects deserialized by this
+ * serializer, so every class is looked up only once per application.</li>
+ * </ul>
+ * Pages of Wicket applications are dominated by the descriptors of their components and models,
+ * so this makes the serialized pages considerably smaller and faster to read and write.
+ * <p>
+ * Because the field list is not part of the stream, objects can only be deserialized with the very
+ * same class versions that serialized them. A stream written by a different class version fails
+ * with an {@link InvalidClassException} instead of silently using the old layout.
+ * <p>
+ * Data written by {@link JavaSerializer} (e.g. by a previous version of the application) is
+ * recognized and still deserialized, but not the other way round. As the format is not compatible
+ * with plain Java Serialization, it has to be enabled explicitly:
+ * 
+ * <pre>
+ * getFrameworkSettings().setSerializer(new CompactJavaSerializer(getApplicationKey()));
+ * </pre>
+ */
+public class CompactJavaSerializer extends JavaSerializer
+{
+	private static final Logger log = LoggerFactory.getLogger(CompactJavaSerializer.class);
+
+	/** the leading bytes of the compact format, never the same as the java.io stream magic */
+	private static final byte[] MAGIC = { 'W', 'C' };
+
+	/** the descriptor is written by name */
+	private static final int COMPACT_DESCRIPTOR = 1;
+
+	/** the descriptor is written by java.io, e.g. for classes that are not serializable */
+	private static final int FULL_DESCRIPTOR = 2;
+
+	/** larger buffers are not kept for reuse */
+	private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+
+	private static final Map<String, Class<?>> PRIMITIVE_CLASSES = new HashMap<String, Class<?>>();
+
+	static
+	{
+		Class<?>[] primitives = { boolean.class, byte.class, char.class, short.class, int.class,
+				long.class, float.class, double.class, void.class };
+		for (Class<?> primitive : primitives)
+		{
+			PRIMITIVE_CLASSES.put(primitive.getName(), primitive);
+		}
+	}
+
+	/** class name -> local descriptor, shared by all deserializations */
+	private final ConcurrentMap<String, ObjectStreamClass> dictionary = new ConcurrentHashMap<String, ObjectStreamClass>();
+
+	/** descriptor -> fingerprint of its fields */
+	private final ConcurrentMap<ObjectStreamClass, Integer> fingerprints = new ConcurrentHashMap<ObjectStreamClass, Integer>();
+
+	private final ThreadLocal<ByteArrayOutputStream> buffers = new ThreadLocal<ByteArrayOutputStream>();
+
+	/**
+	 * Construct.
+	 * 
+	 * @param applicationKey
+	 *            the key of the application or <code>null</code> to use the one of the current
+	 *            application
+	 */
+	public CompactJavaSerializer(final String applicationKey)
+	{
+		super(applicationKey);
+	}
+
+	/**
+	 * @see org.apache.wicket.serialize.java.JavaSerializer#serialize(java.lang.Object)
+	 */
+	@Override
+	public byte[] serialize(final Object object)
+	{
+		ByteArrayOutputStream out = buffers.get();
+		if (out == null)
+		{
+			out = new ByteArrayOutputStream(8192);
+		}
+		else
+		{
+			// take the buffer, a nested serialization must not use it at the same time
+			buffers.remove();
+		}
+
+		try
+		{
+			out.write(MAGIC);
+			ObjectOutputStream oos = new CompactObjectOutputStream(out);
+			oos.writeObject(getApplicationKey(object));
+			try
+			{
+				oos.writeObject(object);
+			}
+			catch (NotSerializableException e)
+			{
+				if (SerializableChecker.isAvailable())
+				{
+					// trigger serialization again, but this time gather some more info
+					new SerializableChecker(e).writeObject(object);
+				}
+				throw e;
+			}
+			oos.flush();
+			return out.toByteArray();
+		}
+		catch (Exception e)
+		{
+			log.error("Error serializing object " + object.getClass() + " [object=" + object + "]",
+				e);
+			return null;
+		}
+		finally
+		{
+			if (out.size() <= MAX_REUSED_BUFFER_SIZE)
+			{
+				out.reset();
+				buffers.set(out);
+			}
+		}
+	}
+
+	/**
+	 * @see org.apache.wicket.serialize.java.JavaSerializer#deserialize(byte[])
+	 */
+	@Override
+	public Object deserialize(final byte[] data)
+	{
+		if (data.length < MAGIC.length || data[0] != MAGIC[0] || data[1] != MAGIC[1])
+		{
+			// written by JavaSerializer
+			return super.deserialize(data);
+		}
+
+		ThreadContext old = ThreadContext.get(false);
+		try
+		{
+			InputStream in = new ByteArrayInputStream(data, MAGIC.length, data.length -
+				MAGIC.length);
+			ObjectInputStream ois = new CompactObjectInputStream(in);
+			String applicationKey = (String)ois.readObject();
+			if (applicationKey != null && !Application.exists())
+			{
+				Application app = Application.get(applicationKey);
+				if (app != null)
+				{
+					ThreadContext.setApplication(app);
+				}
+			}
+			return ois.readObject();
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new RuntimeException("Could not deserialize object", e);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Could not deserialize object", e);
+		}
+		finally
+		{
+			ThreadContext.restore(old);
+		}
+	}
+
+	/**
+	 * @param object
+	 * @return the key of the application to write in front of the object
+	 */
+	private String getApplicationKey(final Object object)
+	{
+		String applicationKey = getApplicationKey();
+		if (applicationKey == null && Application.exists())
+		{
+			applicationKey = Application.get().getApplicationKey();
+		}
+		return applicationKey;
+	}
+
+	/**
+	 * @param desc
+	 * @return a hash of the class name and its serializable fields
+	 */
+	private int getFingerprint(final ObjectStreamClass desc)
+	{
+		Integer fingerprint = fingerprints.get(desc);
+		if (fingerprint == null)
+		{
+			int hash = desc.getName().hashCode();
+			for (ObjectStreamField field : desc.getFields())
+			{
+				hash = 31 * hash + field.getName().hashCode();
+				hash = 31 * hash + field.getTypeCode();
+				if (field.getTypeString() != null)
+				{
+					hash = 31 * hash + field.getTypeString().hashCode();
+				}
+			}
+			fingerprint = hash;
+			fingerprints.put(desc, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @param name
+	 * @return the local class with given name
+	 * @throws ClassNotFoundException
+	 */
+	private Class<?> resolveClassName(final String name) throws ClassNotFoundException
+	{
+		Class<?> primitive = PRIMITIVE_CLASSES.get(name);
+		if (primitive != null)
+		{
+			return primitive;
+		}
+
+		if (Application.exists())
+		{
+			Class<?> candidate = Application.get()
+				.getApplicationSettings()
+				.getClassResolver()
+				.resolveClass(name);
+			if (candidate != null)
+			{
+				return candidate;
+			}
+		}
+
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		if (loader == null)
+		{
+			loader = CompactJavaSerializer.class.getClassLoader();
+		}
+		return Class.forName(name, false, loader);
+	}
+
+	/**
+	 * Writes the descriptors of serializable classes by name.
+	 */
+	private class CompactObjectOutputStream extends ObjectOutputStream
+	{
+		private CompactObjectOutputStream(final OutputStream out) throws IOException
+		{
+			super(out);
+		}
+
+		@Override
+		protected void writeClassDescriptor(final ObjectStreamClass desc) throws IOException
+		{
+			Class<?> cl = desc.forClass();
+			if (cl != null && ObjectStreamClass.lookup(cl) != null)
+			{
+				writeByte(COMPACT_DESCRIPTOR);
+				writeUTF(desc.getName());
+				writeLong(desc.getSerialVersionUID());
+				writeInt(getFingerprint(desc));
+			}
+			else
+			{
+				writeByte(FULL_DESCRIPTOR);
+				super.writeClassDescriptor(desc);
+			}
+		}
+	}
+
+	/**
+	 * Reads the descriptors written by {@link CompactObjectOutputStream}.
+	 */
+	private class CompactObjectInputStream extends ObjectInputStream
+	{
+		private CompactObjectInputStream(final InputStream in) throws IOException
+		{
+			super(in);
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException,
+			ClassNotFoundException
+		{
+			int type = readByte();
+			if (type == FULL_DESCRIPTOR)
+			{
+				return super.readClassDescriptor();
+			}
+			else if (type != COMPACT_DESCRIPTOR)
+			{
+				throw new IOException("Unknown class descriptor type " + type);
+			}
+
+			String name = readUTF();
+			long serialVersionUID = readLong();
+			int fingerprint = readInt();
+
+			ObjectStreamClass desc = dictionary.get(name);
+			if (desc == null)
+			{
+				desc = ObjectStreamClass.lookup(resolveClassName(name));
+				if (desc == null)
+				{
+					throw new InvalidClassException(name, "local class is not serializable");
+				}
+				dictionary.putIfAbsent(name, desc);
+			}
+
+			if (desc.getSerialVersionUID() != serialVersionUID ||
+				getFingerprint(desc) != fingerprint)
+			{
+				throw new InvalidClassException(name,
+					"local class is incompatible with the serialized one");
+			}
+			return desc;
+		}
+
+		@Override
+		protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException,
+			ClassNotFoundException
+		{
+			Class<?> cl = desc.forClass();
+			if (cl == null)
+			{
+				cl = resolveClassName(desc.getName());
+			}
+			return cl;
+		}
+	}
+}
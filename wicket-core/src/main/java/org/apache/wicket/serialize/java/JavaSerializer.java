@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.serialize.java;
+
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.util.io.IObjectStreamFactory;
+import org.apache.wicket.util.lang.WicketObjects;
+
+/**
+ * An implementation of {@link ISerializer} based on Java Serialization (ObjectOutputStream,
+ * ObjectInputStream). It produces the format used by {@link WicketObjects} and honors the
+ * configured {@link IObjectStreamFactory}.
+ */
+public class JavaSerializer implements ISerializer
+{
+	/**
+	 * The key of the application which can be used later to find the proper
+	 * {@link org.apache.wicket.application.IClassResolver}
+	 */
+	private final String applicationKey;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param applicationKey
+	 *            the key of the application or <code>null</code> to use the one of the current
+	 *            application
+	 */
+	public JavaSerializer(final String applicationKey)
+	{
+		this.applicationKey = applicationKey;
+	}
+
+	/**
+	 * @see org.apache.wicket.serialize.ISerializer#serialize(java.lang.Object)
+	 */
+	public byte[] serialize(final Object object)
+	{
+		if (applicationKey != null)
+		{
+			return WicketObjects.objectToByteArray(object, applicationKey);
+		}
+		return WicketObjects.objectToByteArray(object);
+	}
+
+	/**
+	 * @see org.apache.wicket.serialize.ISerializer#deserialize(byte[])
+	 */
+	public Object deserialize(final byte[] data)
+	{
+		return WicketObjects.byteArrayToObject(data);
+	}
+
+	/**
+	 * @return the key of the application this serializer has been created for
+	 */
+	protected String getApplicationKey()
+	{
+		return applicationKey;
+	}
+}
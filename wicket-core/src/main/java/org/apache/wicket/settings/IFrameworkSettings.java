@@ -18,6 +18,7 @@ package org.apache.wicket.settings;
 
 import org.apache.wicket.IDetachListener;
 import org.apache.wicket.IEventDispatcher;
+import org.apache.wicket.serialize.ISerializer;
 
 /**
  * Framework settings for retrieving and configuring framework settings.
@@ -61,4 +62,18 @@ public interface IFrameworkSettings extends IEventDispatcher
 	 */
 	public void add(IEventDispatcher dispatcher);
 
+	/**
+	 * Sets the {@link ISerializer} that will be used to convert pages from/to byte arrays
+	 * 
+	 * @param serializer
+	 *            the {@link ISerializer} to use
+	 */
+	void setSerializer(ISerializer serializer);
+
+	/**
+	 * @return the {@link ISerializer} that will be used to convert pages from/to byte arrays.
+	 *         Defaults to a {@link org.apache.wicket.serialize.java.JavaSerializer}.
+	 */
+	ISerializer getSerializer();
+
 }
@@ -145,6 +145,16 @@ public interface IRequestCycleSettings
 	 */
 	boolean getBufferResponse();
 
+	/**
+	 * Gets whether Wicket encodes text responses, e.g. rendered pages, itself and writes them to
+	 * the servlet output stream instead of the servlet writer. The text is encoded with the
+	 * response's character encoding through a reused buffer. Text is written to the writer anyway
+	 * if the writer has already been used for the response.
+	 * 
+	 * @return whether text responses are written as bytes
+	 */
+	boolean getEncodeResponseText();
+
 	/**
 	 * Gets whether Wicket should try to get extensive client info by redirecting to
 	 * {@link BrowserInfoPage a page that polls for client capabilities}. This method is used by the
@@ -209,6 +219,14 @@ public interface IRequestCycleSettings
 	 */
 	void setBufferResponse(boolean bufferResponse);
 
+	/**
+	 * @see #getEncodeResponseText()
+	 * 
+	 * @param encodeResponseText
+	 *            True if text responses should be written as bytes. False by default.
+	 */
+	void setEncodeResponseText(boolean encodeResponseText);
+
 	/**
 	 * Sets whether Wicket should try to get extensive client info by redirecting to
 	 * {@link BrowserInfoPage a page that polls for client capabilities}. This method is used by the
@@ -24,6 +24,7 @@ import org.apache.wicket.javascript.IJavaScriptCompressor;
 import org.apache.wicket.markup.html.IPackageResourceGuard;
 import org.apache.wicket.markup.html.PackageResourceGuard;
 import org.apache.wicket.model.IModel;
+import org.apache.wicket.request.resource.PackageResourceCache;
 import org.apache.wicket.request.resource.caching.IResourceCachingStrategy;
 import org.apache.wicket.resource.IPropertiesFactory;
 import org.apache.wicket.resource.loader.IStringResourceLoader;
@@ -364,4 +365,22 @@ public interface IResourceSettings
 	 * @see IResourceCachingStrategy
 	 */
 	void setCachingStrategy(IResourceCachingStrategy strategy);
+
+	/**
+	 * Gets the cache of package resource contents.
+	 * 
+	 * @return the cache of package resource contents
+	 */
+	PackageResourceCache getPackageResourceCache();
+
+	/**
+	 * Sets the cache of package resource contents. Use a cache with a byte budget of
+	 * <code>0</code> to read package resources on every request.
+	 * 
+	 * @param cache
+	 *            the cache of package resource contents
+	 * 
+	 * @see PackageResourceCache
+	 */
+	void setPackageResourceCache(PackageResourceCache cache);
 }
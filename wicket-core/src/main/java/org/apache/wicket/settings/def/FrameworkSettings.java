@@ -19,10 +19,13 @@ package org.apache.wicket.settings.def;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.wicket.Application;
 import org.apache.wicket.IDetachListener;
 import org.apache.wicket.IEventDispatcher;
 import org.apache.wicket.event.IEvent;
 import org.apache.wicket.event.IEventSink;
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.serialize.java.JavaSerializer;
 import org.apache.wicket.settings.IFrameworkSettings;
 import org.apache.wicket.util.lang.Args;
 import org.apache.wicket.util.string.Strings;
@@ -42,6 +45,32 @@ public class FrameworkSettings implements IFrameworkSettings
 	private IDetachListener detachListener;
 	private List<IEventDispatcher> eventDispatchers = null;
 
+	private final Application application;
+
+	/**
+	 * The {@link ISerializer} that will be used to convert pages from/to byte arrays
+	 */
+	private ISerializer serializer;
+
+	/**
+	 * Construct.
+	 */
+	public FrameworkSettings()
+	{
+		this(null);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param application
+	 *            the application the settings belong to
+	 */
+	public FrameworkSettings(final Application application)
+	{
+		this.application = application;
+	}
+
 	/**
 	 * @see org.apache.wicket.settings.IFrameworkSettings#getVersion()
 	 */
@@ -103,4 +132,25 @@ public class FrameworkSettings implements IFrameworkSettings
 			dispatcher.dispatchEvent(sink, event);
 		}
 	}
+
+	/**
+	 * @see org.apache.wicket.settings.IFrameworkSettings#setSerializer(org.apache.wicket.serialize.ISerializer)
+	 */
+	public void setSerializer(final ISerializer serializer)
+	{
+		this.serializer = Args.notNull(serializer, "serializer");
+	}
+
+	/**
+	 * @see org.apache.wicket.settings.IFrameworkSettings#getSerializer()
+	 */
+	public ISerializer getSerializer()
+	{
+		if (serializer == null)
+		{
+			serializer = new JavaSerializer(application != null
+				? application.getApplicationKey() : null);
+		}
+		return serializer;
+	}
 }
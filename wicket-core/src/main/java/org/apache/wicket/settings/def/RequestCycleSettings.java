@@ -41,6 +41,9 @@ public class RequestCycleSettings implements IRequestCycleSettings
 	/** True if the response should be buffered */
 	private boolean bufferResponse = true;
 
+	/** True if text responses are encoded by Wicket */
+	private boolean encodeResponseText = false;
+
 	/**
 	 * Whether Wicket should try to get extensive client info by redirecting to
 	 * {@link org.apache.wicket.markup.html.pages.BrowserInfoPage a page that polls for client
@@ -98,6 +101,14 @@ public class RequestCycleSettings implements IRequestCycleSettings
 		return bufferResponse;
 	}
 
+	/**
+	 * @see org.apache.wicket.settings.IRequestCycleSettings#getEncodeResponseText()
+	 */
+	public boolean getEncodeResponseText()
+	{
+		return encodeResponseText;
+	}
+
 	/**
 	 * @see org.apache.wicket.settings.IRequestCycleSettings#getGatherExtendedBrowserInfo()
 	 */
@@ -161,6 +172,14 @@ public class RequestCycleSettings implements IRequestCycleSettings
 		this.bufferResponse = bufferResponse;
 	}
 
+	/**
+	 * @see org.apache.wicket.settings.IRequestCycleSettings#setEncodeResponseText(boolean)
+	 */
+	public void setEncodeResponseText(boolean encodeResponseText)
+	{
+		this.encodeResponseText = encodeResponseText;
+	}
+
 	/**
 	 * @see org.apache.wicket.settings.IRequestCycleSettings#setGatherExtendedBrowserInfo(boolean)
 	 */
@@ -25,6 +25,7 @@ import org.apache.wicket.Localizer;
 import org.apache.wicket.javascript.IJavaScriptCompressor;
 import org.apache.wicket.markup.html.IPackageResourceGuard;
 import org.apache.wicket.markup.html.PackageResourceGuard;
+import org.apache.wicket.request.resource.PackageResourceCache;
 import org.apache.wicket.request.resource.caching.FilenameWithTimestampResourceCachingStrategy;
 import org.apache.wicket.request.resource.caching.IResourceCachingStrategy;
 import org.apache.wicket.request.resource.caching.NoOpResourceCachingStrategy;
@@ -112,6 +113,9 @@ public class ResourceSettings implements IResourceSettings
 	// resource caching strategy
 	private IResourceCachingStrategy resourceCachingStrategy = new FilenameWithTimestampResourceCachingStrategy();
 
+	/** cache of package resource contents */
+	private PackageResourceCache packageResourceCache = new PackageResourceCache();
+
 
 	/**
 	 * Construct
@@ -442,4 +446,20 @@ public class ResourceSettings implements IResourceSettings
 		}
 		this.resourceCachingStrategy = strategy;
 	}
+
+	/**
+	 * @see org.apache.wicket.settings.IResourceSettings#getPackageResourceCache()
+	 */
+	public PackageResourceCache getPackageResourceCache()
+	{
+		return packageResourceCache;
+	}
+
+	/**
+	 * @see org.apache.wicket.settings.IResourceSettings#setPackageResourceCache(org.apache.wicket.request.resource.PackageResourceCache)
+	 */
+	public void setPackageResourceCache(PackageResourceCache cache)
+	{
+		packageResourceCache = Args.notNull(cache, "cache");
+	}
 }
@@ -543,7 +543,7 @@ public final class ClassStreamHandler
 			{
 				return null;
 			}
-			cons = reflFactory.newConstructorForSerialization(cl, cons);
+			cons = (Constructor)reflFactory.newConstructorForSerialization(cl, cons);
 			cons.setAccessible(true);
 			return cons;
 		}
@@ -20,9 +20,11 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.wicket.Application;
 import org.apache.wicket.Session;
@@ -72,6 +74,13 @@ public final class PropertyResolver
 
 	private final static Map<Object, IClassCache> applicationToClassesToGetAndSetters = Generics.newConcurrentHashMap(2);
 
+	private final static Map<Object, IGetAndSetOptimizer> applicationToOptimizers = Generics.newConcurrentHashMap(2);
+
+	private final static Map<Object, ExpressionCache> applicationToExpressions = Generics.newConcurrentHashMap(2);
+
+	/** maximum number of compiled expressions kept per application */
+	private final static int MAX_COMPILED_EXPRESSIONS = 4096;
+
 	private static final String GET = "get";
 	private static final String IS = "is";
 	private static final String SET = "set";
@@ -93,6 +102,22 @@ public final class PropertyResolver
 			return object;
 		}
 
+		// answer from the compiled expression without allocating anything
+		Class<?> clz = object.getClass();
+		CompiledExpression compiled = getExpressionCache().get(clz, expression);
+		if (compiled != null)
+		{
+			Object target = compiled.resolve(object, RETURN_NULL, clz);
+			if (target == CompiledExpression.NULL_RESULT)
+			{
+				return null;
+			}
+			else if (target != CompiledExpression.MISMATCH)
+			{
+				return compiled.getAndSetter.getValue(target);
+			}
+		}
+
 		ObjectAndGetSetter getter = getObjectAndGetSetter(expression, object, RETURN_NULL);
 		if (getter == null)
 		{
@@ -256,6 +281,26 @@ public final class PropertyResolver
 	private static ObjectAndGetSetter getObjectAndGetSetter(final String expression,
 		final Object object, final int tryToCreateNull, Class<?> clz)
 	{
+		final Class<?> rootClass = clz;
+		ExpressionCache expressions = getExpressionCache();
+		CompiledExpression compiled = expressions.get(rootClass, expression);
+		if (compiled != null)
+		{
+			Object target = compiled.resolve(object, tryToCreateNull, rootClass);
+			if (target == CompiledExpression.NULL_RESULT)
+			{
+				return null;
+			}
+			else if (target != CompiledExpression.MISMATCH)
+			{
+				return new ObjectAndGetSetter(compiled.getAndSetter, target);
+			}
+		}
+
+		// the classes and accessors of all steps, to compile the expression when it resolves
+		List<Class<?>> classes = new ArrayList<Class<?>>(4);
+		List<IGetAndSet> getAndSetters = new ArrayList<IGetAndSet>(4);
+
 		String expressionBracketsSeperated = Strings.replaceAll(expression, "[", ".[").toString();
 		int index = getNextDotIndex(expressionBracketsSeperated, 0);
 		int lastIndex = 0;
@@ -291,6 +336,9 @@ public final class PropertyResolver
 					break;
 				}
 			}
+			classes.add(clz);
+			getAndSetters.add(getAndSetter);
+
 			Object newValue = null;
 			if (value != null)
 			{
@@ -331,6 +379,9 @@ public final class PropertyResolver
 			}
 		}
 		IGetAndSet getAndSetter = getGetAndSetter(exp, clz);
+		classes.add(clz);
+		expressions.put(rootClass, expression, new CompiledExpression(classes, getAndSetters,
+			getAndSetter));
 		return new ObjectAndGetSetter(getAndSetter, value);
 	}
 
@@ -511,6 +562,11 @@ public final class PropertyResolver
 				getAndSetter = new MethodGetAndSet(method, MethodGetAndSet.findSetter(method, clz),
 					field);
 			}
+			IGetAndSetOptimizer optimizer = getOptimizer();
+			if (optimizer != null)
+			{
+				getAndSetter = optimizer.optimize(clz, getAndSetter);
+			}
 			getAndSetters.put(exp, getAndSetter);
 		}
 		return getAndSetter;
@@ -1433,6 +1489,46 @@ public final class PropertyResolver
 	public static void destroy(Application application)
 	{
 		applicationToClassesToGetAndSetters.remove(application);
+		applicationToOptimizers.remove(application);
+		applicationToExpressions.remove(application);
+	}
+
+	/**
+	 * Clears the compiled expressions of the given application, e.g. after its classes have been
+	 * reloaded. Expressions of reloaded classes are never used again anyway, as the classes of the
+	 * objects no longer match, but they would still be referenced.
+	 * 
+	 * @param application
+	 *            the application or null for the default
+	 */
+	public static void clearExpressionCache(final Application application)
+	{
+		ExpressionCache expressions = applicationToExpressions.get(application != null
+			? application : PropertyResolver.class);
+		if (expressions != null)
+		{
+			expressions.clear();
+		}
+	}
+
+	private static ExpressionCache getExpressionCache()
+	{
+		Object key = null;
+		if (Application.exists())
+		{
+			key = Application.get();
+		}
+		else
+		{
+			key = PropertyResolver.class;
+		}
+		ExpressionCache result = applicationToExpressions.get(key);
+		if (result == null)
+		{
+			applicationToExpressions.put(key, result = new ExpressionCache(
+				MAX_COMPILED_EXPRESSIONS));
+		}
+		return result;
 	}
 
 	/**
@@ -1457,6 +1553,71 @@ public final class PropertyResolver
 		{
 			applicationToClassesToGetAndSetters.put(PropertyResolver.class, classCache);
 		}
+		clearExpressionCache(application);
+	}
+
+	private static IGetAndSetOptimizer getOptimizer()
+	{
+		if (applicationToOptimizers.isEmpty())
+		{
+			return null;
+		}
+		IGetAndSetOptimizer optimizer = null;
+		if (Application.exists())
+		{
+			optimizer = applicationToOptimizers.get(Application.get());
+		}
+		if (optimizer == null)
+		{
+			optimizer = applicationToOptimizers.get(PropertyResolver.class);
+		}
+		return optimizer;
+	}
+
+	/**
+	 * Sets the {@link IGetAndSetOptimizer} for the given application. Only {@link IGetAndSet}s
+	 * resolved after this call are optimized, so it should be set in the application's init.
+	 * 
+	 * If the Application is null then it will be the default if no application is found.
+	 * 
+	 * @param application
+	 *            to use or null if the default must be set.
+	 * @param optimizer
+	 *            the optimizer or null to remove it
+	 */
+	public static void setOptimizer(final Application application,
+		final IGetAndSetOptimizer optimizer)
+	{
+		Object key = application != null ? application : PropertyResolver.class;
+		if (optimizer != null)
+		{
+			applicationToOptimizers.put(key, optimizer);
+		}
+		else
+		{
+			applicationToOptimizers.remove(key);
+		}
+		clearExpressionCache(application);
+	}
+
+	/**
+	 * An optimizer is given every {@link IGetAndSet} the resolver creates before it is put into the
+	 * {@link IClassCache}. It can replace it with a faster implementation, e.g. one which calls the
+	 * {@link IGetAndSet#getGetter() getter} and {@link IGetAndSet#getSetter() setter} through
+	 * generated code instead of reflection.
+	 * 
+	 * @see PropertyResolver#setOptimizer(Application, IGetAndSetOptimizer)
+	 */
+	public static interface IGetAndSetOptimizer
+	{
+		/**
+		 * @param clz
+		 *            the class the property is resolved on
+		 * @param getAndSet
+		 *            the reflection based property access
+		 * @return the replacement or the given getAndSet itself
+		 */
+		IGetAndSet optimize(Class<?> clz, IGetAndSet getAndSet);
 	}
 
 	/**
@@ -1504,4 +1665,151 @@ public final class PropertyResolver
 			map.put(clz, values);
 		}
 	}
+
+	/**
+	 * The accessors an expression resolved to, starting at a root class. The accessors depend on
+	 * the classes of the intermediate objects, so every step remembers the class it was resolved
+	 * on and the expression only applies as long as those classes match.
+	 */
+	private static final class CompiledExpression
+	{
+		/** {@link #resolve(Object, int, Class)} result if the slow path would return null */
+		private static final Object NULL_RESULT = new Object();
+
+		/** {@link #resolve(Object, int, Class)} result if the classes do not match */
+		private static final Object MISMATCH = new Object();
+
+		/** classes of all steps, including the last one */
+		private final Class<?>[] classes;
+
+		/** accessors of the intermediate steps */
+		private final IGetAndSet[] getAndSetters;
+
+		/** accessor of the last step */
+		private final IGetAndSet getAndSetter;
+
+		private CompiledExpression(List<Class<?>> classes, List<IGetAndSet> getAndSetters,
+			IGetAndSet getAndSetter)
+		{
+			this.classes = classes.toArray(new Class<?>[classes.size()]);
+			this.getAndSetters = getAndSetters.toArray(new IGetAndSet[getAndSetters.size()]);
+			this.getAndSetter = getAndSetter;
+		}
+
+		/**
+		 * Walks the intermediate steps like
+		 * {@link PropertyResolver#getObjectAndGetSetter(String, Object, int, Class)}.
+		 * 
+		 * @param object
+		 * @param tryToCreateNull
+		 * @param clz
+		 *            class of the object
+		 * @return the object the last accessor applies to, {@link #NULL_RESULT} or
+		 *         {@link #MISMATCH}
+		 */
+		private Object resolve(final Object object, final int tryToCreateNull, Class<?> clz)
+		{
+			Object value = object;
+			for (int i = 0; i < getAndSetters.length; i++)
+			{
+				if (clz != classes[i])
+				{
+					return MISMATCH;
+				}
+
+				IGetAndSet step = getAndSetters[i];
+				Object newValue = null;
+				if (value != null)
+				{
+					newValue = step.getValue(value);
+				}
+				if (newValue == null)
+				{
+					if (tryToCreateNull == CREATE_NEW_VALUE)
+					{
+						newValue = step.newValue(value);
+						if (newValue == null)
+						{
+							return NULL_RESULT;
+						}
+					}
+					else if (tryToCreateNull == RESOLVE_CLASS)
+					{
+						clz = step.getTargetClass();
+					}
+					else
+					{
+						return NULL_RESULT;
+					}
+				}
+				value = newValue;
+				if (value != null)
+				{
+					clz = value.getClass();
+				}
+			}
+			return clz == classes[getAndSetters.length] ? value : MISMATCH;
+		}
+	}
+
+	/**
+	 * Compiled expressions by root class and expression. The cache is cleared when it grows beyond
+	 * its bound, as long running applications use a stable set of expressions and it fills up
+	 * again quickly.
+	 */
+	private static final class ExpressionCache
+	{
+		private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, CompiledExpression>> map = Generics.newConcurrentHashMap(16);
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		private final int maxSize;
+
+		private ExpressionCache(int maxSize)
+		{
+			this.maxSize = maxSize;
+		}
+
+		private CompiledExpression get(Class<?> clz, String expression)
+		{
+			ConcurrentHashMap<String, CompiledExpression> expressions = map.get(clz);
+			return expressions != null ? expressions.get(expression) : null;
+		}
+
+		private void put(Class<?> clz, String expression, CompiledExpression compiled)
+		{
+			// respect an IClassCache which does not keep all classes, e.g. generated proxies
+			IClassCache classCache = getClassesToGetAndSetters();
+			for (Class<?> stepClass : compiled.classes)
+			{
+				if (classCache.get(stepClass) == null)
+				{
+					return;
+				}
+			}
+
+			ConcurrentHashMap<String, CompiledExpression> expressions = map.get(clz);
+			if (expressions == null)
+			{
+				expressions = Generics.newConcurrentHashMap(8);
+				ConcurrentHashMap<String, CompiledExpression> existing = map.putIfAbsent(clz,
+					expressions);
+				if (existing != null)
+				{
+					expressions = existing;
+				}
+			}
+			if (expressions.put(expression, compiled) == null &&
+				size.incrementAndGet() > maxSize)
+			{
+				clear();
+			}
+		}
+
+		private void clear()
+		{
+			map.clear();
+			size.set(0);
+		}
+	}
 }
@@ -16,8 +16,10 @@
  */
 package org.apache.wicket;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.MissingResourceException;
 
@@ -33,6 +35,7 @@ import org.apache.wicket.model.Model;
 import org.apache.wicket.model.PropertyModel;
 import org.apache.wicket.resource.DummyApplication;
 import org.apache.wicket.resource.loader.ComponentStringResourceLoader;
+import org.apache.wicket.resource.loader.IStringResourceLoader;
 import org.apache.wicket.settings.IResourceSettings;
 import org.apache.wicket.util.string.Strings;
 import org.apache.wicket.util.tester.WicketTester;
@@ -261,6 +264,127 @@ public class LocalizerTest extends TestCase
 		}
 	}
 
+	/**
+	 * Prefetched keys are answered from the cache, including not found ones
+	 */
+	public void testPrefetch()
+	{
+		localizer.setEnableCache(true);
+		CountingLoader counting = new CountingLoader();
+		settings.getStringResourceLoaders().add(0, counting);
+
+		MyMockPage page = new MyMockPage();
+		localizer.prefetch(Arrays.asList("test.string", "unknown.string"), page.drop1, null,
+			null);
+		assertEquals(2, counting.loaded);
+
+		assertEquals("This is a test", localizer.getString("test.string", page.drop1));
+		assertNull(localizer.getStringIgnoreSettings("unknown.string", page.drop1, null, null));
+		assertEquals(2, counting.loaded);
+
+		// a new instance of the page shares the cached properties
+		MyMockPage other = new MyMockPage();
+		localizer.prefetch(Arrays.asList("test.string", "unknown.string"), other.drop1, null,
+			null);
+		assertEquals("This is a test", localizer.getString("test.string", other.drop1));
+		assertEquals(2, counting.loaded);
+
+		// but another component path does not
+		assertEquals("This is a test", localizer.getString("test.string", other.drop2));
+		assertEquals(3, counting.loaded);
+	}
+
+	/**
+	 * The cache is cleared once it exceeds its maximum size
+	 */
+	public void testMaxCacheSize()
+	{
+		localizer.setEnableCache(true);
+		localizer.setMaxCacheSize(2);
+		CountingLoader counting = new CountingLoader();
+		settings.getStringResourceLoaders().add(0, counting);
+
+		localizer.getString("test.string", null);
+		localizer.getString("test.string", null);
+		assertEquals(1, counting.loaded);
+
+		localizer.getStringIgnoreSettings("unknown.string1", null, null, null);
+		localizer.getStringIgnoreSettings("unknown.string2", null, null, null);
+		localizer.getString("test.string", null);
+		assertEquals(4, counting.loaded);
+	}
+
+	/**
+	 * Cached properties are read through {@link Localizer#getFromCache(String)} if a subclass
+	 * overrides it
+	 */
+	@SuppressWarnings("deprecation")
+	public void testGetFromCacheIsUsed()
+	{
+		final List<String> read = new ArrayList<String>();
+		Localizer localizer = new Localizer()
+		{
+			@Override
+			protected String getFromCache(String cacheKey)
+			{
+				String value = super.getFromCache(cacheKey);
+				read.add(value);
+				return value;
+			}
+		};
+		localizer.setEnableCache(true);
+
+		assertEquals("This is a test", localizer.getString("test.string", null));
+		assertTrue(read.isEmpty());
+		assertEquals("This is a test", localizer.getString("test.string", null));
+		assertEquals(Arrays.asList("This is a test"), read);
+	}
+
+	/**
+	 * Properties are cached by the key of a subclass overriding
+	 * {@link Localizer#getCacheKey(String, Component, Locale, String, String)}
+	 */
+	@SuppressWarnings("deprecation")
+	public void testGetCacheKeyIsUsed()
+	{
+		Localizer localizer = new Localizer()
+		{
+			@Override
+			protected String getCacheKey(String key, Component component, Locale locale,
+				String style, String variation)
+			{
+				// uncached
+				return null;
+			}
+		};
+		localizer.setEnableCache(true);
+		CountingLoader counting = new CountingLoader();
+		settings.getStringResourceLoaders().add(0, counting);
+
+		localizer.getString("test.string", null);
+		localizer.getString("test.string", null);
+		assertEquals(2, counting.loaded);
+	}
+
+	private static class CountingLoader implements IStringResourceLoader
+	{
+		private int loaded;
+
+		public String loadStringResource(Class<?> clazz, String key, Locale locale,
+			String style, String variation)
+		{
+			loaded++;
+			return null;
+		}
+
+		public String loadStringResource(Component component, String key, Locale locale,
+			String style, String variation)
+		{
+			loaded++;
+			return null;
+		}
+	}
+
 	/**
 	 * Test label.
 	 */
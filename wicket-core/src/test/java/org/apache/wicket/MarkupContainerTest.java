@@ -53,6 +53,44 @@ public class MarkupContainerTest extends WicketTestCase
 		}
 	}
 
+	/**
+	 * Lookups in large containers go through an index which has to follow removals, replacements
+	 * and swaps.
+	 */
+	public void testLargeContainer()
+	{
+		MarkupContainer container = new WebMarkupContainer("component");
+		for (int i = 0; i < 100; i++)
+		{
+			container.add(new WebComponent(Integer.toString(i)));
+		}
+		assertEquals("42", container.get("42").getId());
+		assertNull(container.get("100"));
+
+		container.remove("10");
+		assertNull(container.get("10"));
+		assertEquals(99, container.size());
+		assertSame(container.get(10), container.get("11"));
+
+		WebComponent replacement = new WebComponent("50");
+		container.replace(replacement);
+		assertSame(replacement, container.get("50"));
+
+		container.swap(0, 98);
+		assertSame(container.get(0), container.get("99"));
+		assertSame(container.get(98), container.get("0"));
+
+		container.add(new WebComponent("100"));
+		assertSame(container.get(99), container.get("100"));
+
+		int i = 0;
+		for (Component component : container)
+		{
+			assertSame(component, container.get(component.getId()));
+			assertSame(component, container.get(i++));
+		}
+	}
+
 	public void testMarkupId() throws Exception
 	{
 		executeTest(MarkupIdTestPage.class, "MarkupIdTestPageExpectedResult.html");
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.markup;
+
+import junit.framework.TestCase;
+
+import org.apache.wicket.markup.parser.XmlTag.TagType;
+import org.apache.wicket.response.StringResponse;
+
+/**
+ * Tests the output of {@link ComponentTag}
+ */
+public class ComponentTagTest extends TestCase
+{
+	private static String write(ComponentTag tag, boolean stripWicketAttributes)
+	{
+		StringResponse response = new StringResponse();
+		tag.writeOutput(response, stripWicketAttributes, "wicket");
+		return response.toString();
+	}
+
+	private static ComponentTag newTag()
+	{
+		ComponentTag tag = new ComponentTag("a", TagType.OPEN);
+		tag.put("wicket:id", "link");
+		tag.put("href", "a?b=1&c=2");
+		tag.makeImmutable();
+		return tag;
+	}
+
+	/**
+	 * 
+	 */
+	public void testImmutableTag()
+	{
+		ComponentTag tag = newTag();
+
+		assertEquals("<a href=\"a?b=1&amp;c=2\">", write(tag, true));
+		assertEquals("<a href=\"a?b=1&amp;c=2\">", write(tag, true));
+		assertEquals("<a wicket:id=\"link\" href=\"a?b=1&amp;c=2\">", write(tag, false));
+	}
+
+	/**
+	 * 
+	 */
+	public void testMutableCopy()
+	{
+		ComponentTag tag = newTag();
+		assertEquals("<a href=\"a?b=1&amp;c=2\">", write(tag, true));
+
+		ComponentTag unchanged = tag.mutable();
+		assertNotSame(tag, unchanged);
+		unchanged.put("href", "a?b=1&c=2");
+		assertEquals("<a href=\"a?b=1&amp;c=2\">", write(unchanged, true));
+
+		ComponentTag changed = tag.mutable();
+		changed.put("class", "<selected>");
+		assertEquals("<a href=\"a?b=1&amp;c=2\" class=\"&lt;selected&gt;\">", write(changed, true));
+
+		ComponentTag renamed = tag.mutable();
+		renamed.setName("span");
+		renamed.remove("href");
+		assertEquals("<span>", write(renamed, true));
+
+		ComponentTag openClose = tag.mutable();
+		openClose.setType(TagType.OPEN_CLOSE);
+		assertEquals("<a href=\"a?b=1&amp;c=2\"/>", write(openClose, true));
+
+		// the immutable tag is not affected
+		assertEquals("<a href=\"a?b=1&amp;c=2\">", write(tag, true));
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.markup;
+
+import java.util.Locale;
+
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.list.Loop;
+import org.apache.wicket.markup.html.list.LoopItem;
+import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.StringResourceStream;
+
+/**
+ * Tests for {@link DefaultMarkupCacheKeyProvider}
+ */
+public class DefaultMarkupCacheKeyProviderTest extends WicketTestCase
+{
+	/**
+	 * 
+	 */
+	public void testKeysAreReused()
+	{
+		DefaultMarkupCacheKeyProvider provider = new DefaultMarkupCacheKeyProvider();
+		PanelsPage page = new PanelsPage(1);
+
+		String key = provider.getCacheKey(page, PanelsPage.class);
+		assertEquals(PanelsPage.class.getName() + "-en_US.html", key);
+		assertSame(key, provider.getCacheKey(page, PanelsPage.class));
+
+		tester.getSession().setLocale(Locale.GERMAN);
+		tester.getSession().setStyle("style");
+		String styledKey = provider.getCacheKey(page, PanelsPage.class);
+		assertEquals(PanelsPage.class.getName() + "-de_style.html", styledKey);
+		assertSame(styledKey, provider.getCacheKey(page, PanelsPage.class));
+
+		tester.getSession().setLocale(Locale.US);
+		tester.getSession().setStyle(null);
+		assertSame(key, provider.getCacheKey(page, PanelsPage.class));
+
+		assertEquals(WebPage.class.getName() + "-en_US.html", provider.getCacheKey(page,
+			WebPage.class));
+	}
+
+	/**
+	 * Renders a page with many panels sharing the same markup cache key.
+	 */
+	public void testManyPanels()
+	{
+		tester.startPage(new PanelsPage(500));
+		tester.assertRenderedPage(PanelsPage.class);
+
+		String document = tester.getLastResponseAsString();
+		assertTrue(document.contains(">panel 0</span>"));
+		assertTrue(document.contains(">panel 499</span>"));
+	}
+
+	/** */
+	public static class PanelsPage extends WebPage implements IMarkupResourceStreamProvider
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @param count
+		 */
+		public PanelsPage(int count)
+		{
+			add(new Loop("panels", count)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void populateItem(LoopItem item)
+				{
+					item.add(new SimplePanel("panel", item.getIndex()));
+				}
+			});
+		}
+
+		public IResourceStream getMarkupResourceStream(MarkupContainer container,
+			Class<?> containerClass)
+		{
+			return new StringResourceStream(
+				"<html><body><div wicket:id='panels'><div wicket:id='panel'></div></div></body></html>");
+		}
+	}
+
+	private static class SimplePanel extends Panel implements IMarkupResourceStreamProvider
+	{
+		private static final long serialVersionUID = 1L;
+
+		private SimplePanel(String id, int index)
+		{
+			super(id);
+			add(new Label("label", "panel " + index));
+		}
+
+		public IResourceStream getMarkupResourceStream(MarkupContainer container,
+			Class<?> containerClass)
+		{
+			return new StringResourceStream(
+				"<wicket:panel><span wicket:id='label'></span></wicket:panel>");
+		}
+	}
+}
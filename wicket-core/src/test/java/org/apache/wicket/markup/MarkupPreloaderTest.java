@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.markup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.markup.html.panel.FragmentTestPanel;
+import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.StringResourceStream;
+import org.apache.wicket.util.time.Duration;
+
+/**
+ * Tests for {@link MarkupPreloader}
+ */
+public class MarkupPreloaderTest extends WicketTestCase
+{
+	/**
+	 * 
+	 */
+	public void testPreload()
+	{
+		List<Class<? extends MarkupContainer>> classes = new ArrayList<Class<? extends MarkupContainer>>();
+		classes.add(FragmentTestPanel.class);
+		classes.add(SimplePanel.class);
+		classes.add(NoIdConstructorPanel.class);
+
+		Map<Class<? extends MarkupContainer>, Duration> durations = new MarkupPreloader(
+			tester.getApplication()).setThreads(2)
+			.setLocales(Locale.ENGLISH, Locale.GERMAN)
+			.setStyles(null, "style")
+			.preload(classes);
+
+		assertEquals(2, durations.size());
+		assertTrue(durations.containsKey(FragmentTestPanel.class));
+		assertTrue(durations.containsKey(SimplePanel.class));
+		int loaded = SimplePanel.loaded.get();
+		assertEquals(4, loaded);
+
+		// the preloaded markup is used when rendering
+		tester.getSession().setLocale(Locale.GERMAN);
+		tester.getSession().setStyle("style");
+		tester.startPanel(SimplePanel.class);
+		tester.assertContains("simple panel");
+		assertEquals(loaded, SimplePanel.loaded.get());
+	}
+
+	/**
+	 * 
+	 */
+	public void testPagesAreRejected()
+	{
+		List<Class<? extends MarkupContainer>> classes = new ArrayList<Class<? extends MarkupContainer>>();
+		classes.add(Doctype_1.class);
+		try
+		{
+			new MarkupPreloader(tester.getApplication()).preload(classes);
+			fail();
+		}
+		catch (IllegalArgumentException expected)
+		{
+		}
+	}
+
+	/** */
+	public static class SimplePanel extends Panel implements IMarkupResourceStreamProvider
+	{
+		private static final long serialVersionUID = 1L;
+
+		private static final AtomicInteger loaded = new AtomicInteger();
+
+		/**
+		 * @param id
+		 */
+		public SimplePanel(String id)
+		{
+			super(id);
+		}
+
+		public IResourceStream getMarkupResourceStream(MarkupContainer container,
+			Class<?> containerClass)
+		{
+			loaded.incrementAndGet();
+			return new StringResourceStream("<wicket:panel>simple panel</wicket:panel>");
+		}
+	}
+
+	private static class NoIdConstructorPanel extends Panel
+	{
+		private static final long serialVersionUID = 1L;
+
+		private NoIdConstructorPanel(String id, int index)
+		{
+			super(id);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.markup;
+
+import org.apache.wicket.WicketTestCase;
+
+/**
+ * Tests skipping components in a {@link MarkupStream}
+ */
+public class MarkupStreamTest extends WicketTestCase
+{
+	private static final String MARKUP = "<html><body><div wicket:id=\"a\"><span wicket:id=\"b\">"
+		+ "<i>text</i></span><br wicket:id=\"c\"/></div><p wicket:id=\"d\">end</p></body></html>";
+
+	private Markup parse() throws Exception
+	{
+		return (Markup)new MarkupParser(MARKUP).parse();
+	}
+
+	private static int indexOf(final IMarkupFragment markup, final String id)
+	{
+		for (int i = 0; i < markup.size(); i++)
+		{
+			MarkupElement element = markup.get(i);
+			if ((element instanceof ComponentTag) && id.equals(((ComponentTag)element).getId()))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testSkipComponentRemembersCloseTag() throws Exception
+	{
+		Markup markup = parse();
+		int a = indexOf(markup, "a");
+		assertEquals(-1, markup.getCloseTagIndex(a));
+
+		MarkupStream stream = new MarkupStream(markup);
+		stream.setCurrentIndex(a);
+		stream.skipComponent();
+		int afterA = stream.getCurrentIndex();
+		assertEquals("d", stream.getTag().getId());
+		assertEquals(afterA - 1, markup.getCloseTagIndex(a));
+		assertTrue(markup.get(afterA - 1).closes(markup.get(a)));
+
+		// the second time the remembered close tag is used
+		stream = new MarkupStream(markup);
+		stream.setCurrentIndex(a);
+		stream.skipComponent();
+		assertEquals(afterA, stream.getCurrentIndex());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testFragment() throws Exception
+	{
+		Markup markup = parse();
+		IMarkupFragment fragment = markup.find("a");
+		assertNotNull(fragment);
+		assertEquals("b", ((ComponentTag)fragment.find("b").get(0)).getId());
+
+		// the close tag found within the fragment is remembered by the markup file
+		int b = indexOf(markup, "b");
+		int bInFragment = indexOf(fragment, "b");
+		MarkupStream stream = new MarkupStream(fragment);
+		stream.setCurrentIndex(bInFragment);
+		stream.skipComponent();
+		assertEquals("c", stream.getTag().getId());
+		assertEquals(b + stream.getCurrentIndex() - bInFragment - 1, markup.getCloseTagIndex(b));
+
+		stream = new MarkupStream(markup);
+		stream.setCurrentIndex(b);
+		stream.skipComponent();
+		assertEquals("c", stream.getTag().getId());
+
+		assertEquals(fragment.size(), markup.find("a").size());
+	}
+
+	/**
+	 * A component at index 0 is skipped, even though nothing is remembered for it yet
+	 * 
+	 * @throws Exception
+	 */
+	public void testSkipFirstElement() throws Exception
+	{
+		Markup markup = (Markup)new MarkupParser("<span wicket:id=\"a\"><span wicket:id=\"target\">"
+			+ "</span></span><span wicket:id=\"target\"/>").parse();
+		assertEquals(0, indexOf(markup, "a"));
+
+		// the nested tag must be skipped
+		int nested = indexOf(markup, "target");
+		IMarkupFragment fragment = markup.find("target");
+		assertNotNull(fragment);
+		assertNotSame(markup.get(nested), fragment.get(0));
+		assertEquals("target", ((ComponentTag)fragment.get(0)).getId());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testMutableMarkupIsNotRemembered() throws Exception
+	{
+		Markup parsed = parse();
+		Markup markup = new Markup(MARKUP);
+		for (int i = 0; i < parsed.size(); i++)
+		{
+			markup.addMarkupElement(parsed.get(i));
+		}
+
+		int a = indexOf(markup, "a");
+		MarkupStream stream = new MarkupStream(markup);
+		stream.setCurrentIndex(a);
+		stream.skipComponent();
+		assertEquals("d", stream.getTag().getId());
+		assertEquals(-1, markup.getCloseTagIndex(a));
+	}
+}
@@ -17,8 +17,10 @@
 package org.apache.wicket.markup.html.form.encryption;
 
 import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.util.crypt.CryptCachingDecorator;
 import org.apache.wicket.util.crypt.ICrypt;
 import org.apache.wicket.util.crypt.NoCrypt;
+import org.apache.wicket.util.crypt.PooledSunJceCrypt;
 import org.apache.wicket.util.crypt.SunJceCrypt;
 
 
@@ -64,6 +66,121 @@ public class CryptTest extends WicketTestCase
 		}
 	}
 
+	/**
+	 * The pooled crypt must produce the same text as {@link SunJceCrypt}
+	 */
+	public void testPooledCrypt()
+	{
+		final ICrypt crypt = new PooledSunJceCrypt();
+
+		try
+		{
+			if (crypt.encryptUrlSafe("test") != null)
+			{
+				final String text = "abcdefghijkABC: A test which creates a '/' and/or a '+'";
+				final String expectedUrlSafeEncrypted = "g-N_AGk2b3qe70kJ0we4Rsa8getbnPLm6NyE0BCd-go0P-0kuIe6UvAYP7dlzx-9mfmPaMQ5lCk";
+
+				// the second round uses the pooled ciphers
+				for (int i = 0; i < 2; i++)
+				{
+					assertEquals(expectedUrlSafeEncrypted, crypt.encryptUrlSafe(text));
+					assertEquals(text, crypt.decryptUrlSafe(expectedUrlSafeEncrypted));
+				}
+
+				crypt.setKey("another key");
+				final String encrypted = crypt.encryptUrlSafe(text);
+				assertFalse(expectedUrlSafeEncrypted.equals(encrypted));
+
+				final ICrypt other = new SunJceCrypt();
+				other.setKey("another key");
+				assertEquals(other.encryptUrlSafe(text), encrypted);
+				assertEquals(text, crypt.decryptUrlSafe(encrypted));
+			}
+		}
+		catch (Exception ex)
+		{
+			// fails on JVMs without security provider (e.g. seems to be on
+			// MAC in US)
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void testCachingDecorator()
+	{
+		final CountingCrypt counting = new CountingCrypt();
+		final ICrypt crypt = new CryptCachingDecorator(counting, 2);
+
+		assertEquals("a", crypt.encryptUrlSafe("a"));
+		assertEquals("a", crypt.encryptUrlSafe("a"));
+		assertEquals(1, counting.encrypted);
+
+		crypt.encryptUrlSafe("b");
+		crypt.encryptUrlSafe("a");
+		crypt.encryptUrlSafe("c");
+		assertEquals(3, counting.encrypted);
+
+		// "b" was the least recently used
+		crypt.encryptUrlSafe("a");
+		crypt.encryptUrlSafe("b");
+		assertEquals(4, counting.encrypted);
+
+		// a new key invalidates all texts
+		crypt.setKey("key");
+		crypt.encryptUrlSafe("b");
+		assertEquals(5, counting.encrypted);
+	}
+
+	/**
+	 * A text encrypted while the key changes is not cached
+	 */
+	public void testCachingDecoratorKeyChange()
+	{
+		final CountingCrypt counting = new CountingCrypt();
+		final ICrypt crypt = new CryptCachingDecorator(counting, 2);
+		counting.onEncrypt = new Runnable()
+		{
+			public void run()
+			{
+				counting.onEncrypt = null;
+				crypt.setKey("key");
+			}
+		};
+
+		crypt.encryptUrlSafe("a");
+		crypt.encryptUrlSafe("a");
+		assertEquals(2, counting.encrypted);
+		crypt.encryptUrlSafe("a");
+		assertEquals(2, counting.encrypted);
+	}
+
+	private static class CountingCrypt implements ICrypt
+	{
+		private int encrypted;
+
+		private Runnable onEncrypt;
+
+		public String decryptUrlSafe(String text)
+		{
+			return text;
+		}
+
+		public String encryptUrlSafe(String plainText)
+		{
+			encrypted++;
+			if (onEncrypt != null)
+			{
+				onEncrypt.run();
+			}
+			return plainText;
+		}
+
+		public void setKey(String key)
+		{
+		}
+	}
+
 	/**
 	 * 
 	 */
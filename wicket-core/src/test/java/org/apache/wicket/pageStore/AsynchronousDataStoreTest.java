@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.wicket.pageStore.AsynchronousDataStore.OverflowPolicy;
+import org.junit.Test;
+
+public class AsynchronousDataStoreTest
+{
+	@Test
+	public void storeAndRead()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		AsynchronousDataStore store = new AsynchronousDataStore(memory, 4, 100,
+			OverflowPolicy.BLOCK);
+
+		for (int i = 0; i < 50; i++)
+		{
+			store.storeData("session" + (i % 7), i, new byte[] { (byte)i });
+		}
+		for (int i = 0; i < 50; i++)
+		{
+			assertArrayEquals(new byte[] { (byte)i }, store.getData("session" + (i % 7), i));
+		}
+
+		store.destroy();
+
+		assertEquals(0, store.getQueuedEntries());
+		assertEquals(50, memory.pages.size());
+		assertEquals(50, store.getWrittenEntries());
+	}
+
+	@Test
+	public void removeQueuedData()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		AsynchronousDataStore store = new AsynchronousDataStore(memory, 1, 10,
+			OverflowPolicy.BLOCK);
+
+		store.storeData("s1", 1, new byte[] { 1 });
+		store.storeData("s1", 2, new byte[] { 2 });
+		store.storeData("s2", 1, new byte[] { 3 });
+		store.removeData("s1");
+
+		assertNull(store.getData("s1", 2));
+		assertArrayEquals(new byte[] { 3 }, store.getData("s2", 1));
+
+		store.destroy();
+
+		assertNull(memory.getData("s1", 1));
+		assertNull(memory.getData("s1", 2));
+		assertArrayEquals(new byte[] { 3 }, memory.getData("s2", 1));
+	}
+
+	@Test
+	public void callerRunsWhenQueueIsFull()
+	{
+		final MemoryDataStore memory = new MemoryDataStore();
+		memory.blockWrites();
+		AsynchronousDataStore store = new AsynchronousDataStore(memory, 1, 2,
+			OverflowPolicy.CALLER_RUNS);
+
+		// the first entry is taken by the blocked writer, the next two fill the queue
+		store.storeData("s1", 1, new byte[] { 1 });
+		waitForEmptyQueue(store);
+		store.storeData("s1", 2, new byte[] { 2 });
+		store.storeData("s1", 3, new byte[] { 3 });
+
+		// the caller has to wait for the blocked writer to store the fourth entry itself
+		new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(200);
+				}
+				catch (InterruptedException e)
+				{
+				}
+				memory.unblockWrites();
+			}
+		}.start();
+		store.storeData("s1", 4, new byte[] { 4 });
+
+		store.destroy();
+
+		assertTrue(store.getCallerRunsEntries() > 0);
+		assertEquals(4, memory.pages.size());
+	}
+
+	@Test
+	public void dropOldestWhenQueueIsFull()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		memory.blockWrites();
+		AsynchronousDataStore store = new AsynchronousDataStore(memory, 1, 2,
+			OverflowPolicy.DROP_OLDEST);
+
+		store.storeData("s1", 1, new byte[] { 1 });
+		waitForEmptyQueue(store);
+		store.storeData("s1", 2, new byte[] { 2 });
+		store.storeData("s1", 3, new byte[] { 3 });
+		store.storeData("s1", 4, new byte[] { 4 });
+
+		assertNull(store.getData("s1", 2));
+		assertEquals(1, store.getDroppedEntries());
+
+		memory.unblockWrites();
+		store.destroy();
+
+		assertNull(memory.getData("s1", 2));
+		assertArrayEquals(new byte[] { 4 }, memory.getData("s1", 4));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void overriddenMaxQueuedEntries()
+	{
+		final MemoryDataStore memory = new MemoryDataStore();
+		memory.blockWrites();
+		AsynchronousDataStore store = new AsynchronousDataStore(memory)
+		{
+			@Override
+			protected int getMaxQueuedEntries()
+			{
+				return 1;
+			}
+		};
+
+		// the first entry is taken by the blocked writer, the second one fills the queue
+		store.storeData("s1", 1, new byte[] { 1 });
+		waitForEmptyQueue(store);
+		store.storeData("s1", 2, new byte[] { 2 });
+		assertEquals(1, store.getQueuedEntries());
+
+		new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(200);
+				}
+				catch (InterruptedException e)
+				{
+				}
+				memory.unblockWrites();
+			}
+		}.start();
+		store.storeData("s1", 3, new byte[] { 3 });
+
+		store.destroy();
+
+		assertEquals(1, store.getCallerRunsEntries());
+		assertEquals(3, memory.pages.size());
+	}
+
+	private static void waitForEmptyQueue(AsynchronousDataStore store)
+	{
+		while (store.getQueuedEntries() > 0)
+		{
+			Thread.yield();
+		}
+	}
+
+	private static class MemoryDataStore implements IDataStore
+	{
+		private final Map<String, byte[]> pages = new ConcurrentHashMap<String, byte[]>();
+
+		private volatile CountDownLatch block = new CountDownLatch(0);
+
+		void blockWrites()
+		{
+			block = new CountDownLatch(1);
+		}
+
+		void unblockWrites()
+		{
+			block.countDown();
+		}
+
+		public byte[] getData(String sessionId, int id)
+		{
+			return pages.get(sessionId + id);
+		}
+
+		public void removeData(String sessionId, int id)
+		{
+			pages.remove(sessionId + id);
+		}
+
+		public void removeData(String sessionId)
+		{
+			for (String key : pages.keySet())
+			{
+				if (key.startsWith(sessionId))
+				{
+					pages.remove(key);
+				}
+			}
+		}
+
+		public void storeData(String sessionId, int id, byte[] data)
+		{
+			try
+			{
+				block.await();
+			}
+			catch (InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			pages.put(sessionId + id, data);
+		}
+
+		public void destroy()
+		{
+		}
+
+		public boolean isReplicated()
+		{
+			return false;
+		}
+	}
+}
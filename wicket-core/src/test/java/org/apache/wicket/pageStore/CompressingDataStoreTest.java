@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wicket.util.lang.WicketObjects;
+import org.junit.Test;
+
+public class CompressingDataStoreTest
+{
+	private final MemoryDataStore memory = new MemoryDataStore();
+
+	private final CompressingDataStore store = new CompressingDataStore(memory);
+
+	@Test
+	public void compressesSerializedPages()
+	{
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; i < 200; i++)
+		{
+			list.add("label " + i);
+		}
+		byte[] page = WicketObjects.objectToByteArray(list);
+
+		store.storeData("s1", 1, page);
+
+		assertArrayEquals(page, store.getData("s1", 1));
+		assertTrue(memory.getData("s1", 1).length < page.length / 2);
+		assertTrue(store.getCompressionRatio() < 0.5);
+		assertEquals(page.length, store.getUncompressedBytes());
+		assertTrue(store.getCompressionTime() > 0);
+		assertTrue(store.getDecompressionTime() > 0);
+	}
+
+	@Test
+	public void smallPagesAreNotCompressed()
+	{
+		byte[] page = new byte[100];
+		store.storeData("s1", 1, page);
+
+		assertArrayEquals(page, store.getData("s1", 1));
+		assertEquals(0, store.getCompressionTime());
+	}
+
+	@Test
+	public void incompressiblePagesAreStored()
+	{
+		byte[] page = new byte[5000];
+		new Random(1).nextBytes(page);
+		store.storeData("s1", 1, page);
+
+		assertArrayEquals(page, store.getData("s1", 1));
+		assertEquals(page.length + 3, memory.getData("s1", 1).length);
+	}
+
+	@Test
+	public void uncompressedDataIsPassedThrough()
+	{
+		memory.storeData("s1", 1, new byte[] { 1, 2, 3 });
+
+		assertArrayEquals(new byte[] { 1, 2, 3 }, store.getData("s1", 1));
+	}
+
+	@Test
+	public void nullDataIsPassedThrough()
+	{
+		store.storeData("s1", 1, new byte[100]);
+		store.storeData("s1", 1, null);
+
+		assertNull(memory.getData("s1", 1));
+		assertNull(store.getData("s1", 1));
+		assertEquals(100, store.getUncompressedBytes());
+	}
+
+	private static class MemoryDataStore implements IDataStore
+	{
+		private final Map<String, byte[]> pages = new ConcurrentHashMap<String, byte[]>();
+
+		public byte[] getData(String sessionId, int id)
+		{
+			return pages.get(sessionId + ":" + id);
+		}
+
+		public void removeData(String sessionId, int id)
+		{
+			pages.remove(sessionId + ":" + id);
+		}
+
+		public void removeData(String sessionId)
+		{
+		}
+
+		public void storeData(String sessionId, int id, byte[] data)
+		{
+			if (data == null)
+			{
+				pages.remove(sessionId + ":" + id);
+			}
+			else
+			{
+				pages.put(sessionId + ":" + id, data);
+			}
+		}
+
+		public void destroy()
+		{
+		}
+
+		public boolean isReplicated()
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class DeltaDataStoreTest
+{
+	private static byte[] page(int size, long seed)
+	{
+		byte[] page = new byte[size];
+		new Random(seed).nextBytes(page);
+		return page;
+	}
+
+	@Test
+	public void binaryDeltaRoundTrip()
+	{
+		byte[] source = page(5000, 1);
+		byte[] target = source.clone();
+		target[10] = 1;
+		target[2500] = 2;
+		target[4999] = 3;
+
+		byte[] delta = BinaryDelta.create(source, target);
+		assertTrue(delta.length < 100);
+		assertArrayEquals(target, BinaryDelta.apply(source, delta));
+
+		// unrelated data and shifted data
+		assertArrayEquals(page(300, 2), BinaryDelta.apply(source, BinaryDelta.create(source,
+			page(300, 2))));
+		byte[] shifted = new byte[source.length + 7];
+		System.arraycopy(source, 0, shifted, 7, source.length);
+		assertArrayEquals(shifted, BinaryDelta.apply(source, BinaryDelta.create(source, shifted)));
+		assertArrayEquals(new byte[0], BinaryDelta.apply(source, BinaryDelta.create(source,
+			new byte[0])));
+	}
+
+	@Test
+	public void storesDeltas()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		DeltaDataStore store = new DeltaDataStore(memory, 10);
+
+		byte[] page = page(10000, 1);
+		for (int i = 0; i < 5; i++)
+		{
+			page = page.clone();
+			page[i * 100] = (byte)i;
+			store.storeData("s1", 1, page);
+			assertArrayEquals(page, store.getData("s1", 1));
+		}
+
+		assertEquals(50000, store.getReceivedBytes());
+		assertTrue(store.getWrittenBytes() < 11000);
+	}
+
+	@Test
+	public void compactsAfterMaxDeltas()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		DeltaDataStore store = new DeltaDataStore(memory, 3);
+
+		byte[] page = page(1000, 1);
+		for (int i = 0; i < 10; i++)
+		{
+			page = page.clone();
+			page[i] = (byte)i;
+			store.storeData("s1", 1, page);
+		}
+
+		assertArrayEquals(page, store.getData("s1", 1));
+		assertEquals(2, store.getCompactions());
+	}
+
+	@Test
+	public void remove()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		DeltaDataStore store = new DeltaDataStore(memory);
+
+		store.storeData("s1", 1, page(100, 1));
+		store.storeData("s1", 1, page(100, 2));
+		store.removeData("s1", 1);
+
+		assertNull(store.getData("s1", 1));
+		assertTrue(memory.pages.isEmpty());
+	}
+
+	@Test
+	public void lostDeltasAreNotReadAsStalePage()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		DeltaDataStore store = new DeltaDataStore(memory);
+
+		byte[] page = page(1000, 1);
+		store.storeData("s1", 1, page);
+		page = page.clone();
+		page[0]++;
+		store.storeData("s1", 1, page);
+
+		memory.removeData("s1", -3);
+		assertNull(store.getData("s1", 1));
+
+		// the next store starts with a new base snapshot
+		store.storeData("s1", 1, page);
+		assertArrayEquals(page, store.getData("s1", 1));
+	}
+
+	@Test
+	public void legacyPagesArePassedThrough()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		memory.storeData("s1", 1, new byte[] { 1, 2, 3 });
+
+		assertArrayEquals(new byte[] { 1, 2, 3 }, new DeltaDataStore(memory).getData("s1", 1));
+	}
+
+	@Test
+	public void nullDataIsPassedThrough()
+	{
+		MemoryDataStore memory = new MemoryDataStore();
+		DeltaDataStore store = new DeltaDataStore(memory);
+
+		store.storeData("s1", 1, page(100, 1));
+		store.storeData("s1", 1, null);
+
+		assertNull(store.getData("s1", 1));
+		assertEquals(100, store.getReceivedBytes());
+	}
+
+	private static class MemoryDataStore implements IDataStore
+	{
+		private final Map<String, byte[]> pages = new ConcurrentHashMap<String, byte[]>();
+
+		public byte[] getData(String sessionId, int id)
+		{
+			return pages.get(sessionId + ":" + id);
+		}
+
+		public void removeData(String sessionId, int id)
+		{
+			pages.remove(sessionId + ":" + id);
+		}
+
+		public void removeData(String sessionId)
+		{
+			for (String key : pages.keySet())
+			{
+				if (key.startsWith(sessionId + ":"))
+				{
+					pages.remove(key);
+				}
+			}
+		}
+
+		public void storeData(String sessionId, int id, byte[] data)
+		{
+			if (data == null)
+			{
+				pages.remove(sessionId + ":" + id);
+			}
+			else
+			{
+				pages.put(sessionId + ":" + id, data);
+			}
+		}
+
+		public void destroy()
+		{
+		}
+
+		public boolean isReplicated()
+		{
+			return false;
+		}
+	}
+}
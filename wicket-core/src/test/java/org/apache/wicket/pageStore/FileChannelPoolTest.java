@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileChannelPoolTest
+{
+	private File folder;
+
+	private FileChannelPool pool;
+
+	@Before
+	public void before() throws IOException
+	{
+		File tmp = File.createTempFile("channelpool", null);
+		tmp.delete();
+		folder = tmp;
+		folder.mkdirs();
+		pool = new FileChannelPool(4, 2);
+	}
+
+	@After
+	public void after()
+	{
+		pool.destroy();
+		for (File file : folder.listFiles())
+		{
+			file.delete();
+		}
+		folder.delete();
+	}
+
+	private String name(String name)
+	{
+		return new File(folder, name).getAbsolutePath();
+	}
+
+	@Test
+	public void sameChannelForSameFile()
+	{
+		assertNull(pool.getFileChannel(name("a"), false));
+
+		FileChannel first = pool.getFileChannel(name("a"), true);
+		FileChannel second = pool.getFileChannel(name("a"), false);
+		assertSame(first, second);
+
+		pool.returnFileChannel(first);
+		pool.returnFileChannel(second);
+		assertSame(first, pool.getFileChannel(name("a"), false));
+		pool.returnFileChannel(first);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void returnUnusedChannel()
+	{
+		FileChannel channel = pool.getFileChannel(name("a"), true);
+		pool.returnFileChannel(channel);
+		pool.returnFileChannel(channel);
+	}
+
+	@Test
+	public void idleChannelsAreClosedWhenCapacityIsReached()
+	{
+		FileChannel[] channels = new FileChannel[20];
+		for (int i = 0; i < channels.length; i++)
+		{
+			channels[i] = pool.getFileChannel(name("file" + i), true);
+			pool.returnFileChannel(channels[i]);
+		}
+
+		// the first channel has been evicted, a new one is opened
+		FileChannel channel = pool.getFileChannel(name("file0"), false);
+		assertNotSame(channels[0], channel);
+		pool.returnFileChannel(channel);
+	}
+
+	@Test
+	public void deleteIsDeferredUntilChannelIsReturned() throws IOException
+	{
+		String name = name("a");
+		FileChannel channel = pool.getFileChannel(name, true);
+		channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), 0);
+
+		pool.closeAndDeleteFileChannel(name);
+		assertTrue(channel.isOpen());
+		assertTrue(new File(name).exists());
+
+		pool.returnFileChannel(channel);
+
+		// blocks until the old file is deleted and creates a fresh one
+		FileChannel fresh = pool.getFileChannel(name, true);
+		assertNotSame(channel, fresh);
+		assertFalse(channel.isOpen());
+		assertEquals(0, fresh.size());
+		pool.returnFileChannel(fresh);
+	}
+
+	@Test
+	public void interruptedWhileWaitingForDelete()
+	{
+		String name = name("a");
+		FileChannel channel = pool.getFileChannel(name, true);
+		pool.closeAndDeleteFileChannel(name);
+
+		Thread.currentThread().interrupt();
+		try
+		{
+			pool.getFileChannel(name, true);
+			fail();
+		}
+		catch (RuntimeException expected)
+		{
+			assertTrue(Thread.interrupted());
+		}
+		finally
+		{
+			pool.returnFileChannel(channel);
+		}
+	}
+
+	@Test
+	public void deleteIdleChannel()
+	{
+		String name = name("a");
+		FileChannel channel = pool.getFileChannel(name, true);
+		pool.returnFileChannel(channel);
+
+		pool.closeAndDeleteFileChannel(name);
+
+		assertNull(pool.getFileChannel(name, false));
+		assertFalse(new File(name).exists());
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.wicket.util.time.Duration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentedFileDataStoreTest
+{
+	private static final int SEGMENT_SIZE = 100;
+
+	private SegmentedFileDataStore store;
+
+	@Before
+	public void before() throws IOException
+	{
+		File folder = File.createTempFile("segments", null).getParentFile();
+		store = new SegmentedFileDataStore("segmentedTest", folder, SEGMENT_SIZE, 3);
+	}
+
+	@After
+	public void after()
+	{
+		store.destroy();
+	}
+
+	@Test
+	public void storeAndLoad()
+	{
+		assertNull(store.getData("s1", 1));
+
+		store.storeData("s1", 1, data(10, 1));
+		store.storeData("s2", 1, data(20, 2));
+		store.storeData("s1", 2, data(30, 3));
+
+		assertArrayEquals(data(10, 1), store.getData("s1", 1));
+		assertArrayEquals(data(20, 2), store.getData("s2", 1));
+		assertArrayEquals(data(30, 3), store.getData("s1", 2));
+	}
+
+	@Test
+	public void overwrite()
+	{
+		store.storeData("s1", 1, data(10, 1));
+		store.storeData("s1", 1, data(15, 2));
+
+		assertArrayEquals(data(15, 2), store.getData("s1", 1));
+	}
+
+	@Test
+	public void remove()
+	{
+		store.storeData("s1", 1, data(10, 1));
+		store.storeData("s1", 2, data(10, 2));
+		store.storeData("s2", 1, data(10, 3));
+
+		store.removeData("s1", 1);
+		assertNull(store.getData("s1", 1));
+		assertArrayEquals(data(10, 2), store.getData("s1", 2));
+
+		store.removeData("s1");
+		assertNull(store.getData("s1", 2));
+		assertArrayEquals(data(10, 3), store.getData("s2", 1));
+	}
+
+	@Test
+	public void tooLargePage()
+	{
+		store.storeData("s1", 1, data(10, 1));
+		store.storeData("s1", 1, data(SEGMENT_SIZE + 1, 2));
+
+		assertNull(store.getData("s1", 1));
+	}
+
+	@Test
+	public void oldestSegmentIsRecycled()
+	{
+		// every page fills a whole segment, so the fourth page recycles the first segment
+		for (int i = 1; i <= 4; i++)
+		{
+			store.storeData("s1", i, data(SEGMENT_SIZE, i));
+		}
+
+		assertNull(store.getData("s1", 1));
+		for (int i = 2; i <= 4; i++)
+		{
+			assertArrayEquals(data(SEGMENT_SIZE, i), store.getData("s1", i));
+		}
+	}
+
+	@Test
+	public void compaction()
+	{
+		// fill the first segment with pages of which only one stays alive
+		for (int i = 1; i <= 5; i++)
+		{
+			store.storeData("s1", i, data(20, i));
+		}
+		for (int i = 1; i <= 4; i++)
+		{
+			store.removeData("s1", i);
+		}
+		// seal the first segment
+		store.storeData("s2", 1, data(90, 6));
+
+		store.compact();
+
+		// without compaction these would recycle the first segment and lose page 5
+		store.storeData("s2", 2, data(90, 7));
+		store.storeData("s2", 3, data(90, 8));
+
+		assertArrayEquals(data(20, 5), store.getData("s1", 5));
+		assertArrayEquals(data(90, 8), store.getData("s2", 3));
+	}
+
+	@Test
+	public void compactionStartsAfterConstruction() throws Exception
+	{
+		File folder = File.createTempFile("segments", null).getParentFile();
+		IntervalDataStore store = new IntervalDataStore(folder);
+		try
+		{
+			assertNull(store.getData("s1", 1));
+			store.storeData("s1", 1, data(10, 1));
+			store.called.await();
+			assertTrue(store.constructed);
+		}
+		finally
+		{
+			store.destroy();
+		}
+
+		// the mapping has been dropped
+		assertNull(store.getData("s1", 1));
+	}
+
+	private static class IntervalDataStore extends SegmentedFileDataStore
+	{
+		private final Duration interval;
+
+		private final CountDownLatch called = new CountDownLatch(1);
+
+		private volatile boolean constructed;
+
+		private IntervalDataStore(File folder)
+		{
+			super("segmentedIntervalTest", folder, SEGMENT_SIZE, 3);
+			interval = Duration.seconds(10);
+			constructed = true;
+		}
+
+		@Override
+		protected Duration getCompactionInterval()
+		{
+			called.countDown();
+			return interval;
+		}
+	}
+
+	private static byte[] data(int length, int seed)
+	{
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			data[i] = (byte)(seed + i);
+		}
+		return data;
+	}
+}
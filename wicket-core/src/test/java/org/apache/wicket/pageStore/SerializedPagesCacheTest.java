@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.pageStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.wicket.pageStore.DefaultPageStore.SerializedPage;
+import org.apache.wicket.pageStore.DefaultPageStore.SerializedPagesCache;
+import org.junit.Test;
+
+public class SerializedPagesCacheTest
+{
+	@Test
+	public void storeAndGet()
+	{
+		SerializedPagesCache cache = new SerializedPagesCache(10);
+		SerializedPage page = new SerializedPage("s1", 1, new byte[10]);
+		cache.storePage(page);
+
+		assertSame(page, cache.getPage("s1", 1));
+		assertNull(cache.getPage("s1", 2));
+		assertNull(cache.getPage("s2", 1));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void replace()
+	{
+		SerializedPagesCache cache = new SerializedPagesCache(10);
+		cache.storePage(new SerializedPage("s1", 1, new byte[10]));
+		SerializedPage page = new SerializedPage("s1", 1, new byte[20]);
+		cache.storePage(page);
+
+		assertSame(page, cache.getPage("s1", 1));
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted()
+	{
+		SerializedPagesCache cache = new SerializedPagesCache(2);
+		cache.storePage(new SerializedPage("s1", 1, new byte[10]));
+		cache.storePage(new SerializedPage("s1", 2, new byte[10]));
+
+		// touch the first page so the second one is the least recently used
+		assertNotNull(cache.getPage("s1", 1));
+		cache.storePage(new SerializedPage("s1", 3, new byte[10]));
+
+		assertNotNull(cache.getPage("s1", 1));
+		assertNull(cache.getPage("s1", 2));
+		assertNotNull(cache.getPage("s1", 3));
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void boundedByBytes()
+	{
+		SerializedPagesCache cache = new SerializedPagesCache(10, 25);
+		cache.storePage(new SerializedPage("s1", 1, new byte[10]));
+		cache.storePage(new SerializedPage("s1", 2, new byte[10]));
+		cache.storePage(new SerializedPage("s1", 3, new byte[10]));
+
+		assertNull(cache.getPage("s1", 1));
+		assertNotNull(cache.getPage("s1", 2));
+		assertNotNull(cache.getPage("s1", 3));
+
+		// too large to be cached at all
+		cache.storePage(new SerializedPage("s1", 4, new byte[30]));
+		assertNull(cache.getPage("s1", 4));
+	}
+
+	@Test
+	public void remove()
+	{
+		SerializedPagesCache cache = new SerializedPagesCache(10);
+		cache.storePage(new SerializedPage("s1", 1, new byte[10]));
+		cache.storePage(new SerializedPage("s1", 2, new byte[10]));
+		cache.storePage(new SerializedPage("s2", 1, new byte[10]));
+
+		assertNotNull(cache.removePage("s1", 1));
+		assertNull(cache.getPage("s1", 1));
+
+		cache.removePages("s1");
+		assertNull(cache.getPage("s1", 2));
+		assertNotNull(cache.getPage("s2", 1));
+	}
+
+	@Test
+	public void concurrentAccess() throws InterruptedException
+	{
+		final SerializedPagesCache cache = new SerializedPagesCache(10);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final String sessionId = "s" + t;
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 1000; i++)
+					{
+						cache.storePage(new SerializedPage(sessionId, i % 20, new byte[10]));
+						cache.getPage(sessionId, (i + 10) % 20);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		int cached = 0;
+		for (int t = 0; t < threads.length; t++)
+		{
+			for (int i = 0; i < 20; i++)
+			{
+				if (cache.getPage("s" + t, i) != null)
+				{
+					cached++;
+				}
+			}
+		}
+		assertEquals(10, cached);
+	}
+
+	@Test
+	public void disabled()
+	{
+		SerializedPagesCache cache = new SerializedPagesCache(0);
+		cache.storePage(new SerializedPage("s1", 1, new byte[10]));
+
+		assertNull(cache.getPage("s1", 1));
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.protocol.http.servlet;
+
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.protocol.http.mock.MockHttpServletRequest;
+import org.apache.wicket.protocol.http.mock.MockHttpServletResponse;
+import org.apache.wicket.util.string.AppendingStringBuffer;
+
+/**
+ * Tests {@link ServletWebResponse}
+ */
+public class ServletWebResponseTest extends WicketTestCase
+{
+	/**
+	 * Long texts are written in chunks, they must arrive unchanged
+	 */
+	public void testWriteLongText()
+	{
+		MockHttpServletRequest httpRequest = new MockHttpServletRequest(tester.getApplication(),
+			null, null);
+		MockHttpServletResponse httpResponse = new MockHttpServletResponse(httpRequest);
+		ServletWebResponse response = new ServletWebResponse(new ServletWebRequest(httpRequest,
+			""), httpResponse);
+
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < 20000; i++)
+		{
+			builder.append("<p>paragraph ").append(i).append(" \u00e4\u00f6\u00fc</p>\n");
+		}
+		AppendingStringBuffer buffer = new AppendingStringBuffer(builder);
+
+		response.write("short");
+		response.write(builder);
+		response.write(buffer);
+		response.write(new CharSequenceWrapper(builder));
+
+		assertEquals("short" + builder + builder + builder, httpResponse.getDocument());
+	}
+
+	/**
+	 * Text is encoded by Wicket and written as bytes if enabled
+	 * 
+	 * @throws Exception
+	 */
+	public void testWriteEncodedText() throws Exception
+	{
+		tester.getApplication().getRequestCycleSettings().setEncodeResponseText(true);
+
+		MockHttpServletRequest httpRequest = new MockHttpServletRequest(tester.getApplication(),
+			null, null);
+		MockHttpServletResponse httpResponse = new MockHttpServletResponse(httpRequest);
+		ServletWebResponse response = new ServletWebResponse(new ServletWebRequest(httpRequest,
+			""), httpResponse);
+
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < 20000; i++)
+		{
+			builder.append("<p>paragraph ").append(i).append(" \u00e4\u00f6\u00fc\u20ac</p>\n");
+		}
+
+		response.write("short");
+		response.write(builder);
+		response.write(new AppendingStringBuffer(builder));
+		assertEquals("short" + builder + builder, new String(httpResponse.getBinaryContent(),
+			"UTF-8"));
+
+		// characters the encoding doesn't support are replaced
+		httpResponse = new MockHttpServletResponse(httpRequest);
+		httpResponse.setCharacterEncoding("ISO-8859-1");
+		response = new ServletWebResponse(new ServletWebRequest(httpRequest, ""), httpResponse);
+		response.write("\u00e4\u20ac");
+		assertEquals("\u00e4?", new String(httpResponse.getBinaryContent(), "ISO-8859-1"));
+
+		// text is written to the writer once it has been used
+		tester.getApplication().getRequestCycleSettings().setEncodeResponseText(false);
+		httpResponse = new MockHttpServletResponse(httpRequest);
+		response = new ServletWebResponse(new ServletWebRequest(httpRequest, ""), httpResponse);
+		response.write("writer");
+		tester.getApplication().getRequestCycleSettings().setEncodeResponseText(true);
+		response.write(builder);
+		assertEquals("writer" + builder, httpResponse.getDocument());
+	}
+
+	/**
+	 * A char sequence which is neither a string nor a buffer
+	 */
+	private static class CharSequenceWrapper implements CharSequence
+	{
+		private final CharSequence delegate;
+
+		private CharSequenceWrapper(CharSequence delegate)
+		{
+			this.delegate = delegate;
+		}
+
+		public char charAt(int index)
+		{
+			return delegate.charAt(index);
+		}
+
+		public int length()
+		{
+			return delegate.length();
+		}
+
+		public CharSequence subSequence(int start, int end)
+		{
+			return delegate.subSequence(start, end);
+		}
+
+		@Override
+		public String toString()
+		{
+			return delegate.toString();
+		}
+	}
+}
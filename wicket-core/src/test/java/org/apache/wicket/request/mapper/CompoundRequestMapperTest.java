@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.mapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.wicket.MockPage;
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.component.IRequestablePage;
+import org.apache.wicket.request.handler.BookmarkablePageRequestHandler;
+import org.apache.wicket.request.handler.PageProvider;
+import org.apache.wicket.request.handler.RenderPageRequestHandler;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.ClassProvider;
+
+/**
+ * Tests for {@link CompoundRequestMapper}
+ */
+public class CompoundRequestMapperTest extends AbstractMapperTest
+{
+	private static final String[] URLS = { "", "a", "a/b", "a/b/c", "a/x/c", "b", "b/c/d/e",
+			"c/c", "x/y/z", "a/b/c/d" };
+
+	/** */
+	public static class Page1 extends MockPage
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/** */
+	public static class Page2 extends MockPage
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Mapper with a fixed prefix that maps every request it is compatible with
+	 */
+	private static class PrefixMapper extends AbstractMapper implements IPrefixedRequestMapper
+	{
+		private final String name;
+		private final String[] segments;
+		private final boolean maps;
+
+		private PrefixMapper(String name, String path, boolean maps)
+		{
+			this.name = name;
+			segments = getMountSegments(path);
+			this.maps = maps;
+		}
+
+		public IRequestHandler mapRequest(Request request)
+		{
+			return maps && urlStartsWith(request.getUrl(), segments) ? new NamedHandler(name)
+				: null;
+		}
+
+		public int getCompatibilityScore(Request request)
+		{
+			return urlStartsWith(request.getUrl(), segments) ? segments.length : 0;
+		}
+
+		public Url mapHandler(IRequestHandler requestHandler)
+		{
+			return null;
+		}
+
+		public String[] getPrefixSegments()
+		{
+			return getLeadingStaticSegments(segments);
+		}
+	}
+
+	/**
+	 * Mapper that is not indexed
+	 */
+	private static class ScoreMapper implements IRequestMapper
+	{
+		private final String name;
+		private final int score;
+
+		private ScoreMapper(String name, int score)
+		{
+			this.name = name;
+			this.score = score;
+		}
+
+		public IRequestHandler mapRequest(Request request)
+		{
+			return new NamedHandler(name);
+		}
+
+		public int getCompatibilityScore(Request request)
+		{
+			return score;
+		}
+
+		public Url mapHandler(IRequestHandler requestHandler)
+		{
+			return null;
+		}
+	}
+
+	private static class NamedHandler implements IRequestHandler
+	{
+		private final String name;
+
+		private NamedHandler(String name)
+		{
+			this.name = name;
+		}
+
+		public void respond(IRequestCycle requestCycle)
+		{
+		}
+
+		public void detach(IRequestCycle requestCycle)
+		{
+		}
+	}
+
+	/**
+	 * Scores all mappers like the compound mapper did before it had an index
+	 */
+	private IRequestHandler mapLinear(final List<IRequestMapper> mappers, final Request request)
+	{
+		List<IRequestMapper> sorted = new ArrayList<IRequestMapper>(mappers);
+		Collections.sort(sorted, new Comparator<IRequestMapper>()
+		{
+			public int compare(IRequestMapper o1, IRequestMapper o2)
+			{
+				int score1 = o1.getCompatibilityScore(request);
+				int score2 = o2.getCompatibilityScore(request);
+				return score1 == score2 ? 0 : (score1 > score2 ? -1 : 1);
+			}
+		});
+		for (IRequestMapper mapper : sorted)
+		{
+			IRequestHandler handler = mapper.mapRequest(request);
+			if (handler != null)
+			{
+				return handler;
+			}
+		}
+		return null;
+	}
+
+	private String name(IRequestHandler handler)
+	{
+		return handler != null ? ((NamedHandler)handler).name : null;
+	}
+
+	/**
+	 * The index has to yield the same mapper as scoring all of them
+	 */
+	public void testSameResultAsLinearScoring()
+	{
+		CompoundRequestMapper compound = new CompoundRequestMapper();
+		List<IRequestMapper> mappers = new ArrayList<IRequestMapper>();
+		IRequestMapper[] all = { new PrefixMapper("a", "a", true),
+				new PrefixMapper("ab", "a/b", true), new PrefixMapper("ab2", "a/b", true),
+				new PrefixMapper("abc-nomap", "a/b/c", false),
+				new PrefixMapper("a*c", "a/${p}/c", true), new PrefixMapper("*", "${p}", true),
+				new PrefixMapper("b", "b", false), new PrefixMapper("bcd", "b/c/d", true),
+				new ScoreMapper("fallback", 0), new ScoreMapper("last", Integer.MIN_VALUE + 1),
+				new ScoreMapper("high", 2) };
+		for (IRequestMapper mapper : all)
+		{
+			compound.add(mapper);
+			mappers.add(0, mapper);
+
+			for (String url : URLS)
+			{
+				Request request = getRequest(Url.parse(url));
+				assertEquals(url, name(mapLinear(mappers, request)),
+					name(compound.mapRequest(request)));
+			}
+		}
+
+		compound.remove(all[10]);
+		mappers.remove(all[10]);
+		for (String url : URLS)
+		{
+			Request request = getRequest(Url.parse(url));
+			assertEquals(url, name(mapLinear(mappers, request)),
+				name(compound.mapRequest(request)));
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void testCompatibilityScore()
+	{
+		CompoundRequestMapper compound = new CompoundRequestMapper();
+		compound.add(new PrefixMapper("ab", "a/b", true));
+		compound.add(new PrefixMapper("c", "c", true));
+
+		assertEquals(2, compound.getCompatibilityScore(getRequest(Url.parse("a/b/c"))));
+		assertEquals(0, compound.getCompatibilityScore(getRequest(Url.parse("x"))));
+
+		compound.add(new ScoreMapper("negative", -5));
+		assertEquals(0, compound.getCompatibilityScore(getRequest(Url.parse("x"))));
+	}
+
+	/**
+	 * A mapper that is not compatible with the home page URL still gets the chance to redirect
+	 * from it
+	 */
+	public void testHomePageRedirectFromMountedMapper()
+	{
+		CompoundRequestMapper compound = new CompoundRequestMapper();
+		for (int i = 0; i < 50; i++)
+		{
+			compound.add(new PrefixMapper("p" + i, "p" + i + "/q", false));
+		}
+		compound.add(new MountedMapper("/mock/page", MockPage.class)
+		{
+			@Override
+			protected IMapperContext getContext()
+			{
+				return context;
+			}
+		});
+
+		IRequestHandler handler = compound.mapRequest(getRequest(Url.parse("")));
+		assertTrue(handler instanceof RenderPageRequestHandler);
+	}
+
+	private MountedMapper mount(String path, Class<? extends IRequestablePage> pageClass)
+	{
+		return new MountedMapper(path, pageClass)
+		{
+			@Override
+			protected IMapperContext getContext()
+			{
+				return context;
+			}
+		};
+	}
+
+	private IRequestHandler bookmarkable(Class<? extends IRequestablePage> pageClass)
+	{
+		PageProvider provider = new PageProvider(pageClass, new PageParameters());
+		provider.setPageSource(context);
+		return new BookmarkablePageRequestHandler(provider);
+	}
+
+	/**
+	 * Only the mappers for the page class are asked, the most recently mounted one wins
+	 */
+	public void testMapHandler()
+	{
+		CompoundRequestMapper compound = new CompoundRequestMapper();
+		compound.add(mount("/first/page1", Page1.class));
+		for (int i = 0; i < 50; i++)
+		{
+			compound.add(mount("/mock" + i, MockPage.class));
+		}
+		compound.add(mount("/page2", Page2.class));
+		compound.add(mount("/second/page1", Page1.class));
+
+		assertEquals("second/page1", compound.mapHandler(bookmarkable(Page1.class)).toString());
+		assertEquals("page2", compound.mapHandler(bookmarkable(Page2.class)).toString());
+		assertEquals("mock49", compound.mapHandler(bookmarkable(MockPage.class)).toString());
+		assertNull(compound.mapHandler(new NamedHandler("none")));
+
+		// unkeyed mappers keep their position
+		compound.add(new IRequestMapper()
+		{
+			public IRequestHandler mapRequest(Request request)
+			{
+				return null;
+			}
+
+			public int getCompatibilityScore(Request request)
+			{
+				return 0;
+			}
+
+			public Url mapHandler(IRequestHandler requestHandler)
+			{
+				return Url.parse("unkeyed");
+			}
+		});
+		assertEquals("unkeyed", compound.mapHandler(bookmarkable(Page1.class)).toString());
+		assertEquals("unkeyed", compound.mapHandler(new NamedHandler("none")).toString());
+	}
+
+	/**
+	 * A mapper whose page class is given by a provider is asked even after the provider returns
+	 * another class
+	 */
+	public void testMapHandlerWithClassProvider()
+	{
+		final Class<?>[] pageClass = { Page1.class };
+		CompoundRequestMapper compound = new CompoundRequestMapper();
+		compound.add(mount("/page2", Page2.class));
+		compound.add(new MountedMapper("/provided", new ClassProvider<IRequestablePage>(null)
+		{
+			@SuppressWarnings("unchecked")
+			@Override
+			public Class<IRequestablePage> get()
+			{
+				return (Class<IRequestablePage>)pageClass[0];
+			}
+		})
+		{
+			@Override
+			protected IMapperContext getContext()
+			{
+				return context;
+			}
+		});
+
+		assertEquals("provided", compound.mapHandler(bookmarkable(Page1.class)).toString());
+
+		pageClass[0] = Page2.class;
+		assertEquals("provided", compound.mapHandler(bookmarkable(Page2.class)).toString());
+		assertNull(compound.mapHandler(bookmarkable(Page1.class)));
+	}
+
+	/**
+	 * A mapper mapping other page classes than the mounted one is asked for all of them
+	 */
+	public void testMapHandlerWithWidenedPageClass()
+	{
+		CompoundRequestMapper compound = new CompoundRequestMapper();
+		compound.add(mount("/page2", Page2.class));
+		compound.add(new MountedMapper("/base", MockPage.class)
+		{
+			@Override
+			protected IMapperContext getContext()
+			{
+				return context;
+			}
+
+			@Override
+			protected boolean checkPageClass(Class<? extends IRequestablePage> pageClass)
+			{
+				return MockPage.class.isAssignableFrom(pageClass);
+			}
+		});
+
+		assertEquals("base", compound.mapHandler(bookmarkable(Page1.class)).toString());
+		assertEquals("base", compound.mapHandler(bookmarkable(Page2.class)).toString());
+		assertEquals("base", compound.mapHandler(bookmarkable(MockPage.class)).toString());
+	}
+}
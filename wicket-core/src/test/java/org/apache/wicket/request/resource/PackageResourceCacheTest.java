@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.resource;
+
+import java.io.InputStream;
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.request.handler.resource.ResourceReferenceRequestHandler;
+import org.apache.wicket.util.io.IOUtils;
+
+/**
+ * @see PackageResourceCache
+ */
+public class PackageResourceCacheTest extends WicketTestCase
+{
+	private static PackageResourceCache.Key key(String path)
+	{
+		return new PackageResourceCache.Key(PackageResource.class, "scope", path, Locale.ENGLISH,
+			null, null);
+	}
+
+	private static PackageResourceCache.Entry entry(int size)
+	{
+		return new PackageResourceCache.Entry(new byte[size], "text/plain", null);
+	}
+
+	/**
+	 * 
+	 */
+	public void testLeastRecentlyUsedIsEvicted()
+	{
+		PackageResourceCache cache = new PackageResourceCache(10, 25);
+		assertTrue(cache.put(key("a"), entry(10), null));
+		assertTrue(cache.put(key("b"), entry(10), null));
+
+		// touch the first entry so the second one is the least recently used
+		assertNotNull(cache.get(key("a")));
+		assertTrue(cache.put(key("c"), entry(10), null));
+
+		assertNotNull(cache.get(key("a")));
+		assertNull(cache.get(key("b")));
+		assertNotNull(cache.get(key("c")));
+		assertEquals(20, cache.getTotalBytes());
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// too large to be cached at all
+		assertFalse(cache.put(key("d"), entry(11), null));
+		assertNull(cache.get(key("d")));
+		assertEquals(2, cache.size());
+
+		// replace
+		assertTrue(cache.put(key("a"), entry(5), null));
+		assertEquals(15, cache.getTotalBytes());
+
+		cache.remove(key("a"));
+		assertEquals(10, cache.getTotalBytes());
+		cache.clear();
+		assertEquals(0, cache.getTotalBytes());
+	}
+
+	/**
+	 * @throws InterruptedException
+	 */
+	public void testConcurrentAccess() throws InterruptedException
+	{
+		final PackageResourceCache cache = new PackageResourceCache(10, 100);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final String prefix = "t" + t + "-";
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 1000; i++)
+					{
+						cache.put(key(prefix + (i % 20)), entry(10), null);
+						cache.get(key(prefix + ((i + 10) % 20)));
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		assertEquals(10, cache.size());
+		assertEquals(100, cache.getTotalBytes());
+		assertEquals(4000, cache.getHits() + cache.getMisses());
+	}
+
+	/**
+	 * 
+	 */
+	public void testETag()
+	{
+		PackageResourceCache.Entry entry = entry(10);
+		assertEquals(PackageResourceCache.newETag(new byte[10]), entry.getETag());
+		assertEquals(34, entry.getETag().length());
+		assertTrue(entry.getETag().startsWith("\""));
+		assertFalse(entry.getETag().equals(PackageResourceCache.newETag(new byte[11])));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testConditionalRequest() throws Exception
+	{
+		PackageResourceCache cache = tester.getApplication()
+			.getResourceSettings()
+			.getPackageResourceCache();
+		cache.clear();
+
+		PackageResourceReference reference = new PackageResourceReference(Link.class, "test.css");
+		tester.processRequest(new ResourceReferenceRequestHandler(reference));
+
+		InputStream in = Link.class.getResourceAsStream("test.css");
+		byte[] content = IOUtils.toByteArray(in);
+		in.close();
+
+		String etag = tester.getLastResponse().getHeader("ETag");
+		assertEquals(PackageResourceCache.newETag(content), etag);
+		assertEquals(content.length, tester.getLastResponse().getBinaryContent().length);
+		assertEquals(1, cache.size());
+
+		// answered from the cache
+		tester.getRequest().addHeader("If-None-Match", "\"other\", " + etag);
+		tester.processRequest(new ResourceReferenceRequestHandler(reference));
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, tester.getLastResponse().getStatus());
+		assertEquals(etag, tester.getLastResponse().getHeader("ETag"));
+		assertEquals(0, tester.getLastResponse().getBinaryContent().length);
+		assertEquals(1, cache.getHits());
+
+		tester.getRequest().addHeader("If-None-Match", "\"other\"");
+		tester.processRequest(new ResourceReferenceRequestHandler(reference));
+		assertEquals(HttpServletResponse.SC_OK, tester.getLastResponse().getStatus());
+		assertEquals(content.length, tester.getLastResponse().getBinaryContent().length);
+	}
+}
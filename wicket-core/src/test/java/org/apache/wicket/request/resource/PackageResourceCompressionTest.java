@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.protocol.http.mock.MockHttpServletResponse;
+import org.apache.wicket.request.handler.resource.ResourceReferenceRequestHandler;
+import org.apache.wicket.util.io.IOUtils;
+
+/**
+ * @see PackageResource
+ */
+public class PackageResourceCompressionTest extends WicketTestCase
+{
+	private MockHttpServletResponse request(String name, String acceptEncoding)
+	{
+		if (acceptEncoding != null)
+		{
+			tester.getRequest().addHeader("Accept-Encoding", acceptEncoding);
+		}
+		tester.processRequest(new ResourceReferenceRequestHandler(new PackageResourceReference(
+			getClass(), name)));
+		return tester.getLastResponse();
+	}
+
+	private byte[] content(String name) throws Exception
+	{
+		InputStream in = getClass().getResourceAsStream(name);
+		try
+		{
+			return IOUtils.toByteArray(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static byte[] gunzip(byte[] bytes) throws Exception
+	{
+		return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testCompressed() throws Exception
+	{
+		byte[] content = content("compressible.css");
+
+		MockHttpServletResponse response = request("compressible.css", "deflate, gzip");
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertTrue(response.getHeader("ETag").endsWith("-gzip\""));
+		byte[] compressed = response.getBinaryContent();
+		assertTrue(compressed.length < content.length);
+		assertEquals(String.valueOf(compressed.length), response.getHeader("Content-Length"));
+		assertTrue(Arrays.equals(content, gunzip(compressed)));
+
+		response = request("compressible.css", null);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertEquals(PackageResourceCache.newETag(content), response.getHeader("ETag"));
+		assertTrue(Arrays.equals(content, response.getBinaryContent()));
+
+		response = request("compressible.css", "gzip;q=0, *");
+		assertNull(response.getHeader("Content-Encoding"));
+
+		response = request("compressible.css", "identity, *;q=0.5");
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testPrecompressed() throws Exception
+	{
+		MockHttpServletResponse response = request("precompressed.css", "gzip");
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertTrue(Arrays.equals(content("precompressed.css.gz"),
+			response.getBinaryContent()));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testCompressionDisabled() throws Exception
+	{
+		tester.getApplication().getResourceSettings().setDisableGZipCompression(true);
+
+		MockHttpServletResponse response = request("compressible.css", "gzip");
+		assertNull(response.getHeader("Content-Encoding"));
+		assertNull(response.getHeader("Vary"));
+		assertTrue(Arrays.equals(content("compressible.css"),
+			response.getBinaryContent()));
+	}
+
+	/**
+	 * Resources that are not cached are neither compressed nor read for conditional requests
+	 * 
+	 * @throws Exception
+	 */
+	public void testNotCached() throws Exception
+	{
+		tester.getApplication().getResourceSettings().setPackageResourceCache(
+			new PackageResourceCache(0, 0));
+
+		MockHttpServletResponse response = request("compressible.css", "gzip");
+		assertNull(response.getHeader("Content-Encoding"));
+		assertNull(response.getHeader("ETag"));
+		assertTrue(Arrays.equals(content("compressible.css"),
+			response.getBinaryContent()));
+
+		tester.getRequest().addDateHeader("If-Modified-Since",
+			System.currentTimeMillis() + 60 * 1000);
+		response = request("compressible.css", "gzip");
+		assertEquals(304, response.getStatus());
+		assertEquals(0, response.getBinaryContent().length);
+	}
+}
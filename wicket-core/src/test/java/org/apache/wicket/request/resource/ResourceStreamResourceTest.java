@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.resource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.protocol.http.mock.MockHttpServletResponse;
+import org.apache.wicket.request.handler.resource.ResourceRequestHandler;
+import org.apache.wicket.util.resource.FileResourceStream;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.StringResourceStream;
+
+/**
+ * @see ResourceStreamResource
+ */
+public class ResourceStreamResourceTest extends WicketTestCase
+{
+	private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		file = File.createTempFile("ResourceStreamResourceTest", ".txt");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(CONTENT.getBytes("ISO-8859-1"));
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		file.delete();
+		super.tearDown();
+	}
+
+	private MockHttpServletResponse request(IResourceStream stream, String range, String ifRange)
+	{
+		if (range != null)
+		{
+			tester.getRequest().addHeader("Range", range);
+		}
+		if (ifRange != null)
+		{
+			tester.getRequest().addHeader("If-Range", ifRange);
+		}
+		tester.processRequest(new ResourceRequestHandler(new ResourceStreamResource(stream), null));
+		return tester.getLastResponse();
+	}
+
+	private void assertPartial(IResourceStream stream, String range, int first, int last)
+		throws Exception
+	{
+		MockHttpServletResponse response = request(stream, range, null);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes " + first + "-" + last + "/" + CONTENT.length(),
+			response.getHeader("Content-Range"));
+		assertEquals(String.valueOf(last - first + 1), response.getHeader("Content-Length"));
+		assertEquals(CONTENT.substring(first, last + 1), new String(response.getBinaryContent(),
+			"ISO-8859-1"));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testFile() throws Exception
+	{
+		MockHttpServletResponse response = request(new FileResourceStream(file), null, null);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("bytes", response.getHeader("Accept-Ranges"));
+		assertEquals(CONTENT, new String(response.getBinaryContent(), "ISO-8859-1"));
+
+		assertPartial(new FileResourceStream(file), "bytes=10-19", 10, 19);
+		assertPartial(new FileResourceStream(file), "bytes=30-", 30, 35);
+		assertPartial(new FileResourceStream(file), "bytes=-5", 31, 35);
+		assertPartial(new FileResourceStream(file), "bytes=20-100", 20, 35);
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testStream() throws Exception
+	{
+		StringResourceStream stream = new StringResourceStream(CONTENT);
+		MockHttpServletResponse response = request(stream, null, null);
+		assertEquals(CONTENT, new String(response.getBinaryContent(), "ISO-8859-1"));
+
+		assertPartial(new StringResourceStream(CONTENT), "bytes=10-19", 10, 19);
+		assertPartial(new StringResourceStream(CONTENT), "bytes=-1", 35, 35);
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testIgnoredRange() throws Exception
+	{
+		// multiple ranges
+		MockHttpServletResponse response = request(new FileResourceStream(file), "bytes=0-1,3-4",
+			null);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(CONTENT, new String(response.getBinaryContent(), "ISO-8859-1"));
+
+		// invalid
+		response = request(new FileResourceStream(file), "bytes=5-1", null);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+
+		// If-Range doesn't match
+		response = request(new FileResourceStream(file), "bytes=0-1", "\"other\"");
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(CONTENT, new String(response.getBinaryContent(), "ISO-8859-1"));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testUnsatisfiableRange() throws Exception
+	{
+		MockHttpServletResponse response = request(new FileResourceStream(file), "bytes=100-",
+			null);
+		assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */" + CONTENT.length(), response.getHeader("Content-Range"));
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.resource.caching;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.request.handler.resource.ResourceReferenceRequestHandler;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.request.resource.PackageResourceReference;
+import org.apache.wicket.util.io.IOUtils;
+
+/**
+ * @see FilenameWithContentHashResourceCachingStrategy
+ */
+public class FilenameWithContentHashResourceCachingStrategyTest extends WicketTestCase
+{
+	private final FilenameWithContentHashResourceCachingStrategy strategy = new FilenameWithContentHashResourceCachingStrategy();
+
+	/**
+	 * @throws Exception
+	 */
+	public void testDecorateUrl() throws Exception
+	{
+		PackageResourceReference reference = new PackageResourceReference(Link.class, "test.css");
+		ResourceUrl url = new ResourceUrl("test.css", new PageParameters());
+		strategy.decorateUrl(url, reference);
+
+		InputStream in = Link.class.getResourceAsStream("test.css");
+		byte[] digest = MessageDigest.getInstance("MD5").digest(IOUtils.toByteArray(in));
+		in.close();
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest)
+		{
+			hex.append(String.format("%02x", b));
+		}
+		assertEquals("test-ver-" + hex + ".css", url.getFileName());
+
+		// cached
+		ResourceUrl url2 = new ResourceUrl("test.css", new PageParameters());
+		strategy.decorateUrl(url2, new PackageResourceReference(Link.class, "test.css"));
+		assertEquals(url.getFileName(), url2.getFileName());
+
+		strategy.undecorateUrl(url);
+		assertEquals("test.css", url.getFileName());
+	}
+
+	/**
+	 * 
+	 */
+	public void testMissingResource()
+	{
+		ResourceUrl url = new ResourceUrl("missing.css", new PageParameters());
+		strategy.decorateUrl(url, new PackageResourceReference(Link.class, "missing.css"));
+		assertEquals("missing.css", url.getFileName());
+	}
+
+	/**
+	 * 
+	 */
+	public void testUndecorateKeepsOtherNames()
+	{
+		ResourceUrl url = new ResourceUrl("jquery-ver-1.4.js", new PageParameters());
+		strategy.undecorateUrl(url);
+		assertEquals("jquery-ver-1.4.js", url.getFileName());
+
+		url = new ResourceUrl("style-ver-abc.css", new PageParameters());
+		strategy.undecorateUrl(url);
+		assertEquals("style-ver-abc.css", url.getFileName());
+
+		url = new ResourceUrl("style-ver-1282915831000.css", new PageParameters());
+		strategy.undecorateUrl(url);
+		assertEquals("style.css", url.getFileName());
+	}
+
+	/**
+	 * 
+	 */
+	public void testDecorateResponse()
+	{
+		// not requested by a fingerprinted URL
+		AbstractResource.ResourceResponse response = new AbstractResource.ResourceResponse();
+		strategy.decorateResponse(response);
+		assertFalse(response.isCacheImmutable());
+	}
+
+	/**
+	 * Only responses for the current fingerprint are cached forever
+	 */
+	public void testOutdatedFingerprint()
+	{
+		tester.getApplication().getResourceSettings().setCachingStrategy(strategy);
+
+		PackageResourceReference reference = new PackageResourceReference(Link.class, "test.css");
+		String url = tester.urlFor(new ResourceReferenceRequestHandler(reference)).toString();
+		assertTrue(url, url.contains("test-ver-"));
+
+		tester.executeUrl(url);
+		assertTrue(tester.getLastResponse().getHeader("Cache-Control").contains("immutable"));
+
+		String outdated = url.replaceAll("-ver-[0-9a-f]+", "-ver-0123456789abcdef0123456789abcdef");
+		tester.executeUrl(outdated);
+		assertEquals(200, tester.getLastResponse().getStatus());
+		assertFalse(tester.getLastResponse().getHeader("Cache-Control").contains("immutable"));
+		assertFalse(tester.getLastResponse().getHeader("Cache-Control").contains("max-age=3"));
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.resource.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.markup.IMarkupResourceStreamProvider;
+import org.apache.wicket.markup.html.IHeaderContributor;
+import org.apache.wicket.markup.html.IHeaderResponse;
+import org.apache.wicket.markup.html.IHeaderResponseDecorator;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.parser.XmlPullParser;
+import org.apache.wicket.markup.parser.XmlTag;
+import org.apache.wicket.request.handler.resource.ResourceReferenceRequestHandler;
+import org.apache.wicket.request.resource.PackageResourceReference;
+import org.apache.wicket.request.resource.ResourceReferenceRegistry;
+import org.apache.wicket.request.resource.SharedResourceReference;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.StringResourceStream;
+import org.apache.wicket.util.tester.WicketTester;
+
+/**
+ * @see ConcatResourceBundlingHeaderResponse
+ */
+public class ConcatResourceBundlingHeaderResponseTest extends WicketTestCase
+{
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		tester.getApplication().setHeaderResponseDecorator(new IHeaderResponseDecorator()
+		{
+			public IHeaderResponse decorate(IHeaderResponse response)
+			{
+				return new ConcatResourceBundlingHeaderResponse(response);
+			}
+		});
+	}
+
+	private List<String> getReferences(String tagName, String attribute) throws Exception
+	{
+		XmlPullParser parser = new XmlPullParser();
+		parser.parse(tester.getLastResponseAsString());
+		List<String> references = new ArrayList<String>();
+		XmlTag tag;
+		while ((tag = (XmlTag)parser.nextTag()) != null)
+		{
+			if ((tag.isOpen() || tag.isOpenClose()) && tagName.equals(tag.getName()))
+			{
+				references.add(tag.getString(attribute).toString());
+			}
+		}
+		return references;
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testBundles() throws Exception
+	{
+		tester.startPage(TestPage.class);
+
+		List<String> scripts = getReferences("script", "src");
+		assertEquals(3, scripts.size());
+		assertTrue(scripts.get(0).contains("bundle-"));
+		assertTrue(scripts.get(1).contains("shared.js"));
+		assertTrue(scripts.get(2).contains("b.js"));
+
+		List<String> styles = getReferences("link", "href");
+		assertEquals(1, styles.size());
+		assertTrue(styles.get(0).contains("bundle-"));
+		assertTrue(styles.get(0).contains(".css?"));
+
+		// the bundle is reused
+		tester.startPage(TestPage.class);
+		assertEquals(scripts, getReferences("script", "src"));
+	}
+
+	/**
+	 * 
+	 */
+	public void testContent()
+	{
+		List<PackageResourceReference> members = new ArrayList<PackageResourceReference>();
+		members.add(new PackageResourceReference(getClass(), "a.js"));
+		members.add(new PackageResourceReference(getClass(), "b.js"));
+		ConcatBundleResourceReference bundle = ConcatBundleResourceReference.bundle(members,
+			false);
+		assertSame(bundle, ConcatBundleResourceReference.bundle(members, false));
+		assertEquals(getClass(), bundle.getScope());
+		assertTrue(bundle.getName().matches("bundle-[0-9a-f]{32}\\.js"));
+
+		tester.processRequest(new ResourceReferenceRequestHandler(bundle));
+		assertEquals("var a = 1\n;\nvar b = a + 1;\n;\n", tester.getLastResponseAsString());
+		assertTrue(tester.getLastResponse().getHeader("Cache-Control").contains("immutable"));
+
+		members.add(new PackageResourceReference(getClass(), "missing.js"));
+		assertNull(ConcatBundleResourceReference.bundle(members, false));
+	}
+
+	/**
+	 * A bundle URL can be served by a node which has not rendered the bundle
+	 */
+	public void testUnregisteredBundle()
+	{
+		List<PackageResourceReference> members = new ArrayList<PackageResourceReference>();
+		members.add(new PackageResourceReference(getClass(), "a.js"));
+		members.add(new PackageResourceReference(getClass(), "b.js"));
+		ConcatBundleResourceReference bundle = ConcatBundleResourceReference.bundle(members,
+			false);
+		String url = tester.urlFor(
+			new ResourceReferenceRequestHandler(bundle, bundle.getParameters())).toString();
+
+		WicketTester other = new WicketTester();
+		try
+		{
+			other.executeUrl(url);
+			assertEquals("var a = 1\n;\nvar b = a + 1;\n;\n", other.getLastResponseAsString());
+			assertTrue(other.getLastResponse().getHeader("Cache-Control").contains("immutable"));
+
+			// the members don't match the name
+			members.set(0, members.get(1));
+			ConcatBundleResourceReference changed = ConcatBundleResourceReference.bundle(members,
+				false);
+			String changedUrl = tester.urlFor(
+				new ResourceReferenceRequestHandler(changed, changed.getParameters())).toString();
+			other.executeUrl(changedUrl.replace(changed.getName(), bundle.getName()));
+			assertEquals("var b = a + 1;\n;\nvar b = a + 1;\n;\n",
+				other.getLastResponseAsString());
+			assertFalse(other.getLastResponse().getHeader("Cache-Control").contains("immutable"));
+
+			other.executeUrl(url.substring(0, url.indexOf('?')));
+			assertEquals(404, other.getLastResponse().getStatus());
+
+			// the members have not been listed by the application
+			other.executeUrl(url.replaceFirst("a\\.js", "b.js"));
+			assertEquals(404, other.getLastResponse().getStatus());
+			other.executeUrl(url.replaceFirst("&s=[^&]*", ""));
+			assertEquals(404, other.getLastResponse().getStatus());
+		}
+		finally
+		{
+			other.destroy();
+		}
+	}
+
+	/**
+	 * Members must be accepted by the package resource guard
+	 */
+	public void testGuardedMember()
+	{
+		List<PackageResourceReference> members = new ArrayList<PackageResourceReference>();
+		members.add(new PackageResourceReference(getClass(), "a.js"));
+		members.add(new PackageResourceReference(getClass(), getClass().getSimpleName() +
+			".class"));
+		assertNull(ConcatBundleResourceReference.bundle(members, false));
+	}
+
+	/**
+	 * 
+	 */
+	public void testRegisteredBundlesAreBounded()
+	{
+		ResourceReferenceRegistry registry = tester.getApplication().getResourceReferenceRegistry();
+		int size = registry.getSize();
+
+		// distinct sequences of the test scripts
+		String[] names = { "a.js", "b.js", "a.css", "b.css" };
+		List<ConcatBundleResourceReference> bundles = new ArrayList<ConcatBundleResourceReference>();
+		for (int i = 0; i <= ConcatBundleResourceReference.MAX_BUNDLES; i++)
+		{
+			List<PackageResourceReference> members = new ArrayList<PackageResourceReference>();
+			for (int digits = i + names.length; digits > 0; digits /= names.length)
+			{
+				members.add(new PackageResourceReference(getClass(), names[digits %
+					names.length]));
+			}
+			bundles.add(ConcatBundleResourceReference.bundle(members, false));
+		}
+
+		assertTrue(registry.getSize() <= size + ConcatBundleResourceReference.MAX_BUNDLES);
+		assertNotSame(bundles.get(0),
+			ConcatBundleResourceReference.bundle(bundles.get(0).getMembers(), false));
+		assertSame(bundles.get(bundles.size() - 1), ConcatBundleResourceReference.bundle(
+			bundles.get(bundles.size() - 1).getMembers(), false));
+	}
+
+	/**
+	 * 
+	 */
+	public static class TestPage extends WebPage
+		implements
+			IHeaderContributor,
+			IMarkupResourceStreamProvider
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void renderHead(IHeaderResponse response)
+		{
+			response.renderJavaScriptReference(new PackageResourceReference(
+				ConcatResourceBundlingHeaderResponseTest.class, "a.js"));
+			response.renderCSSReference(new PackageResourceReference(
+				ConcatResourceBundlingHeaderResponseTest.class, "a.css"));
+			response.renderJavaScriptReference(new PackageResourceReference(
+				ConcatResourceBundlingHeaderResponseTest.class, "b.js"));
+			response.renderJavaScriptReference(new SharedResourceReference("shared.js"));
+			response.renderJavaScriptReference(new PackageResourceReference(
+				ConcatResourceBundlingHeaderResponseTest.class, "b.js"), "b");
+			response.renderCSSReference(new PackageResourceReference(
+				ConcatResourceBundlingHeaderResponseTest.class, "b.css"));
+		}
+
+		public IResourceStream getMarkupResourceStream(MarkupContainer container,
+			Class<?> containerClass)
+		{
+			return new StringResourceStream("<html><body></body></html>");
+		}
+	}
+}
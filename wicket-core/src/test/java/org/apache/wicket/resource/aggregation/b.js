@@ -0,0 +1 @@
+var b = a + 1;
@@ -16,6 +16,10 @@
  */
 package org.apache.wicket.resource.loader;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.apache.wicket.Application;
@@ -83,6 +87,129 @@ public class ComponentStringResourceLoaderTest extends WicketTestCase
 		myFac.clearCache();
 	}
 
+	/**
+	 * The properties files are probed once per class, locale, style and variation
+	 */
+	public void testFlattenedProperties()
+	{
+		CountingPropertiesFactory factory = new CountingPropertiesFactory(tester.getApplication());
+		tester.getApplication().getResourceSettings().setPropertiesFactory(factory);
+		ComponentStringResourceLoader loader = new ComponentStringResourceLoader();
+
+		assertEquals("data from my properties file", loader.loadStringResource(XmlPage.class,
+			"myTest", Locale.ENGLISH, null, null));
+		int loads = factory.loads;
+		assertTrue(loads > 0);
+
+		assertNull(loader.loadStringResource(XmlPage.class, "unknown", Locale.ENGLISH, null, null));
+		assertEquals("data from my properties file", loader.loadStringResource(XmlPage.class,
+			"myTest", Locale.ENGLISH, null, null));
+		assertEquals(loads, factory.loads);
+
+		// the most specific properties file wins
+		assertEquals("${label} is niet goed", loader.loadStringResource(
+			ClassStringResourceLoaderTest.MyValidator.class, "error", new Locale("nl"), null, null));
+		assertEquals("${label} is invalid", loader.loadStringResource(
+			ClassStringResourceLoaderTest.MyValidator.class, "error", Locale.ENGLISH, null, null));
+
+		// another factory requires new indexes
+		CountingPropertiesFactory other = new CountingPropertiesFactory(tester.getApplication());
+		tester.getApplication().getResourceSettings().setPropertiesFactory(other);
+		assertEquals("data from my properties file", loader.loadStringResource(XmlPage.class,
+			"myTest", Locale.ENGLISH, null, null));
+		assertTrue(other.loads > 0);
+	}
+
+	/**
+	 * 
+	 */
+	public void testPrecompile()
+	{
+		CountingPropertiesFactory factory = new CountingPropertiesFactory(tester.getApplication());
+		tester.getApplication().getResourceSettings().setPropertiesFactory(factory);
+		ComponentStringResourceLoader loader = new ComponentStringResourceLoader();
+
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		classes.add(XmlPage.class);
+		loader.precompile(classes, Arrays.asList(Locale.ENGLISH, Locale.GERMAN));
+		int loads = factory.loads;
+
+		assertEquals("data from my properties file", loader.loadStringResource(XmlPage.class,
+			"myTest", Locale.GERMAN, null, null));
+		assertEquals(loads, factory.loads);
+	}
+
+	/**
+	 * The indexes are rebuilt after the properties factory's cache has been cleared
+	 */
+	public void testClearCache()
+	{
+		CountingPropertiesFactory factory = new CountingPropertiesFactory(tester.getApplication());
+		tester.getApplication().getResourceSettings().setPropertiesFactory(factory);
+		ComponentStringResourceLoader loader = new ComponentStringResourceLoader();
+		tester.getApplication().getResourceSettings().getStringResourceLoaders().add(loader);
+
+		assertEquals("data from my properties file", loader.loadStringResource(XmlPage.class,
+			"myTest", Locale.ENGLISH, null, null));
+		int loads = factory.loads;
+
+		factory.clearCache();
+		assertEquals("data from my properties file", loader.loadStringResource(XmlPage.class,
+			"myTest", Locale.ENGLISH, null, null));
+		assertEquals(2 * loads, factory.loads);
+	}
+
+	/**
+	 * Properties are not flattened if the properties factory doesn't cache them
+	 */
+	public void testNotFlattenedWithDisabledCache()
+	{
+		CountingPropertiesFactory factory = new CountingPropertiesFactory(tester.getApplication())
+		{
+			@Override
+			protected Map<String, Properties> newPropertiesCache()
+			{
+				return null;
+			}
+		};
+		tester.getApplication().getResourceSettings().setPropertiesFactory(factory);
+		ComponentStringResourceLoader loader = new ComponentStringResourceLoader();
+
+		assertEquals("data from my properties file", loader.loadStringResource(XmlPage.class,
+			"myTest", Locale.ENGLISH, null, null));
+		int loads = factory.loads;
+		assertTrue(loads > 0);
+
+		assertEquals("data from my properties file", loader.loadStringResource(XmlPage.class,
+			"myTest", Locale.ENGLISH, null, null));
+		assertEquals(2 * loads, factory.loads);
+	}
+
+	/**
+	 * 
+	 */
+	private class CountingPropertiesFactory extends PropertiesFactory
+	{
+		private int loads;
+
+		/**
+		 * Construct.
+		 * 
+		 * @param application
+		 */
+		public CountingPropertiesFactory(Application application)
+		{
+			super(application);
+		}
+
+		@Override
+		public Properties load(Class<?> clazz, String path)
+		{
+			loads++;
+			return super.load(clazz, path);
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -98,6 +98,38 @@ public class ResponseFilterTest
 
 	}
 
+	/**
+	 * The filtered response is written
+	 */
+	@Test
+	public void filteredResponse()
+	{
+		WicketTester tester = new WicketTester(new DummyApplication()
+		{
+			@Override
+			protected void init()
+			{
+				super.init();
+				getRequestCycleSettings().addResponseFilter(new IResponseFilter()
+				{
+					public AppendingStringBuffer filter(AppendingStringBuffer responseBuffer)
+					{
+						return new AppendingStringBuffer(responseBuffer).append("<!-- filtered -->");
+					}
+				});
+			}
+		});
+		try
+		{
+			tester.startPage(DummyHomePage.class);
+			assertTrue(tester.getLastResponseAsString().endsWith("<!-- filtered -->"));
+		}
+		finally
+		{
+			tester.destroy();
+		}
+	}
+
 	/**
 	 * Test page for ajax request
 	 */
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.serialize.java;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.wicket.MockPageWithLinkAndComponent;
+import org.apache.wicket.WicketTestCase;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.settings.def.FrameworkSettings;
+
+/**
+ * Tests for {@link CompactJavaSerializer}
+ */
+public class CompactJavaSerializerTest extends WicketTestCase
+{
+	private enum Color {
+		RED, GREEN
+	}
+
+	private static class Bean implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+		private int[] numbers;
+		private Color color;
+		private Class<?> type;
+		private List<Bean> children = new ArrayList<Bean>();
+	}
+
+	/**
+	 * 
+	 */
+	public void testDefaultSerializer()
+	{
+		// the compact format is opt-in
+		assertEquals(JavaSerializer.class, new FrameworkSettings().getSerializer().getClass());
+	}
+
+	/**
+	 * 
+	 */
+	public void testRoundTrip()
+	{
+		Bean bean = new Bean();
+		bean.name = "parent";
+		bean.numbers = new int[] { 1, 2, 3 };
+		bean.color = Color.GREEN;
+		bean.type = Thread.class;
+		Bean child = new Bean();
+		child.type = int.class;
+		bean.children.add(child);
+		bean.children.add(child);
+
+		CompactJavaSerializer serializer = new CompactJavaSerializer("test");
+		byte[] data = serializer.serialize(bean);
+
+		// deserialize twice so the second one goes through the dictionary
+		for (int i = 0; i < 2; i++)
+		{
+			Bean copy = (Bean)serializer.deserialize(data);
+			assertEquals("parent", copy.name);
+			assertTrue(Arrays.equals(bean.numbers, copy.numbers));
+			assertSame(Color.GREEN, copy.color);
+			assertSame(Thread.class, copy.type);
+			assertEquals(2, copy.children.size());
+			assertSame(copy.children.get(0), copy.children.get(1));
+			assertSame(int.class, copy.children.get(0).type);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void testPage()
+	{
+		MockPageWithLinkAndComponent page = new MockPageWithLinkAndComponent();
+		page.add(new Label("component", Model.of("value")));
+
+		CompactJavaSerializer compact = new CompactJavaSerializer(tester.getApplication()
+			.getApplicationKey());
+		byte[] data = compact.serialize(page);
+		MockPageWithLinkAndComponent copy = (MockPageWithLinkAndComponent)compact.deserialize(data);
+		assertEquals("value", copy.get("component").getDefaultModelObject());
+
+		byte[] plain = new JavaSerializer(tester.getApplication().getApplicationKey()).serialize(page);
+		assertTrue(data.length < plain.length);
+	}
+
+	/**
+	 * 
+	 */
+	public void testReadsJavaSerializerFormat()
+	{
+		byte[] data = new JavaSerializer("test").serialize("some value");
+
+		assertEquals("some value", new CompactJavaSerializer("test").deserialize(data));
+	}
+
+	/**
+	 * 
+	 */
+	public void testNotSerializable()
+	{
+		assertNull(new CompactJavaSerializer("test").serialize(new Object()));
+	}
+}
@@ -623,4 +623,60 @@ public class PropertyResolverTest extends WicketTestCase
 			assertTrue(e.getMessage().toLowerCase().contains("name"));
 		}
 	}
+
+	/**
+	 * A compiled expression must follow null values and changing classes of intermediate objects
+	 */
+	public void testCompiledExpression()
+	{
+		assertNull(PropertyResolver.getValue("address.street", person));
+
+		Address address = new Address();
+		address.setStreet("wicket-street");
+		person.setAddress(address);
+		assertEquals("wicket-street", PropertyResolver.getValue("address.street", person));
+		assertEquals("wicket-street", PropertyResolver.getValue("address.street", person));
+
+		person.setAddress(new Address()
+		{
+			@Override
+			public String getStreet()
+			{
+				return "overridden";
+			}
+		});
+		assertEquals("overridden", PropertyResolver.getValue("address.street", person));
+
+		person.setAddress(null);
+		assertNull(PropertyResolver.getValue("address.street", person));
+
+		// the compiled expression creates missing objects for setting values too
+		PropertyResolver.setValue("address.street", person, "created", CONVERTER);
+		assertEquals("created", person.getAddress().getStreet());
+		assertEquals(String.class, PropertyResolver.getPropertyClass("address.street", person));
+	}
+
+	/**
+	 * Expressions are not compiled for classes the {@link PropertyResolver.IClassCache} does not
+	 * keep
+	 */
+	public void testCompiledExpressionRespectsClassCache()
+	{
+		PropertyResolver.setClassCache(tester.getApplication(), new PropertyResolver.IClassCache()
+		{
+			public void put(Class<?> clz, Map<String, PropertyResolver.IGetAndSet> values)
+			{
+			}
+
+			public Map<String, PropertyResolver.IGetAndSet> get(Class<?> clz)
+			{
+				return null;
+			}
+		});
+
+		person.setName("name");
+		assertEquals("name", PropertyResolver.getValue("name", person));
+		person.setName("other");
+		assertEquals("other", PropertyResolver.getValue("name", person));
+	}
 }
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.fastclass;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.lang.PropertyResolver;
+import org.apache.wicket.util.lang.PropertyResolver.IGetAndSet;
+import org.apache.wicket.util.lang.PropertyResolver.IGetAndSetOptimizer;
+import org.apache.wicket.util.lang.PropertyResolverConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link IGetAndSetOptimizer} calling property getters and setters through cglib's
+ * {@link FastClass} instead of {@link Method#invoke(Object, Object...)}. The generated classes
+ * dispatch on a method index and call the accessors directly, so every
+ * <code>PropertyModel</code>, <code>CompoundPropertyModel</code> or <code>PropertyColumn</code>
+ * avoids the reflection overhead.
+ * <p>
+ * Install it in the application's init:
+ * 
+ * <pre>
+ * PropertyResolver.setOptimizer(this, new FastClassGetAndSetOptimizer());
+ * </pre>
+ * 
+ * Properties resolved to fields, maps, lists or arrays are left as they are, as are classes cglib
+ * cannot generate a {@link FastClass} for.
+ */
+public class FastClassGetAndSetOptimizer implements IGetAndSetOptimizer
+{
+	private static final Logger log = LoggerFactory.getLogger(FastClassGetAndSetOptimizer.class);
+
+	/**
+	 * @see org.apache.wicket.util.lang.PropertyResolver.IGetAndSetOptimizer#optimize(java.lang.Class,
+	 *      org.apache.wicket.util.lang.PropertyResolver.IGetAndSet)
+	 */
+	public IGetAndSet optimize(final Class<?> clz, final IGetAndSet getAndSet)
+	{
+		Method getter = getAndSet.getGetter();
+		if (getter == null || getter.getParameterTypes().length != 0)
+		{
+			return getAndSet;
+		}
+
+		try
+		{
+			FastMethod fastGetter = newFastMethod(getter);
+			Method setter = getAndSet.getSetter();
+			FastMethod fastSetter = setter != null ? newFastMethod(setter) : null;
+			return new FastGetAndSet(getAndSet, fastGetter, fastSetter);
+		}
+		catch (RuntimeException e)
+		{
+			log.debug("Cannot generate fast class for " + getter, e);
+			return getAndSet;
+		}
+	}
+
+	private static FastMethod newFastMethod(final Method method)
+	{
+		// cglib caches the generated classes per class loader itself
+		Class<?> declaringClass = method.getDeclaringClass();
+		return FastClass.create(declaringClass.getClassLoader(), declaringClass).getMethod(method);
+	}
+
+	/**
+	 * Calls the getter and setter through {@link FastMethod}s, everything else is delegated.
+	 */
+	private static final class FastGetAndSet implements IGetAndSet
+	{
+		private final IGetAndSet delegate;
+
+		private final FastMethod getter;
+
+		private final FastMethod setter;
+
+		private final Class<?> type;
+
+		private FastGetAndSet(final IGetAndSet delegate, final FastMethod getter,
+			final FastMethod setter)
+		{
+			this.delegate = delegate;
+			this.getter = getter;
+			this.setter = setter;
+			type = getter.getReturnType();
+		}
+
+		/**
+		 * @see org.apache.wicket.util.lang.PropertyResolver.IGetAndSet#getValue(java.lang.Object)
+		 */
+		public Object getValue(final Object object)
+		{
+			try
+			{
+				return getter.invoke(object, null);
+			}
+			catch (InvocationTargetException ex)
+			{
+				throw new WicketRuntimeException("Error calling method: " +
+					delegate.getGetter() + " on object: " + object, ex.getCause());
+			}
+			catch (RuntimeException ex)
+			{
+				throw new WicketRuntimeException("Error calling method: " +
+					delegate.getGetter() + " on object: " + object, ex);
+			}
+		}
+
+		/**
+		 * @see org.apache.wicket.util.lang.PropertyResolver.IGetAndSet#setValue(java.lang.Object,
+		 *      java.lang.Object, org.apache.wicket.util.lang.PropertyResolverConverter)
+		 */
+		public void setValue(final Object object, final Object value,
+			final PropertyResolverConverter converter)
+		{
+			if (setter == null)
+			{
+				delegate.setValue(object, value, converter);
+				return;
+			}
+
+			Object converted = converter.convert(value, type);
+			if (converted == null && (value != null || type.isPrimitive()))
+			{
+				// let the delegate report the conversion error
+				delegate.setValue(object, value, converter);
+				return;
+			}
+
+			try
+			{
+				setter.invoke(object, new Object[] { converted });
+			}
+			catch (InvocationTargetException ex)
+			{
+				throw new WicketRuntimeException("Error calling method: " +
+					delegate.getSetter() + " on object: " + object, ex.getCause());
+			}
+			catch (RuntimeException ex)
+			{
+				throw new WicketRuntimeException("Error calling method: " +
+					delegate.getSetter() + " on object: " + object, ex);
+			}
+		}
+
+		/**
+		 * @see org.apache.wicket.util.lang.PropertyResolver.IGetAndSet#newValue(java.lang.Object)
+		 */
+		public Object newValue(final Object object)
+		{
+			return delegate.newValue(object);
+		}
+
+		/**
+		 * @see org.apache.wicket.util.lang.PropertyResolver.IGetAndSet#getTargetClass()
+		 */
+		public Class<?> getTargetClass()
+		{
+			return delegate.getTargetClass();
+		}
+
+		/**
+		 * @see org.apache.wicket.util.lang.PropertyResolver.IGetAndSet#getField()
+		 */
+		public Field getField()
+		{
+			return delegate.getField();
+		}
+
+		/**
+		 * @see org.apache.wicket.util.lang.PropertyResolver.IGetAndSet#getGetter()
+		 */
+		public Method getGetter()
+		{
+			return delegate.getGetter();
+		}
+
+		/**
+		 * @see org.apache.wicket.util.lang.PropertyResolver.IGetAndSet#getSetter()
+		 */
+		public Method getSetter()
+		{
+			return delegate.getSetter();
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.fastclass;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import org.apache.wicket.ConverterLocator;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.convert.ConversionException;
+import org.apache.wicket.util.lang.PropertyResolver;
+import org.apache.wicket.util.lang.PropertyResolver.IGetAndSet;
+import org.apache.wicket.util.lang.PropertyResolverConverter;
+
+/**
+ * Tests {@link FastClassGetAndSetOptimizer}
+ */
+public class FastClassGetAndSetOptimizerTest extends TestCase
+{
+	private final PropertyResolverConverter converter = new PropertyResolverConverter(
+		new ConverterLocator(), Locale.US);
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		PropertyResolver.setOptimizer(null, new FastClassGetAndSetOptimizer());
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		PropertyResolver.setOptimizer(null, null);
+	}
+
+	/**
+	 * 
+	 */
+	public void testGetAndSet()
+	{
+		Bean bean = new Bean();
+		bean.setName("wicket");
+
+		assertEquals("wicket", PropertyResolver.getValue("name", bean));
+
+		PropertyResolver.setValue("number", bean, "42", converter);
+		assertEquals(42, bean.getNumber());
+		assertEquals(42, PropertyResolver.getValue("number", bean));
+
+		PropertyResolver.setValue("child.name", bean, "nested", converter);
+		assertEquals("nested", bean.getChild().getName());
+		assertEquals("nested", PropertyResolver.getValue("child.name", bean));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testOptimize() throws Exception
+	{
+		final Method getter = Bean.class.getMethod("getName");
+		IGetAndSet getAndSet = new IGetAndSet()
+		{
+			public Object getValue(Object object)
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			public Class<?> getTargetClass()
+			{
+				return String.class;
+			}
+
+			public Object newValue(Object object)
+			{
+				return null;
+			}
+
+			public void setValue(Object object, Object value, PropertyResolverConverter converter)
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			public Field getField()
+			{
+				return null;
+			}
+
+			public Method getGetter()
+			{
+				return getter;
+			}
+
+			public Method getSetter()
+			{
+				return null;
+			}
+		};
+
+		IGetAndSet optimized = new FastClassGetAndSetOptimizer().optimize(Bean.class, getAndSet);
+		assertNotSame(getAndSet, optimized);
+
+		Bean bean = new Bean();
+		bean.setName("fast");
+		assertEquals("fast", optimized.getValue(bean));
+		assertSame(getter, optimized.getGetter());
+	}
+
+	/**
+	 * 
+	 */
+	public void testConversionError()
+	{
+		try
+		{
+			PropertyResolver.setValue("number", new Bean(), "not a number", converter);
+			fail();
+		}
+		catch (ConversionException e)
+		{
+			// expected
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void testExceptionInGetter()
+	{
+		try
+		{
+			PropertyResolver.getValue("failing", new Bean());
+			fail();
+		}
+		catch (WicketRuntimeException e)
+		{
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	/**
+	 * Test bean
+	 */
+	public static class Bean
+	{
+		private String name;
+
+		private int number;
+
+		private Bean child;
+
+		/**
+		 * @return name
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @param name
+		 */
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		/**
+		 * @return number
+		 */
+		public int getNumber()
+		{
+			return number;
+		}
+
+		/**
+		 * @param number
+		 */
+		public void setNumber(int number)
+		{
+			this.number = number;
+		}
+
+		/**
+		 * @return child
+		 */
+		public Bean getChild()
+		{
+			return child;
+		}
+
+		/**
+		 * @param child
+		 */
+		public void setChild(Bean child)
+		{
+			this.child = child;
+		}
+
+		/**
+		 * @return never
+		 */
+		public String getFailing()
+		{
+			throw new IllegalStateException();
+		}
+	}
+}
@@ -45,6 +45,32 @@ public abstract class Response
 	 */
 	public abstract void write(byte[] array);
 
+	/**
+	 * Writes a part of the buffer to output. Subclasses writing to a stream should override this
+	 * method to avoid the copy of the written part.
+	 * 
+	 * @param array
+	 * @param offset
+	 *            index of the first byte to write
+	 * @param length
+	 *            number of bytes to write
+	 * @throws IllegalStateException
+	 *             if {@link #write(CharSequence)} has already been called on this instance
+	 */
+	public void write(byte[] array, int offset, int length)
+	{
+		if (offset == 0 && length == array.length)
+		{
+			write(array);
+		}
+		else
+		{
+			byte copy[] = new byte[length];
+			System.arraycopy(array, offset, copy, 0, length);
+			write(copy);
+		}
+	}
+
 	/**
 	 * Closes the response
 	 */
@@ -185,6 +185,27 @@ public abstract class WebResponse extends Response
 	 * @see WebResponse#MAX_CACHE_DURATION
 	 */
 	public void enableCaching(Duration duration, final WebResponse.CacheScope scope)
+	{
+		enableCaching(duration, scope, false);
+	}
+
+	/**
+	 * Make this response cacheable
+	 * 
+	 * @param duration
+	 *            maximum duration before the response must be invalidated by any caches. It should
+	 *            not exceed one year, based on <a
+	 *            href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html">RFC-2616</a>.
+	 * @param scope
+	 *            controls which caches are allowed to cache the response
+	 * @param immutable
+	 *            whether the response will never change for its URL, so clients do not need to
+	 *            revalidate it even on reload
+	 * 
+	 * @see WebResponse#MAX_CACHE_DURATION
+	 */
+	public void enableCaching(Duration duration, final WebResponse.CacheScope scope,
+		final boolean immutable)
 	{
 		Args.notNull(duration, "duration");
 		Args.notNull(scope, "scope");
@@ -205,7 +226,8 @@ public abstract class WebResponse extends Response
 		setDateHeader("Expires", now + duration.getMilliseconds());
 
 		// Enable caching and set max age
-		setHeader("Cache-Control", scope.cacheControl + ", max-age=" + duration.getMilliseconds());
+		setHeader("Cache-Control", scope.cacheControl + ", max-age=" + duration.getMilliseconds() +
+			(immutable ? ", immutable" : ""));
 	}
 
 	/**
@@ -201,4 +201,26 @@ public abstract class AbstractMapper implements IRequestMapper
 		return res;
 	}
 
+	/**
+	 * Returns the leading segments that contain no placeholder.
+	 * 
+	 * @param segments
+	 * @return the segments up to the first placeholder
+	 */
+	protected static String[] getLeadingStaticSegments(final String[] segments)
+	{
+		int count = 0;
+		while (count < segments.length && getPlaceholder(segments[count]) == null)
+		{
+			count++;
+		}
+		if (count == segments.length)
+		{
+			return segments.clone();
+		}
+		String[] prefix = new String[count];
+		System.arraycopy(segments, 0, prefix, 0, count);
+		return prefix;
+	}
+
 }
\ No newline at end of file
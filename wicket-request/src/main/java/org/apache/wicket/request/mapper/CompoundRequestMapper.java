@@ -18,20 +18,28 @@ package org.apache.wicket.request.mapper;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.wicket.request.IRequestHandler;
 import org.apache.wicket.request.IRequestMapper;
 import org.apache.wicket.request.Request;
 import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.IKeyedRequestMapper.IKeyResolver;
 
 
 /**
  * Thread safe compound {@link IRequestMapper}. The mappers are searched depending on their
  * compatibility score and the orders they were registered. If two or more {@link IRequestMapper}s
  * have the same compatibility score, the last registered mapper has highest priority.
+ * <p>
+ * {@link IPrefixedRequestMapper}s are kept in a trie of their prefix segments, so only the ones
+ * whose prefix matches the request URL have to be scored. All others have a score of 0 by
+ * contract. Likewise {@link IKeyedRequestMapper}s are indexed by their key, so only the ones with
+ * the key of a request handler are asked to map it.
  * 
  * @author igor.vaynberg
  * @author Matej Knopp
@@ -46,15 +54,24 @@ public class CompoundRequestMapper implements ICompoundRequestMapper
 		private final IRequestMapper mapper;
 		private final int compatibilityScore;
 
-		public EncoderWithSegmentsCount(final IRequestMapper encoder, final int compatibilityScore)
+		/** position in the list of mappers, breaks ties between equal scores */
+		private final int position;
+
+		public EncoderWithSegmentsCount(final IRequestMapper encoder, final int compatibilityScore,
+			final int position)
 		{
 			mapper = encoder;
 			this.compatibilityScore = compatibilityScore;
+			this.position = position;
 		}
 
 		public int compareTo(final EncoderWithSegmentsCount o)
 		{
-			return o.compatibilityScore - compatibilityScore;
+			if (compatibilityScore != o.compatibilityScore)
+			{
+				return compatibilityScore > o.compatibilityScore ? -1 : 1;
+			}
+			return position - o.position;
 		}
 
 		public IRequestMapper getMapper()
@@ -72,8 +89,199 @@ public class CompoundRequestMapper implements ICompoundRequestMapper
 		}
 	}
 
+	/**
+	 * A node of the trie of prefix segments
+	 */
+	private static class Node
+	{
+		private final Map<String, Node> children = new HashMap<String, Node>();
+
+		/** positions of the mappers whose prefix ends at this node */
+		private int[] positions = new int[0];
+
+		private Node child(final String segment)
+		{
+			Node child = children.get(segment);
+			if (child == null)
+			{
+				child = new Node();
+				children.put(segment, child);
+			}
+			return child;
+		}
+
+		private void add(final int position)
+		{
+			positions = append(positions, position);
+		}
+	}
+
+	private static int[] append(final int[] positions, final int position)
+	{
+		int[] newPositions = new int[positions.length + 1];
+		System.arraycopy(positions, 0, newPositions, 0, positions.length);
+		newPositions[positions.length] = position;
+		return newPositions;
+	}
+
+	/**
+	 * Merges two ascending arrays of positions, dropping duplicates
+	 */
+	private static int[] merge(final int[] positions1, final int[] positions2)
+	{
+		int[] merged = new int[positions1.length + positions2.length];
+		int i = 0, j = 0, k = 0;
+		while (i < positions1.length || j < positions2.length)
+		{
+			int position;
+			if (j == positions2.length ||
+				(i < positions1.length && positions1[i] < positions2[j]))
+			{
+				position = positions1[i++];
+			}
+			else
+			{
+				if (i < positions1.length && positions1[i] == positions2[j])
+				{
+					i++;
+				}
+				position = positions2[j++];
+			}
+			merged[k++] = position;
+		}
+		if (k < merged.length)
+		{
+			int[] trimmed = new int[k];
+			System.arraycopy(merged, 0, trimmed, 0, k);
+			merged = trimmed;
+		}
+		return merged;
+	}
+
+	/**
+	 * Immutable snapshot of the registered mappers, the trie of their prefix segments and the
+	 * positions of keyed mappers by key
+	 */
+	private static class Index
+	{
+		private final IRequestMapper[] mappers;
+
+		private final Node root = new Node();
+
+		/** positions of the mappers without a key */
+		private int[] unkeyed = new int[0];
+
+		/**
+		 * positions of the keyed mappers by key, grouped by their resolver. Once the index is built
+		 * each array also contains the positions of the unkeyed mappers, so it can be used as is.
+		 */
+		private final Map<IKeyResolver, Map<Object, int[]>> keyed = new HashMap<IKeyResolver, Map<Object, int[]>>();
+
+		private Index(final IRequestMapper[] mappers)
+		{
+			this.mappers = mappers;
+			for (int i = 0; i < mappers.length; i++)
+			{
+				addKeyed(i);
+
+				Node node = root;
+				if (mappers[i] instanceof IPrefixedRequestMapper)
+				{
+					for (String segment : ((IPrefixedRequestMapper)mappers[i]).getPrefixSegments())
+					{
+						node = node.child(segment);
+					}
+				}
+				node.add(i);
+			}
+
+			for (Map<Object, int[]> positions : keyed.values())
+			{
+				for (Map.Entry<Object, int[]> entry : positions.entrySet())
+				{
+					entry.setValue(merge(unkeyed, entry.getValue()));
+				}
+			}
+		}
+
+		private void addKeyed(final int position)
+		{
+			IKeyResolver resolver = null;
+			Object key = null;
+			if (mappers[position] instanceof IKeyedRequestMapper)
+			{
+				IKeyedRequestMapper mapper = (IKeyedRequestMapper)mappers[position];
+				resolver = mapper.getKeyResolver();
+				key = mapper.getKey();
+			}
+
+			if (resolver == null || key == null)
+			{
+				unkeyed = append(unkeyed, position);
+			}
+			else
+			{
+				Map<Object, int[]> positions = keyed.get(resolver);
+				if (positions == null)
+				{
+					positions = new HashMap<Object, int[]>();
+					keyed.put(resolver, positions);
+				}
+				int[] current = positions.get(key);
+				positions.put(key, append(current != null ? current : new int[0], position));
+			}
+		}
+
+		/**
+		 * @param handler
+		 * @return positions of the mappers that may map the handler in ascending order
+		 */
+		private int[] candidates(final IRequestHandler handler)
+		{
+			int[] candidates = null;
+			for (Map.Entry<IKeyResolver, Map<Object, int[]>> entry : keyed.entrySet())
+			{
+				Object key = entry.getKey().getKey(handler);
+				int[] positions = key != null ? entry.getValue().get(key) : null;
+				if (positions != null)
+				{
+					// only merge if the handler has a key for more than one resolver
+					candidates = candidates == null ? positions : merge(candidates, positions);
+				}
+			}
+			return candidates != null ? candidates : unkeyed;
+		}
+
+		/**
+		 * @param request
+		 * @return the scored mappers whose prefix matches the URL of the request
+		 */
+		private List<EncoderWithSegmentsCount> score(final Request request)
+		{
+			List<EncoderWithSegmentsCount> list = new ArrayList<EncoderWithSegmentsCount>();
+			Url url = request.getUrl();
+			Iterator<String> segments = url != null ? url.getSegments().iterator()
+				: Collections.<String> emptyList().iterator();
+			Node node = root;
+			while (node != null)
+			{
+				for (int position : node.positions)
+				{
+					IRequestMapper mapper = mappers[position];
+					list.add(new EncoderWithSegmentsCount(mapper,
+						mapper.getCompatibilityScore(request), position));
+				}
+				node = segments.hasNext() ? node.children.get(segments.next()) : null;
+			}
+			return list;
+		}
+	}
+
 	private final List<IRequestMapper> mappers = new CopyOnWriteArrayList<IRequestMapper>();
 
+	/** built lazily, reset when mappers are added or removed */
+	private volatile Index index;
+
 	/**
 	 * Construct.
 	 */
@@ -86,7 +294,11 @@ public class CompoundRequestMapper implements ICompoundRequestMapper
 	 */
 	public CompoundRequestMapper add(final IRequestMapper encoder)
 	{
-		mappers.add(0, encoder);
+		synchronized (mappers)
+		{
+			mappers.add(0, encoder);
+			index = null;
+		}
 		return this;
 	}
 
@@ -95,10 +307,32 @@ public class CompoundRequestMapper implements ICompoundRequestMapper
 	 */
 	public CompoundRequestMapper remove(final IRequestMapper encoder)
 	{
-		mappers.remove(encoder);
+		synchronized (mappers)
+		{
+			mappers.remove(encoder);
+			index = null;
+		}
 		return this;
 	}
 
+	private Index getIndex()
+	{
+		Index index = this.index;
+		if (index == null)
+		{
+			synchronized (mappers)
+			{
+				index = this.index;
+				if (index == null)
+				{
+					index = new Index(mappers.toArray(new IRequestMapper[mappers.size()]));
+					this.index = index;
+				}
+			}
+		}
+		return index;
+	}
+
 	/**
 	 * Searches the registered {@link IRequestMapper}s to find one that can decode the
 	 * {@link Request}. Each registered {@link IRequestMapper} is asked to provide the matching
@@ -113,23 +347,53 @@ public class CompoundRequestMapper implements ICompoundRequestMapper
 	 */
 	public IRequestHandler mapRequest(final Request request)
 	{
-		List<EncoderWithSegmentsCount> list = new ArrayList<EncoderWithSegmentsCount>(
-			mappers.size());
+		Index index = getIndex();
+		List<EncoderWithSegmentsCount> list = index.score(request);
+		Collections.sort(list);
 
-		for (IRequestMapper encoder : mappers)
+		// mappers with a positive score
+		int i = 0;
+		for (; i < list.size() && list.get(i).compatibilityScore > 0; i++)
 		{
-			int score = encoder.getCompatibilityScore(request);
-			list.add(new EncoderWithSegmentsCount(encoder, score));
+			IRequestHandler handler = list.get(i).getMapper().mapRequest(request);
+			if (handler != null)
+			{
+				return handler;
+			}
 		}
 
-		Collections.sort(list);
+		// mappers with a score of 0 in the order they are registered, including the ones that
+		// were not scored
+		if (list.size() < index.mappers.length || i < list.size())
+		{
+			boolean[] nonZero = new boolean[index.mappers.length];
+			for (EncoderWithSegmentsCount encoder : list)
+			{
+				nonZero[encoder.position] = encoder.compatibilityScore != 0;
+			}
+			for (int position = 0; position < index.mappers.length; position++)
+			{
+				if (nonZero[position] == false)
+				{
+					IRequestHandler handler = index.mappers[position].mapRequest(request);
+					if (handler != null)
+					{
+						return handler;
+					}
+				}
+			}
+		}
 
-		for (EncoderWithSegmentsCount encoder : list)
+		// mappers with a negative score
+		for (; i < list.size(); i++)
 		{
-			IRequestHandler handler = encoder.getMapper().mapRequest(request);
-			if (handler != null)
+			if (list.get(i).compatibilityScore < 0)
 			{
-				return handler;
+				IRequestHandler handler = list.get(i).getMapper().mapRequest(request);
+				if (handler != null)
+				{
+					return handler;
+				}
 			}
 		}
 
@@ -143,16 +407,18 @@ public class CompoundRequestMapper implements ICompoundRequestMapper
 	 * or no more encoders are left.
 	 * <p>
 	 * The handlers are searched in reverse order as they have been registered. More recently
-	 * registered handlers have bigger priority.
+	 * registered handlers have bigger priority. {@link IKeyedRequestMapper}s with a key other than
+	 * the one of the handler are skipped.
 	 * 
 	 * @param handler
 	 * @return Url for the handler or <code>null</code> if no encoder for the handler is found.
 	 */
 	public Url mapHandler(final IRequestHandler handler)
 	{
-		for (IRequestMapper encoder : mappers)
+		Index index = getIndex();
+		for (int position : index.candidates(handler))
 		{
-			Url url = encoder.mapHandler(handler);
+			Url url = index.mappers[position].mapHandler(handler);
 			if (url != null)
 			{
 				return url;
@@ -168,10 +434,14 @@ public class CompoundRequestMapper implements ICompoundRequestMapper
 	 */
 	public int getCompatibilityScore(final Request request)
 	{
-		int score = Integer.MIN_VALUE;
-		for (IRequestMapper mapper : mappers)
+		Index index = getIndex();
+		List<EncoderWithSegmentsCount> list = index.score(request);
+
+		// the mappers that were not scored have a score of 0
+		int score = list.size() < index.mappers.length ? 0 : Integer.MIN_VALUE;
+		for (EncoderWithSegmentsCount encoder : list)
 		{
-			score = Math.max(score, mapper.getCompatibilityScore(request));
+			score = Math.max(score, encoder.compatibilityScore);
 		}
 		return score;
 	}
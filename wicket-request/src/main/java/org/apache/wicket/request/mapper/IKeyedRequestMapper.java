@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.mapper;
+
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+
+/**
+ * {@link IRequestMapper} that maps only request handlers with a certain key, e.g. the handlers for
+ * one mounted page class. {@link CompoundRequestMapper} uses the key to ask only the mappers that
+ * can map a request handler.
+ */
+public interface IKeyedRequestMapper extends IRequestMapper
+{
+	/**
+	 * Computes the key of request handlers. Mappers that share the same resolver instance are
+	 * indexed together.
+	 */
+	interface IKeyResolver
+	{
+		/**
+		 * @param handler
+		 * @return the key of the handler or <code>null</code> if no keyed mapper of this resolver
+		 *         maps the handler
+		 */
+		Object getKey(IRequestHandler handler);
+	}
+
+	/**
+	 * @return the resolver for the keys of request handlers
+	 */
+	IKeyResolver getKeyResolver();
+
+	/**
+	 * Returns the key of the handlers this mapper maps. {@link #mapHandler(IRequestHandler)} must
+	 * return <code>null</code> for every handler whose key is <code>null</code> or not equal to
+	 * this key.
+	 * <p>
+	 * The key is read once when the mapper is indexed, so it must not change while the mapper is
+	 * registered. Mappers whose key may change have to return <code>null</code>.
+	 * 
+	 * @return the key or <code>null</code> if the mapper cannot guarantee that
+	 */
+	Object getKey();
+}
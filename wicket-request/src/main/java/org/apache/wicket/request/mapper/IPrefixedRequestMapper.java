@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.request.mapper;
+
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+
+/**
+ * {@link IRequestMapper} that is bound to a fixed sequence of leading URL segments, e.g. the
+ * segments of a mount path before its first placeholder. {@link CompoundRequestMapper} uses them
+ * to score only the mappers that can be compatible with a request.
+ */
+public interface IPrefixedRequestMapper extends IRequestMapper
+{
+	/**
+	 * Returns the leading segments every URL handled by this mapper starts with. For requests
+	 * whose URL does not start with these segments {@link #getCompatibilityScore(Request)} must
+	 * return 0. Mappers that cannot guarantee that should return an empty array.
+	 * 
+	 * @return the leading segments, never <code>null</code>
+	 */
+	String[] getPrefixSegments();
+}
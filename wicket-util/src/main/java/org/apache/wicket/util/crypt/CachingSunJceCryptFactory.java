@@ -19,6 +19,10 @@ package org.apache.wicket.util.crypt;
 /**
  * Default crypt factory. this factory will instantiate the object via the provided Class and cache
  * the result so that the object is only instantiated once.
+ * <p>
+ * The instantiated crypt is a {@link PooledSunJceCrypt}, which encrypts like {@link SunJceCrypt}
+ * but reuses the derived key and its ciphers. Optionally the most recently encrypted texts are
+ * cached as well, see {@link #CachingSunJceCryptFactory(String, int)}.
  * 
  * @author Igor Vaynberg (ivaynberg)
  */
@@ -32,6 +36,37 @@ public class CachingSunJceCryptFactory extends CryptFactoryCachingDecorator
 	 */
 	public CachingSunJceCryptFactory(final String encryptionKey)
 	{
-		super(new ClassCryptFactory(SunJceCrypt.class, encryptionKey));
+		this(encryptionKey, 0);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param encryptionKey
+	 *            encryption key
+	 * @param maxCachedTexts
+	 *            maximum number of encrypted texts to remember, <code>0</code> for none
+	 * @see CryptCachingDecorator
+	 */
+	public CachingSunJceCryptFactory(final String encryptionKey, final int maxCachedTexts)
+	{
+		super(newFactory(encryptionKey, maxCachedTexts));
+	}
+
+	private static ICryptFactory newFactory(final String encryptionKey, final int maxCachedTexts)
+	{
+		final ICryptFactory factory = new ClassCryptFactory(PooledSunJceCrypt.class,
+			encryptionKey);
+		if (maxCachedTexts <= 0)
+		{
+			return factory;
+		}
+		return new ICryptFactory()
+		{
+			public ICrypt newCrypt()
+			{
+				return new CryptCachingDecorator(factory.newCrypt(), maxCachedTexts);
+			}
+		};
 	}
 }
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.util.crypt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link ICrypt} decorator that remembers the most recently encrypted texts.
+ * <p>
+ * Pages render the same URLs over and over again, so with an encrypting request mapper most calls
+ * to {@link #encryptUrlSafe(String)} encrypt a text which has been encrypted before. This
+ * decorator answers them from a bounded, least recently used cache. Decryption is delegated.
+ */
+public class CryptCachingDecorator implements ICrypt
+{
+	private final ICrypt delegate;
+
+	/** access ordered, guarded by itself */
+	private final Map<String, String> encrypted;
+
+	/** incremented when the key changes, guarded by {@link #encrypted} */
+	private long generation;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param delegate
+	 *            the crypt whose results will be cached
+	 * @param maxEntries
+	 *            maximum number of cached texts
+	 */
+	public CryptCachingDecorator(final ICrypt delegate, final int maxEntries)
+	{
+		if (delegate == null)
+		{
+			throw new IllegalArgumentException("delegate cannot be null");
+		}
+		if (maxEntries < 1)
+		{
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		this.delegate = delegate;
+		encrypted = new LinkedHashMap<String, String>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, String> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @see org.apache.wicket.util.crypt.ICrypt#decryptUrlSafe(java.lang.String)
+	 */
+	public String decryptUrlSafe(final String text)
+	{
+		return delegate.decryptUrlSafe(text);
+	}
+
+	/**
+	 * @see org.apache.wicket.util.crypt.ICrypt#encryptUrlSafe(java.lang.String)
+	 */
+	public String encryptUrlSafe(final String plainText)
+	{
+		String text;
+		long textGeneration;
+		synchronized (encrypted)
+		{
+			text = encrypted.get(plainText);
+			textGeneration = generation;
+		}
+		if (text == null)
+		{
+			text = delegate.encryptUrlSafe(plainText);
+			if (text != null)
+			{
+				synchronized (encrypted)
+				{
+					// the text may have been encrypted with the old key
+					if (textGeneration == generation)
+					{
+						encrypted.put(plainText, text);
+					}
+				}
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * @see org.apache.wicket.util.crypt.ICrypt#setKey(java.lang.String)
+	 */
+	public void setKey(final String key)
+	{
+		synchronized (encrypted)
+		{
+			delegate.setKey(key);
+			encrypted.clear();
+			generation++;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.util.crypt;
+
+import java.security.GeneralSecurityException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.PBEParameterSpec;
+
+/**
+ * A {@link SunJceCrypt} variant for heavy use, e.g. by a
+ * <code>org.apache.wicket.request.mapper.CryptoMapper</code> encrypting every URL of a page.
+ * <p>
+ * {@link SunJceCrypt} derives the secret key and creates a new {@link Cipher} for every call. This
+ * implementation derives the key once per {@link #setKey(String) encryption key} and keeps the
+ * initialized ciphers in a pool, so they can be reused by all threads. The encrypted text is the
+ * same as the one of {@link SunJceCrypt} with the same key.
+ * 
+ * @see CryptCachingDecorator
+ */
+public class PooledSunJceCrypt extends AbstractCrypt
+{
+	/** key and ciphers for the last used encryption key, <code>null</code> until first use */
+	private volatile Ciphers ciphers;
+
+	/**
+	 * Constructor
+	 */
+	public PooledSunJceCrypt()
+	{
+		SunJceCrypt.installProvider();
+	}
+
+	/**
+	 * Crypts the given byte array
+	 * 
+	 * @param input
+	 *            byte array to be crypted
+	 * @param mode
+	 *            crypt mode
+	 * @return the input crypted. Null in case of an error
+	 * @throws GeneralSecurityException
+	 */
+	@Override
+	protected final byte[] crypt(final byte[] input, final int mode)
+		throws GeneralSecurityException
+	{
+		Ciphers current = getCiphers();
+		Queue<Cipher> pool = mode == Cipher.ENCRYPT_MODE ? current.encrypting
+			: current.decrypting;
+
+		Cipher cipher = pool.poll();
+		if (cipher == null)
+		{
+			cipher = Cipher.getInstance(SunJceCrypt.CRYPT_METHOD);
+			cipher.init(mode, current.key, new PBEParameterSpec(SunJceCrypt.salt,
+				SunJceCrypt.COUNT));
+		}
+
+		byte[] output = cipher.doFinal(input);
+
+		// doFinal() resets the cipher to its initialized state, a failed one is dropped
+		pool.offer(cipher);
+		return output;
+	}
+
+	/**
+	 * @return the ciphers for the current key
+	 * @throws GeneralSecurityException
+	 */
+	private Ciphers getCiphers() throws GeneralSecurityException
+	{
+		final String keyString = getKey();
+		Ciphers current = ciphers;
+		if ((current == null) || (current.keyString.equals(keyString) == false))
+		{
+			final PBEKeySpec spec = new PBEKeySpec(keyString.toCharArray());
+			SecretKey key = SecretKeyFactory.getInstance(SunJceCrypt.CRYPT_METHOD)
+				.generateSecret(spec);
+
+			// a concurrent derivation may publish the ciphers of a key which has been replaced
+			// in the meantime, they are derived again on the next call then
+			current = new Ciphers(keyString, key);
+			ciphers = current;
+		}
+		return current;
+	}
+
+	/**
+	 * The derived key and the pooled ciphers initialized with it.
+	 */
+	private static final class Ciphers
+	{
+		private final String keyString;
+
+		private final SecretKey key;
+
+		private final Queue<Cipher> encrypting = new ConcurrentLinkedQueue<Cipher>();
+
+		private final Queue<Cipher> decrypting = new ConcurrentLinkedQueue<Cipher>();
+
+		private Ciphers(String keyString, SecretKey key)
+		{
+			this.keyString = keyString;
+			this.key = key;
+		}
+	}
+}
@@ -42,19 +42,27 @@ public class SunJceCrypt extends AbstractCrypt
 	/**
 	 * Iteration count used in combination with the salt to create the encryption key.
 	 */
-	private final static int COUNT = 17;
+	final static int COUNT = 17;
 
 	/** Name of encryption method */
-	private static final String CRYPT_METHOD = "PBEWithMD5AndDES";
+	static final String CRYPT_METHOD = "PBEWithMD5AndDES";
 
 	/** Salt */
-	private final static byte[] salt = { (byte)0x15, (byte)0x8c, (byte)0xa3, (byte)0x4a,
+	final static byte[] salt = { (byte)0x15, (byte)0x8c, (byte)0xa3, (byte)0x4a,
 			(byte)0x66, (byte)0x51, (byte)0x2a, (byte)0xbc };
 
 	/**
 	 * Constructor
 	 */
 	public SunJceCrypt()
+	{
+		installProvider();
+	}
+
+	/**
+	 * Adds the SunJCE security provider unless there is a provider for {@link #CRYPT_METHOD}.
+	 */
+	static void installProvider()
 	{
 		if (Security.getProviders("Cipher." + CRYPT_METHOD).length > 0)
 		{